@@ -21,6 +21,7 @@ package org.kiji.schema;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 import org.kiji.annotations.ApiAudience;
 import org.kiji.annotations.Inheritance;
@@ -46,6 +47,12 @@ import org.kiji.annotations.Inheritance;
  *     putter.close();
  *   }
  * </pre>
+ *
+ * <p>
+ *   Writers committing many independent row transactions may queue completed transactions
+ *   with <code>queueCommit()</code>, and submit them together with <code>commitQueued()</code>:
+ *   each transaction is still applied atomically to its row, but all the rows are sent at once.
+ * </p>
  */
 @ApiAudience.Framework
 @Inheritance.Sealed
@@ -74,6 +81,34 @@ public interface AtomicKijiPutter extends Closeable {
    */
   void commit(String localityGroup) throws IOException;
 
+  /**
+   * Completes the current transaction and queues it, to be committed with other transactions
+   * by {@link #commitQueued()}.
+   *
+   * <p>
+   *   All cells must belong to the same locality group. Nothing is written until
+   *   <code>commitQueued()</code> is called; a new transaction may start with begin().
+   * </p>
+   *
+   * @param localityGroup Name of the locality group of all columns to which to write.
+   * @throws IOException in case of an error.
+   */
+  void queueCommit(String localityGroup) throws IOException;
+
+  /**
+   * Commits all the queued transactions in a single batch.
+   *
+   * <p>
+   *   Each transaction is applied atomically to its row, but transactions may independently
+   *   succeed or fail. The queue is empty once this method returns.
+   * </p>
+   *
+   * @return the entity IDs of the queued transactions that failed, in the order they were
+   *     queued. Empty if all the queued transactions succeeded.
+   * @throws IOException in case of an error not specific to some transactions.
+   */
+  List<EntityId> commitQueued() throws IOException;
+
   /**
    * Atomically tests the content of a cell for a specific value,
    * and performs the accumulated puts if the test succeeds.
@@ -194,7 +194,8 @@ public abstract class EntityIdFactory {
 
   /** Factory for formatted entity IDs. */
   private static final class FormattedEntityIdFactory extends EntityIdFactory {
-    private final RowKeyFormat2 mRowKeyFormat;
+    /** Row key codec compiled once from the row key format. */
+    private final FormattedRowKeyCodec mCodec;
 
     /**
      * Construct a new Formatted Entity ID factory.
@@ -204,7 +205,7 @@ public abstract class EntityIdFactory {
     private FormattedEntityIdFactory(RowKeyFormat2 format) {
       Preconditions.checkNotNull(format);
       Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.FORMATTED);
-      mRowKeyFormat = format;
+      mCodec = new FormattedRowKeyCodec(format);
     }
 
     /** {@inheritDoc} */
@@ -214,7 +215,7 @@ public abstract class EntityIdFactory {
       Preconditions.checkArgument(components.length > 0);
       Preconditions.checkNotNull(components[0]);
       // TODO: Eliminate the need to convert to a list:
-      return FormattedEntityId.getEntityId(Lists.newArrayList(components), mRowKeyFormat);
+      return FormattedEntityId.getEntityId(Lists.newArrayList(components), mCodec);
     }
 
     /** {@inheritDoc} */
@@ -223,13 +224,13 @@ public abstract class EntityIdFactory {
       Preconditions.checkNotNull(componentList);
       Preconditions.checkArgument(componentList.size() > 0);
       Preconditions.checkNotNull(componentList.get(0));
-      return FormattedEntityId.getEntityId(componentList, mRowKeyFormat);
+      return FormattedEntityId.getEntityId(componentList, mCodec);
     }
 
     /** {@inheritDoc} */
     @Override
     public EntityId getEntityIdFromHBaseRowKey(byte[] hbaseRowKey) {
-      return FormattedEntityId.fromHBaseRowKey(hbaseRowKey, mRowKeyFormat);
+      return FormattedEntityId.fromHBaseRowKey(hbaseRowKey, mCodec);
     }
   }
 
@@ -19,11 +19,7 @@
 
 package org.kiji.schema;
 
-import java.io.ByteArrayOutputStream;
-import java.io.UnsupportedEncodingException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -40,9 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import org.kiji.annotations.ApiAudience;
 import org.kiji.schema.avro.ComponentType;
-import org.kiji.schema.avro.RowKeyEncoding;
 import org.kiji.schema.avro.RowKeyFormat2;
-import org.kiji.schema.util.Hasher;
 
 /**
  * Implements the Formatted Entity Id row key. This allows users to specify keys composed
@@ -118,11 +112,13 @@ import org.kiji.schema.util.Hasher;
 final class FormattedEntityId extends EntityId {
   // HBase row key bytes. The encoded components of the row key
   // potentially including a hash prefix, as specified in the row key format.
-  private byte[] mHBaseRowKey;
+  private final byte[] mHBaseRowKey;
 
-  private List<Object> mComponentValues;
+  // Components of the row key, or null until decoded from the HBase row key.
+  private volatile List<Object> mComponentValues;
 
-  private RowKeyFormat2 mRowKeyFormat;
+  // Codec compiled from the row key format of the table.
+  private final FormattedRowKeyCodec mCodec;
 
   private static final Logger LOG = LoggerFactory.getLogger(FormattedEntityId.class);
 
@@ -153,6 +149,19 @@ final class FormattedEntityId extends EntityId {
       RowKeyFormat2 format) {
     Preconditions.checkNotNull(format);
     Preconditions.checkNotNull(kijiRowKey);
+    return getEntityId(kijiRowKey, new FormattedRowKeyCodec(format));
+  }
+
+  /**
+   * Creates a FormattedEntityId from the specified Kiji row key.
+   *
+   * @param kijiRowKey An ordered list of objects of row key components.
+   * @param codec The row key codec compiled from the row key format of the table.
+   * @return a new FormattedEntityId with the specified Kiji row key.
+   */
+  static FormattedEntityId getEntityId(List<Object> kijiRowKey, FormattedRowKeyCodec codec) {
+    Preconditions.checkNotNull(kijiRowKey);
+    final RowKeyFormat2 format = codec.getFormat();
     // Validity check for kiji  Row Key.
     if (kijiRowKey.size() > format.getComponents().size()) {
       throw new EntityIdException("Too many components in kiji Row Key");
@@ -198,9 +207,9 @@ final class FormattedEntityId extends EntityId {
       } else {
         // for non-null components ensure that the type matches the format spec
         ComponentType type = getType(kijiRowKey.get(i));
-        if (null == type || type != format.getComponents().get(i).getType()) {
+        if (null == type || type != codec.getComponentType(i)) {
           if (type == ComponentType.INTEGER
-               && format.getComponents().get(i).getType() == ComponentType.LONG) {
+               && codec.getComponentType(i) == ComponentType.LONG) {
             kijiRowKey.set(i, ((Integer) kijiRowKey.get(i)).longValue());
           } else {
           throw new EntityIdException(String.format(
@@ -211,11 +220,7 @@ final class FormattedEntityId extends EntityId {
       }
     }
 
-    byte[] hbaseRowKey = null;
-
-    hbaseRowKey = makeHbaseRowKey(format, kijiRowKey);
-
-    return new FormattedEntityId(format, hbaseRowKey, kijiRowKey);
+    return new FormattedEntityId(codec, codec.encode(kijiRowKey), kijiRowKey);
   }
 
   /**
@@ -227,105 +232,25 @@ final class FormattedEntityId extends EntityId {
    */
   static FormattedEntityId fromHBaseRowKey(byte[] hbaseRowKey, RowKeyFormat2 format) {
     Preconditions.checkNotNull(format);
-    Preconditions.checkNotNull(hbaseRowKey);
-    // we modify the hbaseRowKey in the makeKijiRowKey code for integer encoding, so we make
-    // a copy of it to pass to makeKijiRowKey:
-    byte[] cloneHbaseKey = hbaseRowKey.clone();
-    List<Object> kijiRowKey = makeKijiRowKey(format, cloneHbaseKey);
-    return new FormattedEntityId(format, hbaseRowKey, kijiRowKey);
+    return fromHBaseRowKey(hbaseRowKey, new FormattedRowKeyCodec(format));
   }
 
   /**
-   * Create an hbase row key, which is a byte array from the given formatted kijiRowKey.
-   * This method requires that the kijiRowKey argument is the correct length for the specified
-   * format.
-   * The following encoding will be used to ensure correct ordering:
-   * Strings are UTF-8 encoded and terminated by a null byte. Strings cannot contain "\u0000".
-   * Integers are exactly 4 bytes long.
-   * Longs are exactly 8 bytes long.
-   * Both integers and longs have the sign bit flipped so that their values are wrapped around to
-   * create the correct lexicographic ordering. (i.e. after converting to byte array,
-   * MIN_INT < 0 < MAX_INT).
-   * Hashed components are exactly hash_size bytes long and are the first component of
-   * the hbase key.
-   * Except for the first, all components of a kijiRowKey can be null. However, to maintain
-   * ordering, all components to the right of a null component must also be null. Nullable index
-   * in the row key format specifies which component (and hence following components) are nullable.
-   * By default, the hash only uses the first component, but this can be changed using the Range
-   * Scan index.
+   * Creates a FormattedEntityId from the specified HBase row key.
+   *
+   * <p>
+   *   The row key is validated against the format, but its components are only decoded when
+   *   first requested. The row key is neither modified nor copied.
+   * </p>
    *
-   * @param format The formatted row key format for this table.
-   * @param kijiRowKey An ordered list of Objects of the key components.
-   * @return A byte array representing the encoded Hbase row key.
+   * @param hbaseRowKey A byte[] containing the HBase row key.
+   * @param codec The row key codec compiled from the row key format of the table.
+   * @return a new FormattedEntityId with the specified HBase row key.
    */
-  private static byte[] makeHbaseRowKey(RowKeyFormat2 format, List<Object> kijiRowKey) {
-
-    ArrayList<byte[]> hbaseKey = new ArrayList<byte[]>();
-    final byte zeroDelim = 0;
-
-    int pos;
-    for (pos = 0; pos < kijiRowKey.size(); pos++) {
-      // we have already done the validation check for null cascades.
-      if (null == kijiRowKey.get(pos)) {
-        continue;
-      }
-      byte[] tempBytes;
-      switch (getType(kijiRowKey.get(pos))) {
-        case STRING:
-          if (((String)kijiRowKey.get(pos)).contains("\u0000")) {
-            throw new EntityIdException("String component cannot contain \u0000");
-          }
-          try {
-            hbaseKey.add(((String) kijiRowKey.get(pos)).getBytes("UTF-8"));
-          } catch (UnsupportedEncodingException e) {
-            LOG.error(e.toString());
-            throw new EntityIdException(String.format(
-                "UnsupportedEncoding for component %d", pos));
-          }
-          break;
-        case INTEGER:
-          int temp = (Integer) kijiRowKey.get(pos);
-          tempBytes = ByteBuffer.allocate(Integer.SIZE / Byte.SIZE)
-              .putInt(temp).array();
-          tempBytes[0] = (byte)((int) tempBytes[0] ^ (int)Byte.MIN_VALUE);
-          hbaseKey.add(tempBytes);
-          break;
-        case LONG:
-          long templong = (Long) kijiRowKey.get(pos);
-          tempBytes = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(templong).array();
-          tempBytes[0] = (byte)((int) tempBytes[0] ^ (int)Byte.MIN_VALUE);
-          hbaseKey.add(tempBytes);
-          break;
-        default:
-          throw new RuntimeException("Invalid code path");
-      }
-    }
-
-    // hash stuff
-    int hashUpto = format.getRangeScanStartIndex() - 1;
-    ByteArrayOutputStream tohash = new ByteArrayOutputStream();
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    for (pos = 0; pos <= hashUpto && pos < hbaseKey.size(); pos++) {
-      tohash.write(hbaseKey.get(pos), 0, hbaseKey.get(pos).length);
-    }
-    byte[] hashed = Arrays.copyOfRange(Hasher.hash(tohash.toByteArray()), 0,
-        format.getSalt().getHashSize());
-    baos.write(hashed, 0, hashed.length);
-
-    // to materialize or not to materialize that is the question
-    if (format.getSalt().getSuppressKeyMaterialization()) {
-      return baos.toByteArray();
-    } else {
-      for (pos = 0; pos < hbaseKey.size(); pos++) {
-        baos.write(hbaseKey.get(pos), 0, hbaseKey.get(pos).length);
-        if (format.getComponents().get(pos).getType() == ComponentType.STRING
-            || format.getComponents().get(pos) == null) {
-          // empty strings will be encoded as null, hence we need to delimit them too
-          baos.write(zeroDelim);
-        }
-      }
-      return baos.toByteArray();
-    }
+  static FormattedEntityId fromHBaseRowKey(byte[] hbaseRowKey, FormattedRowKeyCodec codec) {
+    Preconditions.checkNotNull(hbaseRowKey);
+    codec.validate(hbaseRowKey);
+    return new FormattedEntityId(codec, hbaseRowKey, null);
   }
 
   @Override
@@ -333,140 +258,63 @@ final class FormattedEntityId extends EntityId {
     return mHBaseRowKey;
   }
 
-  /**
-   * Decode a byte array containing an hbase row key into an ordered list corresponding to
-   * the key format in the layout file.
-   *
-   * @param format The row key format as specified in the layout file.
-   * @param hbaseRowKey A byte array containing the hbase row key.
-   * @return An ordered list of component values in the key.
-   */
-  private static List<Object> makeKijiRowKey(RowKeyFormat2 format, byte[] hbaseRowKey) {
-    if (hbaseRowKey.length == 0) {
-      throw new EntityIdException("Invalid hbase row key");
-    }
-    List<Object> kijiRowKey = new ArrayList<Object>();
-    // skip over the hash
-    int pos = format.getSalt().getHashSize();
-    // we are suppressing materialization, so the components cannot be retrieved.
-    int kijiRowElem = 0;
-    if (format.getSalt().getSuppressKeyMaterialization()) {
-      if (pos < hbaseRowKey.length) {
-        throw new EntityIdException("Extra bytes in key after hash when materialization is"
-            + "suppressed");
-      }
-      return null;
-    }
-    ByteBuffer buf;
-
-    while (kijiRowElem < format.getComponents().size() && pos < hbaseRowKey.length) {
-      switch (format.getComponents().get(kijiRowElem).getType()) {
-        case STRING:
-          // Read the row key until we encounter a Null (0) byte or end.
-          int endpos = pos;
-          while (endpos < hbaseRowKey.length && (hbaseRowKey[endpos] != (byte) 0)) {
-            endpos += 1;
-          }
-          String str = null;
-          try {
-            str = new String(hbaseRowKey, pos, endpos - pos, "UTF-8");
-          } catch (UnsupportedEncodingException e) {
-            LOG.error(e.toString());
-            throw new EntityIdException(String.format(
-                "UnsupportedEncoding for component %d", kijiRowElem));
-          }
-          kijiRowKey.add(str);
-          pos = endpos + 1;
-          break;
-        case INTEGER:
-          // Toggle highest order bit to return to original 2's complement.
-          hbaseRowKey[pos] =  (byte)((int) hbaseRowKey[pos] ^ (int) Byte.MIN_VALUE);
-          try {
-            buf = ByteBuffer.wrap(hbaseRowKey, pos, Integer.SIZE / Byte.SIZE);
-          } catch (IndexOutOfBoundsException e) {
-            throw new EntityIdException("Malformed hbase Row Key");
-          }
-          kijiRowKey.add(Integer.valueOf(buf.getInt()));
-          pos = pos + Integer.SIZE / Byte.SIZE;
-          break;
-        case LONG:
-          // Toggle highest order bit to return to original 2's complement.
-          hbaseRowKey[pos] =  (byte)((int) hbaseRowKey[pos] ^ (int) Byte.MIN_VALUE);
-          try {
-            buf = ByteBuffer.wrap(hbaseRowKey, pos, Long.SIZE / Byte.SIZE);
-          } catch (IndexOutOfBoundsException e) {
-            throw new EntityIdException("Malformed hbase Row Key");
-          }
-          kijiRowKey.add(Long.valueOf(buf.getLong()));
-          pos = pos + Long.SIZE / Byte.SIZE;
-          break;
-        default:
-          throw new RuntimeException("Invalid code path");
-      }
-      kijiRowElem += 1;
-    }
-
-    // Fail if there are extra bytes in hbase row key.
-    if (pos < hbaseRowKey.length) {
-      throw new EntityIdException("Extra bytes in hbase row key cannot be mapped to any "
-          + "component");
-    }
-
-    // Fail if we encounter nulls before it is legal to do so.
-    if (kijiRowElem < format.getNullableStartIndex()) {
-      throw new EntityIdException("Too few components decoded from hbase row key. Component "
-          + "number " + kijiRowElem + " cannot be null");
-    }
-
-    // finish up with nulls for everything that wasn't in the key
-    for (; kijiRowElem < format.getComponents().size(); kijiRowElem++) {
-      kijiRowKey.add(null);
-    }
-
-    return kijiRowKey;
-  }
-
   /**
    * Creates a new FormattedEntityId.
-   * @param format Format of the row key as specified in the layout file.
+   * @param codec Row key codec compiled from the format of the row key.
    * @param hbaseRowKey Byte array containing the hbase row key.
-   * @param kijiRowKey An ordered list of row key components.
+   * @param kijiRowKey An ordered list of row key components, or null to decode them lazily from
+   *     the hbase row key.
    */
-  private FormattedEntityId(RowKeyFormat2 format, byte[] hbaseRowKey, List<Object> kijiRowKey) {
-    mRowKeyFormat = Preconditions.checkNotNull(format);
-    Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.FORMATTED);
+  private FormattedEntityId(
+      FormattedRowKeyCodec codec, byte[] hbaseRowKey, List<Object> kijiRowKey) {
+    mCodec = Preconditions.checkNotNull(codec);
     mHBaseRowKey = hbaseRowKey;
-    if (format.getSalt().getSuppressKeyMaterialization()) {
+    if (codec.isMaterializationSuppressed()) {
       mComponentValues = null;
     } else {
       mComponentValues = kijiRowKey;
     }
   }
 
+  /**
+   * Gets the components of the row key, decoding them from the hbase row key if necessary.
+   *
+   * @return the components of the row key.
+   */
+  private List<Object> getComponentValues() {
+    List<Object> components = mComponentValues;
+    if (null == components) {
+      components = mCodec.decode(mHBaseRowKey);
+      mComponentValues = components;
+    }
+    return components;
+  }
+
   /** {@inheritDoc} */
   @Override
   @SuppressWarnings("unchecked")
   public <T> T getComponentByIndex(int idx) {
-    Preconditions.checkState(!mRowKeyFormat.getSalt().getSuppressKeyMaterialization(),
+    Preconditions.checkState(!mCodec.isMaterializationSuppressed(),
         String.format("Cannot retrieve components as materialization is suppressed"));
-    Preconditions.checkArgument(idx >= 0 && idx < mComponentValues.size());
-    return (T) mComponentValues.get(idx);
+    final List<Object> components = getComponentValues();
+    Preconditions.checkArgument(idx >= 0 && idx < components.size());
+    return (T) components.get(idx);
   }
 
   /** {@inheritDoc} */
   @Override
   public List<Object> getComponents() {
-    Preconditions.checkState(!mRowKeyFormat.getSalt().getSuppressKeyMaterialization(),
+    Preconditions.checkState(!mCodec.isMaterializationSuppressed(),
         String.format("Cannot retrieve components as materialization is suppressed"));
-    return Collections.unmodifiableList(mComponentValues);
+    return Collections.unmodifiableList(getComponentValues());
   }
 
   /** {@inheritDoc} */
   @Override
   public String toString() {
-    if (!mRowKeyFormat.getSalt().getSuppressKeyMaterialization()) {
+    if (!mCodec.isMaterializationSuppressed()) {
       return Objects.toStringHelper(FormattedEntityId.class)
-          .add("components", Joiner.on(",").join(mComponentValues))
+          .add("components", Joiner.on(",").join(getComponentValues()))
           .add("hbase", Bytes.toStringBinary(mHBaseRowKey))
           .toString();
     } else {
@@ -483,7 +331,7 @@ final class FormattedEntityId extends EntityId {
     /** Set of characters which must be escaped */
     HashSet<Character> escapeSet = Sets.newHashSet('"', '\\', '\'');
     ArrayList<String> componentStrings = Lists.newArrayList();
-    for (Object component : mComponentValues) {
+    for (Object component : getComponentValues()) {
       if (component == null) {
         componentStrings.add("null");
       } else {
@@ -0,0 +1,478 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.avro.ComponentType;
+import org.kiji.schema.avro.HashType;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat2;
+import org.kiji.schema.util.Hasher;
+
+/**
+ * Encodes and decodes the HBase row keys of formatted entity IDs, for a given row key format.
+ *
+ * <p>
+ *   A codec is compiled once from a {@link RowKeyFormat2}, and may then be shared by all the
+ *   entity IDs of a table. Components are encoded in a single pass into a right-sized array,
+ *   or into a buffer provided by the caller. Decoding does not modify nor copy the row key.
+ *   See {@link FormattedEntityId} for the details of the encoding.
+ * </p>
+ *
+ * <p>
+ *   The encoded components covered by the hash are gathered, without string terminators, in a
+ *   per-thread buffer. {@link Hasher} then hashes this buffer and writes the hash prefix
+ *   directly into the row key, without allocating a digest or an intermediate hash array.
+ * </p>
+ *
+ * <p>Instances are immutable and thread-safe.</p>
+ */
+@ApiAudience.Private
+final class FormattedRowKeyCodec {
+  /** Size of an encoded integer component, in bytes. */
+  private static final int INTEGER_SIZE = Integer.SIZE / Byte.SIZE;
+
+  /** Size of an encoded long component, in bytes. */
+  private static final int LONG_SIZE = Long.SIZE / Byte.SIZE;
+
+  /** Byte terminating encoded string components. */
+  private static final byte STRING_TERMINATOR = 0;
+
+  /** Per-thread buffer gathering the encoded components to hash. */
+  private static final ThreadLocal<HashInput> HASH_INPUT = new ThreadLocal<HashInput>() {
+    @Override
+    protected HashInput initialValue() {
+      return new HashInput();
+    }
+  };
+
+  /** Growable buffer gathering the encoded components to hash, without string terminators. */
+  private static final class HashInput {
+    /** Encoded components to hash. */
+    private byte[] mBytes = new byte[64];
+
+    /** Number of bytes to hash. */
+    private int mLength = 0;
+
+    /**
+     * Appends an encoded component.
+     *
+     * @param buffer Buffer containing the encoded component.
+     * @param offset Offset of the encoded component.
+     * @param length Length of the encoded component.
+     */
+    private void append(byte[] buffer, int offset, int length) {
+      if (mLength + length > mBytes.length) {
+        mBytes = Arrays.copyOf(mBytes, Math.max(mLength + length, 2 * mBytes.length));
+      }
+      System.arraycopy(buffer, offset, mBytes, mLength, length);
+      mLength += length;
+    }
+  }
+
+  /** Row key format this codec is compiled from. */
+  private final RowKeyFormat2 mFormat;
+
+  /** Types of the row key components, in order. */
+  private final ComponentType[] mTypes;
+
+  /** Hash function computing the hash prefix. */
+  private final HashType mHashType;
+
+  /** Size of the hash prefix, in bytes. */
+  private final int mHashSize;
+
+  /** Number of leading components hashed into the prefix. */
+  private final int mHashedComponents;
+
+  /** Index of the first component that may be null. */
+  private final int mNullableStartIndex;
+
+  /** Whether row keys only contain the hash of the components. */
+  private final boolean mSuppressMaterialization;
+
+  /**
+   * Compiles a codec for a row key format.
+   *
+   * @param format Row key format, with the FORMATTED encoding.
+   */
+  FormattedRowKeyCodec(RowKeyFormat2 format) {
+    mFormat = Preconditions.checkNotNull(format);
+    Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.FORMATTED);
+    mTypes = new ComponentType[format.getComponents().size()];
+    for (int i = 0; i < mTypes.length; ++i) {
+      mTypes[i] = format.getComponents().get(i).getType();
+    }
+    mHashType = format.getSalt().getHashType();
+    mHashSize = format.getSalt().getHashSize();
+    mHashedComponents = format.getRangeScanStartIndex();
+    mNullableStartIndex = format.getNullableStartIndex();
+    mSuppressMaterialization = format.getSalt().getSuppressKeyMaterialization();
+  }
+
+  /** @return the row key format this codec is compiled from. */
+  RowKeyFormat2 getFormat() {
+    return mFormat;
+  }
+
+  /** @return the number of components in the row key format. */
+  int getComponentCount() {
+    return mTypes.length;
+  }
+
+  /**
+   * Reports the type of a row key component.
+   *
+   * @param index Index of the component.
+   * @return the type of the component.
+   */
+  ComponentType getComponentType(int index) {
+    return mTypes[index];
+  }
+
+  /** @return whether row keys only contain the hash of the components. */
+  boolean isMaterializationSuppressed() {
+    return mSuppressMaterialization;
+  }
+
+  /**
+   * Computes the size of the HBase row key encoding validated components.
+   *
+   * @param components Row key components, validated against the format.
+   * @return the size of the encoded row key, in bytes.
+   */
+  int getEncodedSize(List<Object> components) {
+    return mSuppressMaterialization ? mHashSize : mHashSize + getComponentsSize(components);
+  }
+
+  /**
+   * Encodes validated components into an HBase row key.
+   *
+   * @param components Row key components, validated against the format.
+   * @return the HBase row key.
+   */
+  byte[] encode(List<Object> components) {
+    final byte[] rowKey = new byte[getEncodedSize(components)];
+    encode(components, rowKey, 0);
+    return rowKey;
+  }
+
+  /**
+   * Encodes validated components into an HBase row key, in a buffer provided by the caller.
+   *
+   * @param components Row key components, validated against the format.
+   * @param buffer Buffer to write the row key into.
+   * @param offset Offset in the buffer where to write the row key.
+   * @return the size of the row key written, in bytes.
+   * @throws IndexOutOfBoundsException if the buffer is too small; see getEncodedSize().
+   */
+  int encode(List<Object> components, byte[] buffer, int offset) {
+    final HashInput hashInput = HASH_INPUT.get();
+    hashInput.mLength = 0;
+    final int size;
+    if (mSuppressMaterialization) {
+      // Components are not part of the row key: encode them aside, for hashing only.
+      writeComponents(components, new byte[getComponentsSize(components)], 0, hashInput);
+      size = mHashSize;
+    } else {
+      size = writeComponents(components, buffer, offset + mHashSize, hashInput) - offset;
+    }
+    Hasher.hash(mHashType, hashInput.mBytes, 0, hashInput.mLength, buffer, offset, mHashSize);
+    return size;
+  }
+
+  /**
+   * Computes the size of the encoded components, past the hash prefix.
+   *
+   * @param components Row key components, validated against the format.
+   * @return the size of the encoded components, in bytes.
+   */
+  private int getComponentsSize(List<Object> components) {
+    int size = 0;
+    for (int i = 0; i < components.size(); ++i) {
+      final Object component = components.get(i);
+      if (null == component) {
+        // Only null components may follow a null component.
+        break;
+      }
+      switch (mTypes[i]) {
+      case STRING:
+        size += getUtf8Length((String) component) + 1;
+        break;
+      case INTEGER:
+        size += INTEGER_SIZE;
+        break;
+      case LONG:
+        size += LONG_SIZE;
+        break;
+      default:
+        throw new RuntimeException("Invalid code path");
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Writes the encoded components.
+   *
+   * @param components Row key components, validated against the format.
+   * @param buffer Buffer to write the components into.
+   * @param offset Offset in the buffer where to write the first component.
+   * @param hashInput Gathers the encoded components to hash.
+   * @return the offset in the buffer past the last component written.
+   */
+  private int writeComponents(
+      List<Object> components, byte[] buffer, int offset, HashInput hashInput) {
+    int pos = offset;
+    for (int i = 0; i < components.size(); ++i) {
+      final Object component = components.get(i);
+      if (null == component) {
+        break;
+      }
+      final int start = pos;
+      switch (mTypes[i]) {
+      case STRING:
+        pos = writeUtf8((String) component, buffer, pos);
+        break;
+      case INTEGER:
+        final int intValue = (Integer) component ^ Integer.MIN_VALUE;
+        for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+          buffer[pos++] = (byte) (intValue >>> shift);
+        }
+        break;
+      case LONG:
+        final long longValue = (Long) component ^ Long.MIN_VALUE;
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+          buffer[pos++] = (byte) (longValue >>> shift);
+        }
+        break;
+      default:
+        throw new RuntimeException("Invalid code path");
+      }
+      if (i < mHashedComponents) {
+        hashInput.append(buffer, start, pos - start);
+      }
+      if (mTypes[i] == ComponentType.STRING) {
+        // Empty strings are encoded as nothing, hence strings are always delimited.
+        buffer[pos++] = STRING_TERMINATOR;
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Validates an HBase row key against the format, without decoding the components.
+   *
+   * @param rowKey HBase row key.
+   * @throws EntityIdException if the row key is not valid for the format.
+   */
+  void validate(byte[] rowKey) {
+    if (rowKey.length == 0) {
+      throw new EntityIdException("Invalid hbase row key");
+    }
+    if (mSuppressMaterialization) {
+      if (mHashSize < rowKey.length) {
+        throw new EntityIdException("Extra bytes in key after hash when materialization is"
+            + "suppressed");
+      }
+      return;
+    }
+    scanComponents(rowKey, null);
+  }
+
+  /**
+   * Decodes the components of a valid HBase row key.
+   *
+   * @param rowKey HBase row key, validated with validate().
+   * @return the components of the row key, with nulls for the components not in the key.
+   */
+  List<Object> decode(byte[] rowKey) {
+    final Object[] components = new Object[mTypes.length];
+    scanComponents(rowKey, components);
+    return Collections.unmodifiableList(Arrays.asList(components));
+  }
+
+  /**
+   * Walks through the components of an HBase row key.
+   *
+   * @param rowKey HBase row key.
+   * @param components Array to decode the components into, or null to only validate the key.
+   * @throws EntityIdException if the row key is not valid for the format.
+   */
+  private void scanComponents(byte[] rowKey, Object[] components) {
+    int pos = mHashSize;
+    int index = 0;
+    while ((index < mTypes.length) && (pos < rowKey.length)) {
+      switch (mTypes[index]) {
+      case STRING:
+        // Read the row key until we encounter a null (0) byte or the end of the key.
+        int end = pos;
+        while ((end < rowKey.length) && (rowKey[end] != STRING_TERMINATOR)) {
+          end += 1;
+        }
+        if (null != components) {
+          components[index] = new String(rowKey, pos, end - pos, Charsets.UTF_8);
+        }
+        pos = end + 1;
+        break;
+      case INTEGER:
+        if (pos + INTEGER_SIZE > rowKey.length) {
+          throw new EntityIdException("Malformed hbase Row Key");
+        }
+        if (null != components) {
+          int value = 0;
+          for (int i = 0; i < INTEGER_SIZE; ++i) {
+            value = (value << Byte.SIZE) | (rowKey[pos + i] & 0xff);
+          }
+          // Toggle highest order bit to return to original 2's complement.
+          components[index] = Integer.valueOf(value ^ Integer.MIN_VALUE);
+        }
+        pos += INTEGER_SIZE;
+        break;
+      case LONG:
+        if (pos + LONG_SIZE > rowKey.length) {
+          throw new EntityIdException("Malformed hbase Row Key");
+        }
+        if (null != components) {
+          long value = 0;
+          for (int i = 0; i < LONG_SIZE; ++i) {
+            value = (value << Byte.SIZE) | (rowKey[pos + i] & 0xff);
+          }
+          components[index] = Long.valueOf(value ^ Long.MIN_VALUE);
+        }
+        pos += LONG_SIZE;
+        break;
+      default:
+        throw new RuntimeException("Invalid code path");
+      }
+      index += 1;
+    }
+
+    // Fail if there are extra bytes in hbase row key.
+    if (pos < rowKey.length) {
+      throw new EntityIdException("Extra bytes in hbase row key cannot be mapped to any "
+          + "component");
+    }
+
+    // Fail if we encounter nulls before it is legal to do so.
+    if (index < mNullableStartIndex) {
+      throw new EntityIdException("Too few components decoded from hbase row key. Component "
+          + "number " + index + " cannot be null");
+    }
+  }
+
+  /**
+   * Computes the length of the UTF-8 encoding of a string component.
+   *
+   * <p>Unpaired surrogates are encoded as '?', like String.getBytes() does.</p>
+   *
+   * @param str String component.
+   * @return the length of the UTF-8 encoding of the string, in bytes.
+   * @throws EntityIdException if the string contains the string terminator.
+   */
+  private static int getUtf8Length(String str) {
+    final int length = str.length();
+    int utf8Length = 0;
+    for (int i = 0; i < length; ++i) {
+      final char c = str.charAt(i);
+      if (c == 0) {
+        throw new EntityIdException("String component cannot contain \u0000");
+      } else if (c < 0x80) {
+        utf8Length += 1;
+      } else if (c < 0x800) {
+        utf8Length += 2;
+      } else if (isSurrogatePair(str, i)) {
+        utf8Length += 4;
+        i += 1;
+      } else if (isSurrogate(c)) {
+        utf8Length += 1;
+      } else {
+        utf8Length += 3;
+      }
+    }
+    return utf8Length;
+  }
+
+  /**
+   * Writes the UTF-8 encoding of a string component, validated with getUtf8Length().
+   *
+   * @param str String component.
+   * @param buffer Buffer to write the encoded string into.
+   * @param offset Offset in the buffer where to write the encoded string.
+   * @return the offset in the buffer past the encoded string.
+   */
+  private static int writeUtf8(String str, byte[] buffer, int offset) {
+    final int length = str.length();
+    int pos = offset;
+    for (int i = 0; i < length; ++i) {
+      final char c = str.charAt(i);
+      if (c < 0x80) {
+        buffer[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[pos++] = (byte) (0xc0 | (c >> 6));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (isSurrogatePair(str, i)) {
+        final int codePoint = Character.toCodePoint(c, str.charAt(i + 1));
+        buffer[pos++] = (byte) (0xf0 | (codePoint >> 18));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+        i += 1;
+      } else if (isSurrogate(c)) {
+        buffer[pos++] = (byte) '?';
+      } else {
+        buffer[pos++] = (byte) (0xe0 | (c >> 12));
+        buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Reports whether a character is a UTF-16 surrogate.
+   *
+   * @param c Character to test.
+   * @return whether the character is a UTF-16 surrogate.
+   */
+  private static boolean isSurrogate(char c) {
+    return (c >= Character.MIN_SURROGATE) && (c <= Character.MAX_SURROGATE);
+  }
+
+  /**
+   * Reports whether a string has a valid surrogate pair at a given index.
+   *
+   * @param str String to test.
+   * @param index Index of the high surrogate.
+   * @return whether the string has a valid surrogate pair at the given index.
+   */
+  private static boolean isSurrogatePair(String str, int index) {
+    return Character.isHighSurrogate(str.charAt(index))
+        && (index + 1 < str.length())
+        && Character.isLowSurrogate(str.charAt(index + 1));
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kiji.schema;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.annotations.Inheritance;
+
+/**
+ * Interface for incrementing counters of a Kiji table through a client-side buffer.
+ *
+ * <p>
+ *   Increments are not sent to the table immediately. Deltas applied to the same counter
+ *   (same row and column) are summed in memory, and the counters of a row are incremented
+ *   with a single HBase request. The buffer is sent to the table in the background, once it
+ *   holds a configurable number of distinct counters or after a configurable delay, whichever
+ *   comes first. The buffer is also sent when the incrementer is flushed or closed.
+ * </p>
+ * <p>
+ *   Each increment returns a future that completes once the summed delta has been applied.
+ *   By default, the future holds the new value of the counter; increments coalesced in the
+ *   same buffer all see the value after the last of them. In fire-and-forget mode
+ *   (see {@link #setReturnResults(boolean)}), new values are not decoded and futures complete
+ *   with null.
+ * </p>
+ * <p>
+ *   Buffered incrementers are thread-safe. Unlike {@link KijiIncrementer}, they are not suited
+ *   for counters whose new value must be read back before the next increment.
+ *   To get a KijiBufferedIncrementer, use {@link KijiWriterFactory#openBufferedIncrementer()}.
+ * </p>
+ */
+@ApiAudience.Public
+@Inheritance.Sealed
+public interface KijiBufferedIncrementer extends Closeable, Flushable {
+  /**
+   * Buffers an increment of a counter.
+   *
+   * @param entityId Entity ID of the row containing the counter.
+   * @param family Column family.
+   * @param qualifier Column qualifier.
+   * @param amount Amount to increment the counter by (may be negative).
+   * @return a future that completes once the increment is applied to the table, with the new
+   *     value of the counter, or with null in fire-and-forget mode.
+   * @throws IOException if the column is not a counter, or on I/O error.
+   */
+  Future<Long> increment(EntityId entityId, String family, String qualifier, long amount)
+      throws IOException;
+
+  /**
+   * Sets the number of distinct counters that triggers sending the buffer to the table.
+   *
+   * @param bufferSize Maximum number of distinct counters in the buffer.
+   */
+  void setBufferSize(int bufferSize);
+
+  /**
+   * Sets the maximum delay after which buffered increments are sent to the table,
+   * regardless of the size of the buffer.
+   *
+   * @param flushIntervalMillis Maximum delay, in milliseconds.
+   */
+  void setFlushInterval(long flushIntervalMillis);
+
+  /**
+   * Sets whether the futures of the increments hold the new values of the counters.
+   *
+   * <p>
+   *   Defaults to true. Disabling results skips decoding the new counter values and tracking
+   *   one future per counter: all the increments of a buffer share a single future.
+   *   Applies to the increments buffered after this call.
+   * </p>
+   *
+   * @param returnResults Whether to report the new values of the counters.
+   */
+  void setReturnResults(boolean returnResults);
+
+  /**
+   * Sends all buffered increments to the table, and waits until they are applied.
+   *
+   * @throws IOException on I/O error while applying the buffered increments.
+   */
+  @Override
+  void flush() throws IOException;
+}
@@ -0,0 +1,105 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.annotations.Inheritance;
+
+/**
+ * Interface for writing to a Kiji table through a client-side buffer.
+ *
+ * <p>
+ *   Cells written to a buffered writer are not sent to the table immediately.
+ *   Cells written to the same row are coalesced into a single HBase request, and the buffer is
+ *   sent to the table in the background, once it reaches a configurable size or after
+ *   a configurable delay, whichever comes first. The buffer is also sent when the writer is
+ *   flushed or closed.
+ * </p>
+ * <p>
+ *   Each put returns a future that completes once the cell has been written to the table.
+ *   Callers may wait on these futures to apply back-pressure or to detect write failures.
+ *   Puts also block when the buffer is full while the previous buffer is still being sent.
+ * </p>
+ * <p>
+ *   Buffered writers are thread-safe.
+ *   To get a KijiBufferedWriter, use {@link KijiWriterFactory#openBufferedWriter()}.
+ * </p>
+ */
+@ApiAudience.Public
+@Inheritance.Sealed
+public interface KijiBufferedWriter extends Closeable, Flushable {
+  /**
+   * Buffers a put into a kiji table.
+   *
+   * @param entityId The entity (row) to put data into.
+   * @param family A column family.
+   * @param qualifier A column qualifier.
+   * @param value The data to write.
+   * @param <T> The type of the value being written.
+   * @return a future that completes once the cell is written to the table.
+   * @throws IOException If there is an IO error.
+   */
+  <T> Future<Void> put(EntityId entityId, String family, String qualifier, T value)
+      throws IOException;
+
+  /**
+   * Buffers a put into a kiji table.
+   *
+   * @param entityId The entity (row) to put data into.
+   * @param family A column family.
+   * @param qualifier A column qualifier.
+   * @param timestamp Timestamp, in millisecond since the Epoch.
+   * @param value The data to write.
+   * @param <T> The type of the value being written.
+   * @return a future that completes once the cell is written to the table.
+   * @throws IOException If there is an IO error.
+   */
+  <T> Future<Void> put(EntityId entityId, String family, String qualifier, long timestamp, T value)
+      throws IOException;
+
+  /**
+   * Sets the size of the buffer, ie. the amount of encoded cell data that triggers sending
+   * the buffer to the table.
+   *
+   * @param bufferSize Size of the buffer, in bytes.
+   */
+  void setBufferSize(long bufferSize);
+
+  /**
+   * Sets the maximum delay after which buffered cells are sent to the table,
+   * regardless of the size of the buffer.
+   *
+   * @param flushIntervalMillis Maximum delay, in milliseconds.
+   */
+  void setFlushInterval(long flushIntervalMillis);
+
+  /**
+   * Sends all buffered cells to the table, and waits until they are written.
+   *
+   * @throws IOException on I/O error while writing the buffered cells.
+   */
+  @Override
+  void flush() throws IOException;
+}
@@ -86,6 +86,9 @@ public final class KijiDataRequest implements Serializable {
   /** The maximum timestamp of cells to be read (exclusive). */
   private final long mMaxTimestamp;
 
+  /** Cached hash code of this request, lazily computed (0 means not computed yet). */
+  private transient int mHashCode = 0;
+
   /**
    * Describes a request for a Kiji Table column.
    */
@@ -211,10 +214,14 @@ public final class KijiDataRequest implements Serializable {
           .isEquals();
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Consistent with equals(): ignores the column filter.</p>
+     */
     @Override
     public int hashCode() {
-      return toString().hashCode();
+      return Objects.hashCode(getName(), mMaxVersions, mPageSize);
     }
 
     /** {@inheritDoc} */
@@ -510,7 +517,14 @@ public final class KijiDataRequest implements Serializable {
     return false;
   }
 
-  /** {@inheritDoc} */
+  /**
+   * {@inheritDoc}
+   *
+   * <p>
+   *   Column filters are ignored: data requests that only differ by their column filters are
+   *   equal, and have equal hash codes.
+   * </p>
+   */
   @Override
   public boolean equals(Object other) {
     if (!(other instanceof KijiDataRequest)) {
@@ -537,7 +551,15 @@ public final class KijiDataRequest implements Serializable {
   /** {@inheritDoc} */
   @Override
   public int hashCode() {
-    return toString().hashCode();
+    // Data requests are immutable: compute the hash code once, as it is a fairly expensive
+    // operation and data requests are used as cache keys.
+    // The hash code of the column map does not depend on the order of the columns.
+    int hashCode = mHashCode;
+    if (0 == hashCode) {
+      hashCode = Objects.hashCode(mColumns, mMinTimestamp, mMaxTimestamp);
+      mHashCode = hashCode;
+    }
+    return hashCode;
   }
 
   /** {@inheritDoc} */
@@ -0,0 +1,140 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.avro.ColumnRequestDesc;
+import org.kiji.schema.avro.DataRequestDesc;
+import org.kiji.schema.filter.ColumnFilterRegistry;
+
+/**
+ * Serializes KijiDataRequests into a compact, versioned binary form.
+ *
+ * <p>
+ *   The binary form is a format version byte followed by the Avro binary encoding of a
+ *   {@link DataRequestDesc} record. Column filters are encoded through the codecs registered
+ *   in {@link ColumnFilterRegistry}.
+ * </p>
+ */
+@ApiAudience.Public
+public final class KijiDataRequestSerializer {
+  /** Version of the binary format written by this serializer. */
+  public static final byte FORMAT_VERSION = 1;
+
+  /** Utility class may not be instantiated. */
+  private KijiDataRequestSerializer() {
+  }
+
+  /**
+   * Serializes a data request.
+   *
+   * @param dataRequest Data request to serialize.
+   * @return the binary form of the data request.
+   * @throws IOException on I/O error.
+   */
+  public static byte[] serialize(KijiDataRequest dataRequest) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(FORMAT_VERSION);
+    final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(bytes, null);
+    new SpecificDatumWriter<DataRequestDesc>(DataRequestDesc.SCHEMA$)
+        .write(toAvro(dataRequest), encoder);
+    encoder.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Deserializes a data request.
+   *
+   * @param bytes Binary form of the data request, as returned by serialize().
+   * @return the deserialized data request.
+   * @throws IOException on I/O error.
+   */
+  public static KijiDataRequest deserialize(byte[] bytes) throws IOException {
+    if ((bytes.length == 0) || (bytes[0] != FORMAT_VERSION)) {
+      throw new IOException(String.format("Unsupported data request format version: %s.",
+          (bytes.length == 0) ? "<empty>" : Byte.toString(bytes[0])));
+    }
+    final BinaryDecoder decoder =
+        DecoderFactory.get().binaryDecoder(bytes, 1, bytes.length - 1, null);
+    return fromAvro(new SpecificDatumReader<DataRequestDesc>(DataRequestDesc.SCHEMA$)
+        .read(null, decoder));
+  }
+
+  /**
+   * Describes a data request as an Avro record.
+   *
+   * @param dataRequest Data request to describe.
+   * @return the Avro record describing the data request.
+   * @throws IOException on I/O error.
+   */
+  public static DataRequestDesc toAvro(KijiDataRequest dataRequest) throws IOException {
+    final List<ColumnRequestDesc> columns = Lists.newArrayList();
+    for (KijiDataRequest.Column column : dataRequest.getColumns()) {
+      columns.add(ColumnRequestDesc.newBuilder()
+          .setFamily(column.getFamily())
+          .setQualifier(column.getQualifier())
+          .setMaxVersions(column.getMaxVersions())
+          .setPageSize(column.getPageSize())
+          .setFilter((null == column.getFilter())
+              ? null
+              : ColumnFilterRegistry.toAvro(column.getFilter()))
+          .build());
+    }
+    return DataRequestDesc.newBuilder()
+        .setMinTimestamp(dataRequest.getMinTimestamp())
+        .setMaxTimestamp(dataRequest.getMaxTimestamp())
+        .setColumns(columns)
+        .build();
+  }
+
+  /**
+   * Builds a data request from its Avro description.
+   *
+   * @param desc Avro record describing the data request.
+   * @return the data request.
+   * @throws IOException on I/O error.
+   */
+  public static KijiDataRequest fromAvro(DataRequestDesc desc) throws IOException {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder()
+        .withTimeRange(desc.getMinTimestamp(), desc.getMaxTimestamp());
+    for (ColumnRequestDesc column : desc.getColumns()) {
+      final KijiDataRequestBuilder.ColumnsDef def = builder.newColumnsDef()
+          .withMaxVersions(column.getMaxVersions())
+          .withPageSize(column.getPageSize());
+      if (null != column.getFilter()) {
+        def.withFilter(ColumnFilterRegistry.fromAvro(column.getFilter()));
+      }
+      def.add(new KijiColumnName(column.getFamily(), column.getQualifier()));
+    }
+    return builder.build();
+  }
+}
@@ -22,6 +22,7 @@ package org.kiji.schema;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 
@@ -68,6 +69,18 @@ public interface KijiSchemaTable extends Flushable, Closeable {
    */
   BytesKey getOrCreateSchemaHash(Schema schema) throws IOException;
 
+  /**
+   * Looks up the schema IDs of a collection of Avro schema objects.
+   *
+   * Unknown schemas are registered together: they are allocated a block of schema IDs at once,
+   * which is cheaper than registering the schemas one by one.
+   *
+   * @param schemas The full schemas to look up or store in the table.
+   * @return The schema IDs, keyed by schema.
+   * @throws IOException on I/O error.
+   */
+  Map<Schema, Long> registerSchemas(Collection<Schema> schemas) throws IOException;
+
   /**
    * Computes a schema hash.
    *
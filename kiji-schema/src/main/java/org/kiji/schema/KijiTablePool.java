@@ -21,20 +21,29 @@ package org.kiji.schema;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.kiji.annotations.ApiAudience;
 import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.metrics.MetricsRegistry;
+import org.kiji.schema.metrics.NoopMetricsRegistry;
 import org.kiji.schema.util.Clock;
 import org.kiji.schema.util.ResourceUtils;
 
@@ -70,6 +79,9 @@ import org.kiji.schema.util.ResourceUtils;
  *
  * <p>
  *   This class is thread-safe, but the individual KijiTables that are returned from it are not.
+ *   Each table has its own pool of connections, and checking out a connection does not lock
+ *   other tables. When a table has reached its maximum pool size, {@link #get} waits up to the
+ *   configured acquire timeout for a connection to be released.
  * </p>
  */
 @ApiAudience.Public
@@ -90,6 +102,23 @@ public final class KijiTablePool implements Closeable {
   /** Default idle polling period in milliseconds (10 seconds). */
   public static final long DEFAULT_IDLE_POLL_PERIOD = 10000L;
 
+  /** Default acquire timeout in milliseconds: fail immediately when a table pool is full. */
+  public static final long DEFAULT_ACQUIRE_TIMEOUT = 0L;
+
+  /**
+   * Maximum time, in milliseconds, a blocked get() waits on released connections before checking
+   * again whether the pool has room to open a new connection.
+   */
+  private static final long CAPACITY_RECHECK_PERIOD = 100L;
+
+  /** Distinguishes the metrics of the table pools sharing a metrics registry. */
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
+  /** Names of the metrics of a pool, relative to the prefix of the pool. */
+  private static final List<String> METRIC_NAMES = ImmutableList.of(
+      "get", "hits", "misses", "waits", "wait_time_ms", "timeouts", "idle_evictions",
+      "connections", "connections_in_use");
+
   /** A factory for creating new opened HTables. */
   private final KijiTableFactory mTableFactory;
 
@@ -108,14 +137,47 @@ public final class KijiTablePool implements Closeable {
   /** Number of milliseconds to wait between sweeps for idle tables. */
   private final long mIdlePollPeriod;
 
+  /** Milliseconds get() may wait for a connection when a table pool is full. */
+  private final long mAcquireTimeout;
+
   /** A map from table names to their connection pools. */
-  private final Map<String, Pool> mPoolCache;
+  private final ConcurrentMap<String, Pool> mPoolCache;
+
+  /** Opens the connections of the pre-warmed tables in the background, or null. */
+  private final ExecutorService mPrewarmExecutor;
+
+  /** Number of connections reused from the pool. */
+  private final AtomicLong mHits = new AtomicLong(0);
+
+  /** Number of connections opened for get(). */
+  private final AtomicLong mMisses = new AtomicLong(0);
+
+  /** Number of get() calls that had to wait for a connection. */
+  private final AtomicLong mWaits = new AtomicLong(0);
 
-  /** A cleanup thread for idle connections. */
+  /** Total time get() calls spent waiting for a connection, in nanoseconds. */
+  private final AtomicLong mWaitTimeNanos = new AtomicLong(0);
+
+  /** Number of get() calls that failed because the pool was at capacity. */
+  private final AtomicLong mTimeouts = new AtomicLong(0);
+
+  /** Number of connections closed because they were idle. */
+  private final AtomicLong mIdleEvictions = new AtomicLong(0);
+
+  /** Registry the metrics of this pool are recorded into. */
+  private final MetricsRegistry mMetrics;
+
+  /** Prefix of the names of the metrics of this pool. */
+  private final String mMetricsPrefix;
+
+  /** Records the latencies of get(), including waits for connections and opened connections. */
+  private final MetricsRegistry.Timer mGetTimer;
+
+  /** A cleanup thread for idle connections. Guarded by this. */
   private IdleTimeoutThread mCleanupThread;
 
   /** Whether the table pool is open. */
-  private boolean mIsOpen;
+  private volatile boolean mIsOpen;
 
   /**
    * Builder class for KijiTablePool instances.  These should be constructed with
@@ -127,7 +189,10 @@ public final class KijiTablePool implements Closeable {
     private int mMaxSize;
     private long mIdleTimeout;
     private long mIdlePollPeriod;
+    private long mAcquireTimeout;
+    private List<String> mPrewarmedTables;
     private Clock mClock;
+    private MetricsRegistry mMetrics;
 
     /**
      * Creates a KijiTablePoolBuilder with for the specified Kiji instance and the default options.
@@ -141,7 +206,10 @@ public final class KijiTablePool implements Closeable {
       mMaxSize = DEFAULT_MAX_POOL_SIZE;
       mIdleTimeout = DEFAULT_IDLE_TIMEOUT;
       mIdlePollPeriod = DEFAULT_IDLE_POLL_PERIOD;
+      mAcquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+      mPrewarmedTables = ImmutableList.of();
       mClock = Clock.getDefaultClock();
+      mMetrics = NoopMetricsRegistry.get();
     }
 
     /**
@@ -192,6 +260,35 @@ public final class KijiTablePool implements Closeable {
       return this;
     }
 
+    /**
+     * Sets the amount of time a request for a table waits for a connection to be released when
+     * the pool for this table has reached its maximum size.
+     *
+     * <p>Use zero (0) to fail immediately with a NoCapacityException, which is the default.</p>
+     *
+     * @param timeoutMillis Timeout in milliseconds.
+     * @return This options object for method chaining.
+     */
+    public KijiTablePoolBuilder withAcquireTimeout(long timeoutMillis) {
+      Preconditions.checkArgument(timeoutMillis >= 0,
+          "Invalid acquire timeout: %s", timeoutMillis);
+      mAcquireTimeout = timeoutMillis;
+      return this;
+    }
+
+    /**
+     * Sets the tables whose pools are filled up to the minimum pool size when the pool is built.
+     *
+     * <p>The connections are opened by a background thread, so that build() does not block.</p>
+     *
+     * @param tableNames Names of the tables to pre-warm.
+     * @return This options object for method chaining.
+     */
+    public KijiTablePoolBuilder withPrewarmedTables(String... tableNames) {
+      mPrewarmedTables = ImmutableList.copyOf(tableNames);
+      return this;
+    }
+
     /**
      * Sets a clock.
      *
@@ -203,6 +300,23 @@ public final class KijiTablePool implements Closeable {
       return this;
     }
 
+    /**
+     * Sets the registry to record the metrics of the pool into.
+     *
+     * <p>
+     *   The pool reports its statistics and utilization under the names
+     *   <code>table_pool.&lt;id&gt;.*</code>, and removes them when it is closed.
+     *   By default, no metrics are recorded.
+     * </p>
+     *
+     * @param metrics Registry to record the metrics of the pool into.
+     * @return This options object for method chaining.
+     */
+    public KijiTablePoolBuilder withMetricsRegistry(MetricsRegistry metrics) {
+      mMetrics = Preconditions.checkNotNull(metrics);
+      return this;
+    }
+
     /**
      * Builds the configured KijiTablePool.
      *
@@ -213,6 +327,88 @@ public final class KijiTablePool implements Closeable {
     }
   }
 
+  /**
+   * Statistics about the usage of a KijiTablePool.
+   */
+  @ApiAudience.Public
+  public static final class PoolStats {
+    private final long mHits;
+    private final long mMisses;
+    private final long mWaits;
+    private final long mWaitTimeNanos;
+    private final long mTimeouts;
+    private final long mIdleEvictions;
+
+    /**
+     * Creates a snapshot of the statistics of a pool.
+     *
+     * @param hits Number of connections reused from the pool.
+     * @param misses Number of connections opened for requests.
+     * @param waits Number of requests that waited for a connection.
+     * @param waitTimeNanos Total time requests spent waiting for a connection, in nanoseconds.
+     * @param timeouts Number of requests that failed because the pool was at capacity.
+     * @param idleEvictions Number of connections closed because they were idle.
+     */
+    private PoolStats(long hits, long misses, long waits, long waitTimeNanos, long timeouts,
+        long idleEvictions) {
+      mHits = hits;
+      mMisses = misses;
+      mWaits = waits;
+      mWaitTimeNanos = waitTimeNanos;
+      mTimeouts = timeouts;
+      mIdleEvictions = idleEvictions;
+    }
+
+    /** @return the number of requests served with a connection reused from the pool. */
+    public long getHits() {
+      return mHits;
+    }
+
+    /** @return the number of requests served with a newly opened connection. */
+    public long getMisses() {
+      return mMisses;
+    }
+
+    /** @return the fraction of requests served with a reused connection, or 0 if none. */
+    public double getHitRate() {
+      final long total = mHits + mMisses;
+      return (total == 0) ? 0.0 : (double) mHits / total;
+    }
+
+    /** @return the number of requests that had to wait for a connection to be released. */
+    public long getWaits() {
+      return mWaits;
+    }
+
+    /** @return the total time requests spent waiting for a connection, in milliseconds. */
+    public long getTotalWaitTimeMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(mWaitTimeNanos);
+    }
+
+    /** @return the number of requests that failed because the pool was at capacity. */
+    public long getTimeouts() {
+      return mTimeouts;
+    }
+
+    /** @return the number of connections closed because they were idle. */
+    public long getIdleEvictions() {
+      return mIdleEvictions;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(PoolStats.class)
+          .add("hits", mHits)
+          .add("misses", mMisses)
+          .add("waits", mWaits)
+          .add("wait_time_ms", getTotalWaitTimeMillis())
+          .add("timeouts", mTimeouts)
+          .add("idle_evictions", mIdleEvictions)
+          .toString();
+    }
+  }
+
   /**
    * Constructs a new KijiTablePoolBuilder for the specified Kiji instance.
    *
@@ -237,8 +433,39 @@ public final class KijiTablePool implements Closeable {
     mMaxSize = builder.mMaxSize;
     mIdleTimeout = builder.mIdleTimeout;
     mIdlePollPeriod = builder.mIdlePollPeriod;
-    mPoolCache = new HashMap<String, Pool>();
+    mAcquireTimeout = builder.mAcquireTimeout;
+    mPoolCache = new ConcurrentHashMap<String, Pool>();
+    mMetrics = builder.mMetrics;
+    mMetricsPrefix = String.format("table_pool.%d.", POOL_COUNTER.getAndIncrement());
+    mGetTimer = mMetrics.getTimer(mMetricsPrefix + "get");
+    if (mMetrics.isEnabled()) {
+      registerGauges();
+    }
     mIsOpen = true;
+
+    if (builder.mPrewarmedTables.isEmpty() || (mMinSize <= 0)) {
+      mPrewarmExecutor = null;
+    } else {
+      mPrewarmExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("kiji-table-pool-prewarm-%d")
+          .setDaemon(true)
+          .build());
+      for (final String tableName : builder.mPrewarmedTables) {
+        final Pool pool = getPool(tableName);
+        mPrewarmExecutor.submit(new Runnable() {
+          /** {@inheritDoc} */
+          @Override
+          public void run() {
+            try {
+              pool.fillToMinSize();
+            } catch (IOException ioe) {
+              LOG.warn("Unable to pre-warm the pool for table {}: {}", tableName, ioe.toString());
+            }
+          }
+        });
+      }
+      mPrewarmExecutor.shutdown();
+    }
   }
 
   /**
@@ -263,32 +490,111 @@ public final class KijiTablePool implements Closeable {
    * @param name The name of the Kiji table.
    * @return An opened Kiji table.
    * @throws IOException If there is an error.
-   * @throws KijiTablePool.NoCapacityException If the table pool is at capacity.
+   * @throws KijiTablePool.NoCapacityException If the table pool is at capacity, and no connection
+   *     was released before the acquire timeout.
    */
-  public synchronized KijiTable get(String name) throws IOException {
-    // Starts a cleanup thread if necessary.
-    if (mIdleTimeout > 0L && null == mCleanupThread) {
-      LOG.debug("Starting cleanup thread for table pool.");
-      mCleanupThread = new IdleTimeoutThread();
-      mCleanupThread.start();
-    }
-
+  public KijiTable get(String name) throws IOException {
     LOG.debug("Retrieving a connection for {} from the table pool.", name);
     if (!mIsOpen) {
       throw new IllegalStateException("Table pool is closed.");
     }
 
-    if (!mPoolCache.containsKey(name)) {
-      mPoolCache.put(name, new Pool(name));
+    // Starts a cleanup thread if necessary.
+    if (mIdleTimeout > 0L) {
+      startCleanupThread();
     }
 
-    return mPoolCache.get(name).getTable();
+    final long startNanos = mGetTimer.start();
+    try {
+      return getPool(name).getTable();
+    } finally {
+      mGetTimer.stop(startNanos);
+    }
+  }
+
+  /** Registers the gauges reporting the statistics and utilization of this pool. */
+  private void registerGauges() {
+    mMetrics.registerGauge(mMetricsPrefix + "hits", newGauge(mHits));
+    mMetrics.registerGauge(mMetricsPrefix + "misses", newGauge(mMisses));
+    mMetrics.registerGauge(mMetricsPrefix + "waits", newGauge(mWaits));
+    mMetrics.registerGauge(mMetricsPrefix + "wait_time_ms", new MetricsRegistry.Gauge() {
+      /** {@inheritDoc} */
+      @Override
+      public long getValue() {
+        return TimeUnit.NANOSECONDS.toMillis(mWaitTimeNanos.get());
+      }
+    });
+    mMetrics.registerGauge(mMetricsPrefix + "timeouts", newGauge(mTimeouts));
+    mMetrics.registerGauge(mMetricsPrefix + "idle_evictions", newGauge(mIdleEvictions));
+    mMetrics.registerGauge(mMetricsPrefix + "connections", new MetricsRegistry.Gauge() {
+      /** {@inheritDoc} */
+      @Override
+      public long getValue() {
+        long connections = 0;
+        for (Pool pool : mPoolCache.values()) {
+          connections += pool.getPoolSize();
+        }
+        return connections;
+      }
+    });
+    mMetrics.registerGauge(mMetricsPrefix + "connections_in_use", new MetricsRegistry.Gauge() {
+      /** {@inheritDoc} */
+      @Override
+      public long getValue() {
+        long inUse = 0;
+        for (Pool pool : mPoolCache.values()) {
+          inUse += pool.getInUseCount();
+        }
+        return inUse;
+      }
+    });
+  }
+
+  /**
+   * Creates a gauge reporting the value of a statistic of this pool.
+   *
+   * @param statistic Statistic to report.
+   * @return a gauge reporting the value of the statistic.
+   */
+  private static MetricsRegistry.Gauge newGauge(final AtomicLong statistic) {
+    return new MetricsRegistry.Gauge() {
+      /** {@inheritDoc} */
+      @Override
+      public long getValue() {
+        return statistic.get();
+      }
+    };
+  }
+
+  /**
+   * Gets the pool of connections for a table, creating it if necessary.
+   *
+   * @param name The name of the Kiji table.
+   * @return the pool of connections for the table.
+   */
+  private Pool getPool(String name) {
+    final Pool pool = mPoolCache.get(name);
+    if (null != pool) {
+      return pool;
+    }
+    final Pool newPool = new Pool(name);
+    final Pool existing = mPoolCache.putIfAbsent(name, newPool);
+    return (null == existing) ? newPool : existing;
+  }
+
+  /** Starts the cleanup thread for idle connections, unless it is already running. */
+  private synchronized void startCleanupThread() {
+    if (null == mCleanupThread) {
+      LOG.debug("Starting cleanup thread for table pool.");
+      mCleanupThread = new IdleTimeoutThread();
+      mCleanupThread.start();
+    }
   }
 
   /**
    * Explicitly force a cleanup of table connections that have been idle too long.
    */
-  synchronized void cleanIdleConnections() {
+  void cleanIdleConnections() {
     if (mIdleTimeout > 0) {
       for (Pool pool: mPoolCache.values()) {
         pool.clean(mIdleTimeout);
@@ -296,6 +602,16 @@ public final class KijiTablePool implements Closeable {
     }
   }
 
+  /**
+   * Reports statistics about the usage of this pool, across all tables.
+   *
+   * @return a snapshot of the statistics of this pool.
+   */
+  public PoolStats getStats() {
+    return new PoolStats(mHits.get(), mMisses.get(), mWaits.get(), mWaitTimeNanos.get(),
+        mTimeouts.get(), mIdleEvictions.get());
+  }
+
   /**
    * Closes the tables in the pool.
    *
@@ -307,6 +623,10 @@ public final class KijiTablePool implements Closeable {
       LOG.warn("Called close() on a KijiTablePool that was already closed.");
       return;
     }
+    mIsOpen = false;
+    if (null != mPrewarmExecutor) {
+      mPrewarmExecutor.shutdownNow();
+    }
     if (null != mCleanupThread) {
       mCleanupThread.interrupt();
       try {
@@ -319,7 +639,9 @@ public final class KijiTablePool implements Closeable {
       ResourceUtils.closeOrLog(pool);
     }
     mPoolCache.clear();
-    mIsOpen = false;
+    for (String metric : METRIC_NAMES) {
+      mMetrics.remove(mMetricsPrefix + metric);
+    }
   }
 
   @Override
@@ -343,12 +665,17 @@ public final class KijiTablePool implements Closeable {
 
   /**
    * A pool of connections for a single table. Maintains a number of
-   * connections in use, and a queue of available ones for re-use.
+   * connections in use, and a deque of available ones for re-use.
+   *
+   * <p>
+   *   Available connections are reused most recently released first, so that connections in
+   *   excess of the load sink to the tail of the deque where they become idle and get evicted.
+   * </p>
    */
   private final class Pool implements Closeable {
-    private final Queue<Connection> mConnections;
+    private final BlockingDeque<Connection> mConnections;
     // The total pool size is the total number of tables in use and available connections.
-    private int mPoolSize;
+    private final AtomicInteger mPoolSize;
 
     // The name of the table for this pool.
     private final String mTableName;
@@ -358,39 +685,109 @@ public final class KijiTablePool implements Closeable {
      * @param tableName The name of the table that this pool is for.
      */
     private Pool(String tableName) {
-      mConnections = new ArrayDeque<Connection>();
-      mPoolSize = 0;
+      mConnections = new LinkedBlockingDeque<Connection>();
+      mPoolSize = new AtomicInteger(0);
       mTableName = tableName;
     }
 
+    /**
+     * Reserves room in the pool for a new connection.
+     *
+     * @param limit Maximum pool size after the reservation.
+     * @return whether room was reserved.
+     */
+    private boolean reserve(int limit) {
+      while (true) {
+        final int size = mPoolSize.get();
+        if (size >= limit) {
+          return false;
+        }
+        if (mPoolSize.compareAndSet(size, size + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * Opens a new connection in room previously reserved in the pool.
+     *
+     * @return the new connection.
+     * @throws IOException If there is an error opening the table.
+     */
+    private Connection open() throws IOException {
+      boolean opened = false;
+      try {
+        final Connection connection = new Connection(mTableFactory.openTable(mTableName), this);
+        opened = true;
+        return connection;
+      } finally {
+        if (!opened) {
+          mPoolSize.decrementAndGet();
+        }
+      }
+    }
+
+    /**
+     * Opens connections until the pool reaches the minimum pool size.
+     *
+     * @throws IOException If there is an error opening the table.
+     */
+    private void fillToMinSize() throws IOException {
+      while (mIsOpen && reserve(mMinSize)) {
+        LOG.debug("Below the min pool size for table {}. Adding to the pool.", mTableName);
+        final Connection connection = open();
+        // Connections available in the pool are not retained:
+        connection.mRetainCount.decrementAndGet();
+        mConnections.offerLast(connection);
+      }
+    }
+
     /**
      * Gets a table connection from the pool.
      *
      * @return The table connection.
      * @throws IOException If there is an error opening the table.
      * @throws KijiTablePool.NoCapacityException If there is no more room in the
-     *     pool to open a new connection.
+     *     pool to open a new connection, and no connection was released in time.
      */
-    public synchronized KijiTable getTable() throws IOException {
-      Connection availableConnection = mConnections.poll();
-      if (null == availableConnection) {
-        if (mPoolSize >= mMaxSize) {
-          throw new NoCapacityException("Reached max pool size for table " + mTableName + ". There"
-            + " are " + mPoolSize + " tables in the pool.");
+    public KijiTable getTable() throws IOException {
+      final long startNanos = System.nanoTime();
+      final long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(mAcquireTimeout);
+      Connection availableConnection = mConnections.pollFirst();
+      if ((null == availableConnection) && !reserve(mMaxSize)) {
+        if (mAcquireTimeout > 0) {
+          mWaits.incrementAndGet();
         }
+        try {
+          // Null if room was made in the pool while waiting:
+          availableConnection = waitForConnection(deadlineNanos);
+          while ((null == availableConnection) && !reserve(mMaxSize)) {
+            availableConnection = waitForConnection(deadlineNanos);
+          }
+        } finally {
+          if (mAcquireTimeout > 0) {
+            mWaitTimeNanos.addAndGet(System.nanoTime() - startNanos);
+          }
+        }
+      }
+      if (null == availableConnection) {
         LOG.debug("Cache miss for table {}", mTableName);
-        KijiTable tableConnection = new Connection(mTableFactory.openTable(mTableName), this);
-        mPoolSize++;
-        if (mPoolSize < mMinSize) {
-          LOG.debug("Below the min pool size for table {}. Adding to the pool.", mTableName);
-          while (mPoolSize < mMinSize) {
-            mConnections.add(new Connection(mTableFactory.openTable(mTableName), this));
-            mPoolSize++;
+        final Connection tableConnection = open();
+        mMisses.incrementAndGet();
+        boolean filled = false;
+        try {
+          fillToMinSize();
+          filled = true;
+        } finally {
+          if (!filled) {
+            ResourceUtils.releaseOrLog(tableConnection.mTable);
+            mPoolSize.decrementAndGet();
           }
         }
         return tableConnection;
       }
       LOG.debug("Cache hit for table {}", mTableName);
+      mHits.incrementAndGet();
       final int counter = availableConnection.mRetainCount.incrementAndGet();
       // TODO(SCHEMA-246): Instead of failing here, open a new connection and return it.
       Preconditions.checkState(counter == 1,
@@ -399,14 +796,47 @@ public final class KijiTablePool implements Closeable {
       return availableConnection;
     }
 
+    /**
+     * Waits for a connection to be released, when the pool is at capacity.
+     *
+     * @param deadlineNanos Time, in System.nanoTime() units, when the acquire timeout expires.
+     * @return a released connection, or null if room was made in the pool for a new connection.
+     * @throws KijiTablePool.NoCapacityException If the acquire timeout expired.
+     * @throws IOException If the wait is interrupted.
+     */
+    private Connection waitForConnection(long deadlineNanos) throws IOException {
+      try {
+        while (true) {
+          final long remainingNanos = deadlineNanos - System.nanoTime();
+          if (remainingNanos <= 0) {
+            mTimeouts.incrementAndGet();
+            throw new NoCapacityException("Reached max pool size for table " + mTableName
+                + ". There are " + mPoolSize.get() + " tables in the pool.");
+          }
+          final Connection connection = mConnections.pollFirst(
+              Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(CAPACITY_RECHECK_PERIOD)),
+              TimeUnit.NANOSECONDS);
+          if (null != connection) {
+            return connection;
+          }
+          if (mPoolSize.get() < mMaxSize) {
+            return null;
+          }
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for a connection to " + mTableName);
+      }
+    }
+
     /**
      * Returns a table back to the pool so it may be reused.  Private so that only a wrapped
      * table can be returned back to the queue.
      *
      * @param table The table to return back into the pool.
      */
-    private synchronized void returnConnection(Connection table) {
-      mConnections.add(table);
+    private void returnConnection(Connection table) {
+      mConnections.offerFirst(table);
     }
 
     /** @return the clock used by this KijiTablePool for updating KijiTable access times. */
@@ -421,16 +851,18 @@ public final class KijiTablePool implements Closeable {
      * @param idleTimeout Milliseconds idle required to be closed and
      *     removed from the pool.
      */
-    public synchronized void clean(long idleTimeout) {
-      long currentTime = mClock.getTime();
-      Iterator<Connection> iterator = mConnections.iterator();
-      while (iterator.hasNext() && mPoolSize > mMinSize) {
-        Connection connection = iterator.next();
-        if (currentTime - connection.getLastAccessTime() > idleTimeout) {
+    public void clean(long idleTimeout) {
+      final long currentTime = mClock.getTime();
+      final Iterator<Connection> iterator = mConnections.descendingIterator();
+      while (iterator.hasNext() && (mPoolSize.get() > mMinSize)) {
+        final Connection connection = iterator.next();
+        // The connection may have been checked out concurrently, in which case remove() fails:
+        if ((currentTime - connection.getLastAccessTime() > idleTimeout)
+            && mConnections.remove(connection)) {
           LOG.info("Closing idle KijiTable connection to {}.", connection.getName());
-          iterator.remove();
           ResourceUtils.releaseOrLog(connection.mTable);
-          mPoolSize--;
+          mPoolSize.decrementAndGet();
+          mIdleEvictions.incrementAndGet();
         }
       }
     }
@@ -440,15 +872,26 @@ public final class KijiTablePool implements Closeable {
      *
      * @return The size of the table pool.
      */
-    public synchronized int getPoolSize() {
-        return mPoolSize;
+    public int getPoolSize() {
+        return mPoolSize.get();
+    }
+
+    /**
+     * Gets the number of connections currently handed out by the pool.
+     *
+     * @return the number of connections in use.
+     */
+    public int getInUseCount() {
+      return Math.max(0, mPoolSize.get() - mConnections.size());
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void close() throws IOException {
-      while (!mConnections.isEmpty()) {
-        ResourceUtils.releaseOrLog(mConnections.remove().mTable);
+    public void close() throws IOException {
+      Connection connection = mConnections.pollFirst();
+      while (null != connection) {
+        ResourceUtils.releaseOrLog(connection.mTable);
+        connection = mConnections.pollFirst();
       }
     }
   }
@@ -462,7 +905,7 @@ public final class KijiTablePool implements Closeable {
    */
   private static class Connection implements KijiTable {
     private final KijiTable mTable;
-    private long mLastAccessTime;
+    private volatile long mLastAccessTime;
     private Pool mPool;
 
     /** Internal retention count for wrapped pool connections. */
@@ -596,9 +1039,7 @@ public final class KijiTablePool implements Closeable {
     @Override
     public void run() {
       while (true) {
-        for (Pool pool : mPoolCache.values()) {
-          pool.clean(mIdleTimeout);
-        }
+        cleanIdleConnections();
         try {
           sleep(mIdlePollPeriod);
         } catch (InterruptedException e) {
@@ -23,6 +23,8 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
 
+import com.google.common.base.Preconditions;
+
 import org.kiji.annotations.ApiAudience;
 import org.kiji.annotations.Inheritance;
 import org.kiji.schema.filter.KijiRowFilter;
@@ -139,6 +141,12 @@ public interface KijiTableReader extends Closeable {
      * Defaults to the default HBaseScanOptions if not set.
      */
     private HBaseScanOptions mHBaseScanOptions = new HBaseScanOptions();
+    /** Maximum number of rows prefetched ahead of the consumer, 0 to disable the pipeline. */
+    private int mPrefetchSize = 0;
+    /** Number of threads decoding rows in a pipelined scanner. */
+    private int mDecoderThreads = 1;
+    /** Whether a pipelined scanner delivers rows in the order of the table. */
+    private boolean mOrderedDelivery = true;
 
     /**
      * Creates KijiScannerOptions with uninitialized options
@@ -229,5 +237,85 @@ public interface KijiTableReader extends Closeable {
     public HBaseScanOptions getHBaseScanOptions() {
       return mHBaseScanOptions;
     }
+
+    /**
+     * Sets the number of rows a background thread may prefetch and decode ahead of the
+     * consumer of the scanner, and returns this KijiScannerOptions to allow chaining.
+     *
+     * <p>
+     *   The default, 0, disables the pipeline: rows are fetched and decoded on the thread
+     *   iterating over the scanner. A positive prefetch size enables a pipelined scanner where
+     *   one thread fetches the HBase results while a pool of decoder threads builds the rows.
+     * </p>
+     *
+     * @param prefetchSize Maximum number of rows fetched ahead of the consumer, or 0.
+     * @return This KijiScannerOptions with the prefetch size set.
+     */
+    public KijiScannerOptions setPrefetchSize(int prefetchSize) {
+      Preconditions.checkArgument(prefetchSize >= 0, "Invalid prefetch size: %s", prefetchSize);
+      mPrefetchSize = prefetchSize;
+      return this;
+    }
+
+    /**
+     * Gets the prefetch size set in these options.
+     *
+     * @return The maximum number of rows fetched ahead of the consumer; 0 if the scanner is not
+     *     pipelined.
+     */
+    public int getPrefetchSize() {
+      return mPrefetchSize;
+    }
+
+    /**
+     * Sets the number of threads decoding rows in a pipelined scanner,
+     * and returns this KijiScannerOptions to allow chaining.
+     *
+     * <p>Ignored unless a positive prefetch size is set. Defaults to 1.</p>
+     *
+     * @param decoderThreads Number of threads decoding rows.
+     * @return This KijiScannerOptions with the number of decoder threads set.
+     */
+    public KijiScannerOptions setDecoderThreads(int decoderThreads) {
+      Preconditions.checkArgument(decoderThreads > 0,
+          "Invalid number of decoder threads: %s", decoderThreads);
+      mDecoderThreads = decoderThreads;
+      return this;
+    }
+
+    /**
+     * Gets the number of decoder threads set in these options.
+     *
+     * @return The number of threads decoding rows in a pipelined scanner.
+     */
+    public int getDecoderThreads() {
+      return mDecoderThreads;
+    }
+
+    /**
+     * Sets whether a pipelined scanner delivers the rows in the order of the table,
+     * and returns this KijiScannerOptions to allow chaining.
+     *
+     * <p>
+     *   Defaults to true. Unordered delivery lets the consumer process a row as soon as it is
+     *   decoded, at the cost of the row key order.
+     * </p>
+     *
+     * @param ordered Whether rows are delivered in the order of the table.
+     * @return This KijiScannerOptions with the delivery order set.
+     */
+    public KijiScannerOptions setOrderedDelivery(boolean ordered) {
+      mOrderedDelivery = ordered;
+      return this;
+    }
+
+    /**
+     * Gets whether a pipelined scanner delivers the rows in the order of the table.
+     *
+     * @return Whether rows are delivered in the order of the table.
+     */
+    public boolean isOrderedDelivery() {
+      return mOrderedDelivery;
+    }
   }
 }
@@ -0,0 +1,62 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.annotations.Inheritance;
+
+/**
+ * Encodes and decodes a type of column filter into a compact binary form.
+ *
+ * <p>
+ *   Codecs registered with {@link ColumnFilterRegistry} let data requests carrying column
+ *   filters be serialized without Java serialization, for instance in job configurations.
+ * </p>
+ *
+ * @param <T> Type of the column filter encoded by this codec.
+ */
+@ApiAudience.Public
+@Inheritance.Extensible
+public interface ColumnFilterCodec<T extends KijiColumnFilter> {
+  /** @return the class of the column filters encoded by this codec. */
+  Class<T> getFilterClass();
+
+  /**
+   * Encodes the state of a column filter.
+   *
+   * @param filter Column filter to encode.
+   * @param out Output to write the state of the filter to.
+   * @throws IOException on I/O error.
+   */
+  void encode(T filter, DataOutput out) throws IOException;
+
+  /**
+   * Decodes a column filter.
+   *
+   * @param in Input to read the state of the filter from, as written by encode().
+   * @return the decoded column filter.
+   * @throws IOException on I/O error.
+   */
+  T decode(DataInput in) throws IOException;
+}
@@ -0,0 +1,237 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.SerializationUtils;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.avro.ColumnFilterDesc;
+
+/**
+ * Registry of the codecs encoding column filters into {@link ColumnFilterDesc} records.
+ *
+ * <p>
+ *   Built-in column filters are registered by default. Custom column filters may register a
+ *   {@link ColumnFilterCodec} under a unique type name; column filters without a registered codec
+ *   fall back to Java serialization.
+ * </p>
+ */
+@ApiAudience.Public
+public final class ColumnFilterRegistry {
+  /** Type name of column filters encoded with Java serialization. */
+  public static final String JAVA_SERIALIZED_TYPE = "java";
+
+  /** Codecs, by type name. Guarded by the class. */
+  private static final Map<String, ColumnFilterCodec<?>> CODECS_BY_TYPE = Maps.newHashMap();
+
+  /** Type names, by column filter class. Guarded by the class. */
+  private static final Map<Class<?>, String> TYPES_BY_CLASS = Maps.newHashMap();
+
+  static {
+    register("regex_qualifier", new RegexQualifierCodec());
+    register("pagination", new PaginationCodec());
+  }
+
+  /** Utility class may not be instantiated. */
+  private ColumnFilterRegistry() {
+  }
+
+  /**
+   * Registers a column filter codec.
+   *
+   * @param type Unique type name of the column filters encoded by the codec.
+   * @param codec Column filter codec to register.
+   */
+  public static synchronized void register(String type, ColumnFilterCodec<?> codec) {
+    Preconditions.checkArgument(!JAVA_SERIALIZED_TYPE.equals(type),
+        "Column filter type '%s' is reserved.", type);
+    final ColumnFilterCodec<?> existing = CODECS_BY_TYPE.get(type);
+    Preconditions.checkArgument((null == existing) || (existing == codec),
+        "Column filter type '%s' is already registered with codec %s.", type, existing);
+    final String existingType = TYPES_BY_CLASS.get(codec.getFilterClass());
+    Preconditions.checkArgument((null == existingType) || existingType.equals(type),
+        "Column filter class %s is already registered as type '%s'.",
+        codec.getFilterClass().getName(), existingType);
+    CODECS_BY_TYPE.put(type, codec);
+    TYPES_BY_CLASS.put(codec.getFilterClass(), type);
+  }
+
+  /**
+   * Encodes a column filter into an Avro record.
+   *
+   * @param filter Column filter to encode.
+   * @return the Avro record describing the column filter.
+   * @throws IOException on I/O error.
+   */
+  public static ColumnFilterDesc toAvro(KijiColumnFilter filter) throws IOException {
+    final String type;
+    final ColumnFilterCodec<KijiColumnFilter> codec;
+    synchronized (ColumnFilterRegistry.class) {
+      type = TYPES_BY_CLASS.get(filter.getClass());
+      codec = (null == type) ? null : getCodec(type);
+    }
+    if (null == codec) {
+      return ColumnFilterDesc.newBuilder()
+          .setType(JAVA_SERIALIZED_TYPE)
+          .setState(ByteBuffer.wrap(SerializationUtils.serialize(filter)))
+          .build();
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    codec.encode(filter, out);
+    out.flush();
+    return ColumnFilterDesc.newBuilder()
+        .setType(type)
+        .setState(ByteBuffer.wrap(bytes.toByteArray()))
+        .build();
+  }
+
+  /**
+   * Decodes a column filter from an Avro record.
+   *
+   * @param desc Avro record describing the column filter.
+   * @return the decoded column filter.
+   * @throws IOException on I/O error.
+   */
+  public static KijiColumnFilter fromAvro(ColumnFilterDesc desc) throws IOException {
+    final ByteBuffer state = desc.getState();
+    final byte[] bytes = new byte[state.remaining()];
+    state.duplicate().get(bytes);
+    if (JAVA_SERIALIZED_TYPE.equals(desc.getType())) {
+      return (KijiColumnFilter) SerializationUtils.deserialize(bytes);
+    }
+    final ColumnFilterCodec<KijiColumnFilter> codec;
+    synchronized (ColumnFilterRegistry.class) {
+      codec = getCodec(desc.getType());
+    }
+    if (null == codec) {
+      throw new IOException(String.format(
+          "No codec registered for column filter type '%s'.", desc.getType()));
+    }
+    return codec.decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * Writes a nested column filter, for codecs of column filters wrapping other column filters.
+   *
+   * @param filter Column filter to write, or null.
+   * @param out Output to write the column filter to.
+   * @throws IOException on I/O error.
+   */
+  public static void writeFilter(KijiColumnFilter filter, DataOutput out) throws IOException {
+    out.writeBoolean(null != filter);
+    if (null != filter) {
+      final ColumnFilterDesc desc = toAvro(filter);
+      out.writeUTF(desc.getType());
+      out.writeInt(desc.getState().remaining());
+      out.write(desc.getState().array());
+    }
+  }
+
+  /**
+   * Reads a nested column filter, as written by {@link #writeFilter(KijiColumnFilter,DataOutput)}.
+   *
+   * @param in Input to read the column filter from.
+   * @return the column filter read, or null.
+   * @throws IOException on I/O error.
+   */
+  public static KijiColumnFilter readFilter(DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    final String type = in.readUTF();
+    final byte[] state = new byte[in.readInt()];
+    in.readFully(state);
+    return fromAvro(ColumnFilterDesc.newBuilder()
+        .setType(type)
+        .setState(ByteBuffer.wrap(state))
+        .build());
+  }
+
+  /**
+   * Looks up the codec registered for a type of column filter.
+   *
+   * @param type Type name of the column filter.
+   * @return the codec registered for the type, or null.
+   */
+  @SuppressWarnings("unchecked")
+  private static ColumnFilterCodec<KijiColumnFilter> getCodec(String type) {
+    return (ColumnFilterCodec<KijiColumnFilter>) CODECS_BY_TYPE.get(type);
+  }
+
+  /** Codec for {@link RegexQualifierColumnFilter}. */
+  private static final class RegexQualifierCodec
+      implements ColumnFilterCodec<RegexQualifierColumnFilter> {
+    /** {@inheritDoc} */
+    @Override
+    public Class<RegexQualifierColumnFilter> getFilterClass() {
+      return RegexQualifierColumnFilter.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(RegexQualifierColumnFilter filter, DataOutput out) throws IOException {
+      out.writeUTF(filter.getRegularExpression());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RegexQualifierColumnFilter decode(DataInput in) throws IOException {
+      return new RegexQualifierColumnFilter(in.readUTF());
+    }
+  }
+
+  /** Codec for {@link KijiPaginationFilter}. */
+  private static final class PaginationCodec implements ColumnFilterCodec<KijiPaginationFilter> {
+    /** {@inheritDoc} */
+    @Override
+    public Class<KijiPaginationFilter> getFilterClass() {
+      return KijiPaginationFilter.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(KijiPaginationFilter filter, DataOutput out) throws IOException {
+      out.writeInt(filter.getLimit());
+      out.writeInt(filter.getOffset());
+      writeFilter(filter.getInputFilter(), out);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public KijiPaginationFilter decode(DataInput in) throws IOException {
+      final int limit = in.readInt();
+      final int offset = in.readInt();
+      return new KijiPaginationFilter(limit, offset, readFilter(in));
+    }
+  }
+}
@@ -21,6 +21,7 @@ package org.kiji.schema.filter;
 
 import java.io.IOException;
 
+import com.google.common.base.Objects;
 import org.apache.hadoop.hbase.filter.ColumnPaginationFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
@@ -69,6 +70,21 @@ public class KijiPaginationFilter extends KijiColumnFilter {
     mInputFilter = filter;
   }
 
+  /** @return the max number of versions to return. */
+  int getLimit() {
+    return mLimit;
+  }
+
+  /** @return how many versions back in history to begin looking. */
+  int getOffset() {
+    return mOffset;
+  }
+
+  /** @return the filter preceding the pagination filter, or null. */
+  KijiColumnFilter getInputFilter() {
+    return mInputFilter;
+  }
+
   @Override
   public Filter toHBaseFilter(KijiColumnName kijiColumnName, Context context) throws IOException {
     FilterList requestFilter = new FilterList(FilterList.Operator.MUST_PASS_ALL);
@@ -81,4 +97,21 @@ public class KijiPaginationFilter extends KijiColumnFilter {
     return requestFilter;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof KijiPaginationFilter)) {
+      return false;
+    }
+    final KijiPaginationFilter that = (KijiPaginationFilter) other;
+    return (mLimit == that.mLimit)
+        && (mOffset == that.mOffset)
+        && Objects.equal(mInputFilter, that.mInputFilter);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(mLimit, mOffset, mInputFilter);
+  }
 }
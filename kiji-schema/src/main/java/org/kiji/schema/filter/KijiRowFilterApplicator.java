@@ -51,8 +51,8 @@ public final class KijiRowFilterApplicator {
   /** The row filter to be applied by this applicator. */
   private final KijiRowFilter mRowFilter;
 
-  /** The layout of the table the row filter will be applied to. */
-  private final KijiTableLayout mTableLayout;
+  /** Column name translator for the layout of the table the row filter will be applied to. */
+  private final ColumnNameTranslator mColumnNameTranslator;
 
   /** Schema table. */
   private final KijiSchemaTable mSchemaTable;
@@ -104,12 +104,12 @@ public final class KijiRowFilterApplicator {
    *
    * @param rowFilter The row filter to be applied.
    * @param schemaTable The kiji schema table.
-   * @param tableLayout The layout of the table this filter applies to.
+   * @param translator Column name translator for the layout of the table this filter applies to.
    */
-  private KijiRowFilterApplicator(KijiRowFilter rowFilter, KijiTableLayout tableLayout,
+  private KijiRowFilterApplicator(KijiRowFilter rowFilter, ColumnNameTranslator translator,
       KijiSchemaTable schemaTable) {
     mRowFilter = rowFilter;
-    mTableLayout = tableLayout;
+    mColumnNameTranslator = translator;
     mSchemaTable = schemaTable;
   }
 
@@ -123,7 +123,22 @@ public final class KijiRowFilterApplicator {
    */
   public static KijiRowFilterApplicator create(KijiRowFilter rowFilter, KijiTableLayout tableLayout,
       KijiSchemaTable schemaTable) {
-    return new KijiRowFilterApplicator(rowFilter, tableLayout, schemaTable);
+    return new KijiRowFilterApplicator(
+        rowFilter, new ColumnNameTranslator(tableLayout), schemaTable);
+  }
+
+  /**
+   * Creates a new <code>KijiRowFilterApplicator</code> instance.
+   *
+   * @param rowFilter The row filter to be applied.
+   * @param translator Column name translator for the layout of the table this filter applies to,
+   *     usually shared by all the users of the table.
+   * @param schemaTable The kiji schema table.
+   * @return a new KijiRowFilterApplicator instance.
+   */
+  public static KijiRowFilterApplicator create(KijiRowFilter rowFilter,
+      ColumnNameTranslator translator, KijiSchemaTable schemaTable) {
+    return new KijiRowFilterApplicator(rowFilter, translator, schemaTable);
   }
 
   /**
@@ -139,14 +154,14 @@ public final class KijiRowFilterApplicator {
     // The filter might need to request data that isn't already requested by the scan, so add
     // it here if needed.
     try {
-      new HBaseDataRequestAdapter(mRowFilter.getDataRequest()).applyToScan(scan, mTableLayout);
+      new HBaseDataRequestAdapter(mRowFilter.getDataRequest())
+          .applyToScan(scan, mColumnNameTranslator);
     } catch (InvalidLayoutException e) {
       throw new InternalKijiError(e);
     }
 
     // Set the filter.
-    final KijiRowFilter.Context context =
-        new KijiRowFilterContext(new ColumnNameTranslator(mTableLayout));
+    final KijiRowFilter.Context context = new KijiRowFilterContext(mColumnNameTranslator);
     scan.setFilter(mRowFilter.toHBaseFilter(context));
   }
 }
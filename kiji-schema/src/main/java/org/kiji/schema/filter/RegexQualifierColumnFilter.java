@@ -22,6 +22,7 @@ package org.kiji.schema.filter;
 import java.io.IOException;
 import java.util.regex.Pattern;
 
+import com.google.common.base.Objects;
 import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.QualifierFilter;
@@ -55,6 +56,11 @@ public final class RegexQualifierColumnFilter extends KijiColumnFilter {
     mRegularExpression = regularExpression;
   }
 
+  /** @return the regular expression for qualifiers accepted by this filter. */
+  String getRegularExpression() {
+    return mRegularExpression;
+  }
+
   /** {@inheritDoc} */
   @Override
   public Filter toHBaseFilter(KijiColumnName kijiColumnName, Context context) throws IOException {
@@ -62,4 +68,27 @@ public final class RegexQualifierColumnFilter extends KijiColumnFilter {
     return new QualifierFilter(CompareFilter.CompareOp.EQUAL,
         new RegexStringComparator(columnName.getQualifierAsString() + mRegularExpression));
   }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof RegexQualifierColumnFilter)) {
+      return false;
+    }
+    return mRegularExpression.equals(((RegexQualifierColumnFilter) other).mRegularExpression);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int hashCode() {
+    return mRegularExpression.hashCode();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(RegexQualifierColumnFilter.class)
+        .add("regex", mRegularExpression)
+        .toString();
+  }
 }
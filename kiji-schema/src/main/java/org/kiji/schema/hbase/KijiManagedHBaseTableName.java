@@ -116,6 +116,9 @@ public final class KijiManagedHBaseTableName {
   /** The name component used for all user-space Kiji tables. */
   private static final String KIJI_TABLE_COMPONENT = "table";
 
+  /** The name component used for the stripes of the striped counters of Kiji tables. */
+  private static final String KIJI_COUNTER_STRIPES_COMPONENT = "stripes";
+
   /** The HBase table name. */
   private final String mHBaseTableName;
 
@@ -244,6 +247,20 @@ public final class KijiManagedHBaseTableName {
     return new KijiManagedHBaseTableName(kijiInstanceName, KIJI_TABLE_COMPONENT, kijiTableName);
   }
 
+  /**
+   * Gets a new instance of a Kiji-managed HBase table that holds the counter stripes of a
+   * user-space Kiji table.
+   *
+   * @param kijiInstanceName The name of the Kiji instance.
+   * @param kijiTableName The name of the user-space Kiji table.
+   * @return The name of the HBase table used to store the counter stripes of the Kiji table.
+   */
+  public static KijiManagedHBaseTableName getCounterStripesTableName(
+      String kijiInstanceName, String kijiTableName) {
+    return new KijiManagedHBaseTableName(
+        kijiInstanceName, KIJI_COUNTER_STRIPES_COMPONENT, kijiTableName);
+  }
+
   /**
    * Gets the name of the Kiji instance this named table belongs to.
    *
@@ -21,8 +21,11 @@ package org.kiji.schema.impl;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentMap;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import org.apache.avro.Schema;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
@@ -56,6 +59,47 @@ public abstract class AvroCellDecoder<T> implements KijiCellDecoder<T> {
   /** Reader Avro schema. */
   private final Schema mReaderSchema;
 
+  /**
+   * Cache of Avro datum readers, keyed by (writer schema, reader schema).
+   * Avro datum readers are thread-safe once constructed, so they can be shared.
+   */
+  private final ConcurrentMap<SchemaPair, DatumReader<T>> mDatumReaders = Maps.newConcurrentMap();
+
+  // -----------------------------------------------------------------------------------------------
+
+  /** Immutable (writer schema, reader schema) pair, used as a key in the datum reader cache. */
+  private static final class SchemaPair {
+    private final Schema mWriter;
+    private final Schema mReader;
+
+    /**
+     * Creates a new schema pair.
+     *
+     * @param writer Writer schema.
+     * @param reader Reader schema.
+     */
+    public SchemaPair(Schema writer, Schema reader) {
+      mWriter = writer;
+      mReader = reader;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof SchemaPair)) {
+        return false;
+      }
+      final SchemaPair other = (SchemaPair) object;
+      return mWriter.equals(other.mWriter) && mReader.equals(other.mReader);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(mWriter, mReader);
+    }
+  }
+
   // -----------------------------------------------------------------------------------------------
 
   /** Interface for schema decoders. */
@@ -186,6 +230,24 @@ public abstract class AvroCellDecoder<T> implements KijiCellDecoder<T> {
    */
   protected abstract DatumReader<T> createDatumReader(Schema writer, Schema reader);
 
+  /**
+   * Gets a datum reader for a writer/reader schema combination and caches it.
+   *
+   * @param writer Writer schema.
+   * @param reader Reader schema.
+   * @return a DatumReader for the specified writer/reader schema combination.
+   */
+  private DatumReader<T> getDatumReader(Schema writer, Schema reader) {
+    final SchemaPair key = new SchemaPair(writer, reader);
+    final DatumReader<T> existing = mDatumReaders.get(key);
+    if (null != existing) {
+      return existing;
+    }
+    final DatumReader<T> datumReader = createDatumReader(writer, reader);
+    final DatumReader<T> raced = mDatumReaders.putIfAbsent(key, datumReader);
+    return (null != raced) ? raced : datumReader;
+  }
+
   /** {@inheritDoc} */
   @Override
   public DecodedCell<T> decodeCell(byte[] encodedBytes) throws IOException {
@@ -250,7 +312,7 @@ public abstract class AvroCellDecoder<T> implements KijiCellDecoder<T> {
       Schema readerSchema,
       T reuse)
       throws IOException {
-    final DatumReader<T> reader = createDatumReader(writerSchema, readerSchema);
+    final DatumReader<T> reader = getDatumReader(writerSchema, readerSchema);
     return reader.read(reuse,
         DecoderFactory.get().binaryDecoder(
             encodedData.array(),
@@ -0,0 +1,203 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.SpecificCellDecoderFactory;
+import org.kiji.schema.avro.RowKeyFormat;
+import org.kiji.schema.avro.RowKeyFormat2;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.impl.CellSpec;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
+import org.kiji.schema.metrics.MetricsRegistry;
+
+/**
+ * A table layout, along with the objects derived from it and shared by all the opened handles
+ * of the table: entity ID factory, column name translator, cell specs, cell decoders and
+ * compiled data requests.
+ *
+ * <p>
+ *   Instances are created by {@link TableLayoutCache}, and identified by the timestamp of the
+ *   layout in the meta table. This class is thread-safe.
+ * </p>
+ */
+@ApiAudience.Private
+public final class CachedTableLayout {
+  /** The table layout. */
+  private final KijiTableLayout mLayout;
+
+  /** Timestamp of the layout in the meta table. */
+  private final long mTimestamp;
+
+  /** Schema table the cell specs are bound to. */
+  private final KijiSchemaTable mSchemaTable;
+
+  /** Factory for the entity IDs of the table. */
+  private final EntityIdFactory mEntityIdFactory;
+
+  /** Translates between Kiji and HBase column names. */
+  private final ColumnNameTranslator mColumnNameTranslator;
+
+  /** Provider for cell decoders. */
+  private final CellDecoderProvider mCellDecoderProvider;
+
+  /** Registry to record the cell encoding and decoding metrics into. */
+  private final MetricsRegistry mMetrics;
+
+  /**
+   * Cell specs bound to the schema table, keyed by column name.
+   * Map-type families are keyed by family name only, group-type columns by fully-qualified name.
+   */
+  private final ConcurrentMap<KijiColumnName, CellSpec> mCellSpecs = Maps.newConcurrentMap();
+
+  /** Data requests compiled against the layout. */
+  private final Cache<KijiDataRequest, CompiledDataRequest> mCompiledDataRequests;
+
+  /**
+   * Initializes a cached table layout.
+   *
+   * @param layout The table layout.
+   * @param timestamp Timestamp of the layout in the meta table.
+   * @param schemaTable Schema table to bind the cell specs to.
+   * @param dataRequestCacheSize Maximum number of compiled data requests to cache.
+   * @param metrics Registry to record the cell encoding and decoding metrics into.
+   */
+  CachedTableLayout(
+      KijiTableLayout layout,
+      long timestamp,
+      KijiSchemaTable schemaTable,
+      int dataRequestCacheSize,
+      MetricsRegistry metrics) {
+    mLayout = Preconditions.checkNotNull(layout);
+    mTimestamp = timestamp;
+    mSchemaTable = Preconditions.checkNotNull(schemaTable);
+    mMetrics = Preconditions.checkNotNull(metrics);
+    mColumnNameTranslator = new ColumnNameTranslator(mLayout);
+    mCellDecoderProvider = new CellDecoderProvider(
+        mLayout, mSchemaTable, SpecificCellDecoderFactory.get(), mMetrics);
+    mCompiledDataRequests = CacheBuilder.newBuilder()
+        .maximumSize(dataRequestCacheSize)
+        .build();
+
+    final Object keysFormat = mLayout.getDesc().getKeysFormat();
+    if (keysFormat instanceof RowKeyFormat) {
+      mEntityIdFactory = EntityIdFactory.getFactory((RowKeyFormat) keysFormat);
+    } else if (keysFormat instanceof RowKeyFormat2) {
+      mEntityIdFactory = EntityIdFactory.getFactory((RowKeyFormat2) keysFormat);
+    } else {
+      throw new RuntimeException("Invalid Row Key format found in Kiji Table");
+    }
+  }
+
+  /** @return the table layout. */
+  public KijiTableLayout getLayout() {
+    return mLayout;
+  }
+
+  /** @return the timestamp of the layout in the meta table. */
+  public long getTimestamp() {
+    return mTimestamp;
+  }
+
+  /** @return the registry to record the cell encoding and decoding metrics into. */
+  public MetricsRegistry getMetricsRegistry() {
+    return mMetrics;
+  }
+
+  /** @return the schema table the cell specs are bound to. */
+  public KijiSchemaTable getSchemaTable() {
+    return mSchemaTable;
+  }
+
+  /** @return the factory for the entity IDs of the table. */
+  public EntityIdFactory getEntityIdFactory() {
+    return mEntityIdFactory;
+  }
+
+  /** @return the column name translator for the layout. */
+  public ColumnNameTranslator getColumnNameTranslator() {
+    return mColumnNameTranslator;
+  }
+
+  /** @return the provider for cell decoders. */
+  public CellDecoderProvider getCellDecoderProvider() {
+    return mCellDecoderProvider;
+  }
+
+  /**
+   * Reports the cell spec of a column, bound to the schema table.
+   *
+   * <p> The returned cell spec is shared and must not be modified. </p>
+   *
+   * @param column Column name: family name for map-type families, fully-qualified name for
+   *     group-type columns.
+   * @return the cell spec of the column.
+   * @throws IOException on I/O error.
+   */
+  public CellSpec getCellSpec(KijiColumnName column) throws IOException {
+    final CellSpec existing = mCellSpecs.get(column);
+    if (null != existing) {
+      return existing;
+    }
+    final CellSpec cellSpec = mLayout.getCellSpec(column).setSchemaTable(mSchemaTable);
+    final CellSpec raced = mCellSpecs.putIfAbsent(column, cellSpec);
+    return (null != raced) ? raced : cellSpec;
+  }
+
+  /**
+   * Compiles a data request against the layout.
+   *
+   * <p>
+   *   Compiled requests are cached, keyed by data request. A cached compiled request is only
+   *   reused if it was compiled from a request with equal column filters: see
+   *   {@link CompiledDataRequest#isCompiledFrom(KijiDataRequest)}. Requests using column filters
+   *   that do not implement equals() are compiled again unless they share the filter instances
+   *   of the cached request.
+   * </p>
+   *
+   * @param dataRequest Data request to compile.
+   * @return the data request compiled against the layout.
+   * @throws IOException on I/O error.
+   * @throws org.kiji.schema.KijiDataRequestException if the data request is invalid.
+   */
+  public CompiledDataRequest getCompiledDataRequest(KijiDataRequest dataRequest)
+      throws IOException {
+    final CompiledDataRequest cached = mCompiledDataRequests.getIfPresent(dataRequest);
+    if ((null != cached) && cached.isCompiledFrom(dataRequest)) {
+      return cached;
+    }
+    final CompiledDataRequest compiled =
+        CompiledDataRequest.compile(dataRequest, mColumnNameTranslator);
+    mCompiledDataRequests.put(dataRequest, compiled);
+    return compiled;
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.KijiCellDecoder;
+import org.kiji.schema.KijiCellDecoderFactory;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
+import org.kiji.schema.layout.impl.CellSpec;
+import org.kiji.schema.metrics.MetricsRegistry;
+import org.kiji.schema.metrics.NoopMetricsRegistry;
+
+/**
+ * Provides cell decoders for the columns of a Kiji table.
+ *
+ * <p>
+ *   Cell decoders are created lazily, the first time a column is decoded, and are then reused
+ *   by all the row data objects built from the same table. All the qualifiers of a map-type
+ *   family share the decoder of the family.
+ * </p>
+ * <p>
+ *   A provider is bound to a single table layout and to a single decoder factory.
+ *   This class is thread-safe, as are the cell decoders it provides.
+ * </p>
+ */
+@ApiAudience.Private
+public final class CellDecoderProvider {
+  /** Layout of the table the decoders are for. */
+  private final KijiTableLayout mLayout;
+
+  /** Schema table used to decode schema hashes and IDs. */
+  private final KijiSchemaTable mSchemaTable;
+
+  /** Factory for cell decoders. */
+  private final KijiCellDecoderFactory mFactory;
+
+  /** Registry to record the cell decoding metrics into. */
+  private final MetricsRegistry mMetrics;
+
+  /**
+   * Cache of cell decoders, keyed by column name.
+   * Map-type families are keyed by family name only, group-type columns by fully-qualified name.
+   */
+  private final ConcurrentMap<KijiColumnName, KijiCellDecoder<?>> mDecoders =
+      Maps.newConcurrentMap();
+
+  /**
+   * Initializes a provider for cell decoders.
+   *
+   * @param layout Layout of the table to provide decoders for.
+   * @param schemaTable Schema table to resolve schema hashes or IDs.
+   * @param factory Factory for cell decoders.
+   */
+  public CellDecoderProvider(
+      KijiTableLayout layout,
+      KijiSchemaTable schemaTable,
+      KijiCellDecoderFactory factory) {
+    this(layout, schemaTable, factory, NoopMetricsRegistry.get());
+  }
+
+  /**
+   * Initializes a provider for cell decoders.
+   *
+   * @param layout Layout of the table to provide decoders for.
+   * @param schemaTable Schema table to resolve schema hashes or IDs.
+   * @param factory Factory for cell decoders.
+   * @param metrics Registry to record the cell decoding metrics into.
+   */
+  public CellDecoderProvider(
+      KijiTableLayout layout,
+      KijiSchemaTable schemaTable,
+      KijiCellDecoderFactory factory,
+      MetricsRegistry metrics) {
+    mLayout = Preconditions.checkNotNull(layout);
+    mSchemaTable = Preconditions.checkNotNull(schemaTable);
+    mFactory = Preconditions.checkNotNull(factory);
+    mMetrics = Preconditions.checkNotNull(metrics);
+  }
+
+  /** @return the table layout the cell decoders are configured for. */
+  public KijiTableLayout getLayout() {
+    return mLayout;
+  }
+
+  /** @return the factory used to create cell decoders. */
+  public KijiCellDecoderFactory getFactory() {
+    return mFactory;
+  }
+
+  /**
+   * Reports the cell decoder for the specified column.
+   *
+   * @param family Family of the column to decode.
+   * @param qualifier Qualifier of the column to decode.
+   * @return the cell decoder for the specified column.
+   * @throws IOException on I/O error.
+   *
+   * @param <T> Type of the values to decode.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> KijiCellDecoder<T> getDecoder(String family, String qualifier) throws IOException {
+    final FamilyLayout familyLayout = mLayout.getFamilyMap().get(family);
+    final KijiColumnName column = ((null != familyLayout) && familyLayout.isMapType())
+        ? new KijiColumnName(family)
+        : new KijiColumnName(family, qualifier);
+
+    final KijiCellDecoder<?> existing = mDecoders.get(column);
+    if (null != existing) {
+      return (KijiCellDecoder<T>) existing;
+    }
+
+    // Unknown columns are reported by the layout when building the cell spec:
+    final CellSpec cellSpec = mLayout.getCellSpec(column).setSchemaTable(mSchemaTable);
+    final KijiCellDecoder<T> decoder = TableMetrics.meter(
+        mFactory.<T>create(cellSpec), mMetrics, mLayout.getName(), column);
+    final KijiCellDecoder<?> raced = mDecoders.putIfAbsent(column, decoder);
+    return (null != raced) ? (KijiCellDecoder<T>) raced : decoder;
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.KijiCellEncoder;
+import org.kiji.schema.KijiCellEncoderFactory;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.NoSuchColumnException;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
+import org.kiji.schema.layout.impl.CellSpec;
+
+/**
+ * Provides cell encoders for the columns of a Kiji table.
+ *
+ * <p>
+ *   Cell encoders are created lazily, the first time a column is written to, and are then
+ *   reused for the lifetime of the provider. This avoids re-parsing the cell schema, resolving
+ *   the schema hash or ID and allocating new Avro datum writers on every put.
+ * </p>
+ * <p>
+ *   All the qualifiers of a map-type family share the encoder of the family.
+ *   A provider is bound to a single table layout: a table writer must use a new provider
+ *   if the layout of the table changes.
+ * </p>
+ * <p>
+ *   Cell encoders are not thread-safe, hence neither is this class.
+ *   Each table writer should own its provider.
+ * </p>
+ */
+@ApiAudience.Private
+public final class CellEncoderProvider {
+  /** Layout of the table the encoders are for. */
+  private final KijiTableLayout mLayout;
+
+  /** Schema table used to encode schema hashes and IDs. */
+  private final KijiSchemaTable mSchemaTable;
+
+  /** Factory for cell encoders. */
+  private final KijiCellEncoderFactory mFactory;
+
+  /** Cached layout providing shared cell specs, or null to create cell specs from the layout. */
+  private final CachedTableLayout mCachedLayout;
+
+  /**
+   * Cache of cell encoders, keyed by column name.
+   * Map-type families are keyed by family name only, group-type columns by fully-qualified name.
+   */
+  private final Map<KijiColumnName, KijiCellEncoder> mEncoders = Maps.newHashMap();
+
+  /**
+   * Initializes a provider for cell encoders.
+   *
+   * @param layout Layout of the table to provide encoders for.
+   * @param schemaTable Schema table to resolve schema hashes or IDs.
+   * @param factory Factory for cell encoders.
+   */
+  public CellEncoderProvider(
+      KijiTableLayout layout,
+      KijiSchemaTable schemaTable,
+      KijiCellEncoderFactory factory) {
+    mLayout = Preconditions.checkNotNull(layout);
+    mSchemaTable = Preconditions.checkNotNull(schemaTable);
+    mFactory = Preconditions.checkNotNull(factory);
+    mCachedLayout = null;
+  }
+
+  /**
+   * Initializes a provider for cell encoders, using the cell specs shared by a cached layout.
+   *
+   * @param cachedLayout Cached layout of the table to provide encoders for.
+   * @param factory Factory for cell encoders.
+   */
+  public CellEncoderProvider(CachedTableLayout cachedLayout, KijiCellEncoderFactory factory) {
+    mCachedLayout = Preconditions.checkNotNull(cachedLayout);
+    mLayout = cachedLayout.getLayout();
+    mSchemaTable = cachedLayout.getSchemaTable();
+    mFactory = Preconditions.checkNotNull(factory);
+  }
+
+  /** @return the table layout the cell encoders are configured for. */
+  public KijiTableLayout getLayout() {
+    return mLayout;
+  }
+
+  /**
+   * Reports the cell encoder for the specified column.
+   *
+   * @param family Family of the column to encode.
+   * @param qualifier Qualifier of the column to encode.
+   * @return the cell encoder for the specified column.
+   * @throws IOException on I/O error.
+   * @throws NoSuchColumnException if the column does not exist in the table layout.
+   */
+  public KijiCellEncoder getEncoder(String family, String qualifier) throws IOException {
+    final FamilyLayout familyLayout = mLayout.getFamilyMap().get(family);
+    if (null == familyLayout) {
+      throw new NoSuchColumnException(String.format("Family '%s' not found.", family));
+    }
+    final KijiColumnName column = familyLayout.isMapType()
+        ? new KijiColumnName(family)
+        : new KijiColumnName(family, qualifier);
+
+    final KijiCellEncoder existing = mEncoders.get(column);
+    if (null != existing) {
+      return existing;
+    }
+
+    final CellSpec cellSpec = (null != mCachedLayout)
+        ? mCachedLayout.getCellSpec(column)
+        : mLayout.getCellSpec(column).setSchemaTable(mSchemaTable);
+    final KijiCellEncoder encoder = (null != mCachedLayout)
+        ? TableMetrics.meter(mFactory.create(cellSpec),
+            mCachedLayout.getMetricsRegistry(), mLayout.getName(), column)
+        : mFactory.create(cellSpec);
+    mEncoders.put(column, encoder);
+    return encoder;
+  }
+}
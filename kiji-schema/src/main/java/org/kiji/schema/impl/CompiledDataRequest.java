@@ -0,0 +1,246 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableSet;
+
+import com.google.common.base.Objects;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.TimeRange;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.HBaseEntityId;
+import org.kiji.schema.InternalKijiError;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestValidator;
+import org.kiji.schema.hbase.HBaseScanOptions;
+import org.kiji.schema.layout.InvalidLayoutException;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
+
+/**
+ * A KijiDataRequest validated against a table layout and translated into an HBase Get template.
+ *
+ * <p>
+ *   Compiling a data request (validating the request, translating the Kiji column names and
+ *   building the HBase filters) is done once. Gets and Scans for specific rows are then cheap
+ *   copies of the template. The HBase filter of the template is shared by all the Gets and Scans
+ *   built from it: HBase filters are not modified by the client.
+ * </p>
+ * <p>Compiled data requests are immutable.</p>
+ */
+@ApiAudience.Private
+public final class CompiledDataRequest {
+  /** Row key of the template Get. */
+  private static final byte[] EMPTY_ROW_KEY = new byte[0];
+
+  /** The compiled data request. */
+  private final KijiDataRequest mDataRequest;
+
+  /** The layout the data request has been compiled against. */
+  private final KijiTableLayout mLayout;
+
+  /** Column name translator for the layout. */
+  private final ColumnNameTranslator mColumnNameTranslator;
+
+  /** HBase Get template for the data request, or null if no data is requested. */
+  private final Get mTemplate;
+
+  /** Striped counters requested, or null if the request includes no striped counter. */
+  private final CounterStripes mCounterStripes;
+
+  /**
+   * Initializes a compiled data request.
+   *
+   * @param dataRequest The compiled data request.
+   * @param translator Column name translator for the layout the data request has been compiled
+   *     against.
+   * @param template HBase Get template, or null if no data is requested.
+   * @param counterStripes Striped counters requested, or null.
+   */
+  private CompiledDataRequest(
+      KijiDataRequest dataRequest,
+      ColumnNameTranslator translator,
+      Get template,
+      CounterStripes counterStripes) {
+    mDataRequest = dataRequest;
+    mLayout = translator.getTableLayout();
+    mColumnNameTranslator = translator;
+    mTemplate = template;
+    mCounterStripes = counterStripes;
+  }
+
+  /**
+   * Compiles a data request against a table layout.
+   *
+   * @param dataRequest Data request to compile.
+   * @param layout Layout of the table to compile the data request against.
+   * @return the compiled data request.
+   * @throws IOException on I/O error.
+   * @throws org.kiji.schema.KijiDataRequestException if the data request is invalid.
+   */
+  public static CompiledDataRequest compile(KijiDataRequest dataRequest, KijiTableLayout layout)
+      throws IOException {
+    return compile(dataRequest, new ColumnNameTranslator(layout));
+  }
+
+  /**
+   * Compiles a data request against a table layout.
+   *
+   * @param dataRequest Data request to compile.
+   * @param translator Column name translator for the layout of the table to compile the data
+   *     request against, usually shared by all the users of the table.
+   * @return the compiled data request.
+   * @throws IOException on I/O error.
+   * @throws org.kiji.schema.KijiDataRequestException if the data request is invalid.
+   */
+  public static CompiledDataRequest compile(
+      KijiDataRequest dataRequest, ColumnNameTranslator translator)
+      throws IOException {
+    final KijiTableLayout layout = translator.getTableLayout();
+    // Make sure the request validates against the layout of the table.
+    KijiDataRequestValidator.validatorForLayout(layout).validate(dataRequest);
+
+    final HBaseDataRequestAdapter adapter = new HBaseDataRequestAdapter(dataRequest);
+    try {
+      final Get template =
+          adapter.toGet(HBaseEntityId.fromHBaseRowKey(EMPTY_ROW_KEY), translator);
+      return new CompiledDataRequest(dataRequest, translator, template,
+          (null == template) ? null : CounterStripes.forRequest(dataRequest, translator));
+    } catch (InvalidLayoutException e) {
+      // The table layout should never be invalid at this point, since we got it from a valid
+      // opened table.  If it is, there's something seriously wrong.
+      throw new InternalKijiError(e);
+    }
+  }
+
+  /** @return the data request this was compiled from. */
+  public KijiDataRequest getDataRequest() {
+    return mDataRequest;
+  }
+
+  /** @return the layout the data request was compiled against. */
+  public KijiTableLayout getLayout() {
+    return mLayout;
+  }
+
+  /** @return the column name translator for the layout the data request was compiled against. */
+  public ColumnNameTranslator getColumnNameTranslator() {
+    return mColumnNameTranslator;
+  }
+
+  /**
+   * Returns the striped counters requested, whose stripes must be folded into the rows read.
+   *
+   * @return the striped counters requested, or null if the request includes no striped counter.
+   */
+  public CounterStripes getCounterStripes() {
+    return mCounterStripes;
+  }
+
+  /**
+   * Reports whether this compiled request may be used in place of compiling a data request.
+   *
+   * <p>
+   *   KijiDataRequest.equals() ignores column filters: in addition to being equal, both requests
+   *   must have equal filters for each column. Filters are compared with equals(): requests
+   *   using filters that do not implement equals() only match when they share the same filter
+   *   instances, and otherwise always miss the cache of compiled requests.
+   * </p>
+   *
+   * @param dataRequest Data request to compare against.
+   * @return whether this compiled request was compiled from an equivalent data request.
+   */
+  public boolean isCompiledFrom(KijiDataRequest dataRequest) {
+    if (mDataRequest == dataRequest) {
+      return true;
+    }
+    if (!mDataRequest.equals(dataRequest)) {
+      return false;
+    }
+    for (KijiDataRequest.Column column : mDataRequest.getColumns()) {
+      final KijiDataRequest.Column other =
+          dataRequest.getColumn(column.getFamily(), column.getQualifier());
+      if ((null == other) || !Objects.equal(column.getFilter(), other.getFilter())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Builds an HBase Get for the data requested from a given row.
+   *
+   * @param entityId Entity ID of the row to get.
+   * @return an HBase Get for the given row, or null if no data is requested.
+   * @throws IOException on I/O error.
+   */
+  public Get toGet(EntityId entityId) throws IOException {
+    if (null == mTemplate) {
+      return null;
+    }
+    final Get get = new Get(entityId.getHBaseRowKey());
+    for (Map.Entry<byte[], NavigableSet<byte[]>> entry : mTemplate.getFamilyMap().entrySet()) {
+      final byte[] family = entry.getKey();
+      if (null == entry.getValue()) {
+        get.addFamily(family);
+      } else {
+        for (byte[] qualifier : entry.getValue()) {
+          get.addColumn(family, qualifier);
+        }
+      }
+    }
+    get.setFilter(mTemplate.getFilter());
+    final TimeRange timeRange = mTemplate.getTimeRange();
+    get.setTimeRange(timeRange.getMin(), timeRange.getMax());
+    get.setMaxVersions(mTemplate.getMaxVersions());
+    get.setCacheBlocks(mTemplate.getCacheBlocks());
+    return get;
+  }
+
+  /**
+   * Builds an HBase Scan for the data requested.
+   *
+   * @param scanOptions Custom options for the scan.
+   * @return an HBase Scan for the data requested, or null if no data is requested.
+   * @throws IOException on I/O error.
+   */
+  public Scan toScan(HBaseScanOptions scanOptions) throws IOException {
+    if (null == mTemplate) {
+      return null;
+    }
+    final Scan scan = new Scan(mTemplate);
+    HBaseDataRequestAdapter.configureScan(scan, scanOptions);
+    return scan;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(CompiledDataRequest.class)
+        .add("data_request", mDataRequest)
+        .add("table", mLayout.getName())
+        .toString();
+  }
+}
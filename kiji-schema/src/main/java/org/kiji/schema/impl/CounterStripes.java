@@ -0,0 +1,785 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiIOException;
+import org.kiji.schema.hbase.HBaseColumnName;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.ColumnLayout;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
+import org.kiji.schema.util.ResourceUtils;
+
+/**
+ * Physical layout of the striped counters of a Kiji table.
+ *
+ * <p>
+ *   A counter with N stripes is stored as N cells living in distinct HBase rows, so that
+ *   concurrent increments of a hot counter neither contend on the same row lock nor hit the same
+ *   region. Stripe 0 is the cell of the counter in its row of the Kiji table. Stripe i &gt; 0 is
+ *   the cell with the same HBase column in the row "i:row key" of the stripes table, an HBase
+ *   table created alongside the Kiji table. Row keys of the stripes table are salted with the
+ *   stripe index, and the stripes table is pre-split so that each stripe has its own region.
+ * </p>
+ * <p>
+ *   Increments go to a single stripe, and report the value of the counter by reading the other
+ *   stripes back. Puts overwrite stripe 0 and clear the other stripes. Readers fold the stripes
+ *   back into a single cell holding the sum of the most recent value of each stripe, with the
+ *   most recent timestamp of the stripes. Scans read the stripes table alongside the Kiji table,
+ *   so that rows whose counters only live in the stripes table are scanned too. Deletes apply to
+ *   all the stripes.
+ * </p>
+ * <p>
+ *   Instances of this class describe the striped counters requested by a data request, and are
+ *   immutable. They are obtained from {@link CompiledDataRequest#getCounterStripes()}.
+ * </p>
+ */
+@ApiAudience.Private
+public final class CounterStripes {
+  /** Cells of a row missing from the Kiji table. */
+  private static final Result EMPTY_RESULT = new Result(new KeyValue[0]);
+
+  /** Striped counters requested, with their number of stripes. */
+  private final List<StripedCounter> mCounters;
+
+  /** Maximum number of stripes of the requested counters. */
+  private final int mMaxStripes;
+
+  /** Minimum timestamp of the cells requested, inclusive. */
+  private final long mMinTimestamp;
+
+  /** Maximum timestamp of the cells requested, exclusive. */
+  private final long mMaxTimestamp;
+
+  /** A striped counter requested by a data request. */
+  private static final class StripedCounter {
+    /** HBase column of the counter, in the Kiji table and in the stripes table. */
+    private final HBaseColumnName mColumn;
+
+    /** Number of stripes of the counter. */
+    private final int mStripes;
+
+    /**
+     * Initializes a striped counter.
+     *
+     * @param column HBase column of the counter.
+     * @param stripes Number of stripes of the counter.
+     */
+    private StripedCounter(HBaseColumnName column, int stripes) {
+      mColumn = column;
+      mStripes = stripes;
+    }
+
+    /**
+     * Reports whether a KeyValue belongs to this counter.
+     *
+     * @param kv KeyValue to test.
+     * @return whether the KeyValue is a cell of this counter.
+     */
+    private boolean matches(KeyValue kv) {
+      return kv.matchingColumn(mColumn.getFamily(), mColumn.getQualifier());
+    }
+  }
+
+  /**
+   * Initializes the striped counters of a data request.
+   *
+   * @param counters Striped counters requested.
+   * @param dataRequest Data request.
+   */
+  private CounterStripes(List<StripedCounter> counters, KijiDataRequest dataRequest) {
+    mCounters = counters;
+    int maxStripes = 1;
+    for (StripedCounter counter : counters) {
+      maxStripes = Math.max(maxStripes, counter.mStripes);
+    }
+    mMaxStripes = maxStripes;
+    mMinTimestamp = dataRequest.getMinTimestamp();
+    mMaxTimestamp = dataRequest.getMaxTimestamp();
+  }
+
+  /**
+   * Lists the striped counters requested by a data request.
+   *
+   * @param dataRequest Data request, validated against the table layout.
+   * @param translator Column name translator for the layout of the table.
+   * @return the striped counters requested, or null if the request includes no striped counter.
+   * @throws IOException on I/O error.
+   */
+  public static CounterStripes forRequest(
+      KijiDataRequest dataRequest, ColumnNameTranslator translator)
+      throws IOException {
+    final KijiTableLayout layout = translator.getTableLayout();
+    if (getStripes(layout) == 1) {
+      return null;
+    }
+    final List<StripedCounter> counters = Lists.newArrayList();
+    for (KijiDataRequest.Column column : dataRequest.getColumns()) {
+      final FamilyLayout family = layout.getFamilyMap().get(column.getFamily());
+      if ((null == family) || !family.isGroupType()) {
+        continue;
+      }
+      final Iterable<ColumnLayout> columns = (null == column.getQualifier())
+          ? family.getColumns()
+          : Collections.singletonList(family.getColumnMap().get(column.getQualifier()));
+      for (ColumnLayout columnLayout : columns) {
+        final int stripes = (null == columnLayout)
+            ? 1
+            : KijiTableLayout.getCounterStripes(columnLayout.getDesc().getColumnSchema());
+        if (stripes > 1) {
+          counters.add(new StripedCounter(translator.toHBaseColumnName(
+              new KijiColumnName(family.getName(), columnLayout.getName())), stripes));
+        }
+      }
+    }
+    return counters.isEmpty() ? null : new CounterStripes(counters, dataRequest);
+  }
+
+  /**
+   * Reads the stripes of the requested counters for one row, and folds them into the row.
+   *
+   * @param table Kiji table to read from.
+   * @param entityId Entity ID of the row.
+   * @param row Cells read from the row of the Kiji table.
+   * @return the cells of the row, with the striped counters folded into a single cell each.
+   * @throws IOException on I/O error.
+   */
+  public Result read(HBaseKijiTable table, EntityId entityId, Result row) throws IOException {
+    return read(table, Collections.singletonList(entityId), new Result[] {row})[0];
+  }
+
+  /**
+   * Reads the stripes of the requested counters for several rows, and folds them into the rows.
+   *
+   * <p>The stripes of all the rows are read with a single batch of HBase Gets.</p>
+   *
+   * @param table Kiji table to read from.
+   * @param entityIds Entity IDs of the rows.
+   * @param rows Cells read from the rows of the Kiji table, in the order of the entity IDs.
+   *     A null entry denotes a row that could not be read, and is left untouched.
+   * @return the cells of the rows, with the striped counters folded into a single cell each.
+   * @throws IOException on I/O error.
+   */
+  public Result[] read(HBaseKijiTable table, List<EntityId> entityIds, Result[] rows)
+      throws IOException {
+    Preconditions.checkArgument(entityIds.size() == rows.length);
+    final int nstripes = mMaxStripes - 1;
+    final List<Get> gets = new ArrayList<Get>(rows.length * nstripes);
+    for (int i = 0; i < rows.length; ++i) {
+      if (null != rows[i]) {
+        for (int stripe = 1; stripe < mMaxStripes; ++stripe) {
+          gets.add(toGet(stripe, entityIds.get(i).getHBaseRowKey()));
+        }
+      }
+    }
+    final Result[] stripes;
+    final HTableInterface htable = table.acquireStripesHTable();
+    try {
+      stripes = htable.get(gets);
+    } finally {
+      table.releaseStripesHTable(htable);
+    }
+
+    final Result[] folded = new Result[rows.length];
+    int offset = 0;
+    for (int i = 0; i < rows.length; ++i) {
+      if (null != rows[i]) {
+        folded[i] = fold(entityIds.get(i).getHBaseRowKey(), rows[i], stripes, offset);
+        offset += nstripes;
+      }
+    }
+    return folded;
+  }
+
+  /**
+   * Merges a scan of a Kiji table with scans of the stripes of the requested counters.
+   *
+   * <p>
+   *   Each stripe is read with its own scan of the stripes table, over the same range of row
+   *   keys as the scan of the Kiji table. The scans are merged by row key, and the stripes are
+   *   folded into the rows without any further RPC. Rows whose striped counters were only
+   *   incremented on stripes other than 0 exist in the stripes table only: they are included
+   *   unless the scan of the Kiji table is restricted by a row filter, which cannot be evaluated
+   *   against the stripes.
+   * </p>
+   *
+   * @param table Kiji table being scanned.
+   * @param scan Scan of the Kiji table.
+   * @param scanner Scanner opened on the Kiji table with the scan. The scanner returned takes
+   *     ownership of this scanner, which is closed if the stripes cannot be scanned.
+   * @param includeStripeOnlyRows Whether to include the rows that only exist in the stripes
+   *     table. Must be false if the scan includes a row filter.
+   * @return a scanner over the rows of the Kiji table, with the striped counters folded into a
+   *     single cell each.
+   * @throws IOException on I/O error.
+   */
+  public ResultScanner mergeStripes(
+      HBaseKijiTable table, Scan scan, ResultScanner scanner, boolean includeStripeOnlyRows)
+      throws IOException {
+    final ResultScanner[] stripeScanners = new ResultScanner[mMaxStripes - 1];
+    boolean success = false;
+    final HTableInterface htable = table.acquireStripesHTable();
+    try {
+      for (int stripe = 1; stripe < mMaxStripes; ++stripe) {
+        stripeScanners[stripe - 1] = htable.getScanner(toScan(stripe, scan));
+      }
+      success = true;
+    } finally {
+      table.releaseStripesHTable(htable);
+      if (!success) {
+        for (ResultScanner stripeScanner : stripeScanners) {
+          ResourceUtils.closeOrLog(stripeScanner);
+        }
+        ResourceUtils.closeOrLog(scanner);
+      }
+    }
+    return new StripedScanner(scanner, stripeScanners, includeStripeOnlyRows);
+  }
+
+  /**
+   * Builds the HBase Scan for one stripe of the requested counters.
+   *
+   * @param stripe Index of the stripe, strictly positive.
+   * @param scan Scan of the Kiji table.
+   * @return the HBase Scan of the stripe, over the same rows as the scan of the Kiji table.
+   * @throws IOException on I/O error.
+   */
+  private Scan toScan(int stripe, Scan scan) throws IOException {
+    // A stop row of the Kiji table scan left empty means the end of the table:
+    final byte[] stopRow = (scan.getStopRow().length == 0)
+        ? Bytes.toBytes((short) (stripe + 1))
+        : toStripeRowKey(stripe, scan.getStopRow());
+    final Scan stripeScan = new Scan(toStripeRowKey(stripe, scan.getStartRow()), stopRow);
+    for (StripedCounter counter : mCounters) {
+      if (stripe < counter.mStripes) {
+        stripeScan.addColumn(counter.mColumn.getFamily(), counter.mColumn.getQualifier());
+      }
+    }
+    stripeScan.setTimeRange(mMinTimestamp, mMaxTimestamp);
+    stripeScan.setCaching(scan.getCaching());
+    stripeScan.setCacheBlocks(scan.getCacheBlocks());
+    return stripeScan;
+  }
+
+  /** Scanner merging the rows of a Kiji table with the stripes of the requested counters. */
+  private final class StripedScanner implements ResultScanner {
+    /** Scanner over the rows of the Kiji table. */
+    private final ResultScanner mScanner;
+
+    /** Scanners over the stripes, indexed by stripe - 1. */
+    private final ResultScanner[] mStripeScanners;
+
+    /** Whether to include the rows that only exist in the stripes table. */
+    private final boolean mIncludeStripeOnlyRows;
+
+    /** Next row of the Kiji table, or null if the scanner is exhausted. */
+    private Result mRow;
+
+    /** Next row of each stripe, or null if the stripe scanner is exhausted. */
+    private final Result[] mStripes;
+
+    /** Row keys in the Kiji table of the next row of each stripe, or null. */
+    private final byte[][] mStripeKeys;
+
+    /** Whether the first rows were fetched. */
+    private boolean mStarted = false;
+
+    /**
+     * Initializes a scanner merging the rows of a Kiji table with the stripes of its counters.
+     *
+     * @param scanner Scanner over the rows of the Kiji table.
+     * @param stripeScanners Scanners over the stripes, indexed by stripe - 1.
+     * @param includeStripeOnlyRows Whether to include the rows only found in the stripes table.
+     */
+    private StripedScanner(
+        ResultScanner scanner, ResultScanner[] stripeScanners, boolean includeStripeOnlyRows) {
+      mScanner = scanner;
+      mStripeScanners = stripeScanners;
+      mIncludeStripeOnlyRows = includeStripeOnlyRows;
+      mStripes = new Result[stripeScanners.length];
+      mStripeKeys = new byte[stripeScanners.length][];
+    }
+
+    /**
+     * Fetches the next row of a stripe.
+     *
+     * @param index Index of the stripe scanner.
+     * @throws IOException on I/O error.
+     */
+    private void advanceStripe(int index) throws IOException {
+      final Result stripe = mStripeScanners[index].next();
+      mStripes[index] = stripe;
+      mStripeKeys[index] = (null == stripe)
+          ? null
+          : Bytes.tail(stripe.getRow(), stripe.getRow().length - Bytes.SIZEOF_SHORT);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Result next() throws IOException {
+      if (!mStarted) {
+        mRow = mScanner.next();
+        for (int index = 0; index < mStripeScanners.length; ++index) {
+          advanceStripe(index);
+        }
+        mStarted = true;
+      }
+
+      // The next row key is the smallest row key of the Kiji table and of the stripes:
+      byte[] rowKey = (null == mRow) ? null : mRow.getRow();
+      if (mIncludeStripeOnlyRows) {
+        for (byte[] stripeKey : mStripeKeys) {
+          if ((null != stripeKey) && ((null == rowKey) || Bytes.compareTo(stripeKey, rowKey) < 0)) {
+            rowKey = stripeKey;
+          }
+        }
+      } else if (null != rowKey) {
+        // Skip the stripes of the rows filtered out of the Kiji table:
+        for (int index = 0; index < mStripeScanners.length; ++index) {
+          while ((null != mStripeKeys[index])
+              && (Bytes.compareTo(mStripeKeys[index], rowKey) < 0)) {
+            advanceStripe(index);
+          }
+        }
+      }
+      if (null == rowKey) {
+        return null;
+      }
+
+      Result row = EMPTY_RESULT;
+      if ((null != mRow) && Bytes.equals(rowKey, mRow.getRow())) {
+        row = mRow;
+        mRow = mScanner.next();
+      }
+      final Result[] stripes = new Result[mStripeScanners.length];
+      for (int index = 0; index < mStripeScanners.length; ++index) {
+        if ((null != mStripeKeys[index]) && Bytes.equals(rowKey, mStripeKeys[index])) {
+          stripes[index] = mStripes[index];
+          advanceStripe(index);
+        }
+      }
+      return fold(rowKey, row, stripes, 0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+      final List<Result> results = Lists.newArrayListWithCapacity(nbRows);
+      while (results.size() < nbRows) {
+        final Result result = next();
+        if (null == result) {
+          break;
+        }
+        results.add(result);
+      }
+      return results.toArray(new Result[results.size()]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+      ResourceUtils.closeOrLog(mScanner);
+      for (ResultScanner stripeScanner : mStripeScanners) {
+        ResourceUtils.closeOrLog(stripeScanner);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Iterator<Result> iterator() {
+      return new Iterator<Result>() {
+        /** Next result, fetched by hasNext() but not consumed yet, or null. */
+        private Result mNext = null;
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() {
+          if (null == mNext) {
+            try {
+              mNext = StripedScanner.this.next();
+            } catch (IOException ioe) {
+              throw new KijiIOException(ioe);
+            }
+          }
+          return null != mNext;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Result next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          final Result result = mNext;
+          mNext = null;
+          return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+  /**
+   * Builds the HBase Get for one stripe of the requested counters of a row.
+   *
+   * @param stripe Index of the stripe, strictly positive.
+   * @param rowKey HBase row key of the row in the Kiji table.
+   * @return the HBase Get for the stripe, to send to the stripes table.
+   * @throws IOException on I/O error.
+   */
+  private Get toGet(int stripe, byte[] rowKey) throws IOException {
+    final Get get = new Get(toStripeRowKey(stripe, rowKey));
+    for (StripedCounter counter : mCounters) {
+      if (stripe < counter.mStripes) {
+        get.addColumn(counter.mColumn.getFamily(), counter.mColumn.getQualifier());
+      }
+    }
+    get.setTimeRange(mMinTimestamp, mMaxTimestamp);
+    return get;
+  }
+
+  /**
+   * Folds the stripes of the requested counters into the cells of a row.
+   *
+   * @param rowKey HBase row key of the row.
+   * @param row Cells read from the row of the Kiji table.
+   * @param stripes Cells read from the stripes table.
+   * @param offset Position of the first stripe of the row, in the stripes read.
+   * @return the cells of the row, with the striped counters folded into a single cell each.
+   */
+  private Result fold(byte[] rowKey, Result row, Result[] stripes, int offset) {
+    final int ncounters = mCounters.size();
+    final long[] sums = new long[ncounters];
+    final long[] timestamps = new long[ncounters];
+    final boolean[] found = new boolean[ncounters];
+
+    // Keep the cells that are not striped counters, and the most recent cell of each counter:
+    final List<KeyValue> kvs = Lists.newArrayList();
+    if (!row.isEmpty()) {
+      for (KeyValue kv : row.raw()) {
+        final int index = indexOf(kv);
+        if (index < 0) {
+          kvs.add(kv);
+        } else if (!found[index]) {
+          add(kv, index, sums, timestamps, found);
+        }
+      }
+    }
+    for (int stripe = 1; stripe < mMaxStripes; ++stripe) {
+      final Result result = stripes[offset + stripe - 1];
+      if ((null != result) && !result.isEmpty()) {
+        for (KeyValue kv : result.raw()) {
+          final int index = indexOf(kv);
+          if (index >= 0) {
+            add(kv, index, sums, timestamps, found);
+          }
+        }
+      }
+    }
+
+    boolean isFolded = false;
+    for (int index = 0; index < ncounters; ++index) {
+      if (found[index]) {
+        final HBaseColumnName column = mCounters.get(index).mColumn;
+        kvs.add(new KeyValue(rowKey, column.getFamily(), column.getQualifier(),
+            timestamps[index], Bytes.toBytes(sums[index])));
+        isFolded = true;
+      }
+    }
+    if (!isFolded) {
+      return row;
+    }
+    Collections.sort(kvs, KeyValue.COMPARATOR);
+    return new Result(kvs);
+  }
+
+  /**
+   * Finds the requested counter a KeyValue belongs to.
+   *
+   * @param kv KeyValue to look up.
+   * @return the index of the counter of the KeyValue, or -1 if the KeyValue is not a counter.
+   */
+  private int indexOf(KeyValue kv) {
+    for (int index = 0; index < mCounters.size(); ++index) {
+      if (mCounters.get(index).matches(kv)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Adds the value of a stripe to the sum of a counter.
+   *
+   * @param kv Most recent cell of a stripe.
+   * @param index Index of the counter.
+   * @param sums Sums of the counters.
+   * @param timestamps Most recent timestamps of the counters.
+   * @param found Whether a stripe of each counter was found.
+   */
+  private static void add(
+      KeyValue kv, int index, long[] sums, long[] timestamps, boolean[] found) {
+    sums[index] += Bytes.toLong(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
+    timestamps[index] = found[index]
+        ? Math.max(timestamps[index], kv.getTimestamp())
+        : kv.getTimestamp();
+    found[index] = true;
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Reports the number of stripes of a column.
+   *
+   * @param layout Layout of the table.
+   * @param column Kiji column, or family.
+   * @return the number of stripes of the column, or the maximum number of stripes of the
+   *     counters in the family; 1 if nothing is striped.
+   */
+  public static int getStripes(KijiTableLayout layout, KijiColumnName column) {
+    final FamilyLayout family = layout.getFamilyMap().get(column.getFamily());
+    if ((null == family) || !family.isGroupType()) {
+      return 1;
+    }
+    if (column.isFullyQualified()) {
+      final ColumnLayout columnLayout = family.getColumnMap().get(column.getQualifier());
+      return (null == columnLayout)
+          ? 1
+          : KijiTableLayout.getCounterStripes(columnLayout.getDesc().getColumnSchema());
+    }
+    int stripes = 1;
+    for (ColumnLayout columnLayout : family.getColumns()) {
+      stripes = Math.max(stripes,
+          KijiTableLayout.getCounterStripes(columnLayout.getDesc().getColumnSchema()));
+    }
+    return stripes;
+  }
+
+  /**
+   * Reports the maximum number of stripes of the counters of a table.
+   *
+   * @param layout Layout of the table.
+   * @return the maximum number of stripes of the counters of the table; 1 if nothing is striped.
+   */
+  public static int getStripes(KijiTableLayout layout) {
+    int stripes = 1;
+    for (FamilyLayout family : layout.getFamilies()) {
+      stripes = Math.max(stripes, getStripes(layout, new KijiColumnName(family.getName())));
+    }
+    return stripes;
+  }
+
+  /**
+   * Picks the stripe a thread increments a striped counter on.
+   *
+   * <p>Threads stick to a stripe, so that concurrent writers tend to update distinct rows.</p>
+   *
+   * @param nstripes Number of stripes of the counter.
+   * @return the stripe of the current thread, between 0 and nstripes - 1.
+   */
+  public static int getThreadStripe(int nstripes) {
+    return (int) (Thread.currentThread().getId() % nstripes);
+  }
+
+  /**
+   * Builds the row key of a stripe in the stripes table.
+   *
+   * @param stripe Index of the stripe, strictly positive.
+   * @param rowKey HBase row key of the row in the Kiji table.
+   * @return the row key of the stripe in the stripes table.
+   */
+  public static byte[] toStripeRowKey(int stripe, byte[] rowKey) {
+    Preconditions.checkArgument(stripe > 0, "Stripe 0 lives in the Kiji table.");
+    return Bytes.add(Bytes.toBytes((short) stripe), rowKey);
+  }
+
+  /**
+   * Sums the stripes of a counter, other than the stripe just incremented.
+   *
+   * <p>
+   *   The new value of a striped counter is the new value of the stripe incremented, plus the
+   *   most recent value of the other stripes. The other stripes are read after the increment:
+   *   the sum is not isolated from concurrent increments on these stripes.
+   * </p>
+   *
+   * @param htable HTable of the Kiji table, holding stripe 0.
+   * @param stripesHTable HTable of the stripes table.
+   * @param rowKey HBase row key of the row in the Kiji table.
+   * @param family HBase family of the counter.
+   * @param qualifier HBase qualifier of the counter.
+   * @param nstripes Number of stripes of the counter.
+   * @param stripe Stripe just incremented, left out of the sum.
+   * @return the sum of the most recent values of the other stripes of the counter.
+   * @throws IOException on I/O error.
+   */
+  public static long sumOtherStripes(
+      HTableInterface htable,
+      HTableInterface stripesHTable,
+      byte[] rowKey,
+      byte[] family,
+      byte[] qualifier,
+      int nstripes,
+      int stripe)
+      throws IOException {
+    long sum = 0;
+    if (0 != stripe) {
+      sum += getValue(htable.get(new Get(rowKey).addColumn(family, qualifier)), family, qualifier);
+    }
+    final List<Get> gets = Lists.newArrayListWithCapacity(nstripes - 1);
+    for (int other = 1; other < nstripes; ++other) {
+      if (other != stripe) {
+        gets.add(new Get(toStripeRowKey(other, rowKey)).addColumn(family, qualifier));
+      }
+    }
+    if (!gets.isEmpty()) {
+      for (Result result : stripesHTable.get(gets)) {
+        sum += getValue(result, family, qualifier);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Decodes the most recent value of a stripe.
+   *
+   * @param result Cells read from the row of a stripe.
+   * @param family HBase family of the counter.
+   * @param qualifier HBase qualifier of the counter.
+   * @return the most recent value of the stripe, or 0 if the stripe has no cell.
+   */
+  private static long getValue(Result result, byte[] family, byte[] qualifier) {
+    final byte[] value = (null == result) ? null : result.getValue(family, qualifier);
+    return (null == value) ? 0 : Bytes.toLong(value);
+  }
+
+  /**
+   * Builds the deletes clearing the stripes of a counter overwritten by a put.
+   *
+   * <p>A put replaces the value of the counter: it writes stripe 0, and clears the others.</p>
+   *
+   * @param rowKey HBase row key of the row in the Kiji table.
+   * @param column HBase column of the counter.
+   * @param timestamp Timestamp of the put: cells of the other stripes up to it are deleted.
+   * @param nstripes Number of stripes of the counter.
+   * @return the deletes to send to the stripes table.
+   */
+  public static List<Delete> toStripeDeletes(
+      byte[] rowKey, HBaseColumnName column, long timestamp, int nstripes) {
+    final Delete delete = new Delete(rowKey)
+        .deleteColumns(column.getFamily(), column.getQualifier(), timestamp);
+    return toStripeDeletes(delete, nstripes);
+  }
+
+  /**
+   * Applies a delete sent to a row of the Kiji table to the stripes of this row.
+   *
+   * @param delete Delete sent to a row of the Kiji table.
+   * @param nstripes Number of stripes the delete applies to.
+   * @return the deletes to send to the stripes table.
+   */
+  public static List<Delete> toStripeDeletes(Delete delete, int nstripes) {
+    final List<Delete> deletes = Lists.newArrayListWithCapacity(nstripes - 1);
+    for (int stripe = 1; stripe < nstripes; ++stripe) {
+      final Delete stripeDelete =
+          new Delete(toStripeRowKey(stripe, delete.getRow()), delete.getTimeStamp(), null);
+      for (List<KeyValue> kvs : delete.getFamilyMap().values()) {
+        for (KeyValue kv : kvs) {
+          switch (KeyValue.Type.codeToType(kv.getType())) {
+            case DeleteFamily:
+              stripeDelete.deleteFamily(kv.getFamily(), kv.getTimestamp());
+              break;
+            case DeleteColumn:
+              stripeDelete.deleteColumns(kv.getFamily(), kv.getQualifier(), kv.getTimestamp());
+              break;
+            default:
+              stripeDelete.deleteColumn(kv.getFamily(), kv.getQualifier(), kv.getTimestamp());
+              break;
+          }
+        }
+      }
+      deletes.add(stripeDelete);
+    }
+    return deletes;
+  }
+
+  /**
+   * Builds the descriptor of the stripes table of a Kiji table.
+   *
+   * <p>The stripes table has the same column families as the HBase table of the Kiji table.</p>
+   *
+   * @param stripesTableName Name of the stripes table.
+   * @param tableDescriptor Descriptor of the HBase table of the Kiji table.
+   * @return the descriptor of the stripes table.
+   */
+  public static HTableDescriptor toHTableDescriptor(
+      String stripesTableName, HTableDescriptor tableDescriptor) {
+    final HTableDescriptor stripesDescriptor = new HTableDescriptor(stripesTableName);
+    for (HColumnDescriptor family : tableDescriptor.getFamilies()) {
+      stripesDescriptor.addFamily(new HColumnDescriptor(family));
+    }
+    return stripesDescriptor;
+  }
+
+  /**
+   * Computes the split keys of the stripes table, so that each stripe has its own region.
+   *
+   * @param nstripes Maximum number of stripes of the counters of the table.
+   * @return the split keys of the stripes table, or null if the table needs a single region.
+   */
+  public static byte[][] getSplitKeys(int nstripes) {
+    if (nstripes <= 2) {
+      return null;
+    }
+    final byte[][] splitKeys = new byte[nstripes - 2][];
+    for (int stripe = 2; stripe < nstripes; ++stripe) {
+      splitKeys[stripe - 2] = Bytes.toBytes((short) stripe);
+    }
+    return splitKeys;
+  }
+}
@@ -20,15 +20,21 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +44,6 @@ import org.kiji.schema.EntityId;
 import org.kiji.schema.KijiCellEncoder;
 import org.kiji.schema.KijiColumnName;
 import org.kiji.schema.hbase.HBaseColumnName;
-import org.kiji.schema.layout.impl.CellSpec;
 import org.kiji.schema.layout.impl.ColumnNameTranslator;
 
 /**
@@ -52,6 +57,9 @@ import org.kiji.schema.layout.impl.ColumnNameTranslator;
  * and <code>commit(localityGroup)</code> or <code>checkAndCommit(family, qualifier, value)</code>
  * to write all staged puts atomically.
  *
+ * Completed transactions queued with <code>queueCommit(localityGroup)</code> are sent together
+ * with a single HTable batch by <code>commitQueued()</code>.
+ *
  * This class is not thread-safe.  It is the user's responsibility to protect against
  * concurrent access to a writer while a transaction is being constructed.
  */
@@ -68,6 +76,15 @@ public final class HBaseAtomicKijiPutter implements AtomicKijiPutter {
   /** HBase column name translator. */
   private final ColumnNameTranslator mTranslator;
 
+  /** Provides cached cell encoders for the columns of the table, across transactions. */
+  private final CellEncoderProvider mEncoderProvider;
+
+  /** Completed transactions queued for a batch commit. */
+  private final List<Put> mQueuedPuts = Lists.newArrayList();
+
+  /** Entity IDs of the queued transactions, in the order of mQueuedPuts. */
+  private final List<EntityId> mQueuedIds = Lists.newArrayList();
+
   /** EntityId of the row to mutate atomically. */
   private EntityId mEntityId;
 
@@ -96,7 +113,9 @@ public final class HBaseAtomicKijiPutter implements AtomicKijiPutter {
   public HBaseAtomicKijiPutter(HBaseKijiTable table) throws IOException {
     table.retain();
     mTable = table;
-    mTranslator = new ColumnNameTranslator(mTable.getLayout());
+    mTranslator = mTable.getColumnNameTranslator();
+    mEncoderProvider = new CellEncoderProvider(
+        mTable.getCachedLayout(), DefaultKijiCellEncoderFactory.get());
     mHTable = HBaseKijiTable.createHTableInterface(mTable);
   }
 
@@ -128,9 +147,15 @@ public final class HBaseAtomicKijiPutter implements AtomicKijiPutter {
     return mEntityId;
   }
 
-  /** {@inheritDoc} */
-  @Override
-  public void commit(String localityGroup) throws IOException {
+  /**
+   * Completes the Put of the current transaction, whose cells must all belong to a
+   * single locality group.
+   *
+   * @param localityGroup Name of the locality group of all the cells of the transaction.
+   * @return the Put of the current transaction.
+   * @throws IOException in case of an error.
+   */
+  private Put completePut(String localityGroup) throws IOException {
     Preconditions.checkState(mPut != null, "commit must be paired with a call to begin()");
     Preconditions.checkState(mLGNames.size() == 1,
         "All writes must be to the same locality group. Locality groups of specified puts: {}",
@@ -140,14 +165,59 @@ public final class HBaseAtomicKijiPutter implements AtomicKijiPutter {
     for (KeyValue kv : mHopper) {
       mPut.add(kv);
     }
+    return mPut;
+  }
 
-    mHTable.put(mPut);
+  /** {@inheritDoc} */
+  @Override
+  public void commit(String localityGroup) throws IOException {
+    mHTable.put(completePut(localityGroup));
     if (!mHTable.isAutoFlush()) {
       mHTable.flushCommits();
     }
     reset();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public void queueCommit(String localityGroup) throws IOException {
+    mQueuedPuts.add(completePut(localityGroup));
+    mQueuedIds.add(mEntityId);
+    reset();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<EntityId> commitQueued() throws IOException {
+    final List<EntityId> failed = Lists.newArrayList();
+    if (mQueuedPuts.isEmpty()) {
+      return failed;
+    }
+    final List<Row> actions = Lists.<Row>newArrayList(mQueuedPuts);
+    final List<EntityId> ids = Lists.newArrayList(mQueuedIds);
+    final Object[] results = new Object[actions.size()];
+    try {
+      mHTable.batch(actions, results);
+    } catch (RetriesExhaustedWithDetailsException rewde) {
+      // Failed transactions have no result, and are reported below.
+      LOG.warn("{} of {} queued transactions failed on table {}: {}",
+          rewde.getNumExceptions(), actions.size(), mTable.getURI(), rewde.getMessage());
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while committing queued transactions.");
+    } finally {
+      // The queue is emptied even if the batch fails, so both lists must stay aligned:
+      mQueuedPuts.clear();
+      mQueuedIds.clear();
+    }
+    for (int i = 0; i < results.length; ++i) {
+      if (!(results[i] instanceof Result)) {
+        failed.add(ids.get(i));
+      }
+    }
+    return failed;
+  }
+
   /** {@inheritDoc} */
   @Override
   public <T> boolean checkAndCommit(String family, String qualifier, T value) throws IOException {
@@ -155,9 +225,7 @@ public final class HBaseAtomicKijiPutter implements AtomicKijiPutter {
     final KijiColumnName kijiColumnName = new KijiColumnName(family, qualifier);
     final HBaseColumnName columnName = mTranslator.toHBaseColumnName(kijiColumnName);
 
-    final CellSpec cellSpec = mTable.getLayout().getCellSpec(kijiColumnName)
-        .setSchemaTable(mTable.getKiji().getSchemaTable());
-    final KijiCellEncoder cellEncoder = DefaultKijiCellEncoderFactory.get().create(cellSpec);
+    final KijiCellEncoder cellEncoder = mEncoderProvider.getEncoder(family, qualifier);
     final byte[] encoded = cellEncoder.encode(value);
 
     for (KeyValue kv : mHopper) {
@@ -197,9 +265,7 @@ public final class HBaseAtomicKijiPutter implements AtomicKijiPutter {
     final KijiColumnName kijiColumnName = new KijiColumnName(family, qualifier);
     final HBaseColumnName columnName = mTranslator.toHBaseColumnName(kijiColumnName);
 
-    final CellSpec cellSpec = mTable.getLayout().getCellSpec(kijiColumnName)
-        .setSchemaTable(mTable.getKiji().getSchemaTable());
-    final KijiCellEncoder cellEncoder = DefaultKijiCellEncoderFactory.get().create(cellSpec);
+    final KijiCellEncoder cellEncoder = mEncoderProvider.getEncoder(family, qualifier);
     final byte[] encoded = cellEncoder.encode(value);
 
     mLGNames.add(mTable.getLayout().getFamilyMap().get(family).getLocalityGroup().getName());
@@ -218,6 +284,13 @@ public final class HBaseAtomicKijiPutter implements AtomicKijiPutter {
           mEntityId);
       rollback();
     }
+    if (!mQueuedPuts.isEmpty()) {
+      LOG.warn("Closing HBaseAtomicKijiPutter on table {} with {} queued transactions. "
+          + "Discarding queued transactions.",
+          mTable.getURI(), mQueuedPuts.size());
+      mQueuedPuts.clear();
+      mQueuedIds.clear();
+    }
     mHTable.close();
     mTable.release();
   }
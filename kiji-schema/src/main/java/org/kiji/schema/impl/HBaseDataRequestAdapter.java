@@ -112,16 +112,31 @@ public class HBaseDataRequestAdapter {
    * @throws IOException If there is an error.
    */
   public void applyToScan(Scan scan, KijiTableLayout tableLayout) throws IOException {
-    Scan newScan = toScan(tableLayout);
+    applyToScan(scan, new ColumnNameTranslator(tableLayout));
+  }
+
+  /**
+   * Like toScan(), but mutates a given Scan object to include everything in the data
+   * request instead of returning a new one.
+   *
+   * <p>Any existing request settings in the Scan object will be preserved.</p>
+   *
+   * @param scan The existing scan object to apply the data request to.
+   * @param columnTranslator Column name translator for the layout of the Kiji table the scan
+   *     will read from.
+   * @throws IOException If there is an error.
+   */
+  public void applyToScan(Scan scan, ColumnNameTranslator columnTranslator) throws IOException {
+    final Get newGet = toGet(HBaseEntityId.fromHBaseRowKey(new byte[0]), columnTranslator);
 
     // Don't bother adding new columns if no columns are requested by the scan.
-    if (newScan == null) {
+    if (newGet == null) {
       return;
     }
 
     // It's okay to put columns into the Scan that are already there.
     for (Map.Entry<byte[], NavigableSet<byte[]>> columnRequest
-             : newScan.getFamilyMap().entrySet()) {
+             : newGet.getFamilyMap().entrySet()) {
       byte[] family = columnRequest.getKey();
       if (null == columnRequest.getValue()) {
         // Request all columns in the family.
@@ -153,13 +168,28 @@ public class HBaseDataRequestAdapter {
    */
   public Get toGet(EntityId entityId, KijiTableLayout tableLayout)
       throws IOException {
+    return toGet(entityId, new ColumnNameTranslator(tableLayout));
+  }
+
+  /**
+   * Constructs an HBase Get that describes the data requested in the KijiDataRequest for
+   * a particular entity/row.
+   *
+   * @param entityId The row to build an HBase Get request for.
+   * @param columnTranslator Column name translator for the layout of the Kiji table to read
+   *     from, usually shared by all the users of the table.
+   * @return An HBase Get descriptor, or null if no data was requested.
+   * @throws IOException If there is an error.
+   */
+  public Get toGet(EntityId entityId, ColumnNameTranslator columnTranslator)
+      throws IOException {
     if (mKijiDataRequest.isEmpty()) {
       return null;
     }
 
+    final KijiTableLayout tableLayout = columnTranslator.getTableLayout();
     Get get = new Get(entityId.getHBaseRowKey());
     FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ONE);
-    ColumnNameTranslator columnTranslator = new ColumnNameTranslator(tableLayout);
 
     // There's a shortcoming in the HBase API that doesn't allow us to specify per-column
     // filters for timestamp ranges and max versions.  We need to generate a request that
@@ -229,7 +259,7 @@ public class HBaseDataRequestAdapter {
    * @param scan The Scan to configure.
    * @param scanOptions The options to configure this Scan with.
    */
-  private void configureScan(Scan scan, HBaseScanOptions scanOptions) {
+  static void configureScan(Scan scan, HBaseScanOptions scanOptions) {
     if (null != scanOptions.getClientBufferSize()) {
       scan.setBatch(scanOptions.getClientBufferSize());
     }
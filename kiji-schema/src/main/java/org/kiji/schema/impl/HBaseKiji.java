@@ -19,12 +19,15 @@
 
 package org.kiji.schema.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.ObjectName;
+
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
@@ -55,6 +58,8 @@ import org.kiji.schema.layout.InvalidLayoutException;
 import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.impl.ColumnId;
 import org.kiji.schema.layout.impl.HTableSchemaTranslator;
+import org.kiji.schema.metrics.MetricsRegistries;
+import org.kiji.schema.metrics.MetricsRegistry;
 import org.kiji.schema.util.Debug;
 import org.kiji.schema.util.LockFactory;
 import org.kiji.schema.util.ResourceUtils;
@@ -73,6 +78,9 @@ public final class HBaseKiji implements Kiji {
   private static final Logger CLEANUP_LOG =
       LoggerFactory.getLogger("cleanup." + HBaseKiji.class.getName());
 
+  /** Number of live (opened and not yet closed) HBaseKiji instances in this JVM. */
+  private static final AtomicInteger LIVE_INSTANCE_COUNT = new AtomicInteger(0);
+
   /** The hadoop configuration. */
   private final Configuration mConf;
 
@@ -97,12 +105,24 @@ public final class HBaseKiji implements Kiji {
   /** The meta table for this kiji instance, or null if it has not been opened yet. */
   private HBaseMetaTable mMetaTable;
 
+  /** Layouts of the tables of this kiji instance, or null if it has not been created yet. */
+  private TableLayoutCache mTableLayoutCache;
+
   /** Whether the kiji instance is open. */
   private AtomicBoolean mIsOpen;
 
   /** Retain counter. When decreased to 0, the HBase Kiji may be closed and disposed of. */
   private AtomicInteger mRetainCount = new AtomicInteger(1);
 
+  /** Metrics of this Kiji instance. */
+  private final MetricsRegistry mMetrics;
+
+  /** Name of the MBean exporting the metrics of this Kiji instance, or null if not exported. */
+  private ObjectName mMetricsMBean = null;
+
+  /** Registry this Kiji instance is shared through, or null if this instance is not shared. */
+  private volatile HBaseKijiRegistry mRegistry = null;
+
   /**
    * String representation of the call stack at the time this object is constructed.
    * Used for debugging
@@ -181,29 +201,54 @@ public final class HBaseKiji implements Kiji {
     mSchemaTable = null;
     mSystemTable = null;
     mMetaTable = null;
+    mTableLayoutCache = null;
     mAdmin = null;
 
     mIsOpen = new AtomicBoolean(true);
+    // Balanced by close(), including when the rest of the constructor fails:
+    LIVE_INSTANCE_COUNT.incrementAndGet();
+    try {
+      mMetrics = MetricsRegistries.create(mConf);
+
+      // Validate configuration settings.
+      Preconditions.checkArgument(
+          getConf().get("hbase.zookeeper.property.clientPort") != null,
+          String.format(
+              "Configuration for Kiji instance '%s' "
+              + "lacks HBase resources (hbase-default.xml, hbase-site.xml), "
+              + "use HBaseConfiguration.create().",
+              mURI));
+
+      if (validateVersion) {
+        // Make sure the data version for the client matches the cluster.
+        LOG.debug("Validating version...");
+        VersionInfo.validateVersion(this);
+      }
 
-    // Validate configuration settings.
-    Preconditions.checkArgument(
-        getConf().get("hbase.zookeeper.property.clientPort") != null,
-        String.format(
-            "Configuration for Kiji instance '%s' "
-            + "lacks HBase resources (hbase-default.xml, hbase-site.xml), "
-            + "use HBaseConfiguration.create().",
-            mURI));
-
-    if (validateVersion) {
-      // Make sure the data version for the client matches the cluster.
-      LOG.debug("Validating version...");
-      VersionInfo.validateVersion(this);
+      if (CLEANUP_LOG.isDebugEnabled()) {
+        mConstructorStack = Debug.getStackTrace();
+      }
+      if (mMetrics.isEnabled()) {
+        registerInstanceGauges();
+        mMetricsMBean = MetricsRegistries.registerMBean(mMetrics, mURI, mConf);
+      }
+    } catch (IOException ioe) {
+      closeOnFailure();
+      throw ioe;
+    } catch (RuntimeException re) {
+      closeOnFailure();
+      throw re;
     }
+    LOG.debug("Opened.");
+  }
 
-    if (CLEANUP_LOG.isDebugEnabled()) {
-      mConstructorStack = Debug.getStackTrace();
+  /** Releases the resources of this Kiji instance when its constructor fails. */
+  private void closeOnFailure() {
+    try {
+      close();
+    } catch (IOException ioe) {
+      LOG.warn("Error while closing Kiji instance '{}': {}", mURI, ioe.toString());
     }
-    LOG.debug("Opened.");
   }
 
   /** {@inheritDoc} */
@@ -223,7 +268,12 @@ public final class HBaseKiji implements Kiji {
   public synchronized KijiSchemaTable getSchemaTable() throws IOException {
     Preconditions.checkState(mIsOpen.get());
     if (null == mSchemaTable) {
-      mSchemaTable = new HBaseSchemaTable(mURI, mConf, mHTableFactory, mLockFactory);
+      mSchemaTable =
+          new HBaseSchemaTable(mURI, mConf, mHTableFactory, mLockFactory, mMetrics);
+      final String snapshotPath = mConf.get(HBaseSchemaTable.CONF_SNAPSHOT_PATH);
+      if (null != snapshotPath) {
+        mSchemaTable.loadSnapshot(new File(snapshotPath));
+      }
     }
     return mSchemaTable;
   }
@@ -248,6 +298,34 @@ public final class HBaseKiji implements Kiji {
     return mMetaTable;
   }
 
+  /**
+   * Gets the cache of the table layouts of this Kiji instance, shared by all opened tables.
+   *
+   * @return the cache of the table layouts of this Kiji instance.
+   * @throws IOException on I/O error.
+   */
+  synchronized TableLayoutCache getTableLayoutCache() throws IOException {
+    Preconditions.checkState(mIsOpen.get());
+    if (null == mTableLayoutCache) {
+      mTableLayoutCache = new TableLayoutCache(getMetaTable(), getSchemaTable(),
+          mConf.getInt(HBaseKijiTable.CONF_DATA_REQUEST_CACHE_SIZE,
+              HBaseKijiTable.DEFAULT_DATA_REQUEST_CACHE_SIZE),
+          mMetrics);
+    }
+    return mTableLayoutCache;
+  }
+
+  /**
+   * Discards the cached layout of a table, if the layout cache has been created.
+   *
+   * @param tableName Name of the table whose layout changed.
+   */
+  private synchronized void invalidateTableLayout(String tableName) {
+    if (null != mTableLayoutCache) {
+      mTableLayoutCache.invalidate(tableName);
+    }
+  }
+
   /**
    * Gets the current HBaseAdmin instance for this Kiji. This method will open a new
    * HBaseAdmin if one doesn't exist already.
@@ -373,6 +451,7 @@ public final class HBaseKiji implements Kiji {
       } else {
         getHBaseAdmin().createTable(desc);
       }
+      updateCounterStripesTable(tableLayout.getName(), kijiTableLayout, desc);
     } catch (TableExistsException tee) {
       final KijiURI tableURI =
           KijiURI.newBuilder(mURI).withTableName(tableLayout.getName()).build();
@@ -447,6 +526,7 @@ public final class HBaseKiji implements Kiji {
       // Actually set it.
       LOG.debug("Applying layout update: " + update);
       newLayout = getMetaTable().updateTableLayout(tableName, update);
+      invalidateTableLayout(tableName);
     }
     Preconditions.checkState(newLayout != null);
 
@@ -531,9 +611,67 @@ public final class HBaseKiji implements Kiji {
       }
     }
 
+    if (!dryRun) {
+      updateCounterStripesTable(tableName, newLayout, newTableDescriptor);
+    }
+
     return newLayout;
   }
 
+  /**
+   * Creates or updates the HBase table holding the stripes of the striped counters of a table.
+   *
+   * <p>
+   *   The stripes table exists only once the table has striped counters, and has the same
+   *   column families as the HBase table of the Kiji table. See {@link CounterStripes}.
+   * </p>
+   *
+   * @param tableName Name of the Kiji table.
+   * @param layout Layout of the Kiji table.
+   * @param tableDescriptor Descriptor of the HBase table of the Kiji table.
+   * @throws IOException on I/O error.
+   */
+  private void updateCounterStripesTable(
+      String tableName, KijiTableLayout layout, HTableDescriptor tableDescriptor)
+      throws IOException {
+    final int nstripes = CounterStripes.getStripes(layout);
+    if (nstripes == 1) {
+      return;
+    }
+    final String stripesTableName = KijiManagedHBaseTableName
+        .getCounterStripesTableName(mURI.getInstance(), tableName).toString();
+    final HTableDescriptor stripesDescriptor =
+        CounterStripes.toHTableDescriptor(stripesTableName, tableDescriptor);
+    final HBaseAdmin admin = getHBaseAdmin();
+    if (!admin.tableExists(stripesTableName)) {
+      LOG.debug("Creating counter stripes table {}", stripesTableName);
+      final byte[][] splitKeys = CounterStripes.getSplitKeys(nstripes);
+      if (null != splitKeys) {
+        admin.createTable(stripesDescriptor, splitKeys);
+      } else {
+        admin.createTable(stripesDescriptor);
+      }
+      return;
+    }
+
+    final HTableDescriptor currentDescriptor =
+        admin.getTableDescriptor(Bytes.toBytes(stripesTableName));
+    if (0 == new HTableDescriptorComparator().compare(currentDescriptor, stripesDescriptor)) {
+      return;
+    }
+    LOG.debug("Updating counter stripes table {}", stripesTableName);
+    admin.disableTable(stripesTableName);
+    for (HColumnDescriptor family : stripesDescriptor.getFamilies()) {
+      final HColumnDescriptor currentFamily = currentDescriptor.getFamily(family.getName());
+      if (null == currentFamily) {
+        admin.addColumn(stripesTableName, family);
+      } else if (!family.equals(currentFamily)) {
+        admin.modifyColumn(stripesTableName, family);
+      }
+    }
+    admin.enableTable(stripesTableName);
+  }
+
   /** {@inheritDoc} */
   @Override
   public void deleteTable(String tableName) throws IOException {
@@ -543,8 +681,17 @@ public final class HBaseKiji implements Kiji {
     getHBaseAdmin().disableTable(hbaseTable);
     getHBaseAdmin().deleteTable(hbaseTable);
 
+    // Delete the stripes of the striped counters, if any.
+    final String stripesTable = KijiManagedHBaseTableName.getCounterStripesTableName(
+        mURI.getInstance(), tableName).toString();
+    if (getHBaseAdmin().tableExists(stripesTable)) {
+      getHBaseAdmin().disableTable(stripesTable);
+      getHBaseAdmin().deleteTable(stripesTable);
+    }
+
     // Delete from the meta table.
     getMetaTable().deleteTable(tableName);
+    invalidateTableLayout(tableName);
 
     // If the table persists immediately after deletion attempt, then give up.
     if (getHBaseAdmin().tableExists(hbaseTable)) {
@@ -552,6 +699,29 @@ public final class HBaseKiji implements Kiji {
     }
   }
 
+  /** Registers the gauges reporting the number of Kiji instances in this JVM. */
+  private void registerInstanceGauges() {
+    mMetrics.registerGauge("kiji.instances.live", new MetricsRegistry.Gauge() {
+      /** {@inheritDoc} */
+      @Override
+      public long getValue() {
+        return HBaseKijiRegistry.get().getLiveInstanceCount();
+      }
+    });
+    mMetrics.registerGauge("kiji.instances.shared", new MetricsRegistry.Gauge() {
+      /** {@inheritDoc} */
+      @Override
+      public long getValue() {
+        return HBaseKijiRegistry.get().getSharedInstanceCount();
+      }
+    });
+  }
+
+  /** @return the metrics registry of this Kiji instance. */
+  public MetricsRegistry getMetricsRegistry() {
+    return mMetrics;
+  }
+
   /** {@inheritDoc} */
   @Override
   public List<String> getTableNames() throws IOException {
@@ -577,7 +747,11 @@ public final class HBaseKiji implements Kiji {
     mSchemaTable = null;
     mMetaTable = null;
     mSystemTable = null;
+    mTableLayoutCache = null;
     mAdmin = null;
+    MetricsRegistries.unregisterMBean(mMetricsMBean);
+    mMetricsMBean = null;
+    LIVE_INSTANCE_COUNT.decrementAndGet();
     LOG.debug("resource '{}' closed.", mURI);
   }
 
@@ -593,14 +767,39 @@ public final class HBaseKiji implements Kiji {
   /** {@inheritDoc} */
   @Override
   public void release() throws IOException {
-    final int counter = mRetainCount.decrementAndGet();
-    Preconditions.checkState(counter >= 0,
-        "Cannot release closed Kiji %s: retain counter is now %s.", mURI, counter);
+    final HBaseKijiRegistry registry = mRegistry;
+    final int counter = (null == registry) ? releaseReference() : registry.release(this);
     if (counter == 0) {
       close();
     }
   }
 
+  /**
+   * Decrements the retain counter of this Kiji instance.
+   *
+   * @return the retain counter, after it is decremented.
+   */
+  int releaseReference() {
+    final int counter = mRetainCount.decrementAndGet();
+    Preconditions.checkState(counter >= 0,
+        "Cannot release closed Kiji %s: retain counter is now %s.", mURI, counter);
+    return counter;
+  }
+
+  /**
+   * Shares this Kiji instance through a registry.
+   *
+   * @param registry Registry this Kiji instance is shared through.
+   */
+  void setRegistry(HBaseKijiRegistry registry) {
+    mRegistry = Preconditions.checkNotNull(registry);
+  }
+
+  /** @return the number of live (opened and not yet closed) HBaseKiji instances in this JVM. */
+  static int getLiveInstanceCount() {
+    return LIVE_INSTANCE_COUNT.get();
+  }
+
   /** {@inheritDoc} */
   @Override
   public boolean equals(Object obj) {
@@ -0,0 +1,492 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiBufferedIncrementer;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.avro.SchemaType;
+import org.kiji.schema.hbase.HBaseColumnName;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
+import org.kiji.schema.util.BytesKey;
+import org.kiji.schema.util.ResourceUtils;
+
+/**
+ * Buffered incrementer for the counters of a Kiji table stored in HBase.
+ *
+ * <p>
+ *   Deltas are summed per counter in a client-side buffer. When the buffer is sent, the counters
+ *   of each row are incremented with a single HBase Increment (one per stripe for striped
+ *   counters), and all the rows of the buffer are sent through a single HTable. The buffer is
+ *   handed off to a background thread once it holds the configured number of counters, or
+ *   periodically, or when the incrementer is flushed.
+ *   At most one buffer is being sent at a time: incrementing into a full buffer blocks until
+ *   the previous buffer has been sent.
+ * </p>
+ * <p>This class is thread-safe.</p>
+ */
+@ApiAudience.Private
+public final class HBaseKijiBufferedIncrementer implements KijiBufferedIncrementer {
+  private static final Logger LOG = LoggerFactory.getLogger(HBaseKijiBufferedIncrementer.class);
+
+  /** Default maximum number of distinct counters in the buffer. */
+  public static final int DEFAULT_BUFFER_SIZE = 10000;
+
+  /** Default maximum delay before buffered increments are sent, in milliseconds. */
+  public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+  /** The kiji table instance. */
+  private final HBaseKijiTable mTable;
+
+  /** The column name translator to use. */
+  private final ColumnNameTranslator mTranslator;
+
+  /** Single thread sending the buffers to the table, in order. */
+  private final ExecutorService mSender;
+
+  /** Timer triggering periodic flushes. */
+  private final ScheduledExecutorService mTimer;
+
+  /** Buffered counters, keyed by HBase row key, then by column. Guarded by this. */
+  private Map<BytesKey, Map<KijiColumnName, PendingCounter>> mRows = Maps.newLinkedHashMap();
+
+  /** Number of distinct counters in the buffer. Guarded by this. */
+  private int mBufferedCounters = 0;
+
+  /** Future completed with null once the current buffer is sent. Guarded by this. */
+  private SettableFuture<Long> mBufferFuture = SettableFuture.create();
+
+  /** Future of the last buffer handed off to the sender thread, or null. Guarded by this. */
+  private Future<Long> mInFlight = null;
+
+  /** Maximum number of distinct counters in the buffer. Guarded by this. */
+  private int mBufferSize = DEFAULT_BUFFER_SIZE;
+
+  /** Whether the futures of the increments report the new counter values. Guarded by this. */
+  private boolean mReturnResults = true;
+
+  /** Periodic flush task. Guarded by this. */
+  private ScheduledFuture<?> mPeriodicFlush = null;
+
+  /** Whether this incrementer is open. Guarded by this. */
+  private boolean mIsOpen = true;
+
+  /** Sum of the buffered deltas for one counter. */
+  private static final class PendingCounter {
+    /** HBase family of the counter. */
+    private final byte[] mFamily;
+
+    /** HBase qualifier of the counter. */
+    private final byte[] mQualifier;
+
+    /** Number of stripes of the counter, 1 for counters that are not striped. */
+    private final int mStripes;
+
+    /** Stripe to increment, 0 for counters that are not striped. */
+    private final int mStripe;
+
+    /** Future for the new value of the counter, or null in fire-and-forget mode. */
+    private final SettableFuture<Long> mFuture;
+
+    /** Sum of the buffered deltas. */
+    private long mAmount = 0;
+
+    /**
+     * Initializes a pending counter.
+     *
+     * @param column HBase column of the counter.
+     * @param stripes Number of stripes of the counter, 1 for counters that are not striped.
+     * @param future Future for the new value of the counter, or null.
+     */
+    private PendingCounter(HBaseColumnName column, int stripes, SettableFuture<Long> future) {
+      mFamily = column.getFamily();
+      mQualifier = column.getQualifier();
+      mStripes = stripes;
+      // Striped counters are incremented on the stripe of the calling thread:
+      mStripe = CounterStripes.getThreadStripe(stripes);
+      mFuture = future;
+    }
+  }
+
+  /**
+   * Creates a buffered incrementer.
+   *
+   * @param table A kiji table.
+   * @throws IOException on I/O error.
+   */
+  public HBaseKijiBufferedIncrementer(HBaseKijiTable table) throws IOException {
+    mTable = table;
+    mTranslator = mTable.getColumnNameTranslator();
+    mSender = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("kiji-buffered-incrementer-" + mTable.getName() + "-%d")
+        .build());
+    mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("kiji-buffered-incrementer-timer-" + mTable.getName() + "-%d")
+        .build());
+    mTable.retain();
+    setFlushInterval(DEFAULT_FLUSH_INTERVAL_MILLIS);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized Future<Long> increment(
+      EntityId entityId, String family, String qualifier, long amount)
+      throws IOException {
+    Preconditions.checkState(mIsOpen,
+        "Cannot increment through a closed buffered incrementer for table '%s'.",
+        mTable.getURI());
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    if (mTable.getLayout().getCellSchema(column).getType() != SchemaType.COUNTER) {
+      throw new IOException(String.format("Column '%s' is not a counter", column));
+    }
+
+    final BytesKey rowKey = new BytesKey(entityId.getHBaseRowKey());
+    Map<KijiColumnName, PendingCounter> counters = mRows.get(rowKey);
+    if (null == counters) {
+      counters = Maps.newHashMap();
+      mRows.put(rowKey, counters);
+    }
+    PendingCounter counter = counters.get(column);
+    if (null == counter) {
+      counter = new PendingCounter(
+          mTranslator.toHBaseColumnName(column),
+          CounterStripes.getStripes(mTable.getLayout(), column),
+          mReturnResults ? SettableFuture.<Long>create() : null);
+      counters.put(column, counter);
+      mBufferedCounters += 1;
+    }
+    counter.mAmount += amount;
+
+    final Future<Long> future = (null != counter.mFuture) ? counter.mFuture : mBufferFuture;
+    if (mBufferedCounters >= mBufferSize) {
+      sendBuffer();
+    }
+    return future;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void setBufferSize(int bufferSize) {
+    Preconditions.checkArgument(bufferSize > 0, "Invalid buffer size: %s", bufferSize);
+    mBufferSize = bufferSize;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void setFlushInterval(long flushIntervalMillis) {
+    Preconditions.checkArgument(flushIntervalMillis > 0,
+        "Invalid flush interval: %s", flushIntervalMillis);
+    Preconditions.checkState(mIsOpen,
+        "Cannot configure a closed buffered incrementer for table '%s'.", mTable.getURI());
+    if (null != mPeriodicFlush) {
+      mPeriodicFlush.cancel(false);
+    }
+    mPeriodicFlush = mTimer.scheduleWithFixedDelay(
+        new PeriodicFlush(), flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void setReturnResults(boolean returnResults) {
+    mReturnResults = returnResults;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void flush() throws IOException {
+    final Future<Long> future;
+    synchronized (this) {
+      Preconditions.checkState(mIsOpen,
+          "Cannot flush a closed buffered incrementer for table '%s'.", mTable.getURI());
+      future = sendBuffer();
+    }
+    waitFor(future);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    final Future<Long> future;
+    synchronized (this) {
+      if (!mIsOpen) {
+        LOG.warn("Called close() on buffered incrementer for table '{}' more than once.",
+            mTable.getURI());
+        return;
+      }
+      try {
+        future = sendBuffer();
+      } finally {
+        mIsOpen = false;
+        mTimer.shutdownNow();
+        mSender.shutdown();
+      }
+    }
+    try {
+      waitFor(future);
+    } finally {
+      ResourceUtils.releaseOrLog(mTable);
+    }
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Hands the current buffer off to the sender thread, and starts a new buffer.
+   *
+   * <p>Blocks until the previous buffer has been sent. Caller must hold the incrementer lock.</p>
+   *
+   * @return a future completed once all the increments buffered so far are applied.
+   * @throws IOException if interrupted while waiting for the previous buffer to be sent.
+   */
+  private Future<Long> sendBuffer() throws IOException {
+    if (mRows.isEmpty()) {
+      return (null != mInFlight) ? mInFlight : Futures.<Long>immediateFuture(null);
+    }
+
+    // Bound the memory used by the incrementer: wait for the previous buffer to be sent.
+    if (null != mInFlight) {
+      try {
+        waitFor(mInFlight);
+      } catch (InterruptedIOException iioe) {
+        throw iioe;
+      } catch (IOException ioe) {
+        // Reported to the callers of the previous buffer through its futures.
+        LOG.debug("Previous buffer for table '{}' failed: {}", mTable.getURI(), ioe.getMessage());
+      }
+    }
+
+    final Map<BytesKey, Map<KijiColumnName, PendingCounter>> rows = mRows;
+    final SettableFuture<Long> future = mBufferFuture;
+    mRows = Maps.newLinkedHashMap();
+    mBufferedCounters = 0;
+    mBufferFuture = SettableFuture.create();
+    mInFlight = future;
+    mSender.execute(new Runnable() {
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        sendToTable(rows, future);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Applies buffered increments to the table, and completes their futures.
+   *
+   * <p>
+   *   A failure to increment the counters of one row fails the futures of these counters and
+   *   the future of the buffer, but does not prevent the other rows from being incremented.
+   * </p>
+   *
+   * @param rows Buffered counters, keyed by HBase row key.
+   * @param future Future of the buffer, completed once all the rows are sent, or failed.
+   */
+  private void sendToTable(
+      Map<BytesKey, Map<KijiColumnName, PendingCounter>> rows, SettableFuture<Long> future) {
+    Exception error = null;
+    HTableInterface stripesHTable = null;
+    try {
+      final HTableInterface htable = mTable.acquireHTable();
+      try {
+        for (Map.Entry<BytesKey, Map<KijiColumnName, PendingCounter>> entry : rows.entrySet()) {
+          final Collection<PendingCounter> counters = entry.getValue().values();
+          try {
+            if ((null == stripesHTable) && hasStripes(counters)) {
+              stripesHTable = mTable.acquireStripesHTable();
+            }
+            incrementRow(htable, stripesHTable, entry.getKey().getBytes(), counters);
+          } catch (IOException ioe) {
+            error = fail(counters, ioe);
+          } catch (RuntimeException re) {
+            error = fail(counters, re);
+          }
+        }
+      } finally {
+        mTable.releaseHTable(htable);
+        if (null != stripesHTable) {
+          mTable.releaseStripesHTable(stripesHTable);
+        }
+      }
+    } catch (IOException ioe) {
+      error = ioe;
+    } catch (RuntimeException re) {
+      error = re;
+    }
+
+    if (null == error) {
+      future.set(null);
+    } else {
+      LOG.warn("Error incrementing buffered counters in table '{}': {}",
+          mTable.getURI(), error.toString());
+      for (Map<KijiColumnName, PendingCounter> counters : rows.values()) {
+        fail(counters.values(), error);
+      }
+      future.setException(error);
+    }
+  }
+
+  /**
+   * Reports whether some pending counters are striped.
+   *
+   * @param counters Pending counters.
+   * @return whether some of the counters have stripes in the stripes table.
+   */
+  private static boolean hasStripes(Collection<PendingCounter> counters) {
+    for (PendingCounter counter : counters) {
+      if (counter.mStripes > 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Increments the counters of one row, and completes their futures with their new values.
+   *
+   * <p>
+   *   Counters are incremented with one HBase Increment per stripe: stripe 0 in the row of the
+   *   table, other stripes in their rows of the stripes table. The new value of a striped
+   *   counter is the new value of the stripe incremented, plus the other stripes read back.
+   * </p>
+   *
+   * @param htable HTable to send the increments of stripe 0 to.
+   * @param stripesHTable HTable of the stripes table, or null if no counter is striped.
+   * @param rowKey HBase row key of the row.
+   * @param counters Pending counters of the row.
+   * @throws IOException on I/O error.
+   */
+  private static void incrementRow(
+      HTableInterface htable,
+      HTableInterface stripesHTable,
+      byte[] rowKey,
+      Collection<PendingCounter> counters)
+      throws IOException {
+    final Map<Integer, Increment> increments = Maps.newTreeMap();
+    for (PendingCounter counter : counters) {
+      Increment increment = increments.get(counter.mStripe);
+      if (null == increment) {
+        increment = new Increment((0 == counter.mStripe)
+            ? rowKey
+            : CounterStripes.toStripeRowKey(counter.mStripe, rowKey));
+        increments.put(counter.mStripe, increment);
+      }
+      increment.addColumn(counter.mFamily, counter.mQualifier, counter.mAmount);
+    }
+    final Map<Integer, Result> results = Maps.newHashMap();
+    for (Map.Entry<Integer, Increment> entry : increments.entrySet()) {
+      final HTableInterface target = (0 == entry.getKey()) ? htable : stripesHTable;
+      results.put(entry.getKey(), target.increment(entry.getValue()));
+    }
+
+    for (PendingCounter counter : counters) {
+      if (null != counter.mFuture) {
+        final Result result = results.get(counter.mStripe);
+        long value = Bytes.toLong(result.getValue(counter.mFamily, counter.mQualifier));
+        if (counter.mStripes > 1) {
+          value += CounterStripes.sumOtherStripes(htable, stripesHTable, rowKey,
+              counter.mFamily, counter.mQualifier, counter.mStripes, counter.mStripe);
+        }
+        counter.mFuture.set(value);
+      }
+    }
+  }
+
+  /**
+   * Fails the futures of pending counters that are not completed yet.
+   *
+   * @param counters Pending counters to fail.
+   * @param error Cause of the failure.
+   * @return the cause of the failure.
+   */
+  private static Exception fail(Collection<PendingCounter> counters, Exception error) {
+    for (PendingCounter counter : counters) {
+      if (null != counter.mFuture) {
+        counter.mFuture.setException(error);
+      }
+    }
+    return error;
+  }
+
+  /**
+   * Waits for a buffer to be sent.
+   *
+   * @param future Future of the buffer to wait for.
+   * @throws IOException if the buffer could not be sent, or if interrupted.
+   */
+  private static void waitFor(Future<Long> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for buffered increments.");
+    } catch (ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /** Periodically hands the buffer off to the sender thread. */
+  private final class PeriodicFlush implements Runnable {
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      synchronized (HBaseKijiBufferedIncrementer.this) {
+        if (!mIsOpen || mRows.isEmpty()) {
+          return;
+        }
+        try {
+          sendBuffer();
+        } catch (IOException ioe) {
+          LOG.debug("Periodic flush of table '{}' interrupted: {}", mTable.getURI(), ioe);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,340 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiBufferedWriter;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.hbase.HBaseColumnName;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
+import org.kiji.schema.util.BytesKey;
+import org.kiji.schema.util.ResourceUtils;
+
+/**
+ * Buffered writer for a Kiji table stored in HBase.
+ *
+ * <p>
+ *   Cells are accumulated in a client-side buffer, with one HBase Put per row.
+ *   The buffer is handed off to a background thread once it reaches the configured size,
+ *   or periodically, or when the writer is flushed. At most one buffer is being written at a
+ *   time: writing to a full buffer blocks until the previous buffer has been written.
+ * </p>
+ * <p>This class is thread-safe.</p>
+ */
+@ApiAudience.Private
+public final class HBaseKijiBufferedWriter implements KijiBufferedWriter {
+  private static final Logger LOG = LoggerFactory.getLogger(HBaseKijiBufferedWriter.class);
+
+  /** Default size of the buffer, in bytes. */
+  public static final long DEFAULT_BUFFER_SIZE = 2L * 1024 * 1024;
+
+  /** Default maximum delay before buffered cells are written, in milliseconds. */
+  public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+  /** The kiji table instance. */
+  private final HBaseKijiTable mTable;
+
+  /** The column name translator to use. */
+  private final ColumnNameTranslator mTranslator;
+
+  /** Provides cached cell encoders. Guarded by this. */
+  private final CellEncoderProvider mEncoderProvider;
+
+  /** Single thread writing the buffers to the table, in order. */
+  private final ExecutorService mSender;
+
+  /** Timer triggering periodic flushes. */
+  private final ScheduledExecutorService mTimer;
+
+  /** Buffered HBase puts, keyed by row. Guarded by this. */
+  private Map<BytesKey, Put> mPuts = Maps.newLinkedHashMap();
+
+  /** Approximate size of the buffered cells, in bytes. Guarded by this. */
+  private long mBufferedBytes = 0;
+
+  /** Future completed once the current buffer is written. Guarded by this. */
+  private SettableFuture<Void> mBufferFuture = SettableFuture.create();
+
+  /** Future of the last buffer handed off to the sender thread, or null. Guarded by this. */
+  private Future<Void> mInFlight = null;
+
+  /** Size of the buffer, in bytes. Guarded by this. */
+  private long mBufferSize = DEFAULT_BUFFER_SIZE;
+
+  /** Periodic flush task. Guarded by this. */
+  private ScheduledFuture<?> mPeriodicFlush = null;
+
+  /** Whether this writer is open. Guarded by this. */
+  private boolean mIsOpen = true;
+
+  /**
+   * Creates a buffered kiji table writer.
+   *
+   * @param table A kiji table.
+   * @throws IOException on I/O error.
+   */
+  public HBaseKijiBufferedWriter(HBaseKijiTable table) throws IOException {
+    mTable = table;
+    mTranslator = mTable.getColumnNameTranslator();
+    mEncoderProvider = new CellEncoderProvider(
+        mTable.getCachedLayout(), DefaultKijiCellEncoderFactory.get());
+    mSender = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("kiji-buffered-writer-" + mTable.getName() + "-%d")
+        .build());
+    mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("kiji-buffered-writer-timer-" + mTable.getName() + "-%d")
+        .build());
+    mTable.retain();
+    setFlushInterval(DEFAULT_FLUSH_INTERVAL_MILLIS);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> Future<Void> put(EntityId entityId, String family, String qualifier, T value)
+      throws IOException {
+    return put(entityId, family, qualifier, HConstants.LATEST_TIMESTAMP, value);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized <T> Future<Void> put(
+      EntityId entityId, String family, String qualifier, long timestamp, T value)
+      throws IOException {
+    Preconditions.checkState(mIsOpen,
+        "Cannot write to a closed buffered writer for table '%s'.", mTable.getURI());
+    final HBaseColumnName hbaseColumnName =
+        mTranslator.toHBaseColumnName(new KijiColumnName(family, qualifier));
+    final byte[] encoded = mEncoderProvider.getEncoder(family, qualifier).encode(value);
+
+    final byte[] rowKey = entityId.getHBaseRowKey();
+    final BytesKey rowBytesKey = new BytesKey(rowKey);
+    Put put = mPuts.get(rowBytesKey);
+    if (null == put) {
+      put = new Put(rowKey);
+      mPuts.put(rowBytesKey, put);
+      mBufferedBytes += rowKey.length;
+    }
+    put.add(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), timestamp, encoded);
+    mBufferedBytes += hbaseColumnName.getQualifier().length + encoded.length;
+
+    final Future<Void> future = mBufferFuture;
+    if (mBufferedBytes >= mBufferSize) {
+      sendBuffer();
+    }
+    return future;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void setBufferSize(long bufferSize) {
+    Preconditions.checkArgument(bufferSize > 0, "Invalid buffer size: %s", bufferSize);
+    mBufferSize = bufferSize;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void setFlushInterval(long flushIntervalMillis) {
+    Preconditions.checkArgument(flushIntervalMillis > 0,
+        "Invalid flush interval: %s", flushIntervalMillis);
+    Preconditions.checkState(mIsOpen,
+        "Cannot configure a closed buffered writer for table '%s'.", mTable.getURI());
+    if (null != mPeriodicFlush) {
+      mPeriodicFlush.cancel(false);
+    }
+    mPeriodicFlush = mTimer.scheduleWithFixedDelay(
+        new PeriodicFlush(), flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void flush() throws IOException {
+    final Future<Void> future;
+    synchronized (this) {
+      Preconditions.checkState(mIsOpen,
+          "Cannot flush a closed buffered writer for table '%s'.", mTable.getURI());
+      future = sendBuffer();
+    }
+    waitFor(future);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (!mIsOpen) {
+        LOG.warn("Called close() on buffered writer for table '{}' more than once.",
+            mTable.getURI());
+        return;
+      }
+      mIsOpen = false;
+    }
+    // The table is released even if the last buffer cannot be written:
+    try {
+      final Future<Void> future;
+      synchronized (this) {
+        try {
+          future = sendBuffer();
+        } finally {
+          mTimer.shutdownNow();
+          mSender.shutdown();
+        }
+      }
+      waitFor(future);
+    } finally {
+      ResourceUtils.releaseOrLog(mTable);
+    }
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Hands the current buffer off to the sender thread, and starts a new buffer.
+   *
+   * <p>Blocks until the previous buffer has been written. Caller must hold the writer lock.</p>
+   *
+   * @return a future completed once all the cells written so far are written to the table.
+   * @throws IOException if interrupted while waiting for the previous buffer to be written.
+   */
+  private Future<Void> sendBuffer() throws IOException {
+    if (mPuts.isEmpty()) {
+      return (null != mInFlight) ? mInFlight : Futures.<Void>immediateFuture(null);
+    }
+
+    // Bound the memory used by the writer: wait for the previous buffer to be written.
+    if (null != mInFlight) {
+      try {
+        waitFor(mInFlight);
+      } catch (InterruptedIOException iioe) {
+        throw iioe;
+      } catch (IOException ioe) {
+        // Reported to the writers of the previous buffer through its future.
+        LOG.debug("Previous buffer for table '{}' failed: {}", mTable.getURI(), ioe.getMessage());
+      }
+    }
+
+    final List<Put> puts = Lists.newArrayList(mPuts.values());
+    final SettableFuture<Void> future = mBufferFuture;
+    mPuts = Maps.newLinkedHashMap();
+    mBufferedBytes = 0;
+    mBufferFuture = SettableFuture.create();
+    mInFlight = future;
+    mSender.execute(new Runnable() {
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        writeToTable(puts, future);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Writes a list of HBase puts to the table, and completes the future of the puts.
+   *
+   * @param puts HBase puts to write.
+   * @param future Future to complete once the puts are written, or failed.
+   */
+  private void writeToTable(List<Put> puts, SettableFuture<Void> future) {
+    try {
+      final HTableInterface htable = mTable.acquireHTable();
+      try {
+        htable.put(puts);
+        if (!htable.isAutoFlush()) {
+          htable.flushCommits();
+        }
+      } finally {
+        mTable.releaseHTable(htable);
+      }
+      future.set(null);
+    } catch (IOException ioe) {
+      LOG.warn("Error writing buffered puts to table '{}': {}", mTable.getURI(), ioe.toString());
+      future.setException(ioe);
+    } catch (RuntimeException re) {
+      LOG.warn("Error writing buffered puts to table '{}': {}", mTable.getURI(), re.toString());
+      future.setException(re);
+    }
+  }
+
+  /**
+   * Waits for a buffer to be written.
+   *
+   * @param future Future of the buffer to wait for.
+   * @throws IOException if the buffer could not be written, or if interrupted.
+   */
+  private static void waitFor(Future<Void> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for buffered puts.");
+    } catch (ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /** Periodically hands the buffer off to the sender thread. */
+  private final class PeriodicFlush implements Runnable {
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      synchronized (HBaseKijiBufferedWriter.this) {
+        if (!mIsOpen || mPuts.isEmpty()) {
+          return;
+        }
+        try {
+          sendBuffer();
+        } catch (IOException ioe) {
+          LOG.debug("Periodic flush of table '{}' interrupted: {}", mTable.getURI(), ioe);
+        }
+      }
+    }
+  }
+}
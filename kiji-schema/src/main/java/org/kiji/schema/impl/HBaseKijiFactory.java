@@ -44,6 +44,21 @@ public final class HBaseKijiFactory implements KijiFactory {
   /** {@inheritDoc} */
   @Override
   public Kiji open(KijiURI uri, Configuration conf) throws IOException {
+    if (conf.getBoolean(HBaseKijiRegistry.CONF_REGISTRY_ENABLED, false)) {
+      return HBaseKijiRegistry.get().open(uri, conf);
+    }
+    return newInstance(uri, conf);
+  }
+
+  /**
+   * Opens a new, unshared HBaseKiji instance.
+   *
+   * @param uri URI of the Kiji instance to open.
+   * @param conf Configuration of the Kiji instance.
+   * @return a new HBaseKiji instance. The caller must release it.
+   * @throws IOException on I/O error.
+   */
+  static HBaseKiji newInstance(KijiURI uri, Configuration conf) throws IOException {
     final HBaseFactory hbaseFactory = HBaseFactory.Provider.get();
     final Configuration confCopy = new Configuration(conf);
     return new HBaseKiji(
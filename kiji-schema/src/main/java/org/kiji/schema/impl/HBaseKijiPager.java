@@ -21,8 +21,13 @@ package org.kiji.schema.impl;
 
 import java.io.IOException;
 
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,11 +40,23 @@ import org.kiji.schema.KijiIOException;
 import org.kiji.schema.KijiPager;
 import org.kiji.schema.KijiRowData;
 import org.kiji.schema.filter.KijiPaginationFilter;
-import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
 import org.kiji.schema.util.ResourceUtils;
 
 /**
  * <p>Implementation of a KijiPager for HBase.</p>
+ *
+ * <p>
+ *   Pages are read from a cursor rather than from an offset, so that reading a page does not
+ *   require the region server to read and skip the cells of all the previous pages:
+ * </p>
+ * <ul>
+ *   <li>When paging through the versions of a fully-qualified column, the cursor is the timestamp
+ *     of the last cell returned: the next page is limited to the older cells.</li>
+ *   <li>When paging through a map-type family, the cursor is the HBase qualifier of the last cell
+ *     returned, along with the number of cells already returned from this qualifier: the next page
+ *     starts with this qualifier, and skips the cells already returned.</li>
+ * </ul>
  */
 @ApiAudience.Private
 public final class HBaseKijiPager implements KijiPager {
@@ -50,16 +67,20 @@ public final class HBaseKijiPager implements KijiPager {
   private final KijiDataRequest mColumnDataRequest;
   /** The KijiTable we are reading from. */
   private final HBaseKijiTable mTable;
-  /** The layout for the table this row data came from. */
-  private final KijiTableLayout mLayout;
+  /** Column name translator for the layout of the table this row data came from. */
+  private final ColumnNameTranslator mColumnNameTranslator;
   /** This KijiColumnName of the column being paged through. */
   private final KijiColumnName mColumnName;
   /** The default page size for this column. */
   private final int mDefaultPageSize;
   /** The max number of versions to return from each column. */
   private final int mMaxVersions;
-  /** The offset into cells to begin the page. */
-  private int mOffset;
+  /** Timestamp of the last cell returned, or null before the first page. */
+  private Long mCursorTimestamp = null;
+  /** HBase qualifier of the last cell returned, or null before the first page. */
+  private byte[] mCursorQualifier = null;
+  /** Number of cells returned so far from the HBase qualifier of the cursor. */
+  private int mCursorSkip = 0;
   /** Whether or not an exception will be thrown if .next() is called. */
   private boolean mHasNext;
 
@@ -70,13 +91,13 @@ public final class HBaseKijiPager implements KijiPager {
    *
    * @param entityId The entityId of the row.
    * @param dataRequest The requested data.
-   * @param tableLayout Layout of the table the row belongs to.
+   * @param translator Column name translator for the layout of the table the row belongs to.
    * @param table The Kiji table that this row belongs to.
    * @param colName Name of the paged column.
    * @throws KijiColumnPagingNotEnabledException If paging is not enabled for the specified column.
    */
   protected HBaseKijiPager(EntityId entityId, KijiDataRequest dataRequest,
-    KijiTableLayout tableLayout, HBaseKijiTable table, KijiColumnName colName)
+    ColumnNameTranslator translator, HBaseKijiTable table, KijiColumnName colName)
     throws KijiColumnPagingNotEnabledException {
     KijiDataRequest.Column columnRequest = dataRequest.getColumn(colName.getFamily(),
       colName.getQualifier());
@@ -96,7 +117,7 @@ public final class HBaseKijiPager implements KijiPager {
     mEntityId = entityId;
     mTable = table;
     table.retain();
-    mLayout = tableLayout;
+    mColumnNameTranslator = translator;
     mHasNext = true;
     mMaxVersions = columnRequest.getMaxVersions();
   }
@@ -115,14 +136,22 @@ public final class HBaseKijiPager implements KijiPager {
 
   /** {@inheritDoc} */
   @Override
-  public KijiRowData next(int pageSize) {
+  public synchronized KijiRowData next(int pageSize) {
+    final boolean isQualifiedColumn = mColumnName.isFullyQualified();
+
+    // Versions of a fully-qualified column are sorted by decreasing timestamps:
+    // the next page starts right below the timestamp of the last cell returned.
+    final long maxTimestamp = (isQualifiedColumn && (null != mCursorTimestamp))
+        ? mCursorTimestamp
+        : mColumnDataRequest.getMaxTimestamp();
+
     // Initialize a data request builder from the paged column.
     KijiDataRequestBuilder builder = KijiDataRequest.builder();
     builder
-        .withTimeRange(mColumnDataRequest.getMinTimestamp(), mColumnDataRequest.getMaxTimestamp())
+        .withTimeRange(mColumnDataRequest.getMinTimestamp(), maxTimestamp)
         .newColumnsDef()
             .withFilter(new KijiPaginationFilter(
-                pageSize, mOffset, // Add a pagination filter.
+                pageSize, isQualifiedColumn ? 0 : mCursorSkip, // Add a pagination filter.
                 mColumnDataRequest.getColumn(mColumnName.getFamily(),
                 mColumnName.getQualifier()).getFilter())) // Pass in user defined filters.
             .withMaxVersions(mMaxVersions)
@@ -132,9 +161,21 @@ public final class HBaseKijiPager implements KijiPager {
     LOG.debug("DataRequest in pager is: [{}]", nextPageDataRequest.toString());
     HBaseDataRequestAdapter adapter = new HBaseDataRequestAdapter(nextPageDataRequest);
     try {
-      Get hbaseGet = adapter.toGet(mEntityId, mLayout);
-      incrementOffset(pageSize);
-      Result nextResultPage = mTable.getHTable().get(hbaseGet);
+      Get hbaseGet = adapter.toGet(mEntityId, mColumnNameTranslator);
+      if (!isQualifiedColumn && (null != mCursorQualifier)) {
+        // Seek directly to the qualifier of the cursor, ahead of the filters of the column:
+        hbaseGet.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL,
+            new ColumnRangeFilter(mCursorQualifier, true, null, false),
+            hbaseGet.getFilter()));
+      }
+      final Result nextResultPage;
+      final HTableInterface htable = mTable.acquireHTable();
+      try {
+        nextResultPage = htable.get(hbaseGet);
+      } finally {
+        mTable.releaseHTable(htable);
+      }
+      updateCursor(nextResultPage);
       // If we retrieved less results than expected, we are out of pages.
       if (nextResultPage.size() < pageSize) {
         mHasNext = false;
@@ -159,11 +200,30 @@ public final class HBaseKijiPager implements KijiPager {
   }
 
   /**
-   * Increments the current offset for a page.
+   * Moves the cursor past the cells of a page.
    *
-   * @param pageSize The page size to increment the offset by.
+   * @param page HBase result with the cells of the page, sorted by qualifier then timestamp.
    */
-  private synchronized void incrementOffset(final int pageSize) {
-    mOffset += pageSize;
+  private void updateCursor(Result page) {
+    if (page.isEmpty()) {
+      return;
+    }
+    final KeyValue[] kvs = page.raw();
+    final KeyValue last = kvs[kvs.length - 1];
+    mCursorTimestamp = last.getTimestamp();
+
+    // Count the cells of the page with the same qualifier as the last cell:
+    final byte[] qualifier = last.getQualifier();
+    int count = 0;
+    for (int i = kvs.length - 1; (i >= 0) && kvs[i].matchingQualifier(qualifier); --i) {
+      count += 1;
+    }
+    if ((null != mCursorQualifier) && Bytes.equals(mCursorQualifier, qualifier)) {
+      // The page did not move past the qualifier of the cursor.
+      mCursorSkip += count;
+    } else {
+      mCursorQualifier = qualifier;
+      mCursorSkip = count;
+    }
   }
 }
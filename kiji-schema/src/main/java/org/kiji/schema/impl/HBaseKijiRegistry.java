@@ -0,0 +1,272 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.KijiURI;
+
+/**
+ * JVM-wide registry of shared Kiji instances.
+ *
+ * <p>
+ *   Opening a Kiji instance through the registry returns the instance already opened for the
+ *   same Kiji instance (ZooKeeper quorum, client port and instance name) and an equal
+ *   configuration, if any, with an additional reference retained. Table and column names in the
+ *   URI are ignored. The shared instance is closed and removed from the registry when its last
+ *   reference is released.
+ * </p>
+ *
+ * <p>
+ *   Instances are opened outside of the registry monitor: concurrent opens of the same instance
+ *   wait for a single construction, while opens of other instances proceed.
+ * </p>
+ *
+ * <p>
+ *   The registry is opt-in: {@link HBaseKijiFactory} only opens Kiji instances through the
+ *   registry when the configuration enables {@link #CONF_REGISTRY_ENABLED}.
+ * </p>
+ *
+ * <p> This class is thread-safe. </p>
+ */
+@ApiAudience.Private
+public final class HBaseKijiRegistry {
+  private static final Logger LOG = LoggerFactory.getLogger(HBaseKijiRegistry.class);
+
+  /** Configuration key enabling the sharing of Kiji instances. Disabled by default. */
+  public static final String CONF_REGISTRY_ENABLED = "kiji.instance.registry.enabled";
+
+  /** Singleton registry. */
+  private static final HBaseKijiRegistry SINGLETON = new HBaseKijiRegistry();
+
+  /**
+   * Shared Kiji instances, opened or being opened, keyed by Kiji instance URI and configuration.
+   * Guarded by this.
+   */
+  private final Map<InstanceKey, FutureTask<HBaseKiji>> mInstances = Maps.newHashMap();
+
+  /** Keys of the shared Kiji instances, once opened. Guarded by this. */
+  private final Map<HBaseKiji, InstanceKey> mKeys = Maps.newIdentityHashMap();
+
+  /** @return the JVM-wide registry of shared Kiji instances. */
+  public static HBaseKijiRegistry get() {
+    return SINGLETON;
+  }
+
+  /** Singleton constructor. */
+  private HBaseKijiRegistry() {
+  }
+
+  /**
+   * Opens a shared Kiji instance.
+   *
+   * <p> The caller owns one reference to the returned instance, and must release() it. </p>
+   *
+   * @param uri URI of the Kiji instance to open, or of a table of the Kiji instance.
+   * @param conf Configuration of the Kiji instance.
+   * @return the Kiji instance shared for the given Kiji instance and configuration.
+   * @throws IOException on I/O error.
+   */
+  public HBaseKiji open(final KijiURI uri, final Configuration conf) throws IOException {
+    final InstanceKey key = new InstanceKey(uri, conf);
+    while (true) {
+      FutureTask<HBaseKiji> task;
+      boolean isOwner = false;
+      synchronized (this) {
+        task = mInstances.get(key);
+        if (null == task) {
+          task = new FutureTask<HBaseKiji>(new Callable<HBaseKiji>() {
+            @Override
+            public HBaseKiji call() throws IOException {
+              final HBaseKiji kiji = HBaseKijiFactory.newInstance(key.getURI(), conf);
+              synchronized (HBaseKijiRegistry.this) {
+                kiji.setRegistry(HBaseKijiRegistry.this);
+                mKeys.put(kiji, key);
+              }
+              LOG.debug("Registered shared Kiji instance '{}'.", key.getURI());
+              return kiji;
+            }
+          });
+          mInstances.put(key, task);
+          isOwner = true;
+        }
+      }
+
+      if (isOwner) {
+        // The new instance is retained once, on behalf of the caller.
+        task.run();
+        try {
+          return getOpenedInstance(task);
+        } catch (IOException ioe) {
+          removeFailedTask(key, task);
+          throw ioe;
+        } catch (RuntimeException re) {
+          removeFailedTask(key, task);
+          throw re;
+        } catch (Error error) {
+          removeFailedTask(key, task);
+          throw error;
+        }
+      }
+
+      final HBaseKiji kiji = getOpenedInstance(task);
+      synchronized (this) {
+        // Instances are removed from the registry when their retain counter reaches 0, under this
+        // monitor: a registered instance is still retained.
+        if (mInstances.get(key) == task) {
+          kiji.retain();
+          return kiji;
+        }
+      }
+      // The last reference to the instance was released in the meantime: open a new instance.
+    }
+  }
+
+  /**
+   * Waits for a shared Kiji instance to be opened.
+   *
+   * @param task Task opening the Kiji instance.
+   * @return the opened Kiji instance.
+   * @throws IOException if the instance could not be opened, or if interrupted.
+   */
+  private static HBaseKiji getOpenedInstance(FutureTask<HBaseKiji> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a Kiji instance to open.");
+    } catch (ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Removes the task of a Kiji instance that failed to open, so that later opens retry.
+   *
+   * @param key Key of the Kiji instance.
+   * @param task Task that failed to open the Kiji instance.
+   */
+  private synchronized void removeFailedTask(InstanceKey key, FutureTask<HBaseKiji> task) {
+    if (mInstances.get(key) == task) {
+      mInstances.remove(key);
+    }
+  }
+
+  /**
+   * Releases a reference to a shared Kiji instance.
+   *
+   * <p>
+   *   Removes the instance from the registry when its last reference is released.
+   *   Releasing and retaining shared instances are serialized, so that a shared instance is never
+   *   handed out after its last reference is released.
+   * </p>
+   *
+   * @param kiji Shared Kiji instance to release.
+   * @return the retain counter of the Kiji instance, after the release.
+   */
+  synchronized int release(HBaseKiji kiji) {
+    final int counter = kiji.releaseReference();
+    if (counter == 0) {
+      final InstanceKey key = mKeys.remove(kiji);
+      Preconditions.checkState(null != key, "Kiji instance %s is not registered.", kiji.getURI());
+      mInstances.remove(key);
+      LOG.debug("Unregistered shared Kiji instance '{}'.", kiji.getURI());
+    }
+    return counter;
+  }
+
+  /** @return the number of Kiji instances currently shared through this registry. */
+  public synchronized int getSharedInstanceCount() {
+    return mKeys.size();
+  }
+
+  /** @return the number of live (opened and not yet closed) Kiji instances in this JVM. */
+  public int getLiveInstanceCount() {
+    return HBaseKiji.getLiveInstanceCount();
+  }
+
+  /** Identifies a shared Kiji instance by its instance URI and its configuration. */
+  private static final class InstanceKey {
+    /** URI of the Kiji instance, without table or columns. */
+    private final KijiURI mURI;
+
+    /** Properties of the configuration of the Kiji instance. */
+    private final Map<String, String> mProperties = Maps.newHashMap();
+
+    /**
+     * Initializes the key of a shared Kiji instance.
+     *
+     * @param uri URI of the Kiji instance, or of a table or columns of the Kiji instance.
+     * @param conf Configuration of the Kiji instance.
+     */
+    InstanceKey(KijiURI uri, Configuration conf) {
+      mURI = KijiURI.newBuilder()
+          .withZookeeperQuorum(uri.getZookeeperQuorum().toArray(new String[0]))
+          .withZookeeperClientPort(uri.getZookeeperClientPort())
+          .withInstanceName(uri.getInstance())
+          .build();
+      for (Map.Entry<String, String> property : conf) {
+        mProperties.put(property.getKey(), property.getValue());
+      }
+    }
+
+    /** @return the URI of the Kiji instance, without table or columns. */
+    KijiURI getURI() {
+      return mURI;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof InstanceKey)) {
+        return false;
+      }
+      final InstanceKey other = (InstanceKey) obj;
+      return mURI.equals(other.mURI) && mProperties.equals(other.mProperties);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(mURI, mProperties);
+    }
+  }
+}
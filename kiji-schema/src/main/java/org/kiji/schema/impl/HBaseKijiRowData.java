@@ -21,12 +21,14 @@ package org.kiji.schema.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
@@ -35,6 +37,7 @@ import org.apache.avro.Schema;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,10 +53,9 @@ import org.kiji.schema.KijiPager;
 import org.kiji.schema.KijiRowData;
 import org.kiji.schema.KijiSchemaTable;
 import org.kiji.schema.NoSuchColumnException;
-import org.kiji.schema.SpecificCellDecoderFactory;
 import org.kiji.schema.hbase.HBaseColumnName;
 import org.kiji.schema.layout.KijiTableLayout;
-import org.kiji.schema.layout.impl.CellSpec;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
 import org.kiji.schema.layout.impl.ColumnNameTranslator;
 import org.kiji.schema.util.TimestampComparator;
 
@@ -77,16 +79,19 @@ public final class HBaseKijiRowData implements KijiRowData {
   private final KijiTableLayout mTableLayout;
 
   /** The HBase result providing the data of this object. */
-  private Result mResult;
+  private volatile Result mResult;
 
-  /** A Kiji cell decoder factory. */
-  private final KijiCellDecoderFactory mCellDecoderFactory;
+  /** Provider for the cell decoders of the table this row belongs to. */
+  private final CellDecoderProvider mDecoderProvider;
 
   /** Schema table to resolve schema hashes or IDs. */
   private final KijiSchemaTable mSchemaTable;
 
-  /** A map from kiji family to kiji qualifier to timestamp to raw encoded cell values. */
-  private NavigableMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>> mFilteredMap;
+  /** Translates between Kiji and HBase column names. */
+  private final ColumnNameTranslator mColumnNameTranslator;
+
+  /** Lazily materialized view of the content of the row, replaced when data is merged in. */
+  private volatile RowContent mContent;
 
   /**
    * Initializes a row data.
@@ -111,9 +116,11 @@ public final class HBaseKijiRowData implements KijiRowData {
     mDataRequest = request;
     mTableLayout = layout;
     mResult = result;
-    mCellDecoderFactory = decoderFactory;
     mTable = null;
     mSchemaTable = schemaTable;
+    mDecoderProvider = new CellDecoderProvider(layout, schemaTable, decoderFactory);
+    mColumnNameTranslator = new ColumnNameTranslator(layout);
+    mContent = new RowContent(result);
   }
 
   /**
@@ -164,12 +171,11 @@ public final class HBaseKijiRowData implements KijiRowData {
     mDataRequest = request;
     mTableLayout = table.getLayout();
     mResult = result;
-    mCellDecoderFactory = SpecificCellDecoderFactory.get();
     mSchemaTable = table.getKiji().getSchemaTable();
+    mDecoderProvider = table.getCellDecoderProvider();
+    mColumnNameTranslator = table.getColumnNameTranslator();
     mTable = table;
-
-    // Compute this lazily.
-    mFilteredMap = null;
+    mContent = new RowContent(result);
   }
 
   /**
@@ -241,113 +247,251 @@ public final class HBaseKijiRowData implements KijiRowData {
     List<KeyValue> merged
         = existingKvs != null ? new ArrayList<KeyValue>(existingKvs) : new ArrayList<KeyValue>();
     merged.addAll(keyValues);
-    mResult = new Result(merged);
 
-    // Invalidate the cached filtered map.
-    mFilteredMap = null;
+    // The sort is stable: when merging a cell that already exists, the merged cell comes last.
+    final KeyValue[] sorted = merged.toArray(new KeyValue[merged.size()]);
+    Arrays.sort(sorted, KeyValue.COMPARATOR);
+    mResult = new Result(sorted);
+
+    // Invalidate the materialized row content.
+    mContent = new RowContent(mResult);
   }
 
   /**
-   * Gets a map from kiji family to qualifier to timestamp to raw kiji-encoded bytes of a cell.
+   * Lazily materialized view of the KeyValues of a row.
    *
-   * @return The map.
+   * <p>
+   *   The KeyValues of the row are sorted by HBase column. All the cells of a Kiji family are
+   *   contiguous: the cells of a family are located with a binary search, and families are
+   *   decoded only when accessed.
+   * </p>
+   * <p>This class is thread-safe: a family may be materialized concurrently more than once.</p>
    */
-  public synchronized NavigableMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>>
-      getMap() {
-    if (null != mFilteredMap) {
-      return mFilteredMap;
+  private final class RowContent {
+    /** KeyValues of the row, sorted by KeyValue.COMPARATOR. */
+    private final KeyValue[] mKeyValues;
+
+    /** Map from Kiji family to qualifier to timestamp to raw encoded cells, per family. */
+    private final ConcurrentMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>>
+        mFamilies = Maps.newConcurrentMap();
+
+    /** Map of all the requested families, or null if not built yet. */
+    private volatile NavigableMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>> mMap;
+
+    /**
+     * Initializes the view of a row.
+     *
+     * @param result HBase result with the content of the row.
+     */
+    RowContent(Result result) {
+      final KeyValue[] kvs = result.raw();
+      if (null == kvs) {
+        mKeyValues = new KeyValue[0];
+      } else if (isSorted(kvs)) {
+        mKeyValues = kvs;
+      } else {
+        mKeyValues = Arrays.copyOf(kvs, kvs.length);
+        Arrays.sort(mKeyValues, KeyValue.COMPARATOR);
+      }
     }
 
-    LOG.debug("Filtering the HBase Result into a map of kiji cells...");
-    final NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> map =
-        mResult.getMap();
-    mFilteredMap = new TreeMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>>();
-    if (null == map) {
-      LOG.debug("No result data.");
-      return mFilteredMap;
+    /**
+     * Reports whether an array of KeyValues is sorted.
+     *
+     * @param kvs Array of KeyValues.
+     * @return whether the KeyValues are sorted according to KeyValue.COMPARATOR.
+     */
+    private boolean isSorted(KeyValue[] kvs) {
+      for (int i = 1; i < kvs.length; ++i) {
+        if (KeyValue.COMPARATOR.compare(kvs[i - 1], kvs[i]) > 0) {
+          return false;
+        }
+      }
+      return true;
     }
 
-    final ColumnNameTranslator columnNameTranslator = new ColumnNameTranslator(mTableLayout);
-    // Loop over the families in the HTable.
-    for (NavigableMap.Entry<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> familyEntry
-             : map.entrySet()) {
-      // Loop over the columns in the family.
-      for (NavigableMap.Entry<byte[], NavigableMap<Long, byte[]>> columnEntry
-               : familyEntry.getValue().entrySet()) {
-        final HBaseColumnName hbaseColumnName =
-            new HBaseColumnName(familyEntry.getKey(), columnEntry.getKey());
-
-        // Translate the HBase column name to a Kiji column name.
-        KijiColumnName kijiColumnName;
-        try {
-          kijiColumnName = columnNameTranslator.toKijiColumnName(
-              new HBaseColumnName(familyEntry.getKey(), columnEntry.getKey()));
-        } catch (NoSuchColumnException e) {
-          LOG.info("Ignoring HBase family " + hbaseColumnName
-              + " because it doesn't contain Kiji data.");
-          continue;
+    /**
+     * Gets the cells of a Kiji family, materializing the family if necessary.
+     *
+     * @param family Kiji family name.
+     * @return a map from qualifier to timestamp to raw encoded cell, possibly empty.
+     */
+    NavigableMap<String, NavigableMap<Long, byte[]>> getFamily(String family) {
+      final NavigableMap<String, NavigableMap<Long, byte[]>> existing = mFamilies.get(family);
+      if (null != existing) {
+        return existing;
+      }
+      final NavigableMap<String, NavigableMap<Long, byte[]>> qmap = materializeFamily(family);
+      final NavigableMap<String, NavigableMap<Long, byte[]>> raced =
+          mFamilies.putIfAbsent(family, qmap);
+      return (null != raced) ? raced : qmap;
+    }
+
+    /**
+     * Gets a map of all the requested families.
+     *
+     * @return a map from family to qualifier to timestamp to raw encoded cell.
+     */
+    NavigableMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>> getMap() {
+      NavigableMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>> map = mMap;
+      if (null == map) {
+        map = new TreeMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>>();
+        for (KijiDataRequest.Column columnRequest : mDataRequest.getColumns()) {
+          final String family = columnRequest.getFamily();
+          final NavigableMap<String, NavigableMap<Long, byte[]>> qmap = getFamily(family);
+          if (!qmap.isEmpty()) {
+            map.put(family, qmap);
+          }
         }
-        LOG.debug("Adding family [{}] to getMap() result.", kijiColumnName.getName());
+        mMap = map;
+      }
+      return map;
+    }
 
-        // First check if all columns were requested.
-        KijiDataRequest.Column columnRequest =
-            mDataRequest.getColumn(kijiColumnName.getFamily(), null);
-        if (null == columnRequest) {
-          // Not all columns were requested, so check if this particular column was.
-          columnRequest =
-              mDataRequest.getColumn(kijiColumnName.getFamily(), kijiColumnName.getQualifier());
+    /**
+     * Decodes the requested cells of a Kiji family.
+     *
+     * @param family Kiji family name.
+     * @return a map from qualifier to timestamp to raw encoded cell, possibly empty.
+     */
+    private NavigableMap<String, NavigableMap<Long, byte[]>> materializeFamily(String family) {
+      final NavigableMap<String, NavigableMap<Long, byte[]>> qmap =
+          new TreeMap<String, NavigableMap<Long, byte[]>>();
+      final FamilyLayout familyLayout = mTableLayout.getFamilyMap().get(family);
+      if ((null == familyLayout) || (0 == mKeyValues.length)) {
+        return qmap;
+      }
+      final HBaseColumnName hbaseFamily;
+      try {
+        hbaseFamily = mColumnNameTranslator.toHBaseColumnName(new KijiColumnName(family));
+      } catch (NoSuchColumnException nsce) {
+        return qmap;
+      }
+      LOG.debug("Materializing family [{}].", family);
+
+      // All the HBase qualifiers of a Kiji family start with the same prefix:
+      final byte[] hfamily = hbaseFamily.getFamily();
+      final byte[] prefix = hbaseFamily.getQualifier();
+      final KijiDataRequest.Column familyRequest = mDataRequest.getColumn(family, null);
+
+      // Locate the first cell of the family:
+      final KeyValue searchKey =
+          KeyValue.createFirstOnRow(mKeyValues[0].getRow(), hfamily, prefix);
+      int index = Arrays.binarySearch(mKeyValues, searchKey, KeyValue.COMPARATOR);
+      if (index < 0) {
+        index = -(index + 1);
+      }
+
+      KeyValue previous = null;
+      String qualifier = null;
+      KijiDataRequest.Column columnRequest = null;
+      NavigableMap<Long, byte[]> versionMap = null;
+      for (; index < mKeyValues.length; ++index) {
+        final KeyValue kv = mKeyValues[index];
+        if (!kv.matchingFamily(hfamily) || !hasQualifierPrefix(kv, prefix)) {
+          break;
         }
+
+        if ((null == previous) || !sameQualifier(previous, kv)) {
+          // Translate the qualifier once for all the versions of a column:
+          qualifier = toKijiQualifier(familyLayout, kv, prefix.length);
+          columnRequest = (null == qualifier)
+              ? null
+              : (null != familyRequest) ? familyRequest : mDataRequest.getColumn(family, qualifier);
+          versionMap = null;
+          if (null == columnRequest) {
+            LOG.debug("Ignoring unrequested data: {}:{}", family, qualifier);
+          }
+        }
+        previous = kv;
         if (null == columnRequest) {
-          LOG.debug("Ignoring unrequested data: " + kijiColumnName.getFamily() + ":"
-              + kijiColumnName.getQualifier());
           continue;
         }
 
-        // Loop over the versions.
-        int numVersions = 0;
-        for (NavigableMap.Entry<Long, byte[]> versionEntry : columnEntry.getValue().entrySet()) {
-          if (numVersions >= columnRequest.getMaxVersions()) {
-            LOG.debug("Skipping remaining cells because we hit max versions requested: "
-                + columnRequest.getMaxVersions());
-            break;
-          }
-
-          // Read the timestamp.
-          final long timestamp = versionEntry.getKey();
-          if (mDataRequest.isTimestampInRange(timestamp)) {
-            // Add the cell to the filtered map.
-            if (!mFilteredMap.containsKey(kijiColumnName.getFamily())) {
-              mFilteredMap.put(kijiColumnName.getFamily(),
-                  new TreeMap<String, NavigableMap<Long, byte[]>>());
-            }
-            final NavigableMap<String, NavigableMap<Long, byte[]>> columnMap =
-                mFilteredMap.get(kijiColumnName.getFamily());
-            if (!columnMap.containsKey(kijiColumnName.getQualifier())) {
-              columnMap.put(kijiColumnName.getQualifier(),
-                  new TreeMap<Long, byte[]>(TimestampComparator.INSTANCE));
-            }
-            final NavigableMap<Long, byte[]> versionMap =
-                columnMap.get(kijiColumnName.getQualifier());
-            versionMap.put(versionEntry.getKey(), versionEntry.getValue());
-            ++numVersions;
-          } else {
-            LOG.debug("Excluding cell at timestamp " + timestamp + " because it is out of range ["
-                + mDataRequest.getMinTimestamp() + "," + mDataRequest.getMaxTimestamp() + ")");
-          }
+        final long timestamp = kv.getTimestamp();
+        if (!mDataRequest.isTimestampInRange(timestamp)) {
+          continue;
+        }
+        if (null == versionMap) {
+          versionMap = new TreeMap<Long, byte[]>(TimestampComparator.INSTANCE);
+        }
+        if ((versionMap.size() >= columnRequest.getMaxVersions())
+            && !versionMap.containsKey(timestamp)) {
+          continue;
         }
+        versionMap.put(timestamp, kv.getValue());
+        if (versionMap.size() == 1) {
+          qmap.put(qualifier, versionMap);
+        }
+      }
+      return qmap;
+    }
+
+    /**
+     * Reports whether the qualifier of a KeyValue starts with a given prefix.
+     *
+     * @param kv KeyValue to test.
+     * @param prefix Prefix of the qualifier.
+     * @return whether the qualifier of the KeyValue starts with the given prefix.
+     */
+    private boolean hasQualifierPrefix(KeyValue kv, byte[] prefix) {
+      return (kv.getQualifierLength() >= prefix.length)
+          && (0 == Bytes.compareTo(
+              kv.getBuffer(), kv.getQualifierOffset(), prefix.length,
+              prefix, 0, prefix.length));
+    }
+
+    /**
+     * Reports whether two KeyValues have the same qualifier.
+     *
+     * @param kv1 First KeyValue.
+     * @param kv2 Second KeyValue.
+     * @return whether the two KeyValues have the same qualifier.
+     */
+    private boolean sameQualifier(KeyValue kv1, KeyValue kv2) {
+      return 0 == Bytes.compareTo(
+          kv1.getBuffer(), kv1.getQualifierOffset(), kv1.getQualifierLength(),
+          kv2.getBuffer(), kv2.getQualifierOffset(), kv2.getQualifierLength());
+    }
+
+    /**
+     * Translates the HBase qualifier of a KeyValue into a Kiji qualifier.
+     *
+     * @param familyLayout Layout of the Kiji family the KeyValue belongs to.
+     * @param kv KeyValue whose qualifier is to translate.
+     * @param prefixLength Length of the HBase qualifier prefix of the Kiji family.
+     * @return the Kiji qualifier, or null if the KeyValue does not belong to a Kiji column.
+     */
+    private String toKijiQualifier(FamilyLayout familyLayout, KeyValue kv, int prefixLength) {
+      if (familyLayout.isMapType()) {
+        return Bytes.toString(kv.getBuffer(),
+            kv.getQualifierOffset() + prefixLength, kv.getQualifierLength() - prefixLength);
+      }
+      try {
+        return mColumnNameTranslator.toKijiColumnName(kv).getQualifier();
+      } catch (NoSuchColumnException nsce) {
+        LOG.info("Ignoring HBase column {} because it doesn't contain Kiji data: {}",
+            Bytes.toString(kv.getQualifier()), nsce.getMessage());
+        return null;
       }
     }
-    return mFilteredMap;
+  }
+
+  /**
+   * Gets a map from kiji family to qualifier to timestamp to raw kiji-encoded bytes of a cell.
+   *
+   * <p>This materializes all the requested families. Prefer accessing specific columns.</p>
+   *
+   * @return The map.
+   */
+  public NavigableMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>> getMap() {
+    return mContent.getMap();
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized boolean containsColumn(String family, String qualifier) {
-    final NavigableMap<String, NavigableMap<Long, byte[]>> columnMap = getMap().get(family);
-    if (null == columnMap) {
-      return false;
-    }
-   final  NavigableMap<Long, byte[]> versionMap = columnMap.get(qualifier);
+  public boolean containsColumn(String family, String qualifier) {
+    final NavigableMap<Long, byte[]> versionMap = getRawTimestampMap(family, qualifier);
     if (null == versionMap) {
       return false;
     }
@@ -356,13 +500,8 @@ public final class HBaseKijiRowData implements KijiRowData {
 
   /** {@inheritDoc} */
   @Override
-  public synchronized boolean containsColumn(String family) {
-
-    final NavigableMap<String, NavigableMap<Long, byte[]>> columnMap = getMap().get(family);
-        for (Map.Entry<String, NavigableMap<String, NavigableMap<Long, byte[]>>> columnMapEntry
-          : getMap().entrySet()) {
-          LOG.debug("The result return contains family [{}]", columnMapEntry.getKey());
-        }
+  public boolean containsColumn(String family) {
+    final NavigableMap<String, NavigableMap<Long, byte[]>> columnMap = getRawQualifierMap(family);
     if (null == columnMap) {
       return false;
     }
@@ -371,14 +510,14 @@ public final class HBaseKijiRowData implements KijiRowData {
 
   /** {@inheritDoc} */
   @Override
-  public synchronized boolean containsCell(String family, String qualifier, long timestamp) {
+  public boolean containsCell(String family, String qualifier, long timestamp) {
     return containsColumn(family, qualifier)
         && getTimestamps(family, qualifier).contains(timestamp);
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized NavigableSet<String> getQualifiers(String family) {
+  public NavigableSet<String> getQualifiers(String family) {
     final NavigableMap<String, NavigableMap<Long, byte[]>> qmap = getRawQualifierMap(family);
     if (null == qmap) {
       return Sets.newTreeSet();
@@ -388,7 +527,7 @@ public final class HBaseKijiRowData implements KijiRowData {
 
   /** {@inheritDoc} */
   @Override
-  public synchronized NavigableSet<Long> getTimestamps(String family, String qualifier) {
+  public NavigableSet<Long> getTimestamps(String family, String qualifier) {
     final NavigableMap<Long, byte[]> tmap = getRawTimestampMap(family, qualifier);
     if (null == tmap) {
       return Sets.newTreeSet(TimestampComparator.INSTANCE);
@@ -414,7 +553,7 @@ public final class HBaseKijiRowData implements KijiRowData {
    * @return the encoded map of qualifiers in the specified family, or null.
    */
   private NavigableMap<String, NavigableMap<Long, byte[]>> getRawQualifierMap(String family) {
-    return getMap().get(family);
+    return mContent.getFamily(family);
   }
 
   /**
@@ -600,11 +739,7 @@ public final class HBaseKijiRowData implements KijiRowData {
    */
   private <T> KijiCellDecoder<T> getDecoder(String family, String qualifier)
       throws IOException {
-    // TODO: there is a need for caching decoders, or at least cell specs, as building the cell
-    //     spec causes parsing a JSON schema or looking up a class by name.
-    final CellSpec cellSpec = mTableLayout.getCellSpec(new KijiColumnName(family, qualifier))
-        .setSchemaTable(mSchemaTable);
-    return mCellDecoderFactory.create(cellSpec);
+    return mDecoderProvider.getDecoder(family, qualifier);
   }
 
   /** {@inheritDoc} */
@@ -612,7 +747,8 @@ public final class HBaseKijiRowData implements KijiRowData {
   public KijiPager getPager(String family, String qualifier)
     throws KijiColumnPagingNotEnabledException {
     final KijiColumnName kijiColumnName = new KijiColumnName(family, qualifier);
-    return new HBaseKijiPager(mEntityId, mDataRequest, mTableLayout, mTable,  kijiColumnName);
+    return new HBaseKijiPager(
+        mEntityId, mDataRequest, mColumnNameTranslator, mTable, kijiColumnName);
   }
 
     /** {@inheritDoc} */
@@ -627,6 +763,7 @@ public final class HBaseKijiRowData implements KijiRowData {
     if (kijiFamily.isFullyQualified()) {
       throw new IllegalArgumentException("Family name (" + family + ") had a colon ':' in it");
     }
-    return new HBaseKijiPager(mEntityId, mDataRequest, mTableLayout, mTable, kijiFamily);
+    return new HBaseKijiPager(
+        mEntityId, mDataRequest, mColumnNameTranslator, mTable, kijiFamily);
   }
 }
@@ -20,9 +20,22 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.slf4j.Logger;
@@ -35,12 +48,20 @@ import org.kiji.schema.KijiDataRequest;
 import org.kiji.schema.KijiIOException;
 import org.kiji.schema.KijiRowData;
 import org.kiji.schema.KijiRowScanner;
+import org.kiji.schema.metrics.MetricsRegistry;
 import org.kiji.schema.util.Debug;
 import org.kiji.schema.util.ResourceUtils;
 
 
 /**
  * The internal implementation of KijiRowScanner that reads from HTables.
+ *
+ * <p>
+ *   By default, HBase results are fetched and decoded into rows on the thread iterating over the
+ *   scanner. When configured with a positive prefetch size, the scanner is pipelined instead:
+ *   a producer thread fetches the HBase results and hands them off to a pool of decoder threads,
+ *   with at most <i>prefetch size</i> rows in flight ahead of the consumer.
+ * </p>
  */
 @ApiAudience.Private
 public class HBaseKijiRowScanner implements KijiRowScanner {
@@ -48,6 +69,9 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
   private static final Logger CLEANUP_LOG =
       LoggerFactory.getLogger("cleanup." + HBaseKijiRowScanner.class.getName());
 
+  /** Marks the end of the rows in the queue of a pipelined scanner. */
+  private static final Future<KijiRowData> END_OF_ROWS = Futures.<KijiRowData>immediateFuture(null);
+
   /** The HBase result scanner. */
   private final ResultScanner mResultScanner;
 
@@ -57,6 +81,30 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
   /** The table being scanned. */
   private final HBaseKijiTable mTable;
 
+  /** Factory for the entity IDs of the rows, shared by all the rows of the table. */
+  private final EntityIdFactory mEntityIdFactory;
+
+  /** Maximum number of rows fetched ahead of the consumer, or 0 if the scanner is not pipelined. */
+  private final int mPrefetchSize;
+
+  /** Number of threads decoding rows, when pipelined. */
+  private final int mDecoderThreads;
+
+  /** Whether rows are delivered in the order of the table, when pipelined. */
+  private final boolean mOrderedDelivery;
+
+  /** Records the latencies of fetching the next HBase result, including scanner RPCs. */
+  private final MetricsRegistry.Timer mFetchTimer;
+
+  /** Counts the rows scanned. */
+  private final MetricsRegistry.Counter mRowsScanned;
+
+  /** Counts the cells scanned. */
+  private final MetricsRegistry.Counter mCellsScanned;
+
+  /** The pipeline feeding the scanner, created on the first call to iterator(), or null. */
+  private PipelinedRowIterator mPipeline = null;
+
   /** Whether the writer is open. */
   private boolean mIsOpen;
   /** For debugging finalize(). */
@@ -69,6 +117,9 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
     private ResultScanner mHBaseResultScanner;
     private KijiDataRequest mDataRequest;
     private HBaseKijiTable mTable;
+    private int mPrefetchSize = 0;
+    private int mDecoderThreads = 1;
+    private boolean mOrderedDelivery = true;
 
     /**
      * Sets the HBase result scanner the KijiRowScanner will wrap.
@@ -103,6 +154,39 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
       return this;
     }
 
+    /**
+     * Sets the maximum number of rows prefetched and decoded ahead of the consumer.
+     *
+     * @param prefetchSize Maximum number of rows in flight, or 0 to disable the pipeline.
+     * @return This options instance.
+     */
+    public Options withPrefetchSize(int prefetchSize) {
+      mPrefetchSize = prefetchSize;
+      return this;
+    }
+
+    /**
+     * Sets the number of threads decoding rows in a pipelined scanner.
+     *
+     * @param decoderThreads Number of threads decoding rows.
+     * @return This options instance.
+     */
+    public Options withDecoderThreads(int decoderThreads) {
+      mDecoderThreads = decoderThreads;
+      return this;
+    }
+
+    /**
+     * Sets whether a pipelined scanner delivers the rows in the order of the table.
+     *
+     * @param ordered Whether rows are delivered in the order of the table.
+     * @return This options instance.
+     */
+    public Options withOrderedDelivery(boolean ordered) {
+      mOrderedDelivery = ordered;
+      return this;
+    }
+
     /**
      * Gets the HBase result scanner.
      *
@@ -129,6 +213,33 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
     public HBaseKijiTable getTable() {
       return mTable;
     }
+
+    /**
+     * Gets the maximum number of rows prefetched ahead of the consumer.
+     *
+     * @return The maximum number of rows in flight, or 0 if the scanner is not pipelined.
+     */
+    public int getPrefetchSize() {
+      return mPrefetchSize;
+    }
+
+    /**
+     * Gets the number of threads decoding rows in a pipelined scanner.
+     *
+     * @return The number of threads decoding rows.
+     */
+    public int getDecoderThreads() {
+      return mDecoderThreads;
+    }
+
+    /**
+     * Gets whether a pipelined scanner delivers the rows in the order of the table.
+     *
+     * @return Whether rows are delivered in the order of the table.
+     */
+    public boolean isOrderedDelivery() {
+      return mOrderedDelivery;
+    }
   }
 
   /**
@@ -145,23 +256,52 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
     mResultScanner = options.getHBaseResultScanner();
     mKijiDataRequest = options.getDataRequest();
     mTable = options.getTable();
+    mEntityIdFactory = mTable.getEntityIdFactory();
+    mPrefetchSize = options.getPrefetchSize();
+    mDecoderThreads = options.getDecoderThreads();
+    mOrderedDelivery = options.isOrderedDelivery();
+    final MetricsRegistry metrics = mTable.getMetricsRegistry();
+    final String tableName = mTable.getName();
+    mFetchTimer = metrics.getTimer(TableMetrics.getName(tableName, "scanner.fetch"));
+    mRowsScanned = metrics.getCounter(TableMetrics.getName(tableName, "scanner.rows"));
+    mCellsScanned = metrics.getCounter(TableMetrics.getName(tableName, "scanner.cells"));
+    Preconditions.checkArgument(mPrefetchSize >= 0, "Invalid prefetch size: %s", mPrefetchSize);
+    Preconditions.checkArgument(mDecoderThreads > 0,
+        "Invalid number of decoder threads: %s", mDecoderThreads);
   }
 
   /** {@inheritDoc} */
   @Override
-  public KijiRowIterator iterator() {
-    return new KijiRowIterator(mResultScanner.iterator());
+  public Iterator<KijiRowData> iterator() {
+    if (0 == mPrefetchSize) {
+      return new KijiRowIterator();
+    }
+    synchronized (this) {
+      Preconditions.checkState(mIsOpen, "Cannot iterate over a closed KijiRowScanner.");
+      // The pipeline consumes the HBase result scanner: there can only be one.
+      if (null == mPipeline) {
+        mPipeline = new PipelinedRowIterator();
+      }
+      return mPipeline;
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public void close() {
-    if (!mIsOpen) {
-      LOG.warn("Called close() on [HBase]KijiRowScanner more than once.");
+    final PipelinedRowIterator pipeline;
+    synchronized (this) {
+      if (!mIsOpen) {
+        LOG.warn("Called close() on [HBase]KijiRowScanner more than once.");
+      }
+      mIsOpen = false;
+      pipeline = mPipeline;
     }
 
-    mIsOpen = false;
-
+    // Stop the producer thread before closing the HBase scanner it is reading from:
+    if (null != pipeline) {
+      pipeline.stop();
+    }
     ResourceUtils.closeOrLog(mResultScanner);
   }
 
@@ -182,38 +322,37 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
    * Class for iterating over a Kiji Table.
    */
   private class KijiRowIterator implements Iterator<KijiRowData> {
-    /** The wrapped HBase results. */
-    private final Iterator<Result> mResults;
+    /** Next HBase result, fetched by hasNext() but not consumed yet, or null. */
+    private Result mNextResult = null;
 
-    /**
-     * Creates a new <code>KijiRowIterator</code> instance.
-     *
-     * @param results An Iterator of HBase results.
-     */
-    public KijiRowIterator(Iterator<Result> results) {
-      mResults = Preconditions.checkNotNull(results);
-    }
+    /** Whether the HBase scanner is exhausted. */
+    private boolean mExhausted = false;
 
     /** {@inheritDoc} */
     @Override
     public boolean hasNext() {
-      return mResults.hasNext();
+      if ((null == mNextResult) && !mExhausted) {
+        try {
+          mNextResult = fetch();
+        } catch (IOException ioe) {
+          throw new KijiIOException(ioe);
+        }
+        mExhausted = (null == mNextResult);
+      }
+      return null != mNextResult;
     }
 
     /** {@inheritDoc} */
     @Override
     public KijiRowData next() {
-      final Result result = mResults.next();
-      if (null == result) {
+      if (!hasNext()) {
         return null;
       }
+      final Result result = mNextResult;
+      mNextResult = null;
 
-      // Read the entity id from the HBase result.
-      final EntityId entityId = EntityIdFactory.getFactory(mTable.getLayout())
-          .getEntityIdFromHBaseRowKey(result.getRow());
       try {
-        // TODO: Inject the cell decoder factory in the row data
-        return new HBaseKijiRowData(entityId, mKijiDataRequest, mTable, result);
+        return toRowData(result);
       } catch (IOException ioe) {
         throw new KijiIOException(ioe);
       }
@@ -225,4 +364,241 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
       throw new UnsupportedOperationException("KijiRowIterator does not support remove().");
     }
   }
+
+  /**
+   * Fetches the next HBase result.
+   *
+   * <p>
+   *   Calls the HBase scanner directly, so that the fetch timer accounts for the scanner RPCs:
+   *   the iterator of an HBase scanner sends them from hasNext().
+   * </p>
+   *
+   * @return the next HBase result, or null if the scan is complete.
+   * @throws IOException on I/O error.
+   */
+  private Result fetch() throws IOException {
+    final long startNanos = mFetchTimer.start();
+    try {
+      return mResultScanner.next();
+    } finally {
+      mFetchTimer.stop(startNanos);
+    }
+  }
+
+  /**
+   * Builds the row data for an HBase result.
+   *
+   * @param result HBase result to decode.
+   * @return the row data for the HBase result.
+   * @throws IOException on I/O error.
+   */
+  private HBaseKijiRowData toRowData(Result result) throws IOException {
+    mRowsScanned.inc(1);
+    mCellsScanned.inc(result.size());
+    // Read the entity id from the HBase result.
+    final EntityId entityId = mEntityIdFactory.getEntityIdFromHBaseRowKey(result.getRow());
+    // TODO: Inject the cell decoder factory in the row data
+    return new HBaseKijiRowData(entityId, mKijiDataRequest, mTable, result);
+  }
+
+  /**
+   * Iterator over the rows decoded by a pipeline of threads.
+   *
+   * <p>
+   *   A producer thread reads the HBase results and submits them to a pool of decoder threads.
+   *   Decoded rows reach the consumer through a queue of futures: with ordered delivery, the
+   *   producer queues the futures in the order of the table; otherwise, each decoder queues its
+   *   row as soon as it is decoded. A semaphore bounds the number of rows in flight.
+   *   The end of the scan, or the first error, is reported in the queue.
+   * </p>
+   */
+  private final class PipelinedRowIterator implements Iterator<KijiRowData> {
+    /** Decoded rows, in delivery order, ending with END_OF_ROWS. */
+    private final BlockingQueue<Future<KijiRowData>> mQueue =
+        new LinkedBlockingQueue<Future<KijiRowData>>();
+
+    /** Bounds the number of rows fetched ahead of the consumer. */
+    private final Semaphore mInFlight = new Semaphore(mPrefetchSize);
+
+    /**
+     * With unordered delivery, number of rows being decoded, plus one while the producer runs.
+     * The thread decrementing this counter to 0 queues the end of the rows.
+     */
+    private final AtomicInteger mPending = new AtomicInteger(1);
+
+    /** Pool of threads decoding the rows. */
+    private final ExecutorService mDecoders;
+
+    /** Thread fetching the HBase results. */
+    private final Thread mProducer;
+
+    /** Set when the scanner is closed. */
+    private volatile boolean mStopped = false;
+
+    /** Next element of the queue, taken by hasNext() but not consumed yet, or null. */
+    private Future<KijiRowData> mNext = null;
+
+    /** Failure of the producer thread, queued after the rows already submitted, or null. */
+    private volatile Future<KijiRowData> mProducerFailure = null;
+
+    /**
+     * Starts a pipeline over the results of the HBase scanner.
+     *
+     * <p>The HBase scanner is only accessed by the producer thread.</p>
+     */
+    public PipelinedRowIterator() {
+      final String table = mTable.getName();
+      mDecoders = Executors.newFixedThreadPool(mDecoderThreads, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("kiji-scanner-decoder-" + table + "-%d")
+          .build());
+      mProducer = new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("kiji-scanner-producer-" + table + "-%d")
+          .build()
+          .newThread(new Producer());
+      mProducer.start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext() {
+      if (null == mNext) {
+        try {
+          mNext = mQueue.take();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new KijiIOException(
+              new InterruptedIOException("Interrupted while waiting for the next row."));
+        }
+        // The producer acquires one permit per row submitted: the end of the rows and the
+        // failure of the producer hold none.
+        if ((END_OF_ROWS != mNext) && (mProducerFailure != mNext)) {
+          mInFlight.release();
+        }
+      }
+      return END_OF_ROWS != mNext;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public KijiRowData next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final Future<KijiRowData> future = mNext;
+      mNext = null;
+      try {
+        return future.get();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new KijiIOException(
+            new InterruptedIOException("Interrupted while waiting for the next row."));
+      } catch (ExecutionException ee) {
+        final Throwable cause = ee.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new KijiIOException(cause);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("KijiRowIterator does not support remove().");
+    }
+
+    /** Stops the pipeline, and waits for the producer thread to release the HBase scanner. */
+    public void stop() {
+      mStopped = true;
+      mProducer.interrupt();
+      mDecoders.shutdownNow();
+      try {
+        mProducer.join();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      // Rows cancelled by the decoders shutdown are never queued:
+      mQueue.add(END_OF_ROWS);
+    }
+
+    /**
+     * Hands off an HBase result to the decoder threads.
+     *
+     * @param result HBase result to decode.
+     */
+    private void submit(final Result result) {
+      final Callable<KijiRowData> decode = new Callable<KijiRowData>() {
+        /** {@inheritDoc} */
+        @Override
+        public KijiRowData call() throws IOException {
+          final HBaseKijiRowData row = toRowData(result);
+          // Materialize the requested families on the decoder thread:
+          row.getMap();
+          return row;
+        }
+      };
+      if (mOrderedDelivery) {
+        mQueue.add(mDecoders.submit(decode));
+      } else {
+        mPending.incrementAndGet();
+        mDecoders.execute(new Runnable() {
+          /** {@inheritDoc} */
+          @Override
+          public void run() {
+            try {
+              mQueue.add(Futures.immediateFuture(decode.call()));
+            } catch (Exception exn) {
+              mQueue.add(Futures.<KijiRowData>immediateFailedFuture(exn));
+            } finally {
+              if (0 == mPending.decrementAndGet()) {
+                mQueue.add(END_OF_ROWS);
+              }
+            }
+          }
+        });
+      }
+    }
+
+    /** Reads the HBase results and submits them to the decoder threads. */
+    private final class Producer implements Runnable {
+      /** {@inheritDoc} */
+      @Override
+      public void run() {
+        try {
+          while (!mStopped) {
+            final Result result = fetch();
+            if (null == result) {
+              break;
+            }
+            mInFlight.acquire();
+            submit(result);
+          }
+        } catch (InterruptedException ie) {
+          LOG.debug("Pipelined scanner on table '{}' interrupted.", mTable.getURI());
+        } catch (IOException ioe) {
+          fail(ioe);
+        } catch (RuntimeException re) {
+          fail(re);
+        } finally {
+          if (mOrderedDelivery || (0 == mPending.decrementAndGet())) {
+            mQueue.add(END_OF_ROWS);
+          }
+        }
+      }
+
+      /**
+       * Reports the failure of the producer to the consumer, after the rows already submitted.
+       *
+       * @param error Cause of the failure.
+       */
+      private void fail(Exception error) {
+        if (!mStopped) {
+          mProducerFailure = Futures.<KijiRowData>immediateFailedFuture(error);
+          mQueue.add(mProducerFailure);
+        }
+      }
+    }
+  }
 }
@@ -21,12 +21,14 @@ package org.kiji.schema.impl;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Preconditions;
-
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.HRegionLocation;
@@ -42,6 +44,7 @@ import org.kiji.schema.EntityId;
 import org.kiji.schema.EntityIdFactory;
 import org.kiji.schema.InternalKijiError;
 import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiDataRequest;
 import org.kiji.schema.KijiRegion;
 import org.kiji.schema.KijiTable;
 import org.kiji.schema.KijiTableNotFoundException;
@@ -49,10 +52,10 @@ import org.kiji.schema.KijiTableReader;
 import org.kiji.schema.KijiTableWriter;
 import org.kiji.schema.KijiURI;
 import org.kiji.schema.KijiWriterFactory;
-import org.kiji.schema.avro.RowKeyFormat;
-import org.kiji.schema.avro.RowKeyFormat2;
 import org.kiji.schema.hbase.KijiManagedHBaseTableName;
 import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
+import org.kiji.schema.metrics.MetricsRegistry;
 import org.kiji.schema.util.Debug;
 import org.kiji.schema.util.ResourceUtils;
 
@@ -69,6 +72,36 @@ public final class HBaseKijiTable implements KijiTable {
   private static final Logger CLEANUP_LOG =
       LoggerFactory.getLogger("cleanup." + HBaseKijiTable.class.getName());
 
+  /**
+   * Configuration key for the maximum number of HTables of a Kiji table that may be used
+   * concurrently by the readers and writers of the table.
+   */
+  public static final String CONF_HTABLE_POOL_SIZE = "kiji.table.htable.pool.size";
+
+  /** Default maximum number of HTables that may be used concurrently. */
+  public static final int DEFAULT_HTABLE_POOL_SIZE = 10;
+
+  /** Configuration key for the maximum number of compiled data requests cached per table. */
+  public static final String CONF_DATA_REQUEST_CACHE_SIZE = "kiji.table.data.request.cache.size";
+
+  /** Default maximum number of compiled data requests cached per table. */
+  public static final int DEFAULT_DATA_REQUEST_CACHE_SIZE = 256;
+
+  /**
+   * Configuration key for the number of threads used by the readers of a table to send
+   * bulk gets in parallel. Bulk gets are sent serially when this is 0.
+   */
+  public static final String CONF_BULK_GET_THREADS = "kiji.table.reader.bulk.get.threads";
+
+  /** By default, bulk gets are sent serially. */
+  public static final int DEFAULT_BULK_GET_THREADS = 0;
+
+  /** Configuration key for the maximum number of rows per batch of a parallel bulk get. */
+  public static final String CONF_BULK_GET_BATCH_SIZE = "kiji.table.reader.bulk.get.batch.size";
+
+  /** Default maximum number of rows per batch of a parallel bulk get. */
+  public static final int DEFAULT_BULK_GET_BATCH_SIZE = 100;
+
   /** The kiji instance this table belongs to. */
   private final HBaseKiji mKiji;
 
@@ -87,14 +120,20 @@ public final class HBaseKijiTable implements KijiTable {
   /** The underlying HTable that stores this Kiji table's data. */
   private final HTableInterface mHTable;
 
+  /** Pool of HTables used by the readers and writers of this table. */
+  private final HTableInterfacePool mHTablePool;
+
+  /** Pool of HTables for the stripes table, used by tables with striped counters. */
+  private final HTableInterfacePool mStripesHTablePool;
+
   /** HTableInterfaceFactory for creating new HTables associated with this KijiTable. */
   private final HTableInterfaceFactory mHTableFactory;
 
-  /** The layout of the Kiji table. */
-  private final KijiTableLayout mTableLayout;
-
-  /** The factory for EntityIds. */
-  private final EntityIdFactory mEntityIdFactory;
+  /**
+   * The layout of the Kiji table, along with the entity ID factory, cell decoders and compiled
+   * data requests derived from it. Shared by all the opened handles of the table.
+   */
+  private final CachedTableLayout mCachedLayout;
 
   /** Retain counter. When decreased to 0, the HBase KijiTable may be closed and disposed of. */
   private final AtomicInteger mRetainCount = new AtomicInteger(1);
@@ -105,6 +144,9 @@ public final class HBaseKijiTable implements KijiTable {
   /** Writer factory for this table. */
   private final KijiWriterFactory mWriterFactory;
 
+  /** Executor for the parallel bulk gets of the readers, created lazily. Guarded by this. */
+  private ExecutorService mBulkGetExecutor = null;
+
   /**
    * Construct an opened Kiji table stored in HBase.
    *
@@ -137,27 +179,25 @@ public final class HBaseKijiTable implements KijiTable {
     mKiji = kiji;
     mName = name;
     mTableURI = KijiURI.newBuilder(mKiji.getURI()).withTableName(mName).build();
-    mTableLayout = mKiji.getMetaTable().getTableLayout(name);
+    mCachedLayout = mKiji.getTableLayoutCache().get(name);
     mWriterFactory = new HBaseKijiWriterFactory(this);
     mHTableFactory = htableFactory;
     mConf = conf;
+    final String hbaseTableName =
+        KijiManagedHBaseTableName.getKijiTableName(kiji.getURI().getInstance(), name).toString();
     try {
-      mHTable = htableFactory.create(conf,
-          KijiManagedHBaseTableName.getKijiTableName(kiji.getURI().getInstance(), name).toString());
+      mHTable = htableFactory.create(conf, hbaseTableName);
     } catch (TableNotFoundException e) {
       close();
       throw new KijiTableNotFoundException(name);
     }
-
-    if (mTableLayout.getDesc().getKeysFormat() instanceof RowKeyFormat) {
-      mEntityIdFactory = EntityIdFactory.getFactory((RowKeyFormat) mTableLayout.getDesc()
-          .getKeysFormat());
-    } else if (mTableLayout.getDesc().getKeysFormat() instanceof RowKeyFormat2) {
-      mEntityIdFactory = EntityIdFactory.getFactory((RowKeyFormat2) mTableLayout.getDesc()
-          .getKeysFormat());
-    } else {
-      throw new RuntimeException("Invalid Row Key format found in Kiji Table");
-    }
+    mHTablePool = new HTableInterfacePool(hbaseTableName, conf, htableFactory,
+        conf.getInt(CONF_HTABLE_POOL_SIZE, DEFAULT_HTABLE_POOL_SIZE));
+    // HTables of the stripes table are created lazily, for tables with striped counters only:
+    mStripesHTablePool = new HTableInterfacePool(
+        KijiManagedHBaseTableName.getCounterStripesTableName(
+            kiji.getURI().getInstance(), name).toString(),
+        conf, htableFactory, conf.getInt(CONF_HTABLE_POOL_SIZE, DEFAULT_HTABLE_POOL_SIZE));
 
     mIsOpen = new AtomicBoolean(true);
     mConstructorStack = CLEANUP_LOG.isDebugEnabled() ? Debug.getStackTrace() : null;
@@ -169,7 +209,16 @@ public final class HBaseKijiTable implements KijiTable {
   /** {@inheritDoc} */
   @Override
   public EntityId getEntityId(Object... kijiRowKey) {
-    return mEntityIdFactory.getEntityId(kijiRowKey);
+    return mCachedLayout.getEntityIdFactory().getEntityId(kijiRowKey);
+  }
+
+  /**
+   * Returns the entity ID factory for this table.
+   *
+   * @return the entity ID factory for this table.
+   */
+  public EntityIdFactory getEntityIdFactory() {
+    return mCachedLayout.getEntityIdFactory();
   }
 
   /** {@inheritDoc} */
@@ -206,7 +255,84 @@ public final class HBaseKijiTable implements KijiTable {
   /** {@inheritDoc} */
   @Override
   public KijiTableLayout getLayout() {
-    return mTableLayout;
+    return mCachedLayout.getLayout();
+  }
+
+  /**
+   * Returns the metrics registry of the Kiji instance this table belongs to.
+   *
+   * @return the metrics registry of the Kiji instance this table belongs to.
+   */
+  public MetricsRegistry getMetricsRegistry() {
+    return mKiji.getMetricsRegistry();
+  }
+
+  /**
+   * Returns the cached layout of this table, shared by all the opened handles of the table.
+   *
+   * @return the cached layout of this table.
+   */
+  public CachedTableLayout getCachedLayout() {
+    return mCachedLayout;
+  }
+
+  /**
+   * Returns the provider for the cell decoders of this table.
+   *
+   * <p>Decoders are bound to the layout of this table and are shared by all the readers of all
+   * the opened handles of the table.</p>
+   *
+   * @return the provider for the cell decoders of this table.
+   */
+  public CellDecoderProvider getCellDecoderProvider() {
+    return mCachedLayout.getCellDecoderProvider();
+  }
+
+  /** @return the column name translator for the layout of this table. */
+  public ColumnNameTranslator getColumnNameTranslator() {
+    return mCachedLayout.getColumnNameTranslator();
+  }
+
+  /**
+   * Compiles a data request against the layout of this table.
+   *
+   * <p>Compiled data requests are cached and shared by all the readers of all the opened handles
+   * of the table.</p>
+   *
+   * @param dataRequest Data request to compile.
+   * @return the data request compiled against the layout of this table.
+   * @throws IOException on I/O error.
+   * @throws org.kiji.schema.KijiDataRequestException if the data request is invalid.
+   */
+  public CompiledDataRequest getCompiledDataRequest(KijiDataRequest dataRequest)
+      throws IOException {
+    return mCachedLayout.getCompiledDataRequest(dataRequest);
+  }
+
+  /**
+   * Returns the executor the readers of this table use to send bulk gets in parallel.
+   *
+   * <p>The executor is created on first use, and shut down when this table is closed.</p>
+   *
+   * @return the executor for parallel bulk gets, or null if bulk gets are sent serially.
+   */
+  public synchronized ExecutorService getBulkGetExecutor() {
+    if (null == mBulkGetExecutor) {
+      final int nthreads = mConf.getInt(CONF_BULK_GET_THREADS, DEFAULT_BULK_GET_THREADS);
+      if (nthreads <= 0) {
+        return null;
+      }
+      mBulkGetExecutor = Executors.newFixedThreadPool(nthreads, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("kiji-bulk-get-" + mName + "-%d")
+          .build());
+    }
+    return mBulkGetExecutor;
+  }
+
+  /** @return the maximum number of rows per batch of a parallel bulk get. */
+  public int getBulkGetBatchSize() {
+    return mConf.getInt(CONF_BULK_GET_BATCH_SIZE, DEFAULT_BULK_GET_BATCH_SIZE);
   }
 
   /** {@inheritDoc} */
@@ -268,11 +394,72 @@ public final class HBaseKijiTable implements KijiTable {
     return result;
   }
 
-  /** @return The underlying HTable instance. */
+  /**
+   * Returns the HTable owned by this table.
+   *
+   * <p>
+   *   The returned HTable is shared and not thread-safe: it should only be used for
+   *   administrative purposes, such as looking up region boundaries.
+   *   Readers and writers should use {@link #acquireHTable()} instead.
+   * </p>
+   *
+   * @return The underlying HTable instance.
+   */
   public HTableInterface getHTable() {
     return mHTable;
   }
 
+  /**
+   * Checks out an HTable from the pool of this table, blocking until one is available.
+   *
+   * <p>The HTable must be returned with {@link #releaseHTable(HTableInterface)}.</p>
+   *
+   * @return an HTable for the exclusive use of the caller, until released.
+   * @throws IOException on I/O error.
+   */
+  public HTableInterface acquireHTable() throws IOException {
+    return mHTablePool.acquire();
+  }
+
+  /**
+   * Returns an HTable to the pool of this table.
+   *
+   * @param htable HTable previously obtained with {@link #acquireHTable()}.
+   */
+  public void releaseHTable(HTableInterface htable) {
+    mHTablePool.release(htable);
+  }
+
+  /**
+   * Checks out an HTable for the stripes table, blocking until one is available.
+   *
+   * <p>
+   *   The stripes table holds the stripes of the striped counters, and exists only if the table
+   *   has striped counters. See {@link CounterStripes}.
+   *   The HTable must be returned with {@link #releaseStripesHTable(HTableInterface)}.
+   * </p>
+   *
+   * @return an HTable of the stripes table, for the exclusive use of the caller, until released.
+   * @throws IOException on I/O error.
+   */
+  public HTableInterface acquireStripesHTable() throws IOException {
+    return mStripesHTablePool.acquire();
+  }
+
+  /**
+   * Returns an HTable of the stripes table to its pool.
+   *
+   * @param htable HTable previously obtained with {@link #acquireStripesHTable()}.
+   */
+  public void releaseStripesHTable(HTableInterface htable) {
+    mStripesHTablePool.release(htable);
+  }
+
+  /** @return the pool of HTables used by the readers and writers of this table. */
+  public HTableInterfacePool getHTablePool() {
+    return mHTablePool;
+  }
+
   /** {@inheritDoc} */
   @Deprecated
   @Override
@@ -292,6 +479,17 @@ public final class HBaseKijiTable implements KijiTable {
         "HBaseKijiTable.close() on table '%s' already closed.", mTableURI);
 
     LOG.debug("Closing HBaseKijiTable '{}'.", mTableURI);
+    synchronized (this) {
+      if (null != mBulkGetExecutor) {
+        mBulkGetExecutor.shutdown();
+      }
+    }
+    if (null != mHTablePool) {
+      mHTablePool.close();
+    }
+    if (null != mStripesHTablePool) {
+      mStripesHTablePool.close();
+    }
     if (null != mHTable) {
       mHTable.close();
     }
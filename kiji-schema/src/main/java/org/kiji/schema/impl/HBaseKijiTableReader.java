@@ -20,12 +20,24 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +46,6 @@ import org.kiji.annotations.ApiAudience;
 import org.kiji.schema.EntityId;
 import org.kiji.schema.InternalKijiError;
 import org.kiji.schema.KijiDataRequest;
-import org.kiji.schema.KijiDataRequestValidator;
 import org.kiji.schema.KijiRowData;
 import org.kiji.schema.KijiRowScanner;
 import org.kiji.schema.KijiTableReader;
@@ -42,7 +53,7 @@ import org.kiji.schema.filter.KijiRowFilter;
 import org.kiji.schema.filter.KijiRowFilterApplicator;
 import org.kiji.schema.hbase.HBaseScanOptions;
 import org.kiji.schema.layout.InvalidLayoutException;
-import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.metrics.MetricsRegistry;
 import org.kiji.schema.util.ResourceUtils;
 
 /**
@@ -55,14 +66,57 @@ public class HBaseKijiTableReader implements KijiTableReader {
   /** The kiji table instance. */
   private final HBaseKijiTable mTable;
 
+  /** Executor for parallel bulk gets, or null to send bulk gets serially. */
+  private final ExecutorService mBulkGetExecutor;
+
+  /** Maximum number of rows per batch of a parallel bulk get. */
+  private final int mBulkGetBatchSize;
+
+  /** Records the latencies of the gets, excluding the decoding of the cells. */
+  private final MetricsRegistry.Timer mGetTimer;
+
+  /** Records the latencies of the bulk gets, excluding the decoding of the cells. */
+  private final MetricsRegistry.Timer mBulkGetTimer;
+
   /**
    * Creates a new <code>HBaseKijiTableReader</code> instance that sends the read requests
    * directly to HBase.
    *
+   * <p>Bulk gets are sent in parallel if the table is configured to do so.</p>
+   *
    * @param table The kiji table to read from.
    */
   public HBaseKijiTableReader(HBaseKijiTable table) {
+    this(table, table.getBulkGetExecutor(), table.getBulkGetBatchSize());
+  }
+
+  /**
+   * Creates a new <code>HBaseKijiTableReader</code> instance that sends the read requests
+   * directly to HBase.
+   *
+   * <p>
+   *   Bulk gets of more than <code>bulkGetBatchSize</code> rows are grouped by region, split in
+   *   batches of at most <code>bulkGetBatchSize</code> rows, and the batches are sent and
+   *   decoded in parallel on the given executor.
+   * </p>
+   *
+   * @param table The kiji table to read from.
+   * @param bulkGetExecutor Executor for parallel bulk gets, or null to send bulk gets serially.
+   *     The executor is not shut down when this reader is closed.
+   * @param bulkGetBatchSize Maximum number of rows per batch of a parallel bulk get.
+   */
+  public HBaseKijiTableReader(
+      HBaseKijiTable table,
+      ExecutorService bulkGetExecutor,
+      int bulkGetBatchSize) {
+    Preconditions.checkArgument(bulkGetBatchSize > 0,
+        "Invalid bulk get batch size: %s", bulkGetBatchSize);
     mTable = table;
+    mBulkGetExecutor = bulkGetExecutor;
+    mBulkGetBatchSize = bulkGetBatchSize;
+    final MetricsRegistry metrics = mTable.getMetricsRegistry();
+    mGetTimer = metrics.getTimer(TableMetrics.getName(mTable.getName(), "reader.get"));
+    mBulkGetTimer = metrics.getTimer(TableMetrics.getName(mTable.getName(), "reader.bulk_get"));
     mTable.retain();
   }
 
@@ -70,27 +124,44 @@ public class HBaseKijiTableReader implements KijiTableReader {
   @Override
   public KijiRowData get(EntityId entityId, KijiDataRequest dataRequest)
       throws IOException {
+    final long startNanos = mGetTimer.start();
+    try {
+      return doGet(entityId, dataRequest);
+    } finally {
+      mGetTimer.stop(startNanos);
+    }
+  }
 
+  /**
+   * Reads a row.
+   *
+   * @param entityId Entity ID of the row to read.
+   * @param dataRequest Data request describing the cells to read.
+   * @return the row data.
+   * @throws IOException on I/O error.
+   */
+  private KijiRowData doGet(EntityId entityId, KijiDataRequest dataRequest)
+      throws IOException {
     // Make sure the request validates against the layout of the table.
-    KijiTableLayout tableLayout = getTableLayout(dataRequest);
+    final CompiledDataRequest compiled = mTable.getCompiledDataRequest(dataRequest);
 
     // Construct an HBase Get to send to the HTable.
-    HBaseDataRequestAdapter hbaseRequestAdapter = new HBaseDataRequestAdapter(dataRequest);
-    Get hbaseGet;
-    try {
-      hbaseGet = hbaseRequestAdapter.toGet(entityId, tableLayout);
-    } catch (InvalidLayoutException e) {
-      // The table layout should never be invalid at this point, since we got it from a valid
-      // opened table.  If it is, there's something seriously wrong.
-      throw new InternalKijiError(e);
-    }
+    final Get hbaseGet = compiled.toGet(entityId);
     // Send the HTable Get.
     LOG.debug("Sending HBase Get: " + hbaseGet);
     Result result;
     if (null == hbaseGet) {
       result = new Result();
     } else {
-      result = mTable.getHTable().get(hbaseGet);
+      final HTableInterface htable = mTable.acquireHTable();
+      try {
+        result = htable.get(hbaseGet);
+      } finally {
+        mTable.releaseHTable(htable);
+      }
+      if (null != compiled.getCounterStripes()) {
+        result = compiled.getCounterStripes().read(mTable, entityId, result);
+      }
     }
 
     // Parse the result.
@@ -107,19 +178,49 @@ public class HBaseKijiTableReader implements KijiTableReader {
       return Collections.singletonList(this.get(entityIds.get(0), dataRequest));
     }
 
-    KijiTableLayout tableLayout = getTableLayout(dataRequest);
-    HBaseDataRequestAdapter hbaseRequestAdapter = new HBaseDataRequestAdapter(dataRequest);
+    final long startNanos = mBulkGetTimer.start();
+    try {
+      return doBulkGet(entityIds, dataRequest);
+    } finally {
+      mBulkGetTimer.stop(startNanos);
+    }
+  }
+
+  /**
+   * Reads several rows.
+   *
+   * @param entityIds Entity IDs of the rows to read.
+   * @param dataRequest Data request describing the cells to read.
+   * @return the row data, in the order of the entity IDs.
+   * @throws IOException on I/O error.
+   */
+  private List<KijiRowData> doBulkGet(List<EntityId> entityIds, KijiDataRequest dataRequest)
+      throws IOException {
+    final CompiledDataRequest compiled = mTable.getCompiledDataRequest(dataRequest);
 
     // Construct a list of hbase Gets to send to the HTable.
-    List<Get> hbaseGetList = makeGetList(entityIds, tableLayout, hbaseRequestAdapter);
+    List<Get> hbaseGetList = makeGetList(entityIds, compiled);
+
+    if ((null != mBulkGetExecutor) && (entityIds.size() > mBulkGetBatchSize)) {
+      return parallelBulkGet(entityIds, hbaseGetList, compiled);
+    }
 
     // Send the HTable Gets.
-    Result[] results = mTable.getHTable().get(hbaseGetList);
+    Result[] results;
+    final HTableInterface htable = mTable.acquireHTable();
+    try {
+      results = htable.get(hbaseGetList);
+    } finally {
+      mTable.releaseHTable(htable);
+    }
     assert entityIds.size() == results.length;
+    if (null != compiled.getCounterStripes()) {
+      results = compiled.getCounterStripes().read(mTable, entityIds, results);
+    }
 
     // Parse the results.  If a Result is null, then the corresponding KijiRowData should also
     // be null.  This indicates that there was an error retrieving this row.
-    List<KijiRowData> rowDataList = parseResults(results, entityIds, dataRequest, tableLayout);
+    List<KijiRowData> rowDataList = parseResults(results, entityIds, dataRequest);
 
     return rowDataList;
   }
@@ -140,9 +241,8 @@ public class HBaseKijiTableReader implements KijiTableReader {
       KijiRowFilter rowFilter = kijiScannerOptions.getKijiRowFilter();
       HBaseScanOptions scanOptions = kijiScannerOptions.getHBaseScanOptions();
 
-      HBaseDataRequestAdapter dataRequestAdapter = new HBaseDataRequestAdapter(dataRequest);
-      KijiTableLayout tableLayout = getTableLayout(dataRequest);
-      Scan scan = dataRequestAdapter.toScan(tableLayout, scanOptions);
+      final CompiledDataRequest compiled = mTable.getCompiledDataRequest(dataRequest);
+      Scan scan = compiled.toScan(scanOptions);
 
       if (null != startRow) {
         scan.setStartRow(startRow.getHBaseRowKey());
@@ -153,14 +253,32 @@ public class HBaseKijiTableReader implements KijiTableReader {
 
       if (null != rowFilter) {
         final KijiRowFilterApplicator applicator = KijiRowFilterApplicator.create(
-            rowFilter, tableLayout, mTable.getKiji().getSchemaTable());
+            rowFilter, compiled.getColumnNameTranslator(), mTable.getKiji().getSchemaTable());
         applicator.applyTo(scan);
       }
 
+      // The HBase result scanner does not rely on the HTable once opened:
+      // the HTable can be returned to the pool immediately.
+      ResultScanner resultScanner;
+      final HTableInterface htable = mTable.acquireHTable();
+      try {
+        resultScanner = htable.getScanner(scan);
+      } finally {
+        mTable.releaseHTable(htable);
+      }
+      final CounterStripes counterStripes = compiled.getCounterStripes();
+      if (null != counterStripes) {
+        resultScanner =
+            counterStripes.mergeStripes(mTable, scan, resultScanner, null == rowFilter);
+      }
+
       return new HBaseKijiRowScanner(new HBaseKijiRowScanner.Options()
-          .withHBaseResultScanner(mTable.getHTable().getScanner(scan))
+          .withHBaseResultScanner(resultScanner)
           .withDataRequest(dataRequest)
-          .withTable(mTable));
+          .withTable(mTable)
+          .withPrefetchSize(kijiScannerOptions.getPrefetchSize())
+          .withDecoderThreads(kijiScannerOptions.getDecoderThreads())
+          .withOrderedDelivery(kijiScannerOptions.isOrderedDelivery()));
     } catch (InvalidLayoutException e) {
       // The table layout should never be invalid at this point, since we got it from a valid
       // opened table.  If it is, there's something seriously wrong.
@@ -175,12 +293,11 @@ public class HBaseKijiTableReader implements KijiTableReader {
    * @param results The results to parse.
    * @param entityIds The matching set of EntityIds.
    * @param dataRequest The KijiDataRequest.
-   * @param tableLayout The table layout.
    * @return The list of KijiRowData returned by these results.
    * @throws IOException If there is an error.
    */
   private List<KijiRowData> parseResults(Result[] results, List<EntityId> entityIds,
-      KijiDataRequest dataRequest, KijiTableLayout tableLayout) throws IOException {
+      KijiDataRequest dataRequest) throws IOException {
     List<KijiRowData> rowDataList = new ArrayList<KijiRowData>(results.length);
 
     for (int i = 0; i < results.length; i++) {
@@ -196,44 +313,137 @@ public class HBaseKijiTableReader implements KijiTableReader {
   }
 
   /**
-   * Creates a list of hbase Gets for a set of entityIds.
+   * Sends a bulk get as parallel batches of rows grouped by region, and decodes the results.
    *
-   * @param entityIds The set of entityIds to collect.
-   * @param tableLayout The table layout specifying constraints on what data to return for a row.
-   * @param hbaseRequestAdapter The HBaseDataRequestAdapter.
-   * @return A list of hbase Gets-- one for each entity id.
-   * @throws IOException If there is an error.
+   * @param entityIds Entity IDs of the rows to get.
+   * @param hbaseGets HBase Gets, one for each entity ID.
+   * @param compiled The data request compiled against the table layout.
+   * @return The list of KijiRowData, in the order of the entity IDs. If a row could not be
+   *     retrieved, the corresponding KijiRowData is null.
+   * @throws IOException on I/O error.
    */
-  private static List<Get> makeGetList(List<EntityId> entityIds, KijiTableLayout tableLayout,
-      HBaseDataRequestAdapter hbaseRequestAdapter)
+  private List<KijiRowData> parallelBulkGet(
+      final List<EntityId> entityIds,
+      final List<Get> hbaseGets,
+      final CompiledDataRequest compiled)
       throws IOException {
-    List<Get> hbaseGetList = new ArrayList<Get>(entityIds.size());
+    final KijiDataRequest dataRequest = compiled.getDataRequest();
+    final KijiRowData[] rows = new KijiRowData[entityIds.size()];
+    final List<Future<Void>> futures = Lists.newArrayList();
+    for (final List<Integer> batch : makeBatches(hbaseGets)) {
+      futures.add(mBulkGetExecutor.submit(new Callable<Void>() {
+        /** {@inheritDoc} */
+        @Override
+        public Void call() throws IOException {
+          final List<Get> batchGets = new ArrayList<Get>(batch.size());
+          for (int index : batch) {
+            batchGets.add(hbaseGets.get(index));
+          }
+          Result[] results;
+          final HTableInterface htable = mTable.acquireHTable();
+          try {
+            results = htable.get(batchGets);
+          } finally {
+            mTable.releaseHTable(htable);
+          }
+          assert batch.size() == results.length;
+          if (null != compiled.getCounterStripes()) {
+            final List<EntityId> batchIds = new ArrayList<EntityId>(batch.size());
+            for (int index : batch) {
+              batchIds.add(entityIds.get(index));
+            }
+            results = compiled.getCounterStripes().read(mTable, batchIds, results);
+          }
+
+          for (int i = 0; i < results.length; ++i) {
+            final int index = batch.get(i);
+            rows[index] = (null == results[i])
+                ? null
+                : new HBaseKijiRowData(entityIds.get(index), dataRequest, mTable, results[i]);
+          }
+          return null;
+        }
+      }));
+    }
+
     try {
-      for (EntityId entityId : entityIds) {
-        hbaseGetList.add(hbaseRequestAdapter.toGet(entityId, tableLayout));
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a bulk get.");
+    } catch (ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
       }
-      return hbaseGetList;
-    } catch (InvalidLayoutException e) {
-      // The table layout should never be invalid at this point, since we got it from a valid
-      // opened table.  If it is, there's something seriously wrong.
-      throw new InternalKijiError(e);
     }
+    return Lists.newArrayList(rows);
   }
 
   /**
-   * Helper method to retrieve the KijiTableLayout.
+   * Groups the rows of a bulk get by region, and splits the groups in batches of at most
+   * <code>mBulkGetBatchSize</code> rows.
+   *
+   * <p>
+   *   Rows are grouped by region only if region locations are available (ie. if the HTables are
+   *   concrete HTables); otherwise, rows are simply split in batches.
+   * </p>
    *
-   * @param dataRequest A KijiDataRequest.
-   * @return The table layout adapter.
+   * @param hbaseGets HBase Gets of a bulk get.
+   * @return batches of indexes in the list of HBase Gets.
+   * @throws IOException on I/O error.
    */
-  private KijiTableLayout getTableLayout(KijiDataRequest dataRequest) {
-    // TODO(SCHEMA-263): This could be made more efficient if the layout and/or validator were
-    // cached.
-    KijiTableLayout tableLayout = mTable.getLayout();
-    KijiDataRequestValidator requestValidator =
-        KijiDataRequestValidator.validatorForLayout(tableLayout);
-    requestValidator.validate(dataRequest);
-    return tableLayout;
+  private List<List<Integer>> makeBatches(List<Get> hbaseGets) throws IOException {
+    final Map<String, List<Integer>> regions = Maps.newLinkedHashMap();
+    final HTableInterface htable = mTable.acquireHTable();
+    try {
+      final HTable concreteHTable = (htable instanceof HTable) ? (HTable) htable : null;
+      for (int index = 0; index < hbaseGets.size(); ++index) {
+        // Cached region locations are good enough to group rows:
+        final String region = (null == concreteHTable)
+            ? ""
+            : concreteHTable.getRegionLocation(hbaseGets.get(index).getRow(), false)
+                .getRegionInfo().getEncodedName();
+        List<Integer> indexes = regions.get(region);
+        if (null == indexes) {
+          indexes = Lists.newArrayList();
+          regions.put(region, indexes);
+        }
+        indexes.add(index);
+      }
+    } finally {
+      mTable.releaseHTable(htable);
+    }
+
+    final List<List<Integer>> batches = Lists.newArrayList();
+    for (List<Integer> indexes : regions.values()) {
+      batches.addAll(Lists.partition(indexes, mBulkGetBatchSize));
+    }
+    return batches;
+  }
+
+  /**
+   * Creates a list of hbase Gets for a set of entityIds.
+   *
+   * @param entityIds The set of entityIds to collect.
+   * @param compiled The data request compiled against the table layout.
+   * @return A list of hbase Gets-- one for each entity id.
+   * @throws IOException If there is an error.
+   */
+  private static List<Get> makeGetList(List<EntityId> entityIds, CompiledDataRequest compiled)
+      throws IOException {
+    List<Get> hbaseGetList = new ArrayList<Get>(entityIds.size());
+    for (EntityId entityId : entityIds) {
+      hbaseGetList.add(compiled.toGet(entityId));
+    }
+    return hbaseGetList;
   }
 
   /** {@inheritDoc} */
@@ -27,6 +27,7 @@ import com.google.common.base.Preconditions;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
@@ -50,8 +51,8 @@ import org.kiji.schema.avro.SchemaType;
 import org.kiji.schema.hbase.HBaseColumnName;
 import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
 import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.ColumnLayout;
-import org.kiji.schema.layout.impl.CellSpec;
 import org.kiji.schema.layout.impl.ColumnNameTranslator;
+import org.kiji.schema.metrics.MetricsRegistry;
 import org.kiji.schema.util.ResourceUtils;
 
 /**
@@ -67,6 +68,18 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
   /** The column name translator to use. */
   private final ColumnNameTranslator mTranslator;
 
+  /** Provides cached cell encoders for the columns of the table. Created lazily. */
+  private CellEncoderProvider mEncoderProvider = null;
+
+  /** Records the latencies of the puts sent to HBase, excluding the encoding of the cells. */
+  private final MetricsRegistry.Timer mPutTimer;
+
+  /** Records the latencies of the counter increments. */
+  private final MetricsRegistry.Timer mIncrementTimer;
+
+  /** Records the latencies of the deletes. */
+  private final MetricsRegistry.Timer mDeleteTimer;
+
   /**
    * Creates a non-buffered kiji table writer that sends modifications directly to Kiji.
    *
@@ -75,7 +88,12 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
   public HBaseKijiTableWriter(HBaseKijiTable table) {
     mTable = table;
     mTable.retain();
-    mTranslator = new ColumnNameTranslator(mTable.getLayout());
+    mTranslator = mTable.getColumnNameTranslator();
+    final MetricsRegistry metrics = mTable.getMetricsRegistry();
+    mPutTimer = metrics.getTimer(TableMetrics.getName(mTable.getName(), "writer.put"));
+    mIncrementTimer =
+        metrics.getTimer(TableMetrics.getName(mTable.getName(), "writer.increment"));
+    mDeleteTimer = metrics.getTimer(TableMetrics.getName(mTable.getName(), "writer.delete"));
   }
 
   /** {@inheritDoc} */
@@ -92,14 +110,54 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
     final KijiColumnName columnName = new KijiColumnName(family, qualifier);
     final HBaseColumnName hbaseColumnName = mTranslator.toHBaseColumnName(columnName);
 
-    final CellSpec cellSpec = mTable.getLayout().getCellSpec(columnName)
-        .setSchemaTable(mTable.getKiji().getSchemaTable());
-    final KijiCellEncoder cellEncoder = DefaultKijiCellEncoderFactory.get().create(cellSpec);
+    final KijiCellEncoder cellEncoder = getEncoderProvider().getEncoder(family, qualifier);
     final byte[] encoded = cellEncoder.encode(value);
 
     final Put put = new Put(entityId.getHBaseRowKey())
         .add(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), timestamp, encoded);
-    mTable.getHTable().put(put);
+    final long startNanos = mPutTimer.start();
+    try {
+      final HTableInterface htable = mTable.acquireHTable();
+      try {
+        htable.put(put);
+        if (!htable.isAutoFlush()) {
+          htable.flushCommits();
+        }
+      } finally {
+        mTable.releaseHTable(htable);
+      }
+
+      // A put on a striped counter overwrites stripe 0: clear the other stripes.
+      final int nstripes = CounterStripes.getStripes(mTable.getLayout(), columnName);
+      if (nstripes > 1) {
+        final HTableInterface stripesHTable = mTable.acquireStripesHTable();
+        try {
+          stripesHTable.delete(CounterStripes.toStripeDeletes(
+              entityId.getHBaseRowKey(), hbaseColumnName, timestamp, nstripes));
+          if (!stripesHTable.isAutoFlush()) {
+            stripesHTable.flushCommits();
+          }
+        } finally {
+          mTable.releaseStripesHTable(stripesHTable);
+        }
+      }
+    } finally {
+      mPutTimer.stop(startNanos);
+    }
+  }
+
+  /**
+   * Returns the provider for the cell encoders of this writer, creating it if necessary.
+   *
+   * @return the provider for the cell encoders of this writer.
+   * @throws IOException on I/O error.
+   */
+  private CellEncoderProvider getEncoderProvider() throws IOException {
+    if (null == mEncoderProvider) {
+      mEncoderProvider = new CellEncoderProvider(
+          mTable.getCachedLayout(), DefaultKijiCellEncoderFactory.get());
+    }
+    return mEncoderProvider;
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -113,16 +171,46 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
     verifyIsCounter(family, qualifier);
 
     // Translate the Kiji column name to an HBase column name.
-    final HBaseColumnName hbaseColumnName =
-        mTranslator.toHBaseColumnName(new KijiColumnName(family, qualifier));
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    final HBaseColumnName hbaseColumnName = mTranslator.toHBaseColumnName(column);
+
+    // Striped counters are incremented on the stripe of the current thread: stripe 0 lives in
+    // the table itself, other stripes live in distinct rows of the stripes table.
+    final int nstripes = CounterStripes.getStripes(mTable.getLayout(), column);
+    final int stripe = CounterStripes.getThreadStripe(nstripes);
+    final byte[] rowKey = (0 == stripe)
+        ? entityId.getHBaseRowKey()
+        : CounterStripes.toStripeRowKey(stripe, entityId.getHBaseRowKey());
 
     // Send the increment to the HBase HTable.
-    final Increment increment = new Increment(entityId.getHBaseRowKey());
+    final Increment increment = new Increment(rowKey);
     increment.addColumn(
         hbaseColumnName.getFamily(),
         hbaseColumnName.getQualifier(),
         amount);
-    final Result result = mTable.getHTable().increment(increment);
+    final Result result;
+    long otherStripes = 0;
+    final long startNanos = mIncrementTimer.start();
+    final HTableInterface htable = mTable.acquireHTable();
+    try {
+      if (1 == nstripes) {
+        result = htable.increment(increment);
+      } else {
+        final HTableInterface stripesHTable = mTable.acquireStripesHTable();
+        try {
+          result = ((0 == stripe) ? htable : stripesHTable).increment(increment);
+          // The value of a striped counter is the sum of its stripes:
+          otherStripes = CounterStripes.sumOtherStripes(htable, stripesHTable,
+              entityId.getHBaseRowKey(), hbaseColumnName.getFamily(),
+              hbaseColumnName.getQualifier(), nstripes, stripe);
+        } finally {
+          mTable.releaseStripesHTable(stripesHTable);
+        }
+      }
+    } finally {
+      mTable.releaseHTable(htable);
+      mIncrementTimer.stop(startNanos);
+    }
     final NavigableMap<Long, byte[]> counterEntries =
         result.getMap().get(hbaseColumnName.getFamily()).get(hbaseColumnName.getQualifier());
     assert null != counterEntries;
@@ -130,7 +218,7 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
 
     final Map.Entry<Long, byte[]> counterEntry = counterEntries.firstEntry();
     final DecodedCell<Long> counter =
-        new DecodedCell<Long>(null, Bytes.toLong(counterEntry.getValue()));
+        new DecodedCell<Long>(null, Bytes.toLong(counterEntry.getValue()) + otherStripes);
     return new KijiCell<Long>(family, qualifier, counterEntry.getKey(), counter);
   }
 
@@ -161,7 +249,7 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
   @Override
   public void deleteRow(EntityId entityId, long upToTimestamp) throws IOException {
     final Delete delete = new Delete(entityId.getHBaseRowKey(), upToTimestamp, null);
-    mTable.getHTable().delete(delete);
+    sendDelete(delete, CounterStripes.getStripes(mTable.getLayout()));
   }
 
   /** {@inheritDoc} */
@@ -199,7 +287,7 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
     delete.deleteFamily(hbaseColumnName.getFamily(), upToTimestamp);
 
     // Send the delete to the HBase HTable.
-    mTable.getHTable().delete(delete);
+    sendDelete(delete, CounterStripes.getStripes(mTable.getLayout(), new KijiColumnName(family)));
   }
   /**
    * Deletes all cells from a group-type family with a timestamp less than or equal to a
@@ -227,7 +315,8 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
     }
 
     // Send the delete to the HBase HTable.
-    mTable.getHTable().delete(delete);
+    sendDelete(delete,
+        CounterStripes.getStripes(mTable.getLayout(), new KijiColumnName(familyName)));
   }
 
   /**
@@ -255,8 +344,33 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
         mTranslator.toHBaseColumnName(new KijiColumnName(familyName));
     final byte[] hbaseRow = entityId.getHBaseRowKey();
 
+    final HTableInterface htable = mTable.acquireHTable();
+    try {
+      deleteMapFamily(htable, hbaseRow, hbaseColumnName, familyName, upToTimestamp);
+    } finally {
+      mTable.releaseHTable(htable);
+    }
+  }
+
+  /**
+   * Deletes all cells from a map-type family, using the specified HTable.
+   *
+   * @param htable HTable to send the requests to.
+   * @param hbaseRow HBase row key of the row to delete from.
+   * @param hbaseColumnName HBase column name of the map-type family.
+   * @param familyName Name of the map-type family.
+   * @param upToTimestamp A timestamp.
+   * @throws IOException If there is an IO error.
+   */
+  private void deleteMapFamily(
+      HTableInterface htable,
+      byte[] hbaseRow,
+      HBaseColumnName hbaseColumnName,
+      String familyName,
+      long upToTimestamp)
+      throws IOException {
     // Lock the row.
-    final RowLock rowLock = mTable.getHTable().lockRow(hbaseRow);
+    final RowLock rowLock = htable.lockRow(hbaseRow);
     try {
       // Step 1.
       final Get get = new Get(hbaseRow, rowLock);
@@ -267,7 +381,7 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
       filter.addFilter(new ColumnPrefixFilter(hbaseColumnName.getQualifier()));
       get.setFilter(filter);
 
-      final Result result = mTable.getHTable().get(get);
+      final Result result = htable.get(get);
 
       // Step 2.
       if (result.isEmpty()) {
@@ -280,11 +394,14 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
               + ":" + Bytes.toString(hbaseQualifier));
           delete.deleteColumns(hbaseColumnName.getFamily(), hbaseQualifier, upToTimestamp);
         }
-        mTable.getHTable().delete(delete);
+        htable.delete(delete);
+        if (!htable.isAutoFlush()) {
+          htable.flushCommits();
+        }
       }
     } finally {
       // Make sure to unlock the row!
-      mTable.getHTable().unlockRow(rowLock);
+      htable.unlockRow(rowLock);
     }
   }
 
@@ -298,11 +415,11 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
   @Override
   public void deleteColumn(EntityId entityId, String family, String qualifier, long upToTimestamp)
       throws IOException {
-    final HBaseColumnName hbaseColumnName =
-        mTranslator.toHBaseColumnName(new KijiColumnName(family, qualifier));
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    final HBaseColumnName hbaseColumnName = mTranslator.toHBaseColumnName(column);
     final Delete delete = new Delete(entityId.getHBaseRowKey())
         .deleteColumns(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), upToTimestamp);
-    mTable.getHTable().delete(delete);
+    sendDelete(delete, CounterStripes.getStripes(mTable.getLayout(), column));
   }
 
   /** {@inheritDoc} */
@@ -315,18 +432,58 @@ public final class HBaseKijiTableWriter implements KijiTableWriter {
   @Override
   public void deleteCell(EntityId entityId, String family, String qualifier, long timestamp)
       throws IOException {
-    final HBaseColumnName hbaseColumnName =
-        mTranslator.toHBaseColumnName(new KijiColumnName(family, qualifier));
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    final HBaseColumnName hbaseColumnName = mTranslator.toHBaseColumnName(column);
     final Delete delete = new Delete(entityId.getHBaseRowKey())
         .deleteColumn(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), timestamp);
-    mTable.getHTable().delete(delete);
+    sendDelete(delete, CounterStripes.getStripes(mTable.getLayout(), column));
+  }
+
+  /**
+   * Sends a delete to HBase, using an HTable from the pool of the table.
+   *
+   * <p>
+   *   The delete is also applied to the stripes of the striped counters it covers. Deletes to the
+   *   table and to the stripes table are not atomic.
+   * </p>
+   *
+   * @param delete HBase delete to send.
+   * @param nstripes Number of stripes of the counters the delete covers, 1 if none is striped.
+   * @throws IOException on I/O error.
+   */
+  private void sendDelete(Delete delete, int nstripes) throws IOException {
+    final long startNanos = mDeleteTimer.start();
+    try {
+      final HTableInterface htable = mTable.acquireHTable();
+      try {
+        htable.delete(delete);
+        if (!htable.isAutoFlush()) {
+          htable.flushCommits();
+        }
+      } finally {
+        mTable.releaseHTable(htable);
+      }
+      if (nstripes > 1) {
+        final HTableInterface stripesHTable = mTable.acquireStripesHTable();
+        try {
+          stripesHTable.delete(CounterStripes.toStripeDeletes(delete, nstripes));
+          if (!stripesHTable.isAutoFlush()) {
+            stripesHTable.flushCommits();
+          }
+        } finally {
+          mTable.releaseStripesHTable(stripesHTable);
+        }
+      }
+    } finally {
+      mDeleteTimer.stop(startNanos);
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
 
   @Override
   public void flush() throws IOException {
-    mTable.getHTable().flushCommits();
+    // Modifications are sent to HBase synchronously, there is nothing to flush.
   }
 
   @Override
@@ -171,6 +171,11 @@ public class HBaseMetaTable implements KijiMetaTable {
   }
   /** {@inheritDoc} */
   @Override
+  public synchronized long getTableLayoutTimestamp(String table) throws IOException {
+    return mTableLayoutDatabase.getTableLayoutTimestamp(table);
+  }
+  /** {@inheritDoc} */
+  @Override
   public synchronized List<KijiTableLayout> getTableLayoutVersions(String table, int numVersions)
     throws IOException {
     return mTableLayoutDatabase.getTableLayoutVersions(table, numVersions);
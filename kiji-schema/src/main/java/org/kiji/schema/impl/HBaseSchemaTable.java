@@ -22,17 +22,30 @@ package org.kiji.schema.impl;
 import static org.kiji.schema.util.ByteStreamArray.longToVarInt64;
 
 import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
 import org.apache.avro.io.DatumReader;
@@ -43,6 +56,7 @@ import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.ByteBufferInputStream;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
@@ -68,6 +82,8 @@ import org.kiji.schema.avro.MD5Hash;
 import org.kiji.schema.avro.SchemaTableBackup;
 import org.kiji.schema.avro.SchemaTableEntry;
 import org.kiji.schema.hbase.KijiManagedHBaseTableName;
+import org.kiji.schema.metrics.MetricsRegistry;
+import org.kiji.schema.metrics.NoopMetricsRegistry;
 import org.kiji.schema.platform.SchemaPlatformBridge;
 import org.kiji.schema.util.ByteStreamArray;
 import org.kiji.schema.util.ByteStreamArray.EncodingException;
@@ -85,12 +101,33 @@ import org.kiji.schema.util.ResourceUtils;
  * </p>
  *
  * <p>
+ * Lookups of schemas already known in-memory do not acquire any lock.
+ * Concurrent lookup misses on the same schema share a single fetch of the schema entry from
+ * the HTables; misses on different schemas are fetched in parallel.
+ * </p>
+ *
+ * <p>
+ * Registering new schemas does not acquire the ZooKeeper lock of the schema tables: concurrent
+ * registrants of a schema are arbitrated with a checkAndPut on the schema hash table row.
+ * The lock is only used by administrative operations that read or write the tables in full,
+ * such as backups and restores.
+ * </p>
+ *
+ * <p>
  * Schemas are stored in two tables with a single column family named "schema" and that contains
  * SchemaTableEntry records. One table is indexed by schema hashes (128-bit MD5 hashes of the
  * schema JSON representation). Other table is indexed by schema IDs (integers &gt;= 0).
  *
  * There may be multiple schema IDs for a single schema.
  * </p>
+ *
+ * <p>
+ * Opening the schema table does not read any schema entry: entries are fetched one at a time,
+ * the first time they are looked up. A process may also preload its in-memory maps from a local
+ * snapshot written by {@link #writeSnapshot(File)}, see {@link #CONF_SNAPSHOT_PATH}.
+ * The full consistency check of the schema tables is done by {@link #checkConsistency()},
+ * exposed through the <code>kiji schema-table</code> command-line tool.
+ * </p>
  */
 @ApiAudience.Private
 public class HBaseSchemaTable implements KijiSchemaTable {
@@ -114,6 +151,18 @@ public class HBaseSchemaTable implements KijiSchemaTable {
   private static final byte[] SCHEMA_COUNTER_ROW_NAME_BYTES =
       Bytes.toBytes(SCHEMA_COUNTER_ROW_NAME);
 
+  /**
+   * Configuration key for the path of a local schema table snapshot.
+   * When set, the snapshot is loaded when the schema table of a Kiji instance is opened.
+   */
+  public static final String CONF_SNAPSHOT_PATH = "kiji.schema.table.snapshot.path";
+
+  /** Magic number heading schema table snapshot files ("KSTS"). */
+  private static final int SNAPSHOT_MAGIC = 0x4b535453;
+
+  /** Size of the snapshot header: magic number and schema ID counter. */
+  private static final int SNAPSHOT_HEADER_SIZE = 12;
+
   /** HTable used to map schema hash to schema entries. */
   private final HTableInterface mSchemaHashTable;
 
@@ -123,17 +172,43 @@ public class HBaseSchemaTable implements KijiSchemaTable {
   /** Lock for the kiji instance schema table. */
   private final Lock mZKLock;
 
-  /** Maps schema MD5 hashes to schema entries. */
-  private final Map<BytesKey, SchemaEntry> mSchemaHashMap = new HashMap<BytesKey, SchemaEntry>();
+  /**
+   * Maps schema MD5 hashes to schema entries.
+   * Safe to read concurrently; updates happen while holding the monitor of this schema table.
+   */
+  private final ConcurrentMap<BytesKey, SchemaEntry> mSchemaHashMap = Maps.newConcurrentMap();
 
-  /** Maps schema IDs to schema entries. */
-  private final Map<Long, SchemaEntry> mSchemaIdMap = new HashMap<Long, SchemaEntry>();
+  /**
+   * Maps schema IDs to schema entries.
+   * Safe to read concurrently; updates happen while holding the monitor of this schema table.
+   */
+  private final ConcurrentMap<Long, SchemaEntry> mSchemaIdMap = Maps.newConcurrentMap();
+
+  /**
+   * Schema entries being loaded from the schema ID table, by schema ID.
+   * Concurrent misses for one schema ID share a single load; misses for distinct IDs run in
+   * parallel.
+   */
+  private final ConcurrentMap<Long, FutureTask<SchemaEntry>> mIdLoads = Maps.newConcurrentMap();
+
+  /** Schema entries being loaded from the schema hash table, by schema hash. */
+  private final ConcurrentMap<BytesKey, FutureTask<SchemaEntry>> mHashLoads =
+      Maps.newConcurrentMap();
 
   /** Schema hash cache. */
   private final SchemaHashCache mHashCache = new KijiSchemaTable.SchemaHashCache();
 
+  /** Counts the schema lookups served from the in-memory maps. */
+  private final MetricsRegistry.Counter mCacheHits;
+
+  /** Counts the schema lookups that missed the in-memory maps. */
+  private final MetricsRegistry.Counter mCacheMisses;
+
+  /** Records the latencies of the schema lookups from the tables, after in-memory misses. */
+  private final MetricsRegistry.Timer mLoadTimer;
+
   /** Whether this schema table is open. */
-  private boolean mIsOpen = false;
+  private volatile boolean mIsOpen = false;
 
   /** Used for testing finalize() behavior. */
   private String mConstructorStack = "";
@@ -219,6 +294,14 @@ public class HBaseSchemaTable implements KijiSchemaTable {
   private static final DatumWriter<SchemaTableEntry> SCHEMA_ENTRY_WRITER =
       new SpecificDatumWriter<SchemaTableEntry>(SchemaTableEntry.SCHEMA$);
 
+  /** Avro reader for the entries of a schema table snapshot. */
+  private static final DatumReader<SchemaTableBackup> SNAPSHOT_READER =
+      new SpecificDatumReader<SchemaTableBackup>(SchemaTableBackup.SCHEMA$);
+
+  /** Avro writer for the entries of a schema table snapshot. */
+  private static final DatumWriter<SchemaTableBackup> SNAPSHOT_WRITER =
+      new SpecificDatumWriter<SchemaTableBackup>(SchemaTableBackup.SCHEMA$);
+
   /** {@inheritDoc} */
   @Override
   public BytesKey getSchemaHash(Schema schema) {
@@ -268,9 +351,30 @@ public class HBaseSchemaTable implements KijiSchemaTable {
       HTableInterfaceFactory tableFactory,
       LockFactory lockFactory)
       throws IOException {
+    this(kijiURI, conf, tableFactory, lockFactory, NoopMetricsRegistry.get());
+  }
+
+  /**
+   * Open a connection to the HBase schema table for a Kiji instance.
+   *
+   * @param kijiURI the KijiURI
+   * @param conf The Hadoop configuration.
+   * @param tableFactory HTableInterface factory.
+   * @param lockFactory Factory for locks.
+   * @param metrics Registry to record the schema lookup metrics into.
+   * @throws IOException on I/O error.
+   */
+  public HBaseSchemaTable(
+      KijiURI kijiURI,
+      Configuration conf,
+      HTableInterfaceFactory tableFactory,
+      LockFactory lockFactory,
+      MetricsRegistry metrics)
+      throws IOException {
     this(newSchemaHashTable(kijiURI, conf, tableFactory),
         newSchemaIdTable(kijiURI, conf, tableFactory),
-        newLock(kijiURI, lockFactory));
+        newLock(kijiURI, lockFactory),
+        metrics);
   }
 
   /**
@@ -283,9 +387,30 @@ public class HBaseSchemaTable implements KijiSchemaTable {
    */
   public HBaseSchemaTable(HTableInterface hashTable, HTableInterface idTable, Lock zkLock)
       throws IOException {
+    this(hashTable, idTable, zkLock, NoopMetricsRegistry.get());
+  }
+
+  /**
+   * Wrap an existing HBase table assumed to be where the schema data is stored.
+   *
+   * @param hashTable The HTable that maps schema hashes to schema entries.
+   * @param idTable The HTable that maps schema IDs to schema entries.
+   * @param zkLock Lock protecting the schema tables.
+   * @param metrics Registry to record the schema lookup metrics into.
+   * @throws IOException on I/O error.
+   */
+  public HBaseSchemaTable(
+      HTableInterface hashTable,
+      HTableInterface idTable,
+      Lock zkLock,
+      MetricsRegistry metrics)
+      throws IOException {
     mSchemaHashTable = Preconditions.checkNotNull(hashTable);
     mSchemaIdTable = Preconditions.checkNotNull(idTable);
     mZKLock = Preconditions.checkNotNull(zkLock);
+    mCacheHits = metrics.getCounter("schema_table.cache.hits");
+    mCacheMisses = metrics.getCounter("schema_table.cache.misses");
+    mLoadTimer = metrics.getTimer("schema_table.load");
 
     mIsOpen = true;
 
@@ -303,7 +428,7 @@ public class HBaseSchemaTable implements KijiSchemaTable {
    * @return Either the pre-existing entry for the specified schema, or a newly created entry.
    * @throws IOException on I/O error.
    */
-  private synchronized SchemaEntry getOrCreateSchemaEntry(final Schema schema) throws IOException {
+  private SchemaEntry getOrCreateSchemaEntry(final Schema schema) throws IOException {
     Preconditions.checkState(mIsOpen, "Schema tables are closed");
 
     final BytesKey schemaHash = getSchemaHash(schema);
@@ -312,9 +437,17 @@ public class HBaseSchemaTable implements KijiSchemaTable {
       return knownEntry;
     }
 
-    // Schema is unknown, both in-memory and in-table.
-    // Allocate a new schema ID and write it down to the tables:
-    return storeInMemory(registerNewSchemaInTable(schema, schemaHash));
+    synchronized (this) {
+      // Another thread may have registered the schema while we were waiting for the lock:
+      final SchemaEntry racedEntry = mSchemaHashMap.get(schemaHash);
+      if (racedEntry != null) {
+        return racedEntry;
+      }
+
+      // Schema is unknown, both in-memory and in-table.
+      // Allocate a new schema ID and write it down to the tables:
+      return storeInMemory(registerNewSchemaInTable(schema, schemaHash));
+    }
   }
 
   /** {@inheritDoc} */
@@ -329,13 +462,48 @@ public class HBaseSchemaTable implements KijiSchemaTable {
     return getOrCreateSchemaEntry(schema).getHash();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public Map<Schema, Long> registerSchemas(Collection<Schema> schemas) throws IOException {
+    Preconditions.checkState(mIsOpen, "Schema tables are closed");
+
+    final Map<Schema, Long> schemaIds = Maps.newHashMap();
+    // Schemas unknown in-memory, keyed by schema hash:
+    final Map<BytesKey, Schema> unknownSchemas = Maps.newLinkedHashMap();
+    for (Schema schema : schemas) {
+      final BytesKey schemaHash = getSchemaHash(schema);
+      final SchemaEntry knownEntry = mSchemaHashMap.get(schemaHash);
+      if (knownEntry != null) {
+        schemaIds.put(schema, knownEntry.getId());
+      } else {
+        unknownSchemas.put(schemaHash, schema);
+      }
+    }
+    if (unknownSchemas.isEmpty()) {
+      return schemaIds;
+    }
+
+    synchronized (this) {
+      for (SchemaEntry entry : registerNewSchemasInTable(unknownSchemas)) {
+        schemaIds.put(unknownSchemas.get(entry.getHash()), entry.getId());
+      }
+    }
+    return schemaIds;
+  }
+
   /**
    * Registers a new schema into the schema tables.
    *
-   * The following things happen atomically, while holding a lock on the counter row:
+   * <p>
+   * Registration does not take the ZooKeeper lock of the schema tables:
    *   <li> look up the schema from the hash table, returning the entry if it is found; </li>
    *   <li> allocate a new unique ID for the schema (by incrementing the schema counter); </li>
-   *   <li> write the new schema entry to the hash table and the ID table. </li>
+   *   <li> write the new schema entry to the ID table; </li>
+   *   <li> write the new schema entry to the hash table, with a checkAndPut that only succeeds
+   *        if no other registrant wrote an entry for the schema in the meantime. </li>
+   * When the checkAndPut fails, the entry written by the other registrant prevails: the ID
+   * allocated here remains a valid, unused ID for the schema.
+   * </p>
    *
    * @param schema Avro schema to register
    * @param schemaHash hash of the schema
@@ -344,39 +512,133 @@ public class HBaseSchemaTable implements KijiSchemaTable {
    */
   private SchemaEntry registerNewSchemaInTable(final Schema schema, final BytesKey schemaHash)
       throws IOException {
-    mZKLock.lock();
-    try {
-      final SchemaTableEntry existingAvroEntry = loadFromHashTable(schemaHash);
-      if (existingAvroEntry != null) {
-        return fromAvroEntry(existingAvroEntry);
+    final SchemaTableEntry existingAvroEntry = loadFromHashTable(schemaHash);
+    if (existingAvroEntry != null) {
+      return fromAvroEntry(existingAvroEntry);
+    }
+
+    final long schemaId = mSchemaIdTable.incrementColumnValue(SCHEMA_COUNTER_ROW_NAME_BYTES,
+        SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES, 1) - 1;
+
+    final SchemaEntry entry = new SchemaEntry(schemaId, schemaHash, schema);
+    final byte[] entryBytes = encodeSchemaEntry(toAvroEntry(entry));
+    mSchemaIdTable.put(newEntryPut(longToVarInt64(schemaId), entryBytes));
+    mSchemaIdTable.flushCommits();
+    return storeInHashTable(entry, entryBytes);
+  }
+
+  /**
+   * Registers new schemas into the schema tables.
+   *
+   * <p>
+   * Schemas found in the hash table are not registered again. The other schemas are allocated
+   * a block of IDs with a single increment of the schema counter, and written to the ID table
+   * with a single flush. Each hash table entry is then written with a checkAndPut, as in
+   * {@link #registerNewSchemaInTable(Schema, BytesKey)}.
+   * </p>
+   *
+   * <p> Caller must hold the monitor of this schema table. </p>
+   *
+   * @param schemas Schemas to register, keyed by schema hash.
+   * @return the schema entries, as stored in memory.
+   * @throws IOException on I/O error.
+   */
+  private List<SchemaEntry> registerNewSchemasInTable(final Map<BytesKey, Schema> schemas)
+      throws IOException {
+    final List<SchemaEntry> entries = Lists.newArrayList();
+
+    // Another thread may have registered some schemas while we were waiting for the lock:
+    final List<BytesKey> lookups = Lists.newArrayList();
+    final List<Get> gets = Lists.newArrayList();
+    for (BytesKey schemaHash : schemas.keySet()) {
+      final SchemaEntry racedEntry = mSchemaHashMap.get(schemaHash);
+      if (racedEntry != null) {
+        entries.add(racedEntry);
+      } else {
+        lookups.add(schemaHash);
+        gets.add(new Get(schemaHash.getBytes()));
       }
+    }
+    if (lookups.isEmpty()) {
+      return entries;
+    }
 
-      // Here we know the schema is unknown from the schema tables and no other process can
-      // update the schema table.
-      final long schemaId = mSchemaIdTable.incrementColumnValue(SCHEMA_COUNTER_ROW_NAME_BYTES,
-          SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES, 1) - 1;
+    final Result[] results = mSchemaHashTable.get(gets);
+    final List<BytesKey> unknownHashes = Lists.newArrayList();
+    for (int i = 0; i < results.length; ++i) {
+      if (results[i].isEmpty()) {
+        unknownHashes.add(lookups.get(i));
+      } else {
+        entries.add(storeInMemory(decodeSchemaEntry(results[i].value())));
+      }
+    }
+    if (unknownHashes.isEmpty()) {
+      return entries;
+    }
 
-      final SchemaEntry entry = new SchemaEntry(schemaId, schemaHash, schema);
-      storeInTable(toAvroEntry(entry));
-      return entry;
+    final long lastSchemaId = mSchemaIdTable.incrementColumnValue(SCHEMA_COUNTER_ROW_NAME_BYTES,
+        SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES, unknownHashes.size());
+    long schemaId = lastSchemaId - unknownHashes.size();
+
+    final List<SchemaEntry> newEntries = Lists.newArrayList();
+    final List<byte[]> newEntriesBytes = Lists.newArrayList();
+    final List<Put> idPuts = Lists.newArrayList();
+    for (BytesKey schemaHash : unknownHashes) {
+      final SchemaEntry entry = new SchemaEntry(schemaId, schemaHash, schemas.get(schemaHash));
+      final byte[] entryBytes = encodeSchemaEntry(toAvroEntry(entry));
+      newEntries.add(entry);
+      newEntriesBytes.add(entryBytes);
+      idPuts.add(newEntryPut(longToVarInt64(schemaId), entryBytes));
+      schemaId += 1;
+    }
+    mSchemaIdTable.put(idPuts);
+    mSchemaIdTable.flushCommits();
 
-    } finally {
-      mZKLock.unlock();
+    for (int i = 0; i < newEntries.size(); ++i) {
+      entries.add(storeInMemory(storeInHashTable(newEntries.get(i), newEntriesBytes.get(i))));
     }
+    return entries;
   }
 
-
   /**
-   * Writes the given schema entry to the ID and hash tables.
+   * Writes a new schema entry to the hash table, unless the hash table already has an entry for
+   * the schema.
    *
-   * This is not protected from concurrent writes. Caller must ensure consistency.
+   * The schema entry must already be persisted in the ID table.
    *
-   * @param avroEntry Schema entry to write.
+   * @param entry New schema entry.
+   * @param entryBytes Binary-encoded schema entry.
+   * @return the schema entry written, or the entry already present in the hash table.
    * @throws IOException on I/O error.
    */
-  private void storeInTable(final SchemaTableEntry avroEntry)
+  private SchemaEntry storeInHashTable(final SchemaEntry entry, final byte[] entryBytes)
       throws IOException {
-    storeInTable(avroEntry, HConstants.LATEST_TIMESTAMP, true);
+    final byte[] row = entry.getHash().getBytes();
+    if (mSchemaHashTable.checkAndPut(row, SCHEMA_COLUMN_FAMILY_BYTES,
+        SCHEMA_COLUMN_QUALIFIER_BYTES, null, newEntryPut(row, entryBytes))) {
+      return entry;
+    }
+
+    // Another registrant wrote an entry for this schema after our hash table lookup:
+    final SchemaTableEntry racedAvroEntry = loadFromHashTable(entry.getHash());
+    if (null == racedAvroEntry) {
+      throw new IOException(String.format(
+          "Unable to write schema hash table entry for %s.", entry));
+    }
+    LOG.debug("Schema {} was concurrently registered with ID {}, schema ID {} is unused.",
+        new Object[] {entry.getHash(), racedAvroEntry.getId(), entry.getId()});
+    return fromAvroEntry(racedAvroEntry);
+  }
+
+  /**
+   * Creates a put for a binary-encoded schema entry.
+   *
+   * @param row Row key of the entry, either the schema hash or the varint-encoded schema ID.
+   * @param entryBytes Binary-encoded schema entry.
+   * @return a put for the schema entry.
+   */
+  private static Put newEntryPut(final byte[] row, final byte[] entryBytes) {
+    return new Put(row).add(SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES, entryBytes);
   }
 
   /**
@@ -465,7 +727,7 @@ public class HBaseSchemaTable implements KijiSchemaTable {
 
   /** {@inheritDoc} */
   @Override
-  public synchronized Schema getSchema(long schemaId) throws IOException {
+  public Schema getSchema(long schemaId) throws IOException {
     final SchemaEntry entry = getSchemaEntry(schemaId);
     return (entry == null) ? null : entry.getSchema();
   }
@@ -479,21 +741,52 @@ public class HBaseSchemaTable implements KijiSchemaTable {
    * @return Corresponding SchemaEntry, or null if the schema ID does not exist.
    * @throws IOException on I/O error.
    */
-  private synchronized SchemaEntry getSchemaEntry(long schemaId) throws IOException {
+  private SchemaEntry getSchemaEntry(long schemaId) throws IOException {
     Preconditions.checkState(mIsOpen, "Schema table is closed");
 
     final SchemaEntry existingEntry = mSchemaIdMap.get(schemaId);
     if (existingEntry != null) {
+      mCacheHits.inc(1);
       return existingEntry;
     }
-
-    // On a lookup miss from the local schema cache, check to see if we can get the schema
-    // from the original HBase table, cache it locally, and return it.
-    final SchemaTableEntry avroEntry = loadFromIdTable(schemaId);
-    if (avroEntry == null) {
-      return null;
+    mCacheMisses.inc(1);
+    final long startNanos = mLoadTimer.start();
+    try {
+      return loadSchemaEntry(schemaId);
+    } finally {
+      mLoadTimer.stop(startNanos);
     }
-    return storeInMemory(avroEntry);
+  }
+
+  /**
+   * Looks up a schema entry by ID in the tables, after a miss from the in-memory maps.
+   *
+   * Concurrent misses for the same ID wait for a single fetch from the tables;
+   * misses for different IDs are fetched in parallel.
+   *
+   * @param schemaId Schema ID
+   * @return Corresponding SchemaEntry, or null if the schema ID does not exist.
+   * @throws IOException on I/O error.
+   */
+  private SchemaEntry loadSchemaEntry(final long schemaId) throws IOException {
+    return loadOnce(mIdLoads, schemaId, new Callable<SchemaEntry>() {
+      /** {@inheritDoc} */
+      @Override
+      public SchemaEntry call() throws IOException {
+        final SchemaEntry racedEntry = mSchemaIdMap.get(schemaId);
+        if (racedEntry != null) {
+          return racedEntry;
+        }
+
+        // On a lookup miss from the local schema cache, check to see if we can get the schema
+        // from the original HBase table, cache it locally, and return it.
+        final SchemaTableEntry avroEntry = loadFromIdTable(schemaId);
+        if (avroEntry == null) {
+          return null;
+        }
+        return storeLoadedEntry(fromAvroEntry(avroEntry));
+      }
+    });
   }
 
   /** {@inheritDoc} */
@@ -512,23 +805,122 @@ public class HBaseSchemaTable implements KijiSchemaTable {
    * @return Corresponding SchemaEntry, or null if the schema hash does not exist.
    * @throws IOException on I/O error.
    */
-  private synchronized SchemaEntry getSchemaEntry(BytesKey schemaHash) throws IOException {
+  private SchemaEntry getSchemaEntry(BytesKey schemaHash) throws IOException {
     Preconditions.checkState(mIsOpen, "Schema table is closed");
 
     final SchemaEntry existingEntry = mSchemaHashMap.get(schemaHash);
     if (existingEntry != null) {
+      mCacheHits.inc(1);
       return existingEntry;
     }
+    mCacheMisses.inc(1);
+    final long startNanos = mLoadTimer.start();
+    try {
+      return loadSchemaEntry(schemaHash);
+    } finally {
+      mLoadTimer.stop(startNanos);
+    }
+  }
+
+  /**
+   * Looks up a schema entry by hash in the tables, after a miss from the in-memory maps.
+   *
+   * Concurrent misses for the same hash wait for a single fetch from the tables;
+   * misses for different hashes are fetched in parallel.
+   *
+   * @param schemaHash Schema hash
+   * @return Corresponding SchemaEntry, or null if the schema hash does not exist.
+   * @throws IOException on I/O error.
+   */
+  private SchemaEntry loadSchemaEntry(final BytesKey schemaHash) throws IOException {
+    return loadOnce(mHashLoads, schemaHash, new Callable<SchemaEntry>() {
+      /** {@inheritDoc} */
+      @Override
+      public SchemaEntry call() throws IOException {
+        final SchemaEntry racedEntry = mSchemaHashMap.get(schemaHash);
+        if (racedEntry != null) {
+          return racedEntry;
+        }
+
+        // On a lookup miss from the local schema cache, check to see if we can get the schema
+        // from the original HBase table, cache it locally, and return it.
+        final SchemaTableEntry avroEntry = loadFromHashTable(schemaHash);
+        if (null == avroEntry) {
+          return null;
+        }
+        final SchemaEntry entry = storeLoadedEntry(fromAvroEntry(avroEntry));
+        Preconditions.checkState(schemaHash.equals(entry.getHash()));
+        return entry;
+      }
+    });
+  }
+
+  /**
+   * Runs a schema entry load, unless a load for the same key is already in progress, in which
+   * case waits for the result of that load instead.
+   *
+   * @param loads Loads in progress, by key.
+   * @param key Key of the schema entry to load.
+   * @param loader Loads the schema entry from the tables.
+   * @param <K> Type of the key.
+   * @return the loaded SchemaEntry, or null if the key does not exist.
+   * @throws IOException on I/O error.
+   */
+  private static <K> SchemaEntry loadOnce(
+      ConcurrentMap<K, FutureTask<SchemaEntry>> loads,
+      K key,
+      Callable<SchemaEntry> loader)
+      throws IOException {
+    final FutureTask<SchemaEntry> task = new FutureTask<SchemaEntry>(loader);
+    final FutureTask<SchemaEntry> existing = loads.putIfAbsent(key, task);
+    if (null != existing) {
+      return getLoadedEntry(existing);
+    }
+    try {
+      task.run();
+    } finally {
+      loads.remove(key, task);
+    }
+    return getLoadedEntry(task);
+  }
 
-    // On a lookup miss from the local schema cache, check to see if we can get the schema
-    // from the original HBase table, cache it locally, and return it.
-    final SchemaTableEntry avroEntry = loadFromHashTable(schemaHash);
-    if (null == avroEntry) {
-      return null;
+  /**
+   * Waits for the result of a schema entry load.
+   *
+   * @param load Schema entry load.
+   * @return the loaded SchemaEntry, or null if the key does not exist.
+   * @throws IOException on I/O error, or if the wait is interrupted.
+   */
+  private static SchemaEntry getLoadedEntry(FutureTask<SchemaEntry> load) throws IOException {
+    try {
+      return load.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while loading a schema entry.");
+    } catch (ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
     }
-    final SchemaEntry entry = storeInMemory(avroEntry);
-    Preconditions.checkState(schemaHash.equals(entry.getHash()));
-    return entry;
+  }
+
+  /**
+   * Stores a schema entry loaded from the tables in memory.
+   *
+   * Takes the monitor of this schema table only to update the in-memory maps, not to fetch
+   * the entry from the tables.
+   *
+   * @param entry the SchemaEntry loaded from the tables.
+   * @return the SchemaEntry stored in memory.
+   */
+  private synchronized SchemaEntry storeLoadedEntry(SchemaEntry entry) {
+    return storeInMemory(entry);
   }
 
   /**
@@ -546,7 +938,7 @@ public class HBaseSchemaTable implements KijiSchemaTable {
   /**
    * Stores the specified schema entry in memory.
    *
-   * External synchronization required.
+   * Caller must hold the monitor of this schema table.
    *
    * @param entry the SchemaEntry to store in memory.
    * @return the SchemaEntry stored in memory.
@@ -562,7 +954,7 @@ public class HBaseSchemaTable implements KijiSchemaTable {
     // Replacing an ID-mapped entry should never happen:
     // IDs are associated to at most one schema/hash.
     final SchemaEntry oldIdEntry = mSchemaIdMap.put(entry.getId(), entry);
-    if (oldIdEntry != null) {
+    if ((oldIdEntry != null) && !oldIdEntry.equals(entry)) {
       throw new AssertionError(String.format(
           "Attempting to replace ID-mapped schema entry:%n%s%nwith:%n%s", oldIdEntry, entry));
     }
@@ -676,6 +1068,218 @@ public class HBaseSchemaTable implements KijiSchemaTable {
         .add(SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES, Bytes.toBytes(counter)));
   }
 
+  /**
+   * Sets the schema ID counter, unless it moved away from an expected value.
+   *
+   * @param expected Expected current value of the schema ID counter.
+   * @param counter New value for the schema ID counter.
+   * @return whether the counter was set, ie. whether it still had the expected value.
+   * @throws IOException on I/O error.
+   */
+  private boolean compareAndSetSchemaIdCounter(long expected, long counter) throws IOException {
+    return mSchemaIdTable.checkAndPut(SCHEMA_COUNTER_ROW_NAME_BYTES,
+        SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES, Bytes.toBytes(expected),
+        new Put(SCHEMA_COUNTER_ROW_NAME_BYTES).add(
+            SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES, Bytes.toBytes(counter)));
+  }
+
+  /**
+   * Reads the schema ID counter.
+   *
+   * @return the current value of the schema ID counter, ie. the next schema ID to allocate.
+   * @throws IOException on I/O error.
+   */
+  private long getSchemaIdCounter() throws IOException {
+    final Result result = mSchemaIdTable.get(new Get(SCHEMA_COUNTER_ROW_NAME_BYTES)
+        .addColumn(SCHEMA_COLUMN_FAMILY_BYTES, SCHEMA_COLUMN_QUALIFIER_BYTES));
+    return result.isEmpty() ? 0L : Bytes.toLong(result.value());
+  }
+
+  /**
+   * Writes a snapshot of the schema ID table to a local file.
+   *
+   * <p>
+   * The snapshot holds the schema entries with an ID below the schema ID counter, along with
+   * the counter itself. Schema IDs are never reassigned, so the snapshot remains valid as new
+   * schemas are registered: schemas registered after the snapshot are fetched lazily.
+   * The file is replaced atomically.
+   * </p>
+   *
+   * @param file Local file to write the snapshot to.
+   * @throws IOException on I/O error, or if the schema ID table is inconsistent.
+   */
+  public void writeSnapshot(File file) throws IOException {
+    Preconditions.checkState(mIsOpen, "Schema tables are closed");
+    final long counter;
+    final Set<SchemaEntry> entries;
+    mZKLock.lock();
+    try {
+      counter = getSchemaIdCounter();
+      entries = loadSchemaIdTable(mSchemaIdTable);
+    } finally {
+      mZKLock.unlock();
+    }
+    if (!checkConsistency(entries)) {
+      throw new IOException("Schema ID table is inconsistent, cannot write a snapshot.");
+    }
+
+    final List<SchemaTableEntry> avroEntries = Lists.newArrayList();
+    for (SchemaEntry entry : entries) {
+      if (entry.getId() < counter) {
+        avroEntries.add(toAvroEntry(entry));
+      }
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+    final DataOutputStream header = new DataOutputStream(bytes);
+    header.writeInt(SNAPSHOT_MAGIC);
+    header.writeLong(counter);
+    header.flush();
+    final Encoder encoder = ENCODER_FACTORY.directBinaryEncoder(bytes, null);
+    SNAPSHOT_WRITER.write(SchemaTableBackup.newBuilder().setEntries(avroEntries).build(), encoder);
+
+    final File tmpFile = new File(file.getPath() + ".tmp");
+    Files.write(bytes.toByteArray(), tmpFile);
+    if (!tmpFile.renameTo(file)) {
+      throw new IOException(String.format(
+          "Unable to move schema table snapshot '%s' to '%s'.", tmpFile, file));
+    }
+    LOG.info("Wrote {} schema entries to snapshot '{}'.", avroEntries.size(), file);
+  }
+
+  /**
+   * Preloads the in-memory maps of this schema table from a snapshot written by
+   * {@link #writeSnapshot(File)}.
+   *
+   * <p>
+   * The snapshot file is memory-mapped. It is validated against the schema tables with two
+   * lookups, independently of the number of schemas: the counter recorded in the snapshot may
+   * not exceed the current schema ID counter, and the snapshot entry with the highest ID must
+   * match the schema ID table. Missing, unreadable or stale snapshots are ignored.
+   * </p>
+   *
+   * @param file Local snapshot file.
+   * @return whether the snapshot has been loaded.
+   * @throws IOException on I/O error while reading the schema tables.
+   */
+  public boolean loadSnapshot(File file) throws IOException {
+    Preconditions.checkState(mIsOpen, "Schema tables are closed");
+    if (!file.isFile()) {
+      LOG.info("No schema table snapshot '{}'.", file);
+      return false;
+    }
+
+    final SchemaTableBackup snapshot;
+    final long snapshotCounter;
+    try {
+      final FileInputStream fis = new FileInputStream(file);
+      final ByteBuffer buffer;
+      try {
+        final FileChannel channel = fis.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        // The mapping remains valid after the channel is closed:
+        ResourceUtils.closeOrLog(fis);
+      }
+      if ((buffer.remaining() < SNAPSHOT_HEADER_SIZE) || (buffer.getInt() != SNAPSHOT_MAGIC)) {
+        LOG.warn("Ignoring invalid schema table snapshot '{}'.", file);
+        return false;
+      }
+      snapshotCounter = buffer.getLong();
+      final Decoder decoder = DECODER_FACTORY.binaryDecoder(
+          new ByteBufferInputStream(Collections.singletonList(buffer.slice())), null);
+      snapshot = SNAPSHOT_READER.read(null, decoder);
+    } catch (IOException ioe) {
+      LOG.warn("Unable to read schema table snapshot '{}': {}", file, ioe.toString());
+      return false;
+    } catch (AvroRuntimeException are) {
+      LOG.warn("Unable to decode schema table snapshot '{}': {}", file, are.toString());
+      return false;
+    }
+
+    final long counter = getSchemaIdCounter();
+    if (snapshotCounter > counter) {
+      LOG.warn("Ignoring stale schema table snapshot '{}': "
+          + "snapshot counter {} is ahead of schema ID counter {}.",
+          new Object[] {file, snapshotCounter, counter});
+      return false;
+    }
+    SchemaTableEntry lastEntry = null;
+    for (SchemaTableEntry avroEntry : snapshot.getEntries()) {
+      if ((null == lastEntry) || (avroEntry.getId() > lastEntry.getId())) {
+        lastEntry = avroEntry;
+      }
+    }
+    if (lastEntry != null) {
+      final SchemaTableEntry tableEntry = loadFromIdTable(lastEntry.getId());
+      if ((null == tableEntry) || !tableEntry.getHash().equals(lastEntry.getHash())) {
+        LOG.warn("Ignoring stale schema table snapshot '{}': "
+            + "schema entry with ID {} does not match the schema ID table.",
+            file, lastEntry.getId());
+        return false;
+      }
+    }
+
+    synchronized (this) {
+      for (SchemaTableEntry avroEntry : snapshot.getEntries()) {
+        if (!mSchemaIdMap.containsKey(avroEntry.getId())) {
+          storeInMemory(avroEntry);
+        }
+      }
+    }
+    LOG.debug("Loaded {} schema entries from snapshot '{}'.", snapshot.getEntries().size(), file);
+    return true;
+  }
+
+  /**
+   * Scans the schema tables in full and checks the consistency of their entries.
+   *
+   * <p>
+   * The cost of this check grows with the number of registered schemas: it is not done when
+   * the schema table is opened, and is meant to be run from the command-line tool.
+   * </p>
+   *
+   * @return whether the schema tables are consistent.
+   * @throws IOException on I/O error.
+   */
+  public boolean checkConsistency() throws IOException {
+    Preconditions.checkState(mIsOpen, "Schema tables are closed");
+    mZKLock.lock();
+    try {
+      boolean isConsistent = true;
+      final Set<SchemaEntry> hashTableEntries = loadSchemaHashTable(mSchemaHashTable);
+      if (!checkConsistency(hashTableEntries)) {
+        LOG.error("Schema hash table is inconsistent");
+        isConsistent = false;
+      }
+
+      final Set<SchemaEntry> idTableEntries = loadSchemaIdTable(mSchemaIdTable);
+      if (!checkConsistency(idTableEntries)) {
+        LOG.error("Schema ID table is inconsistent");
+        isConsistent = false;
+      }
+
+      final Set<SchemaEntry> mergedEntries = new HashSet<SchemaEntry>(hashTableEntries);
+      mergedEntries.addAll(idTableEntries);
+      if (!checkConsistency(mergedEntries)) {
+        LOG.error("Merged schema hash and ID tables are inconsistent");
+        isConsistent = false;
+      }
+
+      final long counter = getSchemaIdCounter();
+      for (SchemaEntry entry : mergedEntries) {
+        if (entry.getId() >= counter) {
+          LOG.error(String.format("Schema entry %s has an ID beyond the schema ID counter %d",
+              entry, counter));
+          isConsistent = false;
+        }
+      }
+      return isConsistent;
+    } finally {
+      mZKLock.unlock();
+    }
+  }
+
   /**
    * Deletes an HBase table.
    *
@@ -750,24 +1354,22 @@ public class HBaseSchemaTable implements KijiSchemaTable {
     return SchemaTableBackup.newBuilder().setEntries(entries).build();
   }
 
-  /** {@inheritDoc} */
+  /**
+   * {@inheritDoc}
+   *
+   * <p>
+   * Registrations do not take the ZooKeeper lock, and may allocate schema IDs while a backup is
+   * being restored. The schema ID counter is therefore moved past the restored entries with a
+   * checkAndPut against the value it had when the schema tables were loaded: if a registrant
+   * allocated an ID in the meantime, the tables are loaded again and the restore retries.
+   * Restored entries are written once the counter is past their IDs.
+   * </p>
+   */
   @Override
   public void fromBackup(final SchemaTableBackup backup) throws IOException {
     Preconditions.checkState(mIsOpen, "Schema tables are closed");
     mZKLock.lock();
     try {
-      /** Entries from the schema hash table. */
-      final Set<SchemaEntry> hashTableEntries = loadSchemaHashTable(mSchemaHashTable);
-
-      /** Entries from the schema ID table. */
-      final Set<SchemaEntry> idTableEntries = loadSchemaIdTable(mSchemaIdTable);
-
-      final Set<SchemaEntry> mergedEntries = new HashSet<SchemaEntry>(hashTableEntries);
-      mergedEntries.addAll(idTableEntries);
-      if (!checkConsistency(mergedEntries)) {
-        LOG.error("Merged schema hash and ID tables are inconsistent");
-      }
-
       final List<SchemaTableEntry> avroBackupEntries = backup.getEntries();
       final Set<SchemaEntry> schemaTableEntries =
           new HashSet<SchemaEntry>(avroBackupEntries.size());
@@ -778,19 +1380,43 @@ public class HBaseSchemaTable implements KijiSchemaTable {
         LOG.error("Backup schema entries are inconsistent");
       }
 
-      mergedEntries.addAll(schemaTableEntries);
-      if (!checkConsistency(schemaTableEntries)) {
-        LOG.error("Backup schema entries are inconsistent with already existing schema entries");
-      }
+      while (true) {
+        // Read the counter before the entries, so that the entries cover every ID allocated
+        // below the counter whose registrant already wrote it:
+        final long counter = getSchemaIdCounter();
 
-      long maxSchemaId = -1L;
-      for (SchemaEntry entry : mergedEntries) {
-        maxSchemaId = Math.max(maxSchemaId, entry.getId());
+        /** Entries from the schema hash table. */
+        final Set<SchemaEntry> hashTableEntries = loadSchemaHashTable(mSchemaHashTable);
+
+        /** Entries from the schema ID table. */
+        final Set<SchemaEntry> idTableEntries = loadSchemaIdTable(mSchemaIdTable);
+
+        final Set<SchemaEntry> mergedEntries = new HashSet<SchemaEntry>(hashTableEntries);
+        mergedEntries.addAll(idTableEntries);
+        if (!checkConsistency(mergedEntries)) {
+          LOG.error("Merged schema hash and ID tables are inconsistent");
+        }
+
+        mergedEntries.addAll(schemaTableEntries);
+        if (!checkConsistency(mergedEntries)) {
+          LOG.error("Backup schema entries are inconsistent with already existing schema entries");
+        }
+
+        long maxSchemaId = -1L;
+        for (SchemaEntry entry : mergedEntries) {
+          maxSchemaId = Math.max(maxSchemaId, entry.getId());
+        }
+        // The counter never moves backwards:
+        final long nextSchemaId = Math.max(maxSchemaId + 1, counter);
+        if (compareAndSetSchemaIdCounter(counter, nextSchemaId)) {
+          break;
+        }
+        LOG.debug("Schema ID counter moved past {} during restore, reloading the schema tables.",
+            counter);
       }
-      final long nextSchemaId = maxSchemaId + 1;
 
       flush();
-      SchemaPlatformBridge.get().setWriteBufferSize(mSchemaIdTable, schemaTableEntries.size() + 1);
+      SchemaPlatformBridge.get().setWriteBufferSize(mSchemaIdTable, schemaTableEntries.size());
       SchemaPlatformBridge.get().setWriteBufferSize(mSchemaHashTable, schemaTableEntries.size());
 
       // Restored schema entries share the same timestamp:
@@ -798,7 +1424,6 @@ public class HBaseSchemaTable implements KijiSchemaTable {
       for (SchemaEntry entry : schemaTableEntries) {
         storeInTable(toAvroEntry(entry), timestamp, false);  // do not flush
       }
-      setSchemaIdCounter(nextSchemaId);
       flush();
     } finally {
       mZKLock.unlock();
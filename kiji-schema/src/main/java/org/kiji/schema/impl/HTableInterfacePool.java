@@ -0,0 +1,247 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.annotations.ApiAudience;
+
+/**
+ * Bounded pool of HTableInterface instances for a single HBase table.
+ *
+ * <p>
+ *   HTableInterface instances are not thread-safe. This pool hands out HTables to one thread at
+ *   a time: callers must release every HTable they acquire, typically in a finally block.
+ *   At most <code>maxSize</code> HTables may be checked out at once; further acquisitions block
+ *   until an HTable is released. HTables are created lazily, and reused once released.
+ * </p>
+ * <p>
+ *   The pool keeps track of the number of checkouts, of the cumulative time spent waiting for an
+ *   HTable and of the maximum number of HTables checked out concurrently (high-water mark).
+ * </p>
+ * <p>This class is thread-safe.</p>
+ */
+@ApiAudience.Private
+public final class HTableInterfacePool implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(HTableInterfacePool.class);
+
+  /** Factory for new HTables. */
+  private final HTableInterfaceFactory mFactory;
+
+  /** Configuration for new HTables. */
+  private final Configuration mConf;
+
+  /** Name of the HBase table. */
+  private final String mTableName;
+
+  /** Maximum number of HTables that may be checked out concurrently. */
+  private final int mMaxSize;
+
+  /** One permit per HTable that may be checked out. */
+  private final Semaphore mPermits;
+
+  /** HTables created and currently not checked out. */
+  private final Queue<HTableInterface> mIdle = new ConcurrentLinkedQueue<HTableInterface>();
+
+  /** Total number of checkouts. */
+  private final AtomicLong mCheckoutCount = new AtomicLong(0);
+
+  /** Cumulative time spent waiting for an HTable to be available, in nanoseconds. */
+  private final AtomicLong mWaitTimeNanos = new AtomicLong(0);
+
+  /** Number of HTables currently checked out. */
+  private final AtomicInteger mInUse = new AtomicInteger(0);
+
+  /** Maximum number of HTables checked out concurrently. */
+  private final AtomicInteger mHighWaterMark = new AtomicInteger(0);
+
+  /** Whether this pool is open. */
+  private volatile boolean mIsOpen = true;
+
+  /**
+   * Initializes a new pool of HTables.
+   *
+   * @param tableName Name of the HBase table.
+   * @param conf Configuration for new HTables.
+   * @param factory Factory for new HTables.
+   * @param maxSize Maximum number of HTables that may be checked out concurrently.
+   */
+  public HTableInterfacePool(
+      String tableName,
+      Configuration conf,
+      HTableInterfaceFactory factory,
+      int maxSize) {
+    Preconditions.checkArgument(maxSize > 0, "Invalid HTable pool size: %s", maxSize);
+    mTableName = Preconditions.checkNotNull(tableName);
+    mConf = Preconditions.checkNotNull(conf);
+    mFactory = Preconditions.checkNotNull(factory);
+    mMaxSize = maxSize;
+    mPermits = new Semaphore(maxSize, true);
+  }
+
+  /**
+   * Checks out an HTable from the pool, blocking until one is available.
+   *
+   * <p>The HTable must be returned to the pool with {@link #release(HTableInterface)}.</p>
+   *
+   * @return an HTable for the exclusive use of the caller, until released.
+   * @throws IOException on I/O error, or if interrupted while waiting for an HTable.
+   */
+  public HTableInterface acquire() throws IOException {
+    Preconditions.checkState(mIsOpen, "HTable pool for '%s' is closed.", mTableName);
+    final long startNanos = System.nanoTime();
+    try {
+      mPermits.acquire();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(String.format(
+          "Interrupted while waiting for an HTable for '%s'.", mTableName));
+    }
+    mWaitTimeNanos.addAndGet(System.nanoTime() - startNanos);
+    mCheckoutCount.incrementAndGet();
+    updateHighWaterMark(mInUse.incrementAndGet());
+
+    final HTableInterface htable = mIdle.poll();
+    if (null != htable) {
+      return htable;
+    }
+    try {
+      return mFactory.create(mConf, mTableName);
+    } catch (IOException ioe) {
+      mInUse.decrementAndGet();
+      mPermits.release();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Returns an HTable to the pool.
+   *
+   * @param htable HTable to return to the pool, previously obtained with {@link #acquire()}.
+   */
+  public void release(HTableInterface htable) {
+    Preconditions.checkNotNull(htable);
+    mInUse.decrementAndGet();
+    mIdle.add(htable);
+    mPermits.release();
+    if (!mIsOpen) {
+      // The pool was closed while this HTable was checked out:
+      closeIdleTables();
+    }
+  }
+
+  /**
+   * Records a new number of HTables in use, updating the high-water mark if necessary.
+   *
+   * @param inUse Current number of HTables in use.
+   */
+  private void updateHighWaterMark(int inUse) {
+    while (true) {
+      final int current = mHighWaterMark.get();
+      if ((inUse <= current) || mHighWaterMark.compareAndSet(current, inUse)) {
+        return;
+      }
+    }
+  }
+
+  /** @return the maximum number of HTables that may be checked out concurrently. */
+  public int getMaxSize() {
+    return mMaxSize;
+  }
+
+  /** @return the total number of checkouts from this pool. */
+  public long getCheckoutCount() {
+    return mCheckoutCount.get();
+  }
+
+  /**
+   * Reports the cumulative time spent waiting for an HTable to be available.
+   *
+   * @param unit Time unit to report the wait time in.
+   * @return the cumulative time spent waiting for an HTable, in the specified unit.
+   */
+  public long getWaitTime(TimeUnit unit) {
+    return unit.convert(mWaitTimeNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /** @return the number of HTables currently checked out. */
+  public int getInUseCount() {
+    return mInUse.get();
+  }
+
+  /** @return the maximum number of HTables that were checked out concurrently. */
+  public int getHighWaterMark() {
+    return mHighWaterMark.get();
+  }
+
+  /** Closes the HTables currently idle in the pool. */
+  private void closeIdleTables() {
+    while (true) {
+      final HTableInterface htable = mIdle.poll();
+      if (null == htable) {
+        return;
+      }
+      try {
+        htable.close();
+      } catch (IOException ioe) {
+        LOG.warn("I/O error while closing HTable for '{}': {}", mTableName, ioe.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Closes this pool.
+   *
+   * <p>HTables still checked out are closed when they are returned to the pool.</p>
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    mIsOpen = false;
+    final int inUse = mInUse.get();
+    if (inUse > 0) {
+      LOG.warn("Closing HTable pool for '{}' with {} HTable(s) still in use.", mTableName, inUse);
+    }
+    closeIdleTables();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format(
+        "HTableInterfacePool(table=%s, max-size=%d, in-use=%d, checkouts=%d, high-water-mark=%d)",
+        mTableName, mMaxSize, getInUseCount(), getCheckoutCount(), getHighWaterMark());
+  }
+}
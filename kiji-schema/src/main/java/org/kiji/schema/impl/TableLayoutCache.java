@@ -0,0 +1,146 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.KijiMetaTable;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiTableNotFoundException;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.metrics.MetricsRegistry;
+import org.kiji.schema.metrics.NoopMetricsRegistry;
+
+/**
+ * Cache of the table layouts of a Kiji instance, shared by all the opened tables.
+ *
+ * <p>
+ *   A cached layout is revalidated each time it is requested, by reading the timestamp of the
+ *   most recent layout of the table from the meta table. The layout is only read, decoded and
+ *   validated again when this timestamp changes.
+ * </p>
+ *
+ * <p> This class is thread-safe. </p>
+ */
+@ApiAudience.Private
+public final class TableLayoutCache {
+  private static final Logger LOG = LoggerFactory.getLogger(TableLayoutCache.class);
+
+  /** Meta table storing the table layouts. */
+  private final KijiMetaTable mMetaTable;
+
+  /** Schema table the cell specs of the layouts are bound to. */
+  private final KijiSchemaTable mSchemaTable;
+
+  /** Maximum number of compiled data requests cached per table. */
+  private final int mDataRequestCacheSize;
+
+  /** Registry to record the cell encoding and decoding metrics into. */
+  private final MetricsRegistry mMetrics;
+
+  /** Cached layouts, keyed by table name. */
+  private final ConcurrentMap<String, CachedTableLayout> mLayouts = Maps.newConcurrentMap();
+
+  /**
+   * Initializes a table layout cache.
+   *
+   * @param metaTable Meta table storing the table layouts.
+   * @param schemaTable Schema table to bind the cell specs of the layouts to.
+   * @param dataRequestCacheSize Maximum number of compiled data requests cached per table.
+   */
+  public TableLayoutCache(
+      KijiMetaTable metaTable,
+      KijiSchemaTable schemaTable,
+      int dataRequestCacheSize) {
+    this(metaTable, schemaTable, dataRequestCacheSize, NoopMetricsRegistry.get());
+  }
+
+  /**
+   * Initializes a table layout cache.
+   *
+   * @param metaTable Meta table storing the table layouts.
+   * @param schemaTable Schema table to bind the cell specs of the layouts to.
+   * @param dataRequestCacheSize Maximum number of compiled data requests cached per table.
+   * @param metrics Registry to record the cell encoding and decoding metrics into.
+   */
+  public TableLayoutCache(
+      KijiMetaTable metaTable,
+      KijiSchemaTable schemaTable,
+      int dataRequestCacheSize,
+      MetricsRegistry metrics) {
+    mMetaTable = Preconditions.checkNotNull(metaTable);
+    mSchemaTable = Preconditions.checkNotNull(schemaTable);
+    mDataRequestCacheSize = dataRequestCacheSize;
+    mMetrics = Preconditions.checkNotNull(metrics);
+  }
+
+  /**
+   * Reports the current layout of a table.
+   *
+   * @param tableName Name of the table.
+   * @return the current layout of the table.
+   * @throws IOException on I/O error.
+   * @throws KijiTableNotFoundException if the table does not exist.
+   */
+  public CachedTableLayout get(String tableName) throws IOException {
+    final long timestamp;
+    try {
+      timestamp = mMetaTable.getTableLayoutTimestamp(tableName);
+    } catch (KijiTableNotFoundException ktnfe) {
+      mLayouts.remove(tableName);
+      throw ktnfe;
+    }
+
+    final CachedTableLayout cached = mLayouts.get(tableName);
+    if ((null != cached) && (cached.getTimestamp() == timestamp)) {
+      return cached;
+    }
+
+    // The layout may be updated after the timestamp was read: the loaded layout is then
+    // associated with an older timestamp, and will be reloaded on the next request.
+    LOG.debug("Loading layout for table '{}' with timestamp {}.", tableName, timestamp);
+    final KijiTableLayout layout = mMetaTable.getTableLayout(tableName);
+    final CachedTableLayout loaded =
+        new CachedTableLayout(layout, timestamp, mSchemaTable, mDataRequestCacheSize, mMetrics);
+    mLayouts.put(tableName, loaded);
+    return loaded;
+  }
+
+  /**
+   * Discards the cached layout of a table, if any.
+   *
+   * @param tableName Name of the table.
+   */
+  public void invalidate(String tableName) {
+    mLayouts.remove(tableName);
+  }
+
+  /** Discards all the cached layouts. */
+  public void clear() {
+    mLayouts.clear();
+  }
+}
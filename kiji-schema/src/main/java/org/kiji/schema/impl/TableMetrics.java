@@ -0,0 +1,209 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.DecodedCell;
+import org.kiji.schema.KijiCellDecoder;
+import org.kiji.schema.KijiCellEncoder;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.metrics.MetricsRegistry;
+
+/**
+ * Names and instruments the metrics of Kiji tables.
+ *
+ * <p>
+ *   Table metrics are named <code>table.&lt;table-name&gt;.&lt;metric&gt;</code>.
+ *   Cell encoders and decoders are only wrapped when metrics are enabled, so that disabled
+ *   metrics add no indirection on the encoding and decoding paths.
+ * </p>
+ */
+@ApiAudience.Private
+final class TableMetrics {
+  /** Utility class cannot be instantiated. */
+  private TableMetrics() {
+  }
+
+  /**
+   * Reports the full name of a table metric.
+   *
+   * @param tableName Name of the table.
+   * @param metric Name of the metric, relative to the table.
+   * @return the full name of the table metric.
+   */
+  static String getName(String tableName, String metric) {
+    return String.format("table.%s.%s", tableName, metric);
+  }
+
+  /**
+   * Records the bytes decoded from a column, and the latencies of the cell decoding.
+   *
+   * @param decoder Cell decoder to instrument.
+   * @param metrics Registry to record the metrics into.
+   * @param tableName Name of the table the column belongs to.
+   * @param column Column decoded (family only for map-type families).
+   * @return the instrumented decoder, or the given decoder if metrics are disabled.
+   * @param <T> Type of the decoded values.
+   */
+  static <T> KijiCellDecoder<T> meter(
+      KijiCellDecoder<T> decoder,
+      MetricsRegistry metrics,
+      String tableName,
+      KijiColumnName column) {
+    if (!metrics.isEnabled()) {
+      return decoder;
+    }
+    return new MeteredCellDecoder<T>(
+        decoder,
+        metrics.getCounter(getName(tableName, String.format("column.%s.bytes_decoded", column))),
+        metrics.getTimer(getName(tableName, "cell.decode")));
+  }
+
+  /**
+   * Records the bytes encoded into a column, and the latencies of the cell encoding.
+   *
+   * @param encoder Cell encoder to instrument.
+   * @param metrics Registry to record the metrics into.
+   * @param tableName Name of the table the column belongs to.
+   * @param column Column encoded (family only for map-type families).
+   * @return the instrumented encoder, or the given encoder if metrics are disabled.
+   */
+  static KijiCellEncoder meter(
+      KijiCellEncoder encoder,
+      MetricsRegistry metrics,
+      String tableName,
+      KijiColumnName column) {
+    if (!metrics.isEnabled()) {
+      return encoder;
+    }
+    return new MeteredCellEncoder(
+        encoder,
+        metrics.getCounter(getName(tableName, String.format("column.%s.bytes_encoded", column))),
+        metrics.getTimer(getName(tableName, "cell.encode")));
+  }
+
+  /**
+   * Cell decoder recording the decoded bytes and the decoding latencies.
+   *
+   * @param <T> Type of the decoded values.
+   */
+  private static final class MeteredCellDecoder<T> implements KijiCellDecoder<T> {
+    /** Wrapped cell decoder. */
+    private final KijiCellDecoder<T> mDecoder;
+
+    /** Counts the decoded bytes. */
+    private final MetricsRegistry.Counter mBytes;
+
+    /** Records the decoding latencies. */
+    private final MetricsRegistry.Timer mTimer;
+
+    /**
+     * Initializes a metered cell decoder.
+     *
+     * @param decoder Wrapped cell decoder.
+     * @param bytes Counts the decoded bytes.
+     * @param timer Records the decoding latencies.
+     */
+    MeteredCellDecoder(
+        KijiCellDecoder<T> decoder,
+        MetricsRegistry.Counter bytes,
+        MetricsRegistry.Timer timer) {
+      mDecoder = Preconditions.checkNotNull(decoder);
+      mBytes = bytes;
+      mTimer = timer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DecodedCell<T> decodeCell(byte[] bytes) throws IOException {
+      final long startNanos = mTimer.start();
+      try {
+        return mDecoder.decodeCell(bytes);
+      } finally {
+        mTimer.stop(startNanos);
+        mBytes.inc(bytes.length);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public T decodeValue(byte[] bytes) throws IOException {
+      final long startNanos = mTimer.start();
+      try {
+        return mDecoder.decodeValue(bytes);
+      } finally {
+        mTimer.stop(startNanos);
+        mBytes.inc(bytes.length);
+      }
+    }
+  }
+
+  /** Cell encoder recording the encoded bytes and the encoding latencies. */
+  private static final class MeteredCellEncoder implements KijiCellEncoder {
+    /** Wrapped cell encoder. */
+    private final KijiCellEncoder mEncoder;
+
+    /** Counts the encoded bytes. */
+    private final MetricsRegistry.Counter mBytes;
+
+    /** Records the encoding latencies. */
+    private final MetricsRegistry.Timer mTimer;
+
+    /**
+     * Initializes a metered cell encoder.
+     *
+     * @param encoder Wrapped cell encoder.
+     * @param bytes Counts the encoded bytes.
+     * @param timer Records the encoding latencies.
+     */
+    MeteredCellEncoder(
+        KijiCellEncoder encoder,
+        MetricsRegistry.Counter bytes,
+        MetricsRegistry.Timer timer) {
+      mEncoder = Preconditions.checkNotNull(encoder);
+      mBytes = bytes;
+      mTimer = timer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] encode(DecodedCell<?> cell) throws IOException {
+      final long startNanos = mTimer.start();
+      final byte[] bytes = mEncoder.encode(cell);
+      mTimer.stop(startNanos);
+      mBytes.inc(bytes.length);
+      return bytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public <T> byte[] encode(T cellValue) throws IOException {
+      final long startNanos = mTimer.start();
+      final byte[] bytes = mEncoder.encode(cellValue);
+      mTimer.stop(startNanos);
+      mBytes.inc(bytes.length);
+      return bytes;
+    }
+  }
+}
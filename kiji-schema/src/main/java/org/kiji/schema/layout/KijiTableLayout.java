@@ -51,6 +51,8 @@ import org.kiji.schema.NoSuchColumnException;
 import org.kiji.schema.avro.CellSchema;
 import org.kiji.schema.avro.ColumnDesc;
 import org.kiji.schema.avro.FamilyDesc;
+import org.kiji.schema.avro.HashSpec;
+import org.kiji.schema.avro.HashType;
 import org.kiji.schema.avro.LocalityGroupDesc;
 import org.kiji.schema.avro.RowKeyComponent;
 import org.kiji.schema.avro.RowKeyEncoding;
@@ -260,11 +262,22 @@ public final class KijiTableLayout {
   // ProtocolVersions specifying when different features were added to layout functionality.
 
   /** Maximum layout version we can recognize. */
-  private static final ProtocolVersion MAX_LAYOUT_VER = ProtocolVersion.parse("layout-1.1.0");
+  private static final ProtocolVersion MAX_LAYOUT_VER = ProtocolVersion.parse("layout-1.2.0");
 
   /** First version where {@link RowKeyFormat2} was supported. */
   private static final ProtocolVersion RKF2_LAYOUT_VER = ProtocolVersion.parse("layout-1.1.0");
 
+  /** First version where hash types other than MD5 were supported. */
+  private static final ProtocolVersion HASH_TYPES_LAYOUT_VER =
+      ProtocolVersion.parse("layout-1.2.0");
+
+  /** First version where striped counters were supported. */
+  private static final ProtocolVersion STRIPED_COUNTERS_LAYOUT_VER =
+      ProtocolVersion.parse("layout-1.2.0");
+
+  /** Maximum number of stripes of a counter. */
+  private static final int MAX_COUNTER_STRIPES = 1024;
+
   /** Minimum layout version we can recognize. */
   private static final ProtocolVersion MIN_LAYOUT_VER = ProtocolVersion.parse("layout-1.0.0");
 
@@ -487,6 +500,10 @@ public final class KijiTableLayout {
           final CellSchema referenceSchema =
               (null != reference) ? reference.getDesc().getMapSchema() : null;
           validateCellSchema(mDesc.getMapSchema(), referenceSchema);
+          if (null != mDesc.getMapSchema().getCounterStripes()) {
+            throw new InvalidLayoutException(String.format(
+                "Map-type family '%s' cannot have striped counters.", getName()));
+          }
         }
 
         // Build columns:
@@ -915,9 +932,10 @@ public final class KijiTableLayout {
           + "of type RAW, HASH and HASH_PREFIX. Use RowKeyFormat2 instead");
     }
     if (rowKeyEncoding == RowKeyEncoding.HASH || rowKeyEncoding == RowKeyEncoding.HASH_PREFIX) {
-      if (format.getHashSize() < 0 || format.getHashSize() > Hasher.HASH_SIZE_BYTES) {
+      final int maxHashSize = Hasher.getHashSize(getHashType(format));
+      if (format.getHashSize() < 0 || format.getHashSize() > maxHashSize) {
         throw new InvalidLayoutException("HASH or HASH_PREFIX row key formats require hash size"
-            + "to be between 1 and " + Hasher.HASH_SIZE_BYTES);
+            + "to be between 1 and " + maxHashSize);
       }
     }
   }
@@ -986,10 +1004,10 @@ public final class KijiTableLayout {
     }
 
     // hash size invalid
+    final int maxHashSize = Hasher.getHashSize(format.getSalt().getHashType());
     if (format.getSalt().getHashSize() <= 0
-        || format.getSalt().getHashSize() > Hasher.HASH_SIZE_BYTES) {
-      throw new InvalidLayoutException("Valid hash sizes are between 1 and "
-          + Hasher.HASH_SIZE_BYTES);
+        || format.getSalt().getHashSize() > maxHashSize) {
+      throw new InvalidLayoutException("Valid hash sizes are between 1 and " + maxHashSize);
     }
   }
 
@@ -1055,6 +1073,14 @@ public final class KijiTableLayout {
           + RKF2_LAYOUT_VER.toString());
     }
 
+    // Hash types other than MD5 were introduced in version 1.2.
+    if (HASH_TYPES_LAYOUT_VER.compareTo(layoutVersion) > 0
+        && getHashType(mDesc.getKeysFormat()) != HashType.MD5) {
+      throw new InvalidLayoutException(
+          "Support for hash types other than MD5 begins with layout version "
+          + HASH_TYPES_LAYOUT_VER.toString());
+    }
+
     if (!isValidName(getName())) {
       throw new InvalidLayoutException(String.format("Invalid table name: '%s'.", getName()));
     }
@@ -1196,6 +1222,14 @@ public final class KijiTableLayout {
           }
           Preconditions.checkState(
               columnNames.add(new KijiColumnName(familyLayout.getName(), columnLayout.getName())));
+
+          // Striped counters were introduced in version 1.2.
+          if (STRIPED_COUNTERS_LAYOUT_VER.compareTo(layoutVersion) > 0
+              && (null != columnLayout.mDesc.getColumnSchema().getCounterStripes())) {
+            throw new InvalidLayoutException(
+                "Support for striped counters begins with layout version "
+                + STRIPED_COUNTERS_LAYOUT_VER.toString());
+          }
         }
       }
     }
@@ -1491,6 +1525,20 @@ public final class KijiTableLayout {
       }
     }
 
+    // Only counters may be striped:
+    final Integer stripes = schema.getCounterStripes();
+    if (null != stripes) {
+      if (schema.getType() != SchemaType.COUNTER) {
+        throw new InvalidLayoutException(String.format(
+            "Invalid schema, only counters may be striped: %s.", schema));
+      }
+      if ((stripes < 1) || (stripes > MAX_COUNTER_STRIPES)) {
+        throw new InvalidLayoutException(String.format(
+            "Invalid number of counter stripes %d, must be between 1 and %d: %s.",
+            stripes, MAX_COUNTER_STRIPES, schema));
+      }
+    }
+
     if (null != reference) {
       // Schema storage cannot change:
       if (schema.getStorage() != reference.getStorage()) {
@@ -1513,6 +1561,13 @@ public final class KijiTableLayout {
             "Column schema cannot be modified from %s to %s.",
             reference, schema));
       }
+
+      // Removing stripes would drop the content of the removed stripes:
+      if (getCounterStripes(schema) < getCounterStripes(reference)) {
+        throw new InvalidLayoutException(String.format(
+            "Number of counter stripes cannot be reduced from %s to %s.",
+            reference, schema));
+      }
     }
     // TODO(SCHEMA-2) Validate compatibility between the new Avro schema and the reference one.
   }
@@ -1622,4 +1677,34 @@ public final class KijiTableLayout {
       throw new RuntimeException("Unsupported Row Key Format");
     }
   }
+
+  /**
+   * Get the hash function for a given row key format.
+   *
+   * @param rowKeyFormat Format of row keys of type RowKeyFormat or RowKeyFormat2.
+   * @return The hash function of the row keys; MD5 if unspecified.
+   */
+  public static HashType getHashType(Object rowKeyFormat) {
+    final HashType hashType;
+    if (rowKeyFormat instanceof RowKeyFormat) {
+      hashType = ((RowKeyFormat) rowKeyFormat).getHashType();
+    } else if (rowKeyFormat instanceof RowKeyFormat2) {
+      final HashSpec salt = ((RowKeyFormat2) rowKeyFormat).getSalt();
+      hashType = (null == salt) ? null : salt.getHashType();
+    } else {
+      throw new RuntimeException("Unsupported Row Key Format");
+    }
+    return (null == hashType) ? HashType.MD5 : hashType;
+  }
+
+  /**
+   * Gets the number of cells a counter is striped over.
+   *
+   * @param schema Cell schema of a column.
+   * @return the number of stripes of the column; 1 if the column is not striped.
+   */
+  public static int getCounterStripes(CellSchema schema) {
+    final Integer stripes = schema.getCounterStripes();
+    return (null == stripes) ? 1 : stripes;
+  }
 }
@@ -74,6 +74,20 @@ public interface KijiTableLayoutDatabase {
    */
   KijiTableLayout getTableLayout(String table) throws IOException;
 
+  /**
+   * Gets the timestamp of the most recent layout of a table, without decoding the layout.
+   *
+   * <p>
+   *   This is a cheap way to check whether a previously read layout is still the current
+   *   layout of a table.
+   * </p>
+   *
+   * @param table The name of the Kiji table.
+   * @return the timestamp of the most recent layout of the table.
+   * @throws IOException If there is an error or no such table.
+   */
+  long getTableLayoutTimestamp(String table) throws IOException;
+
   /**
    * Gets a list of the most recent specified number of versions of the table layout.
    *
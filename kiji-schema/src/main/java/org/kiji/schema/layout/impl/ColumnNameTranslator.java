@@ -19,13 +19,12 @@
 
 package org.kiji.schema.layout.impl;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
+import com.google.common.collect.Maps;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import org.kiji.annotations.ApiAudience;
 import org.kiji.schema.KijiColumnName;
@@ -41,34 +40,123 @@ import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.C
  *
  * <p>This class defines a mapping between names of HBase HTable families/qualifiers and
  * Kiji table family/qualifiers.</p>
+ *
+ * <p>
+ *   The translation tables are computed once from the table layout. Translating a group-type
+ *   column does not allocate, and translating a map-type column only allocates the qualifier.
+ *   Translators are immutable and thread-safe: an open table shares a single translator per
+ *   layout, see {@link org.kiji.schema.impl.HBaseKijiTable#getColumnNameTranslator()}.
+ * </p>
  */
 @ApiAudience.Private
 public final class ColumnNameTranslator {
-  private static final Logger LOG = LoggerFactory.getLogger(ColumnNameTranslator.class);
-
   /** Used to separate the Kiji family from the Kiji qualifier in an HBase qualifier. */
   public static final String SEPARATOR = ":";
 
+  /** Byte separating the Kiji family from the Kiji qualifier in an HBase qualifier. */
+  private static final byte SEPARATOR_BYTE = Bytes.toBytes(SEPARATOR)[0];
+
+  /** Maximum number of digits of a ColumnId decoded from HBase (30 bits). */
+  private static final int MAX_COLUMN_ID_DIGITS = 5;
+
+  /** Map from an encoded ColumnId digit (byte) to its value, or -1 if not a valid digit. */
+  private static final int[] DIGIT_VALUES = new int[256];
+  static {
+    Arrays.fill(DIGIT_VALUES, -1);
+    for (int i = 0; i < ColumnId.ALPHABET.length(); i++) {
+      DIGIT_VALUES[ColumnId.ALPHABET.charAt(i)] = i;
+    }
+  }
+
   /** The table to translate names for. */
   private final KijiTableLayout mTableLayout;
 
-  /** A map from ColumnId to its locality group. */
-  private final Map<ColumnId, LocalityGroupLayout> mLocalityGroups;
+  /** Translation tables of the Kiji families, indexed by family name. */
+  private final Map<String, FamilyTranslation> mFamilies = Maps.newHashMap();
+
+  /** Translation tables of the Kiji families, indexed by locality group ID and family ID. */
+  private final FamilyTranslation[][] mFamiliesByIds;
+
+  /** Pre-translated names of a Kiji family. */
+  private static final class FamilyTranslation {
+    /** The Kiji family name. */
+    private final String mName;
+
+    /** Whether the family is a map-type family. */
+    private final boolean mIsMapType;
+
+    /** HBase column name for the family itself (with an empty Kiji qualifier). */
+    private final HBaseColumnName mHBaseFamilyColumn;
+
+    /** HBase family (locality group) of the family. */
+    private final byte[] mHBaseFamily;
+
+    /** Prefix of the HBase qualifiers of the family: "family-id:". */
+    private final byte[] mQualifierPrefix;
+
+    /** Group-type family only: Kiji column names, indexed by column ID. */
+    private final KijiColumnName[] mColumnsById;
+
+    /** Group-type family only: HBase column names, indexed by Kiji qualifier. */
+    private final Map<String, HBaseColumnName> mHBaseColumns = Maps.newHashMap();
+
+    /**
+     * Precomputes the translation tables of a Kiji family.
+     *
+     * @param family Layout of the family.
+     */
+    FamilyTranslation(FamilyLayout family) {
+      mName = family.getName();
+      mIsMapType = family.isMapType();
+      mHBaseFamily = family.getLocalityGroup().getId().toByteArray();
+      mQualifierPrefix = Bytes.toBytes(family.getId().toString() + SEPARATOR);
+      mHBaseFamilyColumn = new HBaseColumnName(mHBaseFamily, mQualifierPrefix);
+
+      int maxColumnId = 0;
+      for (ColumnLayout column : family.getColumns()) {
+        maxColumnId = Math.max(maxColumnId, column.getId().getId());
+      }
+      mColumnsById = new KijiColumnName[family.isGroupType() ? maxColumnId + 1 : 0];
+      if (family.isGroupType()) {
+        for (ColumnLayout column : family.getColumns()) {
+          mColumnsById[column.getId().getId()] = new KijiColumnName(mName, column.getName());
+          mHBaseColumns.put(column.getName(), new HBaseColumnName(mHBaseFamily,
+              Bytes.add(mQualifierPrefix, column.getId().toByteArray())));
+        }
+      }
+    }
+  }
 
   /**
    * Creates a new <code>ColumnNameTranslator</code> instance.
    *
+   * <p>
+   *   Building the translation tables is costly: translators are meant to be held by the owners
+   *   of a table layout, such as the cached layouts shared by the handles of a table.
+   * </p>
+   *
    * @param tableLayout The layout of the table to translate column names for.
    */
   public ColumnNameTranslator(KijiTableLayout tableLayout) {
     mTableLayout = tableLayout;
 
-    // Index the locality groups by their ColumnIds.
-    mLocalityGroups = new HashMap<ColumnId, LocalityGroupLayout>();
-    for (Map.Entry<ColumnId, String> entry : mTableLayout.getLocalityGroupIdNameMap().entrySet()) {
-      final ColumnId lgId = entry.getKey();
-      final String lgName = entry.getValue();
-      mLocalityGroups.put(lgId, mTableLayout.getLocalityGroupMap().get(lgName));
+    int maxLocalityGroupId = 0;
+    for (LocalityGroupLayout localityGroup : mTableLayout.getLocalityGroups()) {
+      maxLocalityGroupId = Math.max(maxLocalityGroupId, localityGroup.getId().getId());
+    }
+    mFamiliesByIds = new FamilyTranslation[maxLocalityGroupId + 1][];
+    for (LocalityGroupLayout localityGroup : mTableLayout.getLocalityGroups()) {
+      int maxFamilyId = 0;
+      for (FamilyLayout family : localityGroup.getFamilies()) {
+        maxFamilyId = Math.max(maxFamilyId, family.getId().getId());
+      }
+      final FamilyTranslation[] families = new FamilyTranslation[maxFamilyId + 1];
+      for (FamilyLayout family : localityGroup.getFamilies()) {
+        final FamilyTranslation translation = new FamilyTranslation(family);
+        families[family.getId().getId()] = translation;
+        mFamilies.put(family.getName(), translation);
+      }
+      mFamiliesByIds[localityGroup.getId().getId()] = families;
     }
   }
 
@@ -81,53 +169,89 @@ public final class ColumnNameTranslator {
    */
   public KijiColumnName toKijiColumnName(HBaseColumnName hbaseColumnName)
       throws NoSuchColumnException {
-    LOG.debug(String.format("Translating HBase column name '%s' to Kiji column name...",
-        hbaseColumnName));
-    final ColumnId lgId = ColumnId.fromByteArray(hbaseColumnName.getFamily());
-    final LocalityGroupLayout localityGroup = mLocalityGroups.get(lgId);
-    if (null == localityGroup) {
+    final byte[] family = hbaseColumnName.getFamily();
+    final byte[] qualifier = hbaseColumnName.getQualifier();
+    return toKijiColumnName(family, 0, family.length, qualifier, 0, qualifier.length);
+  }
+
+  /**
+   * Translates the HBase column of a KeyValue to a Kiji column name.
+   *
+   * @param kv The HBase KeyValue.
+   * @return The Kiji column name.
+   * @throws NoSuchColumnException If the column name cannot be found.
+   */
+  public KijiColumnName toKijiColumnName(KeyValue kv) throws NoSuchColumnException {
+    return toKijiColumnName(
+        kv.getBuffer(), kv.getFamilyOffset(), kv.getFamilyLength(),
+        kv.getBuffer(), kv.getQualifierOffset(), kv.getQualifierLength());
+  }
+
+  /**
+   * Translates an HBase column name, given as byte array slices, to a Kiji column name.
+   *
+   * @param familyBuffer Byte array containing the HBase family.
+   * @param familyOffset Offset of the HBase family in the byte array.
+   * @param familyLength Length of the HBase family.
+   * @param qualifierBuffer Byte array containing the HBase qualifier.
+   * @param qualifierOffset Offset of the HBase qualifier in the byte array.
+   * @param qualifierLength Length of the HBase qualifier.
+   * @return The Kiji column name.
+   * @throws NoSuchColumnException If the column name cannot be found.
+   */
+  public KijiColumnName toKijiColumnName(
+      byte[] familyBuffer, int familyOffset, int familyLength,
+      byte[] qualifierBuffer, int qualifierOffset, int qualifierLength)
+      throws NoSuchColumnException {
+    final int lgId = decodeColumnId(familyBuffer, familyOffset, familyLength);
+    if ((lgId < 0) || (lgId >= mFamiliesByIds.length) || (null == mFamiliesByIds[lgId])) {
       throw new NoSuchColumnException(String.format(
           "No locality group with ID/HBase family: '%s'.",
-          hbaseColumnName.getFamilyAsString()));
+          Bytes.toString(familyBuffer, familyOffset, familyLength)));
     }
 
-    final String[] parts = StringUtils.splitByWholeSeparatorPreserveAllTokens(
-        hbaseColumnName.getQualifierAsString(), SEPARATOR, 2);
-    if (2 != parts.length) {
+    // Locate the separator between the Kiji family ID and the Kiji qualifier:
+    final int qualifierEnd = qualifierOffset + qualifierLength;
+    int separator = qualifierOffset;
+    while ((separator < qualifierEnd) && (qualifierBuffer[separator] != SEPARATOR_BYTE)) {
+      separator++;
+    }
+    if (separator == qualifierEnd) {
       throw new NoSuchColumnException(
           "Missing separator (" + SEPARATOR + ") from HBase qualifier ("
-          + hbaseColumnName.getQualifierAsString()
+          + Bytes.toString(qualifierBuffer, qualifierOffset, qualifierLength)
           + "). Unable to parse Kiji family/qualifier pair.");
     }
 
-    final ColumnId familyId = ColumnId.fromString(parts[0]);
-    final FamilyLayout kijiFamily = getKijiFamilyById(localityGroup, familyId);
-    if (null == kijiFamily) {
+    final FamilyTranslation[] families = mFamiliesByIds[lgId];
+    final int familyId =
+        decodeColumnId(qualifierBuffer, qualifierOffset, separator - qualifierOffset);
+    if ((familyId < 0) || (familyId >= families.length) || (null == families[familyId])) {
       throw new NoSuchColumnException(String.format(
           "No family with ColumnId '%s' in locality group '%s'.",
-          familyId, localityGroup.getDesc().getName()));
+          Bytes.toString(qualifierBuffer, qualifierOffset, separator - qualifierOffset),
+          mTableLayout.getLocalityGroupIdNameMap().get(new ColumnId(lgId))));
     }
+    final FamilyTranslation family = families[familyId];
 
-    if (kijiFamily.isGroupType()) {
-      // Group type family.
-      final ColumnId columnId = ColumnId.fromString(parts[1]);
-      final ColumnLayout kijiColumn = getKijiColumnById(kijiFamily, columnId);
-      if (null == kijiColumn) {
-        throw new NoSuchColumnException(String.format(
-            "No column with ColumnId '%s' in family '%s'.",
-            columnId, kijiFamily.getDesc().getName()));
-      }
-      final KijiColumnName result =
-          new KijiColumnName(kijiFamily.getDesc().getName(), kijiColumn.getDesc().getName());
-      LOG.debug(String.format("Translated to Kiji group column '%s'.", result));
-      return result;
+    final int suffixOffset = separator + 1;
+    final int suffixLength = qualifierEnd - suffixOffset;
+    if (family.mIsMapType) {
+      // Map type family.
+      return new KijiColumnName(
+          family.mName, Bytes.toString(qualifierBuffer, suffixOffset, suffixLength));
     }
 
-    // Map type family.
-    assert kijiFamily.isMapType();
-    final KijiColumnName result = new KijiColumnName(kijiFamily.getDesc().getName(), parts[1]);
-    LOG.debug(String.format("Translated to Kiji map column '%s'.", result));
-    return result;
+    // Group type family.
+    final int columnId = decodeColumnId(qualifierBuffer, suffixOffset, suffixLength);
+    if ((columnId < 0)
+        || (columnId >= family.mColumnsById.length)
+        || (null == family.mColumnsById[columnId])) {
+      throw new NoSuchColumnException(String.format(
+          "No column with ColumnId '%s' in family '%s'.",
+          Bytes.toString(qualifierBuffer, suffixOffset, suffixLength), family.mName));
+    }
+    return family.mColumnsById[columnId];
   }
 
   /**
@@ -139,101 +263,54 @@ public final class ColumnNameTranslator {
    */
   public HBaseColumnName toHBaseColumnName(KijiColumnName kijiColumnName)
       throws NoSuchColumnException {
-    final String familyName = kijiColumnName.getFamily();
-    final FamilyLayout fLayout = mTableLayout.getFamilyMap().get(familyName);
-    if (null == fLayout) {
+    final FamilyTranslation family = mFamilies.get(kijiColumnName.getFamily());
+    if (null == family) {
       throw new NoSuchColumnException(kijiColumnName.toString());
     }
-    final ColumnId lgId = fLayout.getLocalityGroup().getId();
-    final ColumnId familyId = fLayout.getId();
 
     final String qualifier = kijiColumnName.getQualifier();
-    if (fLayout.isGroupType()) {
-      // Group type family.
-      if (null != qualifier) {
-        final ColumnId columnId = fLayout.getColumnIdNameMap().inverse().get(qualifier);
-        if (null == columnId) {
-          throw new NoSuchColumnException(kijiColumnName.toString());
-        }
-
-        return new HBaseColumnName(toHBaseFamily(lgId), toHBaseQualifier(familyId, columnId));
-      }
-
+    if (null == qualifier) {
       // The caller is attempting to translate a Kiji column name that has only a family,
       // no qualifier.  This is okay.  We'll just return an HBaseColumnName with an empty
       // qualifier suffix.
-      return new HBaseColumnName(toHBaseFamily(lgId), toHBaseQualifier(familyId, (String) null));
-    } else {
-      // Map type family.
-      assert fLayout.isMapType();
-      return new HBaseColumnName(toHBaseFamily(lgId), toHBaseQualifier(familyId, qualifier));
+      return family.mHBaseFamilyColumn;
     }
-  }
-
-  /**
-   * Gets a Kiji column family from within a locality group by ID.
-   *
-   * @param localityGroup The locality group to look in.
-   * @param familyId The ColumnId of the family to look for.
-   * @return The family, or null if no family with the ID can be found within the locality group.
-   */
-  private FamilyLayout getKijiFamilyById(LocalityGroupLayout localityGroup, ColumnId familyId) {
-    final String familyName = localityGroup.getFamilyIdNameMap().get(familyId);
-    return localityGroup.getFamilyMap().get(familyName);
-  }
 
-  /**
-   * Gets a Kiji column from within a group-type family by ID.
-   *
-   * @param family The group-type family to look in.
-   * @param columnId The ColumnId of the column to look for.
-   * @return The column, or null if no column with the ID can be found within the family.
-   */
-  private ColumnLayout getKijiColumnById(FamilyLayout family, ColumnId columnId) {
-    final String columnName = family.getColumnIdNameMap().get(columnId);
-    return family.getColumnMap().get(columnName);
-  }
-
-  /**
-   * Turns a Kiji locality group into an HBase family.
-   *
-   * @param localityGroupId The ColumnID of the locality group.
-   * @return The HBase family that should store data in this locality group.
-   */
-  private static byte[] toHBaseFamily(ColumnId localityGroupId) {
-    return localityGroupId.toByteArray();
-  }
+    if (family.mIsMapType) {
+      // Map type family.
+      return new HBaseColumnName(
+          family.mHBaseFamily, Bytes.add(family.mQualifierPrefix, Bytes.toBytes(qualifier)));
+    }
 
-  /**
-   * Turns a group-type family and column into an HBase qualifier.
-   *
-   * @param familyId The ColumnId of the group-type family.
-   * @param columnId The ColumnId of the Kiji column family.
-   * @return The HBase qualifier that should store this Kiji column's data.
-   */
-  private static byte[] toHBaseQualifier(ColumnId familyId, ColumnId columnId) {
-    StringBuilder hbaseQualifier = new StringBuilder()
-        .append(familyId.toString())
-        .append(SEPARATOR)
-        .append(columnId.toString());
-    return Bytes.toBytes(hbaseQualifier.toString());
+    // Group type family.
+    final HBaseColumnName hbaseColumnName = family.mHBaseColumns.get(qualifier);
+    if (null == hbaseColumnName) {
+      throw new NoSuchColumnException(kijiColumnName.toString());
+    }
+    return hbaseColumnName;
   }
 
   /**
-   * Turns a map-type family and key into an HBase qualifier.
+   * Decodes a ColumnId from a byte array slice, without allocating.
    *
-   * @param familyId The ColumnId of the map-type family.
-   * @param key The key into the map-type family.
-   * @return The HBase qualifier that should store this Kiji column's data.
+   * @param buffer Byte array containing the encoded ColumnId.
+   * @param offset Offset of the encoded ColumnId in the byte array.
+   * @param length Length of the encoded ColumnId.
+   * @return the decoded ColumnId, or -1 if the slice is not a valid ColumnId.
    */
-  private static byte[] toHBaseQualifier(ColumnId familyId, String key) {
-    StringBuilder hbaseQualifier = new StringBuilder()
-        .append(familyId.toString())
-        .append(SEPARATOR);
-    if (null != key) {
-      hbaseQualifier.append(key);
-    }
-    return Bytes.toBytes(hbaseQualifier.toString());
+  private static int decodeColumnId(byte[] buffer, int offset, int length) {
+    if ((length <= 0) || (length > MAX_COLUMN_ID_DIGITS)) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = 0; i < length; i++) {
+      final int digit = DIGIT_VALUES[buffer[offset + i] & 0xff];
+      if (digit < 0) {
+        return -1;
+      }
+      value += digit << (i * ColumnId.BITS_PER_DIGIT);
+    }
+    return value;
   }
 
   /** @return the table layout. */
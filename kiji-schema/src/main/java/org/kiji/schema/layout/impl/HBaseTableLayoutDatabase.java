@@ -37,6 +37,7 @@ import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.io.hfile.Compression;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
@@ -216,6 +217,20 @@ public final class HBaseTableLayoutDatabase implements KijiTableLayoutDatabase {
     return layouts.get(0);
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public long getTableLayoutTimestamp(String table) throws IOException {
+    // Only fetch the key of the most recent layout cell, not the encoded layout:
+    final Get get = new Get(Bytes.toBytes(table))
+        .addColumn(mFamilyBytes, QUALIFIER_LAYOUT_BYTES)
+        .setFilter(new KeyOnlyFilter());
+    final KeyValue column = mTable.get(get).getColumnLatest(mFamilyBytes, QUALIFIER_LAYOUT_BYTES);
+    if (null == column) {
+      throw new KijiTableNotFoundException(table);
+    }
+    return column.getTimestamp();
+  }
+
   /** {@inheritDoc} */
   @Override
   public List<KijiTableLayout> getTableLayoutVersions(String table, int numVersions)
@@ -32,6 +32,16 @@ public final class KijiConfKeys {
   /** Serialized input data request. */
   public static final String INPUT_DATA_REQUEST = "kiji.input.request";
 
+  /**
+   * Target size of the input splits, in bytes.
+   * Regions larger than this are divided into several splits. Unset or 0 means one split per
+   * region.
+   */
+  public static final String INPUT_SPLIT_SIZE = "kiji.input.split.size";
+
+  /** Serialized ranges of rows to read from the input table. Unset means all rows. */
+  public static final String INPUT_ROW_RANGES = "kiji.input.row.ranges";
+
   /** Utility class may not be instantiated. */
   private KijiConfKeys() {
   }
@@ -0,0 +1,182 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.EntityId;
+
+/**
+ * Range of rows of a Kiji table, from a start row (inclusive) to an end row (exclusive).
+ *
+ * <p>
+ *   Boundaries are HBase row keys, compared in the order of the table.
+ *   A null boundary means the range is unbounded on this side.
+ * </p>
+ */
+@Deprecated
+public final class KijiRowRange {
+  /** Range covering all the rows of a table. */
+  public static final KijiRowRange ALL_ROWS =
+      new KijiRowRange(HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+
+  /** Orders ranges by start row. */
+  private static final Comparator<KijiRowRange> START_ROW_ORDER = new Comparator<KijiRowRange>() {
+    /** {@inheritDoc} */
+    @Override
+    public int compare(KijiRowRange range1, KijiRowRange range2) {
+      return Bytes.compareTo(range1.mStartRow, range2.mStartRow);
+    }
+  };
+
+  /** Separates the start row from the end row, in the serialized form of a range. */
+  private static final String SEPARATOR = ":";
+
+  /** HBase row key of the first row of the range, inclusive. Empty means the first row. */
+  private final byte[] mStartRow;
+
+  /** HBase row key of the last row of the range, exclusive. Empty means past the last row. */
+  private final byte[] mEndRow;
+
+  /**
+   * Creates a range of rows.
+   *
+   * @param startRow First row of the range (inclusive), or null to start from the first row.
+   * @param endRow Last row of the range (exclusive), or null to end after the last row.
+   */
+  public KijiRowRange(EntityId startRow, EntityId endRow) {
+    this(
+        (null == startRow) ? HConstants.EMPTY_START_ROW : startRow.getHBaseRowKey(),
+        (null == endRow) ? HConstants.EMPTY_END_ROW : endRow.getHBaseRowKey());
+  }
+
+  /**
+   * Creates a range of rows from HBase row keys.
+   *
+   * @param startRow First HBase row key of the range (inclusive); empty means the first row.
+   * @param endRow Last HBase row key of the range (exclusive); empty means past the last row.
+   */
+  KijiRowRange(byte[] startRow, byte[] endRow) {
+    mStartRow = Preconditions.checkNotNull(startRow);
+    mEndRow = Preconditions.checkNotNull(endRow);
+  }
+
+  /** @return the HBase row key of the first row of the range; empty means the first row. */
+  public byte[] getStartRow() {
+    return mStartRow.clone();
+  }
+
+  /** @return the HBase row key ending the range (exclusive); empty means past the last row. */
+  public byte[] getEndRow() {
+    return mEndRow.clone();
+  }
+
+  /** @return whether the range contains no row. */
+  public boolean isEmpty() {
+    return (mEndRow.length > 0) && (Bytes.compareTo(mStartRow, mEndRow) >= 0);
+  }
+
+  /**
+   * Intersects this range with another range of rows.
+   *
+   * @param startRow First HBase row key of the other range; empty means the first row.
+   * @param endRow Last HBase row key of the other range (exclusive); empty means past the last row.
+   * @return the intersection of the two ranges, or null if the ranges do not overlap.
+   */
+  KijiRowRange intersect(byte[] startRow, byte[] endRow) {
+    final byte[] start = (Bytes.compareTo(mStartRow, startRow) >= 0) ? mStartRow : startRow;
+    final byte[] end;
+    if (mEndRow.length == 0) {
+      end = endRow;
+    } else if (endRow.length == 0) {
+      end = mEndRow;
+    } else {
+      end = (Bytes.compareTo(mEndRow, endRow) <= 0) ? mEndRow : endRow;
+    }
+    final KijiRowRange intersection = new KijiRowRange(start, end);
+    return intersection.isEmpty() ? null : intersection;
+  }
+
+  /**
+   * Sorts ranges of rows, and validates they do not overlap.
+   *
+   * @param ranges Ranges of rows.
+   * @return the non-empty ranges, sorted by start row.
+   * @throws IllegalArgumentException if some ranges overlap.
+   */
+  static List<KijiRowRange> sortDisjoint(Collection<KijiRowRange> ranges) {
+    final List<KijiRowRange> sorted = Lists.newArrayList();
+    for (KijiRowRange range : ranges) {
+      if (!range.isEmpty()) {
+        sorted.add(range);
+      }
+    }
+    Collections.sort(sorted, START_ROW_ORDER);
+    for (int i = 1; i < sorted.size(); ++i) {
+      final KijiRowRange previous = sorted.get(i - 1);
+      Preconditions.checkArgument(
+          (previous.mEndRow.length > 0)
+              && (Bytes.compareTo(previous.mEndRow, sorted.get(i).mStartRow) <= 0),
+          "Row ranges %s and %s overlap.", previous, sorted.get(i));
+    }
+    return sorted;
+  }
+
+  /**
+   * Serializes this range for a Hadoop configuration.
+   *
+   * @return the serialized form of this range.
+   */
+  String encode() {
+    return Bytes.toString(Base64.encodeBase64(mStartRow))
+        + SEPARATOR + Bytes.toString(Base64.encodeBase64(mEndRow));
+  }
+
+  /**
+   * Deserializes a range from a Hadoop configuration.
+   *
+   * @param encoded Serialized range, as returned by {@link #encode()}.
+   * @return the decoded range.
+   */
+  static KijiRowRange decode(String encoded) {
+    final int separator = encoded.indexOf(SEPARATOR);
+    Preconditions.checkArgument(separator >= 0, "Invalid serialized row range: '%s'.", encoded);
+    return new KijiRowRange(
+        Base64.decodeBase64(Bytes.toBytes(encoded.substring(0, separator))),
+        Base64.decodeBase64(Bytes.toBytes(encoded.substring(separator + 1))));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("[%s, %s)",
+        (mStartRow.length == 0) ? "-inf" : Bytes.toStringBinary(mStartRow),
+        (mEndRow.length == 0) ? "+inf" : Bytes.toStringBinary(mEndRow));
+  }
+}
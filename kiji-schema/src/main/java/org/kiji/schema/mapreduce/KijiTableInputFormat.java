@@ -19,18 +19,29 @@
 
 package org.kiji.schema.mapreduce;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.SerializationUtils;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HServerLoad;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.mapreduce.TableSplit;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.InputFormat;
@@ -39,11 +50,15 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.EntityId;
 import org.kiji.schema.HBaseEntityId;
 import org.kiji.schema.Kiji;
 import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestSerializer;
+import org.kiji.schema.KijiIOException;
 import org.kiji.schema.KijiRegion;
 import org.kiji.schema.KijiRowData;
 import org.kiji.schema.KijiRowScanner;
@@ -52,8 +67,10 @@ import org.kiji.schema.KijiTableReader;
 import org.kiji.schema.KijiTableReader.KijiScannerOptions;
 import org.kiji.schema.KijiURI;
 import org.kiji.schema.KijiURIException;
+import org.kiji.schema.impl.HBaseKiji;
 import org.kiji.schema.impl.HBaseKijiRowData;
 import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.util.BytesKey;
 import org.kiji.schema.util.ResourceUtils;
 
 /** InputFormat for Hadoop MapReduce jobs reading from a Kiji table. */
@@ -61,6 +78,11 @@ import org.kiji.schema.util.ResourceUtils;
 public class KijiTableInputFormat
     extends InputFormat<EntityId, KijiRowData>
     implements Configurable {
+  private static final Logger LOG = LoggerFactory.getLogger(KijiTableInputFormat.class);
+
+  /** First bytes of a Java serialization stream, used by older versions for data requests. */
+  private static final byte[] JAVA_SERIALIZATION_MAGIC = {(byte) 0xac, (byte) 0xed};
+
   /** Configuration of this input format. */
   private Configuration mConf;
 
@@ -89,31 +111,148 @@ public class KijiTableInputFormat
     final Configuration conf = context.getConfiguration();
     final KijiURI inputTableURI = getInputTableURI(conf);
     final Kiji kiji = Kiji.Factory.open(inputTableURI, conf);
-    final KijiTable table = kiji.openTable(inputTableURI.getTable());
+    try {
+      final KijiTable table = kiji.openTable(inputTableURI.getTable());
+      try {
+        final long splitSize = conf.getLong(KijiConfKeys.INPUT_SPLIT_SIZE, 0);
+        return getSplits(HBaseKijiTable.downcast(table), splitSize, getInputRowRanges(conf));
+      } finally {
+        ResourceUtils.releaseOrLog(table);
+      }
+    } finally {
+      ResourceUtils.releaseOrLog(kiji);
+    }
+  }
 
-    final HTableInterface htable = HBaseKijiTable.downcast(table).getHTable();
+  /**
+   * Computes the input splits for the given rows of a table.
+   *
+   * <p>
+   *   Only regions overlapping the row ranges produce splits, restricted to the overlapping rows.
+   *   Pieces of regions whose estimated store size exceeds the target split size are divided
+   *   into several splits, by interpolating row keys between the boundaries of the piece.
+   * </p>
+   *
+   * @param table Table to compute the input splits of.
+   * @param splitSize Target size of the input splits, in bytes, or 0 for one split per region.
+   * @param rowRanges Disjoint ranges of rows to read, sorted by start row.
+   * @return the input splits for the table.
+   * @throws IOException on I/O error.
+   */
+  private static List<InputSplit> getSplits(
+      HBaseKijiTable table, long splitSize, List<KijiRowRange> rowRanges)
+      throws IOException {
+    final byte[] tableName = table.getHTable().getTableName();
+    final Map<BytesKey, Long> regionSizes = getRegionSizes(table);
+    final RowKeyInterpolator interpolator = RowKeyInterpolator.forLayout(table.getLayout());
 
     final List<InputSplit> splits = Lists.newArrayList();
     for (KijiRegion region : table.getRegions()) {
-      final byte[] startKey = region.getStartKey();
-      // TODO: a smart way to get which location is most relevant.
-      final String location =
-          region.getLocations().isEmpty() ? null : region.getLocations().iterator().next();
-      final TableSplit tableSplit = new TableSplit(
-          htable.getTableName(), startKey, region.getEndKey(), location);
-      splits.add(new KijiTableSplit(tableSplit, startKey));
+      final byte[] regionStart = region.getStartKey();
+      final byte[] regionEnd = region.getEndKey();
+      final String location = getLocation(region);
+
+      // Region size is 0 when unknown, which lets KijiTableSplit fall back to an estimate.
+      final Long regionSize = regionSizes.get(new BytesKey(regionStart));
+
+      for (KijiRowRange rowRange : rowRanges) {
+        final KijiRowRange piece = rowRange.intersect(regionStart, regionEnd);
+        if (null == piece) {
+          continue;
+        }
+        final byte[] startKey = piece.getStartRow();
+        final byte[] endKey = piece.getEndRow();
+
+        // Estimate the size of the piece from the fraction of the region key space it covers:
+        final float from = interpolator.getPosition(regionStart, regionEnd, startKey);
+        final float to = Arrays.equals(endKey, regionEnd)
+            ? 1.0f
+            : interpolator.getPosition(regionStart, regionEnd, endKey);
+        final long size = (null == regionSize) ? 0 : (long) (regionSize * (to - from));
+        final int nsplits = ((splitSize > 0) && (size > splitSize))
+            ? (int) Math.min(Integer.MAX_VALUE, (size + splitSize - 1) / splitSize)
+            : 1;
+
+        final List<byte[]> boundaries = interpolator.split(startKey, endKey, nsplits);
+        final int nboundaries = boundaries.size();
+        final long length = (null == regionSize) ? 0 : Math.max(1, size / (nboundaries - 1));
+        for (int i = 0; i < nboundaries - 1; ++i) {
+          final TableSplit tableSplit = new TableSplit(
+              tableName, boundaries.get(i), boundaries.get(i + 1), location);
+          splits.add(new KijiTableSplit(tableSplit, regionStart, length));
+        }
+      }
     }
     return splits;
   }
 
+  /**
+   * Reports the host serving a region.
+   *
+   * <p>
+   *   HBase regions are served by a single region server, listed first in the region locations.
+   *   The Hadoop scheduler expects a host name, without the port of the region server.
+   * </p>
+   *
+   * @param region Region to report the host of.
+   * @return the host serving the region, or null if unknown.
+   */
+  private static String getLocation(KijiRegion region) {
+    if (region.getLocations().isEmpty()) {
+      return null;
+    }
+    final String hostnamePort = region.getLocations().iterator().next();
+    final int colon = hostnamePort.lastIndexOf(':');
+    return (colon < 0) ? hostnamePort : hostnamePort.substring(0, colon);
+  }
+
+  /**
+   * Reports the store sizes of the regions of a table.
+   *
+   * @param table Table to report the region sizes of.
+   * @return the sizes of the regions of the table, in bytes, keyed by region start key.
+   *     Empty if the sizes cannot be determined.
+   */
+  private static Map<BytesKey, Long> getRegionSizes(HBaseKijiTable table) {
+    final Map<BytesKey, Long> sizes = Maps.newHashMap();
+    try {
+      final HBaseAdmin admin = ((HBaseKiji) table.getKiji()).getHBaseAdmin();
+      final Map<BytesKey, byte[]> startKeys = Maps.newHashMap();
+      for (HRegionInfo info : admin.getTableRegions(table.getHTable().getTableName())) {
+        startKeys.put(new BytesKey(info.getRegionName()), info.getStartKey());
+      }
+      final ClusterStatus status = admin.getClusterStatus();
+      for (ServerName server : status.getServers()) {
+        for (HServerLoad.RegionLoad load : status.getLoad(server).getRegionsLoad().values()) {
+          final byte[] startKey = startKeys.get(new BytesKey(load.getName()));
+          if (null != startKey) {
+            final long sizeMB = load.getStorefileSizeMB() + load.getMemStoreSizeMB();
+            sizes.put(new BytesKey(startKey), sizeMB * 1024 * 1024);
+          }
+        }
+      }
+    } catch (IOException ioe) {
+      LOG.warn("Unable to determine the region sizes of table '{}': {}",
+          table.getURI(), ioe.toString());
+      sizes.clear();
+    } catch (RuntimeException re) {
+      LOG.warn("Unable to determine the region sizes of table '{}': {}",
+          table.getURI(), re.toString());
+      sizes.clear();
+    }
+    return sizes;
+  }
+
   /**
    * Configures a Hadoop M/R job to read from a given table.
    *
    * @param job Job to configure.
    * @param tableURI URI of the table to read from.
    * @param dataRequest Data request.
-   * @param startRow Minimum row key to process.
-   * @param endRow Maximum row Key to process.
+   * @param startRow Minimum HBase row key to process, in the format of
+   *     {@link Bytes#toStringBinary(byte[])}, or null to start from the first row.
+   * @param endRow Maximum HBase row key to process (inclusive), in the format of
+   *     {@link Bytes#toStringBinary(byte[])}, or null to process up to the last row.
    * @throws IOException on I/O error.
    */
   public static void configureJob(
@@ -123,6 +262,33 @@ public class KijiTableInputFormat
       String startRow,
       String endRow)
       throws IOException {
+    final byte[] startKey =
+        (null == startRow) ? HConstants.EMPTY_START_ROW : Bytes.toBytesBinary(startRow);
+    // The end row is inclusive: the range ends right after it.
+    final byte[] endKey =
+        (null == endRow) ? HConstants.EMPTY_END_ROW : Bytes.add(Bytes.toBytesBinary(endRow),
+            new byte[] {0});
+    configureJob(job, tableURI, dataRequest,
+        Collections.singletonList(new KijiRowRange(startKey, endKey)));
+  }
+
+  /**
+   * Configures a Hadoop M/R job to read some ranges of rows from a given table.
+   *
+   * <p>Only the regions overlapping the row ranges are read.</p>
+   *
+   * @param job Job to configure.
+   * @param tableURI URI of the table to read from.
+   * @param dataRequest Data request.
+   * @param rowRanges Disjoint ranges of rows to read.
+   * @throws IOException on I/O error.
+   */
+  public static void configureJob(
+      Job job,
+      KijiURI tableURI,
+      KijiDataRequest dataRequest,
+      Collection<KijiRowRange> rowRanges)
+      throws IOException {
 
     final Configuration conf = job.getConfiguration();
     // As a precaution, be sure the table exists and can be opened.
@@ -134,14 +300,46 @@ public class KijiTableInputFormat
     // TODO: Check for jars config:
     // GenericTableMapReduceUtil.initTableInput(hbaseTableName, scan, job);
 
-    // TODO: Obey specified start/end rows.
-
     // Write all the required values to the job's configuration object.
     job.setInputFormatClass(KijiTableInputFormat.class);
     final String serializedRequest =
-        Base64.encodeBase64String(SerializationUtils.serialize(dataRequest));
+        Bytes.toString(Base64.encodeBase64(KijiDataRequestSerializer.serialize(dataRequest)));
     conf.set(KijiConfKeys.INPUT_DATA_REQUEST, serializedRequest);
     conf.set(KijiConfKeys.INPUT_TABLE_URI, tableURI.toString());
+    setInputRowRanges(conf, rowRanges);
+  }
+
+  /**
+   * Writes the ranges of rows to read to a configuration.
+   *
+   * @param conf Configuration to write the row ranges to.
+   * @param rowRanges Disjoint ranges of rows to read.
+   */
+  static void setInputRowRanges(Configuration conf, Collection<KijiRowRange> rowRanges) {
+    final List<String> encoded = Lists.newArrayList();
+    for (KijiRowRange rowRange : KijiRowRange.sortDisjoint(rowRanges)) {
+      encoded.add(rowRange.encode());
+    }
+    checkArgument(!encoded.isEmpty(), "No row to read: %s", rowRanges);
+    conf.setStrings(KijiConfKeys.INPUT_ROW_RANGES, encoded.toArray(new String[encoded.size()]));
+  }
+
+  /**
+   * Reads the ranges of rows to read from a configuration.
+   *
+   * @param conf Configuration to read the row ranges from.
+   * @return the disjoint ranges of rows to read, sorted by start row. Defaults to all rows.
+   */
+  static List<KijiRowRange> getInputRowRanges(Configuration conf) {
+    final String[] encoded = conf.getStrings(KijiConfKeys.INPUT_ROW_RANGES);
+    if (null == encoded) {
+      return Collections.singletonList(KijiRowRange.ALL_ROWS);
+    }
+    final List<KijiRowRange> rowRanges = Lists.newArrayList();
+    for (String range : encoded) {
+      rowRanges.add(KijiRowRange.decode(range));
+    }
+    return KijiRowRange.sortDisjoint(rowRanges);
   }
 
   /** Hadoop record reader for Kiji table rows. */
@@ -164,6 +362,12 @@ public class KijiTableInputFormat
 
     private HBaseKijiRowData mCurrentRow = null;
 
+    /** Locates the current row within the split, to report progress. */
+    private RowKeyInterpolator mInterpolator = null;
+
+    /** Whether all the rows of the split have been read. */
+    private boolean mIsDone = false;
+
     /**
      * Creates a new RecordReader for this input format. This RecordReader will perform the actual
      * reads from Kiji.
@@ -177,7 +381,28 @@ public class KijiTableInputFormat
       final String dataRequestB64 = checkNotNull(mConf.get(KijiConfKeys.INPUT_DATA_REQUEST),
           "Missing data request in job configuration.");
       final byte[] dataRequestBytes = Base64.decodeBase64(Bytes.toBytes(dataRequestB64));
-      mDataRequest = (KijiDataRequest) SerializationUtils.deserialize(dataRequestBytes);
+      mDataRequest = decodeDataRequest(dataRequestBytes);
+    }
+
+    /**
+     * Decodes the data request from a job configuration.
+     *
+     * <p>Accepts data requests written with Java serialization by older versions.</p>
+     *
+     * @param bytes Binary form of the data request.
+     * @return the decoded data request.
+     */
+    private static KijiDataRequest decodeDataRequest(byte[] bytes) {
+      if ((bytes.length >= 2)
+          && (bytes[0] == JAVA_SERIALIZATION_MAGIC[0])
+          && (bytes[1] == JAVA_SERIALIZATION_MAGIC[1])) {
+        return (KijiDataRequest) SerializationUtils.deserialize(bytes);
+      }
+      try {
+        return KijiDataRequestSerializer.deserialize(bytes);
+      } catch (IOException ioe) {
+        throw new KijiIOException(ioe);
+      }
     }
 
     /** {@inheritDoc} */
@@ -197,7 +422,9 @@ public class KijiTableInputFormat
           .setStopRow(HBaseEntityId.fromHBaseRowKey(mSplit.getEndRow()));
       mScanner = mReader.getScanner(mDataRequest, scannerOptions);
       mIterator = mScanner.iterator();
+      mInterpolator = RowKeyInterpolator.forLayout(mTable.getLayout());
       mCurrentRow = null;
+      mIsDone = false;
     }
 
     /** {@inheritDoc} */
@@ -215,8 +442,11 @@ public class KijiTableInputFormat
     /** {@inheritDoc} */
     @Override
     public float getProgress() throws IOException {
-      // TODO: Implement
-      return 0.0f;
+      if (null == mCurrentRow) {
+        return mIsDone ? 1.0f : 0.0f;
+      }
+      return mInterpolator.getPosition(mSplit.getStartRow(), mSplit.getEndRow(),
+          mCurrentRow.getEntityId().getHBaseRowKey());
     }
 
     /** {@inheritDoc} */
@@ -227,6 +457,7 @@ public class KijiTableInputFormat
         return true;
       } else {
         mCurrentRow = null;
+        mIsDone = true;
         return false;
       }
     }
@@ -246,6 +477,7 @@ public class KijiTableInputFormat
 
       mSplit = null;
       mCurrentRow = null;
+      mInterpolator = null;
     }
   }
 
@@ -37,7 +37,8 @@ import org.apache.hadoop.hbase.util.Bytes;
 @Deprecated
 class KijiTableSplit extends TableSplit {
   private byte[] mRegionStartKey;
-  private long mSplitSize; // lazily calculated and populated via getLength().
+  // Estimated from the region store sizes, or lazily calculated and populated via getLength().
+  private long mSplitSize;
 
   /** The default constructor. */
   public KijiTableSplit() {
@@ -50,11 +51,22 @@ class KijiTableSplit extends TableSplit {
    * @param regionStartKey the starting key of the region associated with this split.
    */
   public KijiTableSplit(TableSplit tableSplit, byte[] regionStartKey) {
+    this(tableSplit, regionStartKey, 0);
+  }
+
+  /**
+   * Create a new KijiTableSplit instance from an HBase TableSplit.
+   * @param tableSplit the HBase TableSplit to clone.
+   * @param regionStartKey the starting key of the region associated with this split.
+   * @param length the estimated size of the split in bytes, or 0 if unknown.
+   */
+  public KijiTableSplit(TableSplit tableSplit, byte[] regionStartKey, long length) {
     super(tableSplit.getTableName(), tableSplit.getStartRow(), tableSplit.getEndRow(),
         tableSplit.getRegionLocation());
 
     checkNotNull(regionStartKey);
     mRegionStartKey = regionStartKey;
+    mSplitSize = length;
   }
 
   /**
@@ -71,8 +83,8 @@ class KijiTableSplit extends TableSplit {
   /**
    * Returns the length of the split.
    *
-   * This method does not currently examine the data in the region
-   * represented by the split. We assume that each split is 3/4 full (where
+   * The length is estimated from the store sizes of the region represented by the split,
+   * when known. Otherwise, we assume that each split is 3/4 full (where
    * "full" is defined as hbase.hregion.max.filesize). If the region had
    * that many bytes in it, it would split in two, each containing 1/2 that
    * many bytes. So we expect, on average, regions to be halfway between
@@ -103,6 +115,7 @@ class KijiTableSplit extends TableSplit {
   public void readFields(DataInput in) throws IOException {
     super.readFields(in); // read all superclass fields.
     mRegionStartKey = Bytes.readByteArray(in);
+    mSplitSize = in.readLong();
   }
 
   /** {@inheritDoc} */
@@ -110,5 +123,6 @@ class KijiTableSplit extends TableSplit {
   public void write(DataOutput out) throws IOException {
     super.write(out); // write all superclass fields.
     Bytes.writeByteArray(out, mRegionStartKey);
+    out.writeLong(mSplitSize);
   }
 }
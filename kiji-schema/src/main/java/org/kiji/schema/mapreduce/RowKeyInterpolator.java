@@ -0,0 +1,198 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+import org.kiji.schema.avro.RowKeyFormat2;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.util.Hasher;
+
+/**
+ * Interpolates HBase row keys between two row key boundaries.
+ *
+ * <p>
+ *   Row keys are interpreted as unsigned fractions of the key space. When the boundaries differ
+ *   within the hash prefix of the row keys (HASH, HASH_PREFIX or salted FORMATTED encodings),
+ *   interpolation is done on the hash prefix only, where row keys are uniformly distributed.
+ *   Otherwise (RAW or unsalted FORMATTED encodings, or boundaries sharing their hash prefix),
+ *   interpolation is done on a few bytes past the common prefix of the boundaries.
+ * </p>
+ */
+@Deprecated
+final class RowKeyInterpolator {
+  /** Number of bytes interpolated past the common prefix of the boundaries, for unhashed keys. */
+  private static final int UNHASHED_KEY_PRECISION = 8;
+
+  /** Size of the hash prefix of the row keys, in bytes, or 0 for unhashed row keys. */
+  private final int mHashSize;
+
+  /**
+   * Initializes a row key interpolator.
+   *
+   * @param hashSize Size of the hash prefix of the row keys, in bytes, or 0 if not hashed.
+   */
+  RowKeyInterpolator(int hashSize) {
+    Preconditions.checkArgument(hashSize >= 0, "Invalid hash size: %s", hashSize);
+    mHashSize = hashSize;
+  }
+
+  /**
+   * Creates a row key interpolator for the row key format of a table.
+   *
+   * @param layout Layout of the table.
+   * @return a row key interpolator for the row keys of the table.
+   */
+  static RowKeyInterpolator forLayout(KijiTableLayout layout) {
+    final Object keysFormat = layout.getDesc().getKeysFormat();
+    if (keysFormat instanceof RowKeyFormat) {
+      final RowKeyFormat format = (RowKeyFormat) keysFormat;
+      switch (format.getEncoding()) {
+      case HASH:
+        // The row key is the full hash:
+        return new RowKeyInterpolator(Hasher.getHashSize(format.getHashType()));
+      case HASH_PREFIX:
+        return new RowKeyInterpolator(format.getHashSize());
+      default:
+        return new RowKeyInterpolator(0);
+      }
+    } else if (keysFormat instanceof RowKeyFormat2) {
+      final RowKeyFormat2 format = (RowKeyFormat2) keysFormat;
+      if ((format.getEncoding() == RowKeyEncoding.FORMATTED) && (null != format.getSalt())) {
+        return new RowKeyInterpolator(format.getSalt().getHashSize());
+      }
+      return new RowKeyInterpolator(0);
+    } else {
+      throw new IllegalArgumentException("Unknown row key format: " + keysFormat);
+    }
+  }
+
+  /**
+   * Splits a range of row keys into sub-ranges.
+   *
+   * <p>
+   *   Fewer sub-ranges than requested are returned when the range holds too few distinct
+   *   interpolated keys.
+   * </p>
+   *
+   * @param startKey First row key of the range, inclusive; empty means the first row.
+   * @param endKey Last row key of the range, exclusive; empty means past the last row.
+   * @param nsplits Number of sub-ranges to split the range into.
+   * @return the boundaries of the sub-ranges, starting with startKey and ending with endKey.
+   */
+  List<byte[]> split(byte[] startKey, byte[] endKey, int nsplits) {
+    Preconditions.checkArgument(nsplits > 0, "Invalid number of splits: %s", nsplits);
+    final List<byte[]> boundaries = Lists.newArrayList();
+    boundaries.add(startKey);
+
+    final int precision = getPrecision(startKey, endKey);
+    final BigInteger low = toBigInteger(startKey, precision, false);
+    final BigInteger range = toBigInteger(endKey, precision, true).subtract(low);
+    final BigInteger count = BigInteger.valueOf(nsplits);
+    byte[] previous = startKey;
+    for (int i = 1; i < nsplits; ++i) {
+      final BigInteger value =
+          low.add(range.multiply(BigInteger.valueOf(i)).divide(count));
+      final byte[] key = toBytes(value, precision);
+      // Interpolated keys may collide when the range holds fewer keys than splits:
+      if (Bytes.compareTo(key, previous) > 0) {
+        boundaries.add(key);
+        previous = key;
+      }
+    }
+
+    boundaries.add(endKey);
+    return boundaries;
+  }
+
+  /**
+   * Reports the position of a row key within a range of row keys.
+   *
+   * @param startKey First row key of the range, inclusive; empty means the first row.
+   * @param endKey Last row key of the range, exclusive; empty means past the last row.
+   * @param key Row key to locate within the range.
+   * @return the position of the row key in the range, between 0.0 and 1.0.
+   */
+  float getPosition(byte[] startKey, byte[] endKey, byte[] key) {
+    final int precision = getPrecision(startKey, endKey);
+    final BigInteger low = toBigInteger(startKey, precision, false);
+    final BigInteger range = toBigInteger(endKey, precision, true).subtract(low);
+    if (range.signum() <= 0) {
+      return 0.0f;
+    }
+    final double offset = toBigInteger(key, precision, false).subtract(low).doubleValue();
+    return (float) Math.max(0.0, Math.min(1.0, offset / range.doubleValue()));
+  }
+
+  /**
+   * Reports the number of significant bytes to interpolate between two boundaries.
+   *
+   * @param startKey Start boundary, empty for the first row.
+   * @param endKey End boundary, empty for past the last row.
+   * @return the number of significant bytes to interpolate between the two boundaries.
+   */
+  private int getPrecision(byte[] startKey, byte[] endKey) {
+    int common = 0;
+    final int length = Math.min(startKey.length, endKey.length);
+    while ((common < length) && (startKey[common] == endKey[common])) {
+      common += 1;
+    }
+    return (common < mHashSize) ? mHashSize : common + UNHASHED_KEY_PRECISION;
+  }
+
+  /**
+   * Interprets the first bytes of a row key as an unsigned integer.
+   *
+   * @param key Row key to interpret.
+   * @param precision Number of significant bytes.
+   * @param isEnd Whether an empty key stands for past the last row (rather than the first row).
+   * @return the first bytes of the row key, as an unsigned integer.
+   */
+  private static BigInteger toBigInteger(byte[] key, int precision, boolean isEnd) {
+    if (isEnd && (key.length == 0)) {
+      return BigInteger.ONE.shiftLeft(8 * precision);
+    }
+    final byte[] significant = new byte[precision];
+    System.arraycopy(key, 0, significant, 0, Math.min(key.length, precision));
+    return new BigInteger(1, significant);
+  }
+
+  /**
+   * Formats an unsigned integer as a row key.
+   *
+   * @param value Unsigned integer, smaller than 2^(8 * precision).
+   * @param precision Size of the row key, in bytes.
+   * @return the row key for the unsigned integer.
+   */
+  private static byte[] toBytes(BigInteger value, int precision) {
+    final byte[] bytes = value.toByteArray();  // May include a leading sign byte.
+    final byte[] key = new byte[precision];
+    final int length = Math.min(bytes.length, precision);
+    System.arraycopy(bytes, bytes.length - length, key, precision - length, length);
+    return key;
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.kiji.annotations.ApiAudience;
+
+/**
+ * In-memory metrics registry.
+ *
+ * <p>
+ *   Timers record latencies in a histogram of power-of-two microsecond buckets, from which
+ *   percentiles are estimated to within a factor of two. Counters and timers are lock-free.
+ * </p>
+ */
+@ApiAudience.Private
+public final class DefaultMetricsRegistry implements MetricsRegistry {
+  /** Timers, keyed by name. */
+  private final ConcurrentMap<String, LatencyTimer> mTimers = Maps.newConcurrentMap();
+
+  /** Counters, keyed by name. */
+  private final ConcurrentMap<String, AtomicCounter> mCounters = Maps.newConcurrentMap();
+
+  /** Gauges, keyed by name. */
+  private final ConcurrentMap<String, Gauge> mGauges = Maps.newConcurrentMap();
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Timer getTimer(String name) {
+    final LatencyTimer timer = mTimers.get(name);
+    if (null != timer) {
+      return timer;
+    }
+    final LatencyTimer newTimer = new LatencyTimer();
+    final LatencyTimer raced = mTimers.putIfAbsent(name, newTimer);
+    return (null != raced) ? raced : newTimer;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Counter getCounter(String name) {
+    final AtomicCounter counter = mCounters.get(name);
+    if (null != counter) {
+      return counter;
+    }
+    final AtomicCounter newCounter = new AtomicCounter();
+    final AtomicCounter raced = mCounters.putIfAbsent(name, newCounter);
+    return (null != raced) ? raced : newCounter;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void registerGauge(String name, Gauge gauge) {
+    mGauges.put(name, Preconditions.checkNotNull(gauge));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void remove(String name) {
+    mTimers.remove(name);
+    mCounters.remove(name);
+    mGauges.remove(name);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Map<String, Long> getValues() {
+    final SortedMap<String, Long> values = Maps.newTreeMap();
+    for (Map.Entry<String, LatencyTimer> entry : mTimers.entrySet()) {
+      entry.getValue().writeValues(entry.getKey(), values);
+    }
+    for (Map.Entry<String, AtomicCounter> entry : mCounters.entrySet()) {
+      values.put(entry.getKey(), entry.getValue().get());
+    }
+    for (Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+      values.put(entry.getKey(), entry.getValue().getValue());
+    }
+    return values;
+  }
+
+  /** Counter backed by an atomic long. */
+  private static final class AtomicCounter extends AtomicLong implements Counter {
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public void inc(long delta) {
+      addAndGet(delta);
+    }
+  }
+
+  /** Timer recording latencies in a histogram of power-of-two microsecond buckets. */
+  static final class LatencyTimer implements Timer {
+    /**
+     * Number of buckets. Bucket 0 counts latencies under 1us, bucket i counts latencies in
+     * [2^(i-1), 2^i) us, and the last bucket counts all longer latencies (over 4 days).
+     */
+    private static final int NBUCKETS = 40;
+
+    /** Histogram of the recorded latencies. */
+    private final AtomicLongArray mBuckets = new AtomicLongArray(NBUCKETS);
+
+    /** Number of recorded latencies. */
+    private final AtomicLong mCount = new AtomicLong(0);
+
+    /** Sum of the recorded latencies, in nanoseconds. */
+    private final AtomicLong mTotalNanos = new AtomicLong(0);
+
+    /** Maximum recorded latency, in nanoseconds. */
+    private final AtomicLong mMaxNanos = new AtomicLong(0);
+
+    /** {@inheritDoc} */
+    @Override
+    public long start() {
+      return System.nanoTime();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void stop(long startNanos) {
+      update(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos Latency to record, in nanoseconds.
+     */
+    void update(long nanos) {
+      final long latency = Math.max(0, nanos);
+      final long micros = TimeUnit.NANOSECONDS.toMicros(latency);
+      final int bucket = Math.min(NBUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+      mBuckets.incrementAndGet(bucket);
+      mCount.incrementAndGet();
+      mTotalNanos.addAndGet(latency);
+      long max = mMaxNanos.get();
+      while ((latency > max) && !mMaxNanos.compareAndSet(max, latency)) {
+        max = mMaxNanos.get();
+      }
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies.
+     *
+     * @param quantile Quantile to estimate, in (0, 1].
+     * @param count Number of recorded latencies.
+     * @return the upper bound of the histogram bucket of the percentile, in microseconds.
+     */
+    private long getPercentileMicros(double quantile, long count) {
+      final long rank = (long) Math.ceil(quantile * count);
+      long cumulated = 0;
+      for (int bucket = 0; bucket < NBUCKETS; ++bucket) {
+        cumulated += mBuckets.get(bucket);
+        if (cumulated >= rank) {
+          return Math.min(1L << bucket, TimeUnit.NANOSECONDS.toMicros(mMaxNanos.get()));
+        }
+      }
+      return TimeUnit.NANOSECONDS.toMicros(mMaxNanos.get());
+    }
+
+    /**
+     * Writes the values reported by this timer.
+     *
+     * @param name Name of this timer.
+     * @param values Map to write the values into.
+     */
+    void writeValues(String name, Map<String, Long> values) {
+      final long count = mCount.get();
+      values.put(name + ".count", count);
+      if (count == 0) {
+        return;
+      }
+      values.put(name + ".mean_us", TimeUnit.NANOSECONDS.toMicros(mTotalNanos.get() / count));
+      values.put(name + ".p50_us", getPercentileMicros(0.50, count));
+      values.put(name + ".p95_us", getPercentileMicros(0.95, count));
+      values.put(name + ".p99_us", getPercentileMicros(0.99, count));
+      values.put(name + ".max_us", TimeUnit.NANOSECONDS.toMicros(mMaxNanos.get()));
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.metrics;
+
+import java.util.Map;
+
+import org.kiji.annotations.ApiAudience;
+
+/** JMX view of the metrics of a Kiji instance. */
+@ApiAudience.Public
+public interface KijiMetricsMXBean {
+  /** @return the URI of the Kiji instance the metrics are recorded for. */
+  String getKijiURI();
+
+  /** @return the current values of the metrics of the Kiji instance, keyed by metric name. */
+  Map<String, Long> getValues();
+}
@@ -0,0 +1,157 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.KijiURI;
+
+/** Creates metrics registries, and exports them over JMX. */
+@ApiAudience.Public
+public final class MetricsRegistries {
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsRegistries.class);
+
+  /** Configuration key enabling the metrics of Kiji instances. Disabled by default. */
+  public static final String CONF_METRICS_ENABLED = "kiji.metrics.enabled";
+
+  /** Configuration key for the class of the metrics registries, when metrics are enabled. */
+  public static final String CONF_METRICS_REGISTRY_CLASS = "kiji.metrics.registry.class";
+
+  /** Configuration key for whether to export the metrics over JMX. Enabled by default. */
+  public static final String CONF_METRICS_JMX_ENABLED = "kiji.metrics.jmx.enabled";
+
+  /** JMX domain of the Kiji metrics MBeans. */
+  public static final String JMX_DOMAIN = "org.kiji.schema";
+
+  /** Type of the Kiji metrics MBeans. */
+  public static final String JMX_TYPE = "Metrics";
+
+  /** Distinguishes the MBeans of Kiji instances with the same URI. */
+  private static final AtomicInteger MBEAN_COUNTER = new AtomicInteger(0);
+
+  /** Utility class cannot be instantiated. */
+  private MetricsRegistries() {
+  }
+
+  /**
+   * Creates the metrics registry of a Kiji instance.
+   *
+   * @param conf Configuration of the Kiji instance.
+   * @return a new metrics registry, or the no-op registry if metrics are disabled.
+   */
+  public static MetricsRegistry create(Configuration conf) {
+    if (!conf.getBoolean(CONF_METRICS_ENABLED, false)) {
+      return NoopMetricsRegistry.get();
+    }
+    final Class<? extends MetricsRegistry> registryClass = conf.getClass(
+        CONF_METRICS_REGISTRY_CLASS, DefaultMetricsRegistry.class, MetricsRegistry.class);
+    return ReflectionUtils.newInstance(registryClass, conf);
+  }
+
+  /**
+   * Exports the metrics of a Kiji instance over JMX.
+   *
+   * <p> Registries that are disabled, or that are configured not to be exported, are skipped. </p>
+   *
+   * @param registry Metrics registry of the Kiji instance.
+   * @param uri URI of the Kiji instance.
+   * @param conf Configuration of the Kiji instance.
+   * @return the name of the registered MBean, or null if no MBean was registered.
+   */
+  public static ObjectName registerMBean(
+      MetricsRegistry registry, KijiURI uri, Configuration conf) {
+    if (!registry.isEnabled() || !conf.getBoolean(CONF_METRICS_JMX_ENABLED, true)) {
+      return null;
+    }
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      final ObjectName name = new ObjectName(String.format("%s:type=%s,uri=%s,id=%d",
+          JMX_DOMAIN, JMX_TYPE, ObjectName.quote(uri.toString()),
+          MBEAN_COUNTER.getAndIncrement()));
+      server.registerMBean(new KijiMetrics(registry, uri), name);
+      return name;
+    } catch (JMException jme) {
+      LOG.warn("Unable to export the metrics of Kiji instance {} over JMX: {}",
+          uri, jme.toString());
+      return null;
+    }
+  }
+
+  /**
+   * Removes the MBean exporting the metrics of a Kiji instance.
+   *
+   * @param name Name of the MBean, as returned by {@link #registerMBean}, or null.
+   */
+  public static void unregisterMBean(ObjectName name) {
+    if (null == name) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (JMException jme) {
+      LOG.warn("Unable to unregister the metrics MBean {}: {}", name, jme.toString());
+    }
+  }
+
+  /** MBean exporting the metrics registry of a Kiji instance. */
+  private static final class KijiMetrics implements KijiMetricsMXBean {
+    /** Exported metrics registry. */
+    private final MetricsRegistry mRegistry;
+
+    /** URI of the Kiji instance. */
+    private final KijiURI mURI;
+
+    /**
+     * Initializes the MBean for the metrics of a Kiji instance.
+     *
+     * @param registry Metrics registry of the Kiji instance.
+     * @param uri URI of the Kiji instance.
+     */
+    KijiMetrics(MetricsRegistry registry, KijiURI uri) {
+      mRegistry = Preconditions.checkNotNull(registry);
+      mURI = Preconditions.checkNotNull(uri);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getKijiURI() {
+      return mURI.toString();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Long> getValues() {
+      return mRegistry.getValues();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.metrics;
+
+import java.util.Map;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.annotations.Inheritance;
+
+/**
+ * Registry of the metrics of a Kiji instance.
+ *
+ * <p>
+ *   Metrics are identified by dot-separated names, such as <code>table.foo.reader.get</code>.
+ *   Components look their metrics up once, and update them on their hot paths: a disabled
+ *   registry hands out metrics that neither read the clock nor update any state.
+ * </p>
+ *
+ * <p>
+ *   Implementations must be thread-safe, and must provide a public constructor with no argument.
+ *   Implementations that implement {@link org.apache.hadoop.conf.Configurable} are configured
+ *   with the configuration of the Kiji instance.
+ * </p>
+ */
+@ApiAudience.Framework
+@Inheritance.Extensible
+public interface MetricsRegistry {
+
+  /** Records the latencies of an operation. */
+  interface Timer {
+    /**
+     * Reports the start time of an operation.
+     *
+     * @return the start time of the operation, in nanoseconds, or 0 if the timer is disabled.
+     */
+    long start();
+
+    /**
+     * Records the latency of an operation.
+     *
+     * @param startNanos Start time of the operation, as returned by {@link #start()}.
+     */
+    void stop(long startNanos);
+  }
+
+  /** Counts events or quantities, such as cells or bytes. */
+  interface Counter {
+    /**
+     * Increments this counter.
+     *
+     * @param delta Amount to increment this counter by.
+     */
+    void inc(long delta);
+  }
+
+  /** Reports a value owned by another component, such as the size of a pool. */
+  interface Gauge {
+    /** @return the current value of this gauge. */
+    long getValue();
+  }
+
+  /** @return whether this registry records metrics. */
+  boolean isEnabled();
+
+  /**
+   * Gets or creates the timer with the specified name.
+   *
+   * @param name Name of the timer.
+   * @return the timer with the specified name.
+   */
+  Timer getTimer(String name);
+
+  /**
+   * Gets or creates the counter with the specified name.
+   *
+   * @param name Name of the counter.
+   * @return the counter with the specified name.
+   */
+  Counter getCounter(String name);
+
+  /**
+   * Registers a gauge, replacing any gauge previously registered with the same name.
+   *
+   * @param name Name of the gauge.
+   * @param gauge Gauge to register.
+   */
+  void registerGauge(String name, Gauge gauge);
+
+  /**
+   * Removes a metric from this registry.
+   *
+   * @param name Name of the metric to remove.
+   */
+  void remove(String name);
+
+  /**
+   * Reports the current values of all the metrics in this registry.
+   *
+   * <p>
+   *   Timers report several values, named after the timer: for instance,
+   *   <code>foo.count</code>, <code>foo.p99_us</code>, etc.
+   * </p>
+   *
+   * @return a snapshot of the metric values, sorted by name.
+   */
+  Map<String, Long> getValues();
+}
@@ -0,0 +1,97 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.kiji.annotations.ApiAudience;
+
+/** Metrics registry that records nothing. Used when metrics are disabled. */
+@ApiAudience.Private
+public final class NoopMetricsRegistry implements MetricsRegistry {
+  /** Singleton instance. */
+  private static final NoopMetricsRegistry SINGLETON = new NoopMetricsRegistry();
+
+  /** Timer that records nothing. */
+  private static final Timer NOOP_TIMER = new Timer() {
+    /** {@inheritDoc} */
+    @Override
+    public long start() {
+      return 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void stop(long startNanos) {
+    }
+  };
+
+  /** Counter that counts nothing. */
+  private static final Counter NOOP_COUNTER = new Counter() {
+    /** {@inheritDoc} */
+    @Override
+    public void inc(long delta) {
+    }
+  };
+
+  /** @return the metrics registry that records nothing. */
+  public static NoopMetricsRegistry get() {
+    return SINGLETON;
+  }
+
+  /** Singleton constructor. */
+  private NoopMetricsRegistry() {
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isEnabled() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Timer getTimer(String name) {
+    return NOOP_TIMER;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Counter getCounter(String name) {
+    return NOOP_COUNTER;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void registerGauge(String name, Gauge gauge) {
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void remove(String name) {
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Map<String, Long> getValues() {
+    return Collections.emptyMap();
+  }
+}
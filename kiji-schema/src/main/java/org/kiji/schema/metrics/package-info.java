@@ -0,0 +1,29 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Metrics of Kiji instances: latencies, byte and cell counts, cache and pool statistics.
+ *
+ * <p>
+ *   Metrics are disabled by default. Setting <code>kiji.metrics.enabled</code> in the
+ *   configuration of a Kiji instance records its metrics in a {@link
+ *   org.kiji.schema.metrics.MetricsRegistry}, and exports them over JMX.
+ * </p>
+ */
+package org.kiji.schema.metrics;
@@ -0,0 +1,144 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.tools;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.common.flags.Flag;
+import org.kiji.schema.metrics.MetricsRegistries;
+import org.kiji.schema.util.ResourceUtils;
+
+/**
+ * Command-line tool to query the metrics of the Kiji instances of a JVM over JMX.
+ *
+ * <p>
+ *   Metrics are recorded by Kiji instances opened with <code>kiji.metrics.enabled</code> set.
+ *   The JVM running these Kiji instances must accept remote JMX connections, for instance with
+ *   <code>-Dcom.sun.management.jmxremote.port=port</code>.
+ * </p>
+ *
+ * --jmx (required) to specify the JMX service URL of the JVM to query,
+ *   for instance service:jmx:rmi:///jndi/rmi://host:port/jmxrmi.
+ *
+ * --kiji to only report the metrics of the Kiji instances whose URI starts with the given prefix.
+ *
+ * --prefix to only report the metrics whose name starts with the given prefix.
+ */
+@ApiAudience.Private
+public class MetricsTool extends BaseTool {
+  @Flag(name="jmx", usage="JMX service URL of the JVM running the Kiji instances to query, "
+      + "for instance service:jmx:rmi:///jndi/rmi://host:port/jmxrmi. Required: "
+      + "the JVM running this tool has no Kiji instance.")
+  private String mJmxFlag = null;
+
+  @Flag(name="kiji", usage="Only report the Kiji instances whose URI starts with this prefix.")
+  private String mURIFlag = "";
+
+  @Flag(name="prefix", usage="Only report the metrics whose name starts with this prefix.")
+  private String mPrefixFlag = "";
+
+  /** {@inheritDoc} */
+  @Override
+  public String getName() {
+    return "metrics";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getDescription() {
+    return "Report the metrics of the Kiji instances of a JVM.";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getCategory() {
+    return "Admin";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void validateFlags() throws Exception {
+    Preconditions.checkArgument((mJmxFlag != null) && !mJmxFlag.isEmpty(),
+        "Specify the JVM to query with --jmx=service:jmx:rmi:///jndi/rmi://host:port/jmxrmi");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected int run(List<String> nonFlagArgs) throws Exception {
+    final JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL(mJmxFlag));
+    try {
+      return report(connector.getMBeanServerConnection());
+    } finally {
+      ResourceUtils.closeOrLog(connector);
+    }
+  }
+
+  /**
+   * Reports the Kiji metrics exported by an MBean server.
+   *
+   * @param server MBean server to query.
+   * @return the tool exit code.
+   * @throws Exception on error.
+   */
+  private int report(MBeanServerConnection server) throws Exception {
+    final ObjectName pattern = new ObjectName(String.format("%s:type=%s,*",
+        MetricsRegistries.JMX_DOMAIN, MetricsRegistries.JMX_TYPE));
+    final Set<ObjectName> names = server.queryNames(pattern, null);
+    int reported = 0;
+    for (ObjectName name : names) {
+      final String uri = (String) server.getAttribute(name, "KijiURI");
+      if (!uri.startsWith(mURIFlag)) {
+        continue;
+      }
+      getPrintStream().printf("%s (%s):%n", uri, name.getKeyProperty("id"));
+      final TabularData values = (TabularData) server.getAttribute(name, "Values");
+      final Map<String, Long> sorted = Maps.newTreeMap();
+      for (Object row : values.values()) {
+        final CompositeData entry = (CompositeData) row;
+        final String metric = (String) entry.get("key");
+        if (metric.startsWith(mPrefixFlag)) {
+          sorted.put(metric, (Long) entry.get("value"));
+        }
+      }
+      for (Map.Entry<String, Long> entry : sorted.entrySet()) {
+        getPrintStream().printf("  %s = %d%n", entry.getKey(), entry.getValue());
+      }
+      reported += 1;
+    }
+    if (reported == 0) {
+      getPrintStream().println("No Kiji metrics found.");
+    }
+    return SUCCESS;
+  }
+}
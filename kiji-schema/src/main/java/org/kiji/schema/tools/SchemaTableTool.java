@@ -0,0 +1,141 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.tools;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Preconditions;
+
+import org.kiji.annotations.ApiAudience;
+import org.kiji.common.flags.Flag;
+import org.kiji.schema.InternalKijiError;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiURI;
+import org.kiji.schema.impl.HBaseSchemaTable;
+import org.kiji.schema.util.ResourceUtils;
+
+/**
+ * Command-line tool to check and snapshot the schema table of a Kiji instance.
+ *
+ * --kiji to specify the target instance.
+ *
+ * --do=[check, snapshot]
+ *   check to scan the schema tables in full and report inconsistent schema entries
+ *   snapshot to write a local snapshot of the schema table to the file specified with --snapshot
+ */
+@ApiAudience.Private
+public class SchemaTableTool extends BaseTool {
+  @Flag(name="kiji", usage="KijiURI of the kiji instance to inspect.")
+  private String mURIFlag = "";
+
+  @Flag(name="do", usage="\"check\"; \"snapshot\"")
+  private String mDoFlag = "check";
+
+  @Flag(name="snapshot", usage="Path of the local schema table snapshot to write.")
+  private String mSnapshotFlag = null;
+
+  /** KijiURI of the target instance. */
+  private KijiURI mKijiURI;
+
+  /** Operation selector mode. */
+  private static enum DoMode {
+    CHECK, SNAPSHOT
+  }
+
+  /** Operation mode. */
+  private DoMode mDoMode;
+
+  /** {@inheritDoc} */
+  @Override
+  public String getName() {
+    return "schema-table";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getDescription() {
+    return "Check or snapshot a kiji schema table.";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getCategory() {
+    return "Metadata";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void validateFlags() throws Exception {
+    mKijiURI = KijiURI.newBuilder(mURIFlag).build();
+    Preconditions.checkNotNull(mKijiURI.getInstance(),
+        "Specify a Kiji instance with --kiji=kiji://hbase-address/kiji-instance");
+    Preconditions.checkNotNull(mDoFlag, "Specify an operation with --do=[check, snapshot]");
+    try {
+      mDoMode = DoMode.valueOf(mDoFlag.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException iae) {
+      getPrintStream().printf("Invalid --do command: '%s'.%n", mDoFlag);
+      throw iae;
+    }
+    if (mDoMode == DoMode.SNAPSHOT) {
+      Preconditions.checkArgument((mSnapshotFlag != null) && !mSnapshotFlag.isEmpty(),
+          "Specify the snapshot file to write with --snapshot=<path>");
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected int run(List<String> nonFlagArgs) throws Exception {
+    final Kiji kiji = Kiji.Factory.open(mKijiURI);
+    try {
+      final KijiSchemaTable schemaTable = kiji.getSchemaTable();
+      if (!(schemaTable instanceof HBaseSchemaTable)) {
+        getPrintStream().printf("Unsupported schema table implementation: %s.%n",
+            schemaTable.getClass().getName());
+        return FAILURE;
+      }
+      final HBaseSchemaTable hbaseSchemaTable = (HBaseSchemaTable) schemaTable;
+      switch (mDoMode) {
+        case CHECK: {
+          if (hbaseSchemaTable.checkConsistency()) {
+            getPrintStream().println("Schema table is consistent.");
+            return SUCCESS;
+          } else {
+            getPrintStream().println("Schema table is inconsistent, see logs for details.");
+            return FAILURE;
+          }
+        }
+        case SNAPSHOT: {
+          final File file = new File(mSnapshotFlag);
+          hbaseSchemaTable.writeSnapshot(file);
+          getPrintStream().printf("Wrote schema table snapshot to '%s'.%n", file);
+          return SUCCESS;
+        }
+        default: {
+          throw new InternalKijiError("unsupported enum value: " + mDoMode);
+        }
+      }
+    } finally {
+      ResourceUtils.releaseOrLog(kiji);
+    }
+  }
+}
@@ -20,19 +20,46 @@
 package org.kiji.schema.util;
 
 import java.io.UnsupportedEncodingException;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import com.google.common.base.Preconditions;
+
 import org.kiji.annotations.ApiAudience;
+import org.kiji.schema.avro.HashType;
 
 /**
  * A thread-safe utility for computing hashes of strings.
+ *
+ * <p>
+ *   Besides MD5, supports the non-cryptographic Murmur3 (x64, 128-bit) and xxHash (64-bit)
+ *   hash functions, for salting row keys. These are computed without allocating memory, into
+ *   a buffer provided by the caller.
+ * </p>
  */
 @ApiAudience.Private
 public final class Hasher {
   /** The number of bytes in a hash. */
   public static final int HASH_SIZE_BYTES = 16;
 
+  /** Size of a Murmur3 x64 128-bit hash, in bytes. */
+  private static final int MURMUR3_128_SIZE_BYTES = 16;
+
+  /** Size of an xxHash 64-bit hash, in bytes. */
+  private static final int XXHASH64_SIZE_BYTES = 8;
+
+  /** Murmur3 x64 128-bit mixing constants. */
+  private static final long MURMUR3_C1 = 0x87c37b91114253d5L;
+  private static final long MURMUR3_C2 = 0x4cf5ad432745937fL;
+
+  /** xxHash 64-bit primes. */
+  private static final long XXHASH_P1 = 0x9E3779B185EBCA87L;
+  private static final long XXHASH_P2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long XXHASH_P3 = 0x165667B19E3779F9L;
+  private static final long XXHASH_P4 = 0x85EBCA77C2B2AE63L;
+  private static final long XXHASH_P5 = 0x27D4EB2F165667C5L;
+
   /** Name of the 128-bit MD5 algorithm. */
   private static final String ALGORITHM = "MD5";
 
@@ -49,6 +76,14 @@ public final class Hasher {
           }
         };
 
+  /** A thread-local buffer receiving MD5 digests. */
+  private static final ThreadLocal<byte[]> MD5_OUTPUT = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[HASH_SIZE_BYTES];
+    }
+  };
+
   /** Disable constructor for utility class. */
   private Hasher() {}
 
@@ -75,4 +110,268 @@ public final class Hasher {
   public static byte[] hash(byte[] input) {
     return MESSAGE_DIGEST.get().digest(input);
   }
+
+  /**
+   * Reports the size of the hashes computed by a hash function.
+   *
+   * @param hashType Hash function.
+   * @return the size of the hashes computed by the hash function, in bytes.
+   */
+  public static int getHashSize(HashType hashType) {
+    switch (hashType) {
+    case MD5: return HASH_SIZE_BYTES;
+    case MURMUR3_128: return MURMUR3_128_SIZE_BYTES;
+    case XXHASH64: return XXHASH64_SIZE_BYTES;
+    default:
+      throw new RuntimeException(String.format("Unexpected hashing type: '%s'.", hashType));
+    }
+  }
+
+  /**
+   * Hashes the input byte array.
+   *
+   * @param hashType Hash function.
+   * @param input The bytes to hash.
+   * @return The hash of the input, of getHashSize(hashType) bytes.
+   */
+  public static byte[] hash(HashType hashType, byte[] input) {
+    final byte[] output = new byte[getHashSize(hashType)];
+    hash(hashType, input, 0, input.length, output, 0, output.length);
+    return output;
+  }
+
+  /**
+   * Hashes a slice of a byte array into a buffer, without allocating memory.
+   *
+   * <p>Only the first outputLength bytes of the hash are written.</p>
+   *
+   * @param hashType Hash function.
+   * @param input Buffer containing the bytes to hash.
+   * @param offset Offset of the bytes to hash.
+   * @param length Number of bytes to hash.
+   * @param output Buffer to write the hash into.
+   * @param outputOffset Offset in the output buffer where to write the hash.
+   * @param outputLength Number of bytes of the hash to write, at most getHashSize(hashType).
+   */
+  public static void hash(HashType hashType, byte[] input, int offset, int length,
+      byte[] output, int outputOffset, int outputLength) {
+    Preconditions.checkArgument((outputLength >= 0) && (outputLength <= getHashSize(hashType)),
+        "Invalid size for a %s hash: %s", hashType, outputLength);
+    switch (hashType) {
+    case MD5: {
+      final MessageDigest digest = MESSAGE_DIGEST.get();
+      final byte[] md5 = MD5_OUTPUT.get();
+      digest.update(input, offset, length);
+      try {
+        digest.digest(md5, 0, md5.length);
+      } catch (DigestException de) {
+        throw new RuntimeException(de);
+      }
+      System.arraycopy(md5, 0, output, outputOffset, outputLength);
+      break;
+    }
+    case MURMUR3_128:
+      murmur3x64x128(input, offset, length, output, outputOffset, outputLength);
+      break;
+    case XXHASH64:
+      writeLong(xxHash64(input, offset, length), output, outputOffset, outputLength);
+      break;
+    default:
+      throw new RuntimeException(String.format("Unexpected hashing type: '%s'.", hashType));
+    }
+  }
+
+  /**
+   * Computes the Murmur3 x64 128-bit hash of a slice of a byte array, with a zero seed.
+   *
+   * <p>The hash is written as two little-endian longs, like Guava's murmur3_128().</p>
+   *
+   * @param input Buffer containing the bytes to hash.
+   * @param offset Offset of the bytes to hash.
+   * @param length Number of bytes to hash.
+   * @param output Buffer to write the hash into.
+   * @param outputOffset Offset in the output buffer where to write the hash.
+   * @param outputLength Number of bytes of the hash to write.
+   */
+  private static void murmur3x64x128(byte[] input, int offset, int length,
+      byte[] output, int outputOffset, int outputLength) {
+    long h1 = 0;
+    long h2 = 0;
+    final int end = offset + length;
+    int pos = offset;
+    for (; pos + 16 <= end; pos += 16) {
+      long k1 = readLongLE(input, pos, 8);
+      long k2 = readLongLE(input, pos + 8, 8);
+      h1 ^= mixMurmur3K1(k1);
+      h1 = Long.rotateLeft(h1, 27) + h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixMurmur3K2(k2);
+      h2 = Long.rotateLeft(h2, 31) + h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+    final int tail = end - pos;
+    if (tail > 8) {
+      h2 ^= mixMurmur3K2(readLongLE(input, pos + 8, tail - 8));
+    }
+    if (tail > 0) {
+      h1 ^= mixMurmur3K1(readLongLE(input, pos, Math.min(tail, 8)));
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmixMurmur3(h1);
+    h2 = fmixMurmur3(h2);
+    h1 += h2;
+    h2 += h1;
+
+    for (int i = 0; i < outputLength; ++i) {
+      final long word = (i < 8) ? h1 : h2;
+      output[outputOffset + i] = (byte) (word >>> (8 * (i % 8)));
+    }
+  }
+
+  /**
+   * Mixes the first half of a Murmur3 block.
+   *
+   * @param k1 First half of a block.
+   * @return the mixed first half of the block.
+   */
+  private static long mixMurmur3K1(long k1) {
+    return Long.rotateLeft(k1 * MURMUR3_C1, 31) * MURMUR3_C2;
+  }
+
+  /**
+   * Mixes the second half of a Murmur3 block.
+   *
+   * @param k2 Second half of a block.
+   * @return the mixed second half of the block.
+   */
+  private static long mixMurmur3K2(long k2) {
+    return Long.rotateLeft(k2 * MURMUR3_C2, 33) * MURMUR3_C1;
+  }
+
+  /**
+   * Murmur3 finalization mix: forces all bits of a hash block to avalanche.
+   *
+   * @param k Hash block.
+   * @return the mixed hash block.
+   */
+  private static long fmixMurmur3(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  /**
+   * Computes the xxHash 64-bit hash of a slice of a byte array, with a zero seed.
+   *
+   * @param input Buffer containing the bytes to hash.
+   * @param offset Offset of the bytes to hash.
+   * @param length Number of bytes to hash.
+   * @return the xxHash 64-bit hash.
+   */
+  private static long xxHash64(byte[] input, int offset, int length) {
+    final int end = offset + length;
+    int pos = offset;
+    long hash;
+    if (length >= 32) {
+      long v1 = XXHASH_P1 + XXHASH_P2;
+      long v2 = XXHASH_P2;
+      long v3 = 0;
+      long v4 = -XXHASH_P1;
+      for (; pos + 32 <= end; pos += 32) {
+        v1 = roundXXHash(v1, readLongLE(input, pos, 8));
+        v2 = roundXXHash(v2, readLongLE(input, pos + 8, 8));
+        v3 = roundXXHash(v3, readLongLE(input, pos + 16, 8));
+        v4 = roundXXHash(v4, readLongLE(input, pos + 24, 8));
+      }
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+          + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      hash = mergeRoundXXHash(hash, v1);
+      hash = mergeRoundXXHash(hash, v2);
+      hash = mergeRoundXXHash(hash, v3);
+      hash = mergeRoundXXHash(hash, v4);
+    } else {
+      hash = XXHASH_P5;
+    }
+    hash += length;
+
+    for (; pos + 8 <= end; pos += 8) {
+      hash ^= roundXXHash(0, readLongLE(input, pos, 8));
+      hash = Long.rotateLeft(hash, 27) * XXHASH_P1 + XXHASH_P4;
+    }
+    if (pos + 4 <= end) {
+      hash ^= readLongLE(input, pos, 4) * XXHASH_P1;
+      hash = Long.rotateLeft(hash, 23) * XXHASH_P2 + XXHASH_P3;
+      pos += 4;
+    }
+    for (; pos < end; ++pos) {
+      hash ^= (input[pos] & 0xffL) * XXHASH_P5;
+      hash = Long.rotateLeft(hash, 11) * XXHASH_P1;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= XXHASH_P2;
+    hash ^= hash >>> 29;
+    hash *= XXHASH_P3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  /**
+   * Processes one lane of an xxHash stripe.
+   *
+   * @param accumulator Lane accumulator.
+   * @param lane Input lane.
+   * @return the updated lane accumulator.
+   */
+  private static long roundXXHash(long accumulator, long lane) {
+    return Long.rotateLeft(accumulator + lane * XXHASH_P2, 31) * XXHASH_P1;
+  }
+
+  /**
+   * Merges a lane accumulator into the xxHash.
+   *
+   * @param hash Hash being computed.
+   * @param accumulator Lane accumulator.
+   * @return the updated hash.
+   */
+  private static long mergeRoundXXHash(long hash, long accumulator) {
+    return (hash ^ roundXXHash(0, accumulator)) * XXHASH_P1 + XXHASH_P4;
+  }
+
+  /**
+   * Reads up to 8 bytes in little-endian order.
+   *
+   * @param input Buffer to read from.
+   * @param offset Offset of the first byte to read.
+   * @param nbytes Number of bytes to read, at most 8.
+   * @return the bytes read, as an unsigned little-endian integer.
+   */
+  private static long readLongLE(byte[] input, int offset, int nbytes) {
+    long value = 0;
+    for (int i = nbytes - 1; i >= 0; --i) {
+      value = (value << 8) | (input[offset + i] & 0xffL);
+    }
+    return value;
+  }
+
+  /**
+   * Writes the most significant bytes of a long in big-endian order.
+   *
+   * @param value Long to write.
+   * @param output Buffer to write into.
+   * @param offset Offset in the buffer where to write.
+   * @param nbytes Number of bytes to write, at most 8.
+   */
+  private static void writeLong(long value, byte[] output, int offset, int nbytes) {
+    for (int i = 0; i < nbytes; ++i) {
+      output[offset + i] = (byte) (value >>> (8 * (7 - i)));
+    }
+  }
 }
@@ -0,0 +1,146 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import org.kiji.schema.avro.ComponentType;
+import org.kiji.schema.avro.HashSpec;
+import org.kiji.schema.avro.RowKeyComponent;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat2;
+import org.kiji.schema.util.Hasher;
+
+/** Tests for FormattedRowKeyCodec. */
+public class TestFormattedRowKeyCodec {
+  private static RowKeyFormat2 makeRowKeyFormat(boolean suppressMaterialization) {
+    final List<RowKeyComponent> components = Lists.newArrayList(
+        RowKeyComponent.newBuilder().setName("astring").setType(ComponentType.STRING).build(),
+        RowKeyComponent.newBuilder().setName("anint").setType(ComponentType.INTEGER).build(),
+        RowKeyComponent.newBuilder().setName("along").setType(ComponentType.LONG).build());
+    return RowKeyFormat2.newBuilder()
+        .setEncoding(RowKeyEncoding.FORMATTED)
+        .setSalt(HashSpec.newBuilder()
+            .setHashSize(3)
+            .setSuppressKeyMaterialization(suppressMaterialization)
+            .build())
+        .setRangeScanStartIndex(2)
+        .setComponents(components)
+        .build();
+  }
+
+  /**
+   * Encodes a row key the straightforward way: hash of the concatenated hashed components,
+   * followed by the components, strings being terminated by a zero byte.
+   */
+  private static byte[] referenceEncode(RowKeyFormat2 format, List<Object> components) {
+    final ByteArrayOutputStream hashed = new ByteArrayOutputStream();
+    final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    for (int i = 0; i < components.size(); ++i) {
+      final Object component = components.get(i);
+      if (null == component) {
+        break;
+      }
+      final byte[] bytes;
+      if (component instanceof String) {
+        bytes = ((String) component).getBytes(Charsets.UTF_8);
+      } else if (component instanceof Integer) {
+        bytes = Bytes.toBytes((Integer) component ^ Integer.MIN_VALUE);
+      } else {
+        bytes = Bytes.toBytes((Long) component ^ Long.MIN_VALUE);
+      }
+      if (i < format.getRangeScanStartIndex()) {
+        hashed.write(bytes, 0, bytes.length);
+      }
+      encoded.write(bytes, 0, bytes.length);
+      if (component instanceof String) {
+        encoded.write(0);
+      }
+    }
+    final byte[] hash = Arrays.copyOfRange(
+        Hasher.hash(hashed.toByteArray()), 0, format.getSalt().getHashSize());
+    if (format.getSalt().getSuppressKeyMaterialization()) {
+      return hash;
+    }
+    return Bytes.add(hash, encoded.toByteArray());
+  }
+
+  @Test
+  public void testEncodeMatchesReference() {
+    final RowKeyFormat2 format = makeRowKeyFormat(false);
+    final FormattedRowKeyCodec codec = new FormattedRowKeyCodec(format);
+    final List<List<Object>> keys = Lists.newArrayList();
+    keys.add(Arrays.<Object>asList("user", 42, 7L));
+    keys.add(Arrays.<Object>asList("", Integer.MIN_VALUE, Long.MAX_VALUE));
+    keys.add(Arrays.<Object>asList("h\u00e9llo \u4e16\u754c \ud83d\ude00", -1, null));
+    keys.add(Arrays.<Object>asList("unpaired \ud83d surrogate", null, null));
+    keys.add(Arrays.<Object>asList("short"));
+    for (List<Object> key : keys) {
+      final byte[] expected = referenceEncode(format, key);
+      assertArrayEquals(expected, codec.encode(key));
+      assertEquals(expected.length, codec.getEncodedSize(key));
+    }
+  }
+
+  @Test
+  public void testEncodeIntoBuffer() {
+    final RowKeyFormat2 format = makeRowKeyFormat(false);
+    final FormattedRowKeyCodec codec = new FormattedRowKeyCodec(format);
+    final List<Object> key = Arrays.<Object>asList("user", 42, 7L);
+    final byte[] buffer = new byte[64];
+    final int size = codec.encode(key, buffer, 5);
+    assertArrayEquals(referenceEncode(format, key), Arrays.copyOfRange(buffer, 5, 5 + size));
+  }
+
+  @Test
+  public void testSuppressedMaterialization() {
+    final RowKeyFormat2 format = makeRowKeyFormat(true);
+    final FormattedRowKeyCodec codec = new FormattedRowKeyCodec(format);
+    final List<Object> key = Arrays.<Object>asList("user", 42, 7L);
+    assertArrayEquals(referenceEncode(format, key), codec.encode(key));
+  }
+
+  @Test
+  public void testDecodeDoesNotModifyRowKey() {
+    final FormattedRowKeyCodec codec = new FormattedRowKeyCodec(makeRowKeyFormat(false));
+    final byte[] rowKey = codec.encode(Arrays.<Object>asList("\u00e9t\u00e9", -5, null));
+    final byte[] copy = rowKey.clone();
+    codec.validate(rowKey);
+    assertEquals(Arrays.<Object>asList("\u00e9t\u00e9", -5, null), codec.decode(rowKey));
+    assertArrayEquals(copy, rowKey);
+  }
+
+  @Test(expected=EntityIdException.class)
+  public void testValidateTruncatedRowKey() {
+    final FormattedRowKeyCodec codec = new FormattedRowKeyCodec(makeRowKeyFormat(false));
+    final byte[] rowKey = codec.encode(Arrays.<Object>asList("user", 42, 7L));
+    codec.validate(Arrays.copyOf(rowKey, rowKey.length - 2));
+  }
+}
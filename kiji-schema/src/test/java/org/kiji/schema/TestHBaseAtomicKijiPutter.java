@@ -24,6 +24,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -188,4 +189,31 @@ public class TestHBaseAtomicKijiPutter extends KijiClientTest {
     assertEquals(null, mPutter.getEntityId());
     mPutter.commit("default");
   }
+
+  @Test
+  public void testQueuedCommits() throws Exception {
+    final KijiDataRequest request = KijiDataRequest.create("info");
+    for (String row : new String[] {"foo", "bar", "baz"}) {
+      mPutter.begin(mTable.getEntityId(row));
+      mPutter.put("info", "name", row + "-new");
+      mPutter.put("info", "visits", 7L);
+      mPutter.queueCommit("default");
+    }
+
+    // Nothing is written until the queue is committed:
+    assertEquals("foo-val", mReader.get(mTable.getEntityId("foo"), request)
+        .getMostRecentValue("info", "name").toString());
+    assertFalse(mReader.get(mTable.getEntityId("baz"), request).containsColumn("info"));
+
+    final List<EntityId> failed = mPutter.commitQueued();
+    assertTrue(failed.isEmpty());
+    for (String row : new String[] {"foo", "bar", "baz"}) {
+      final KijiRowData data = mReader.get(mTable.getEntityId(row), request);
+      assertEquals(row + "-new", data.getMostRecentValue("info", "name").toString());
+      assertEquals(7L, data.<Long>getMostRecentValue("info", "visits").longValue());
+    }
+
+    // The queue is empty once committed:
+    assertTrue(mPutter.commitQueued().isEmpty());
+  }
 }
@@ -0,0 +1,132 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kiji.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.impl.HTableInterfacePool;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.ResourceUtils;
+
+public class TestHBaseKijiBufferedIncrementer extends KijiClientTest {
+  private KijiTable mTable;
+  private KijiBufferedIncrementer mIncrementer;
+  private KijiTableReader mReader;
+
+  @Before
+  public void setupEnvironment() throws Exception {
+    getKiji().createTable(KijiTableLayouts.getLayout(KijiTableLayouts.COUNTER_TEST));
+    mTable = getKiji().openTable("user");
+    mIncrementer = mTable.getWriterFactory().openBufferedIncrementer();
+    mReader = mTable.openTableReader();
+  }
+
+  @After
+  public void cleanupEnvironment() throws IOException {
+    ResourceUtils.closeOrLog(mIncrementer);
+    ResourceUtils.closeOrLog(mReader);
+    ResourceUtils.releaseOrLog(mTable);
+  }
+
+  private long getCounter(EntityId eid, String family, String qualifier) throws IOException {
+    final KijiRowData row = mReader.get(eid, KijiDataRequest.create(family, qualifier));
+    return row.<Long>getMostRecentValue(family, qualifier);
+  }
+
+  @Test
+  public void testIncrementsAreCoalesced() throws Exception {
+    final HTableInterfacePool pool = HBaseKijiTable.downcast(mTable).getHTablePool();
+    final long checkouts = pool.getCheckoutCount();
+
+    final EntityId alice = mTable.getEntityId("alice");
+    final EntityId bob = mTable.getEntityId("bob");
+    Future<Long> aliceVisits = null;
+    for (int i = 0; i < 100; ++i) {
+      aliceVisits = mIncrementer.increment(alice, "info", "visits", 1L);
+      mIncrementer.increment(alice, "experiments", "exp1", 2L);
+      mIncrementer.increment(bob, "info", "visits", -1L);
+    }
+    // Nothing is sent until the buffer is flushed:
+    assertFalse(aliceVisits.isDone());
+    assertEquals(checkouts, pool.getCheckoutCount());
+
+    mIncrementer.flush();
+    assertEquals(100L, aliceVisits.get().longValue());
+    // All the rows were sent through a single HTable:
+    assertEquals(checkouts + 1, pool.getCheckoutCount());
+
+    assertEquals(100L, getCounter(alice, "info", "visits"));
+    assertEquals(200L, getCounter(alice, "experiments", "exp1"));
+    assertEquals(-100L, getCounter(bob, "info", "visits"));
+  }
+
+  @Test
+  public void testFireAndForget() throws Exception {
+    mIncrementer.setReturnResults(false);
+    final EntityId eid = mTable.getEntityId("row");
+    final Future<Long> first = mIncrementer.increment(eid, "info", "visits", 3L);
+    final Future<Long> second = mIncrementer.increment(eid, "experiments", "exp", 4L);
+    // All the increments of the buffer share a single future:
+    assertSame(first, second);
+    mIncrementer.flush();
+    assertNull(first.get());
+    assertEquals(3L, getCounter(eid, "info", "visits"));
+    assertEquals(4L, getCounter(eid, "experiments", "exp"));
+  }
+
+  @Test
+  public void testBufferSizeAndFlushInterval() throws Exception {
+    mIncrementer.setBufferSize(2);
+    final EntityId eid = mTable.getEntityId("row");
+    final Future<Long> first = mIncrementer.increment(eid, "info", "visits", 1L);
+    mIncrementer.increment(eid, "info", "visits", 1L);
+    // Still a single distinct counter in the buffer:
+    assertFalse(first.isDone());
+    mIncrementer.increment(eid, "experiments", "exp", 1L);
+    assertEquals(2L, first.get(10, TimeUnit.SECONDS).longValue());
+
+    mIncrementer.setFlushInterval(10L);
+    assertEquals(3L, mIncrementer.increment(eid, "info", "visits", 1L)
+        .get(10, TimeUnit.SECONDS).longValue());
+  }
+
+  @Test
+  public void testNotACounter() throws Exception {
+    try {
+      mIncrementer.increment(mTable.getEntityId("row"), "info", "name", 1L);
+      fail("Should not be able to increment a non-counter column.");
+    } catch (IOException ioe) {
+      assertTrue(ioe.getMessage().contains("not a counter"));
+    }
+  }
+}
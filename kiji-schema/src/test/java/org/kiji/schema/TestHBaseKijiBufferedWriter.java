@@ -0,0 +1,165 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.impl.HTableInterfacePool;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.ResourceUtils;
+
+public class TestHBaseKijiBufferedWriter extends KijiClientTest {
+  private KijiTable mTable;
+  private KijiBufferedWriter mWriter;
+  private KijiTableReader mReader;
+
+  @Before
+  public void setupEnvironment() throws Exception {
+    getKiji().createTable(KijiTableLayouts.getLayout(KijiTableLayouts.PAGING_TEST));
+    mTable = getKiji().openTable("user");
+    mWriter = mTable.getWriterFactory().openBufferedWriter();
+    mReader = mTable.openTableReader();
+  }
+
+  @After
+  public void cleanupEnvironment() throws IOException {
+    ResourceUtils.closeOrLog(mWriter);
+    ResourceUtils.closeOrLog(mReader);
+    ResourceUtils.releaseOrLog(mTable);
+  }
+
+  @Test
+  public void testPutsAreCoalescedAndBuffered() throws Exception {
+    final HTableInterfacePool pool = HBaseKijiTable.downcast(mTable).getHTablePool();
+    final long checkouts = pool.getCheckoutCount();
+
+    final List<Future<Void>> futures = Lists.newArrayList();
+    for (int row = 0; row < 10; ++row) {
+      final EntityId eid = mTable.getEntityId("row" + row);
+      for (int job = 0; job < 10; ++job) {
+        futures.add(mWriter.put(eid, "jobs", "job" + job, 1L, "value" + job));
+      }
+    }
+    // Nothing is written until the buffer is flushed:
+    for (Future<Void> future : futures) {
+      assertFalse(future.isDone());
+    }
+    assertEquals(checkouts, pool.getCheckoutCount());
+
+    mWriter.flush();
+    for (Future<Void> future : futures) {
+      assertTrue(future.isDone());
+    }
+    // All the cells were sent in a single batch:
+    assertEquals(checkouts + 1, pool.getCheckoutCount());
+
+    final KijiRowData row = mReader.get(
+        mTable.getEntityId("row3"), KijiDataRequest.create("jobs"));
+    assertEquals(10, row.getQualifiers("jobs").size());
+    assertEquals("value7", row.getMostRecentValue("jobs", "job7").toString());
+  }
+
+  @Test
+  public void testBufferSizeTriggersWrite() throws Exception {
+    mWriter.setBufferSize(1);
+    final EntityId eid = mTable.getEntityId("row");
+    final Future<Void> first = mWriter.put(eid, "info", "name", 1L, "name1");
+    final Future<Void> second = mWriter.put(eid, "info", "name", 2L, "name2");
+    // The second put waits for the first buffer to be written:
+    assertTrue(first.isDone());
+    second.get(10, TimeUnit.SECONDS);
+
+    final KijiDataRequest request = KijiDataRequest.builder()
+        .addColumns(KijiDataRequestBuilder.ColumnsDef.create().withMaxVersions(10)
+            .add("info", "name"))
+        .build();
+    assertEquals(2, mReader.get(eid, request).getTimestamps("info", "name").size());
+  }
+
+  @Test
+  public void testFlushInterval() throws Exception {
+    mWriter.setFlushInterval(10L);
+    final EntityId eid = mTable.getEntityId("row");
+    mWriter.put(eid, "info", "name", 1L, "name").get(10, TimeUnit.SECONDS);
+    assertEquals("name", mReader.get(eid, KijiDataRequest.create("info", "name"))
+        .getMostRecentValue("info", "name").toString());
+  }
+
+  @Test
+  public void testCloseFlushes() throws Exception {
+    final EntityId eid = mTable.getEntityId("row");
+    final Future<Void> future = mWriter.put(eid, "info", "name", 1L, "name");
+    mWriter.close();
+    assertTrue(future.isDone());
+    try {
+      mWriter.put(eid, "info", "name", 2L, "name");
+      fail("Should not be able to write to a closed writer.");
+    } catch (IllegalStateException ise) {
+      // Expected.
+    }
+    // Reopen a writer so cleanup can close it:
+    mWriter = mTable.getWriterFactory().openBufferedWriter();
+  }
+
+  @Test
+  public void testFailedCloseReleasesTable() throws Exception {
+    final KijiTable table = getKiji().openTable("user");
+    final KijiBufferedWriter writer = table.getWriterFactory().openBufferedWriter();
+    final EntityId eid = table.getEntityId("row");
+    writer.put(eid, "info", "name", 1L, "name1");
+    writer.flush();
+    writer.put(eid, "info", "name", 2L, "name2");
+
+    // Sending the last buffer waits for the previous one, and fails when interrupted:
+    Thread.currentThread().interrupt();
+    try {
+      writer.close();
+      fail("Should throw InterruptedIOException");
+    } catch (InterruptedIOException iioe) {
+      // Expected.
+    } finally {
+      Thread.interrupted();
+    }
+
+    // The writer released its reference to the table: releasing ours closes the table.
+    table.release();
+    try {
+      table.retain();
+      fail("Should not be able to retain a closed table.");
+    } catch (IllegalStateException ise) {
+      // Expected.
+    }
+  }
+}
@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 
+import com.google.common.collect.Sets;
 import org.apache.avro.Schema;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Put;
@@ -588,6 +589,52 @@ public class TestHBaseKijiRowData extends KijiClientTest {
     assertEquals("value2", string2.toString());
   }
 
+  @Test
+  public void testMergeOverwritesExistingCell() throws IOException {
+    List<KeyValue> kvs = new ArrayList<KeyValue>();
+    EntityId row0 = mEntityIdFactory.getEntityId("row0");
+    byte[] hbaseRowKey = row0.getHBaseRowKey();
+    kvs.add(new KeyValue(hbaseRowKey, mHBaseFamily, mHBaseQual0, 1L, encodeStr("old")));
+    Result result = new Result(kvs);
+
+    KijiTableLayout tableLayout = getKiji().getMetaTable().getTableLayout("table");
+    KijiDataRequest dataRequest = KijiDataRequest.create("family", "qual0");
+    HBaseKijiRowData rowData = new HBaseKijiRowData(dataRequest, mCellDecoderFactory,
+        tableLayout, result, getKiji().getSchemaTable());
+    assertEquals("old", rowData.getMostRecentValue("family", "qual0").toString());
+
+    Put put = new Put(hbaseRowKey);
+    put.add(mHBaseFamily, mHBaseQual0, 1L, encodeStr("new"));
+    rowData.merge(put);
+    assertEquals(1, rowData.getTimestamps("family", "qual0").size());
+    assertEquals("new", rowData.getMostRecentValue("family", "qual0").toString());
+  }
+
+  @Test
+  public void testUnsortedKeyValues() throws IOException {
+    List<KeyValue> kvs = new ArrayList<KeyValue>();
+    EntityId row0 = mEntityIdFactory.getEntityId("row0");
+    byte[] hbaseRowKey = row0.getHBaseRowKey();
+    kvs.add(new KeyValue(hbaseRowKey, mHBaseFamily, mHBaseQual1, 1L, encodeStr("value1")));
+    kvs.add(new KeyValue(hbaseRowKey, mHBaseFamily, mHBaseQual0, 1L, encodeStr("apple")));
+    kvs.add(new KeyValue(hbaseRowKey, mHBaseFamily, mHBaseQual0, 3L, encodeStr("carrot")));
+    kvs.add(new KeyValue(hbaseRowKey, mHBaseFamily, mHBaseQual0, 2L, encodeStr("banana")));
+    Result result = new Result(kvs);
+
+    KijiTableLayout tableLayout = getKiji().getMetaTable().getTableLayout("table");
+    KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(2).add("family", "qual0").add("family", "qual1");
+    KijiDataRequest dataRequest = builder.build();
+    HBaseKijiRowData rowData = new HBaseKijiRowData(dataRequest, mCellDecoderFactory,
+        tableLayout, result, getKiji().getSchemaTable());
+
+    assertEquals(Sets.newHashSet("qual0", "qual1"), rowData.getQualifiers("family"));
+    // Only the 2 most recent versions are visible:
+    assertEquals(Sets.newHashSet(3L, 2L), rowData.getTimestamps("family", "qual0"));
+    assertEquals("carrot", rowData.getMostRecentValue("family", "qual0").toString());
+    assertEquals("value1", rowData.getMostRecentValue("family", "qual1").toString());
+  }
+
   @Test
   public void testContainsColumn() throws Exception {
     final KijiTableLayout layout =
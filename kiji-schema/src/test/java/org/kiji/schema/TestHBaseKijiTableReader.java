@@ -21,10 +21,17 @@ package org.kiji.schema;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.collect.Lists;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.impl.HBaseKijiTableReader;
 import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.KijiTableLayouts;
 import org.kiji.schema.util.InstanceBuilder;
@@ -97,4 +104,41 @@ public class TestHBaseKijiTableReader {
     assertEquals("foo-val", actual1);
     assertEquals("bar-val", actual2);
   }
+
+  @Test
+  public void testParallelBulkGet() throws Exception {
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      for (int i = 0; i < 20; ++i) {
+        writer.put(mTable.getEntityId("row" + i), "info", "name", 1L, "name" + i);
+      }
+    } finally {
+      writer.close();
+    }
+
+    final List<EntityId> entityIds = Lists.newArrayList();
+    for (int i = 19; i >= 0; --i) {
+      entityIds.add(mTable.getEntityId("row" + i));
+    }
+    entityIds.add(mTable.getEntityId("foo"));
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final KijiTableReader reader =
+        new HBaseKijiTableReader(HBaseKijiTable.downcast(mTable), executor, 3);
+    try {
+      final List<KijiRowData> rows =
+          reader.bulkGet(entityIds, KijiDataRequest.create("info", "name"));
+      // Rows are returned in the order of the entity IDs:
+      assertEquals(entityIds.size(), rows.size());
+      for (int i = 0; i < 20; ++i) {
+        final KijiRowData row = rows.get(i);
+        assertEquals(entityIds.get(i), row.getEntityId());
+        assertEquals("name" + (19 - i), row.getMostRecentValue("info", "name").toString());
+      }
+      assertEquals("foo-val", rows.get(20).getMostRecentValue("info", "name").toString());
+    } finally {
+      reader.close();
+      executor.shutdown();
+    }
+  }
 }
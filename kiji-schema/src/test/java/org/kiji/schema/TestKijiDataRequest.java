@@ -35,6 +35,8 @@ import java.io.ObjectOutputStream;
 
 import org.junit.Test;
 
+import org.kiji.schema.filter.RegexQualifierColumnFilter;
+
 public class TestKijiDataRequest {
   @Test
   public void testSerializability() throws IOException, ClassNotFoundException {
@@ -120,6 +122,29 @@ public class TestKijiDataRequest {
     assertThat(request2, is(not(request3)));
   }
 
+  @Test
+  public void testHashCodeIgnoresColumnOrderAndFilters() {
+    final KijiDataRequestBuilder builder0 = KijiDataRequest.builder().withTimeRange(3L, 4L);
+    builder0.newColumnsDef().withMaxVersions(2)
+        .withFilter(new RegexQualifierColumnFilter("a.*"))
+        .addFamily("foo");
+    builder0.newColumnsDef().withMaxVersions(5).add("bar", "baz");
+    final KijiDataRequest request0 = builder0.build();
+
+    final KijiDataRequestBuilder builder1 = KijiDataRequest.builder().withTimeRange(3L, 4L);
+    builder1.newColumnsDef().withMaxVersions(5).add("bar", "baz");
+    builder1.newColumnsDef().withMaxVersions(2)
+        .withFilter(new RegexQualifierColumnFilter("b.*"))
+        .addFamily("foo");
+    final KijiDataRequest request1 = builder1.build();
+
+    // equals() ignores the order of the columns and the column filters; so does hashCode():
+    assertEquals(request0, request1);
+    assertEquals(request0.hashCode(), request1.hashCode());
+    assertEquals(request0.getColumn("foo", null).hashCode(),
+        request1.getColumn("foo", null).hashCode());
+  }
+
   @Test
   public void testMerge() {
     KijiDataRequestBuilder builder1 = KijiDataRequest.builder().withTimeRange(3, 4);
@@ -0,0 +1,91 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.junit.Test;
+
+import org.kiji.schema.filter.KijiColumnFilter;
+import org.kiji.schema.filter.KijiPaginationFilter;
+import org.kiji.schema.filter.RegexQualifierColumnFilter;
+
+public class TestKijiDataRequestSerializer {
+  /** Column filter without a registered codec. */
+  private static final class UnregisteredColumnFilter extends KijiColumnFilter {
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public Filter toHBaseFilter(KijiColumnName kijiColumnName, Context context) {
+      return null;
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder().withTimeRange(3L, 42L);
+    builder.newColumnsDef().withMaxVersions(2).add("info", "name").add("info", "email");
+    builder.newColumnsDef().withMaxVersions(5).withPageSize(10).addFamily("purchases");
+    final KijiDataRequest expected = builder.build();
+
+    final KijiDataRequest actual =
+        KijiDataRequestSerializer.deserialize(KijiDataRequestSerializer.serialize(expected));
+    assertEquals(expected, actual);
+    assertNull(actual.getColumn("purchases", null).getFilter());
+  }
+
+  @Test
+  public void testColumnFilters() throws IOException {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef()
+        .withFilter(new KijiPaginationFilter(3, 1, new RegexQualifierColumnFilter("a.*")))
+        .addFamily("map");
+    builder.newColumnsDef()
+        .withFilter(new UnregisteredColumnFilter())
+        .add("info", "name");
+    final KijiDataRequest expected = builder.build();
+
+    final KijiDataRequest actual =
+        KijiDataRequestSerializer.deserialize(KijiDataRequestSerializer.serialize(expected));
+    assertEquals(expected, actual);
+    assertEquals(expected.getColumn("map", null).getFilter(),
+        actual.getColumn("map", null).getFilter());
+    assertTrue(actual.getColumn("info", "name").getFilter() instanceof UnregisteredColumnFilter);
+  }
+
+  @Test
+  public void testSmallerThanJavaSerialization() throws IOException {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef()
+        .withFilter(new RegexQualifierColumnFilter("a.*"))
+        .add("info", "name").add("info", "email").addFamily("map");
+    final KijiDataRequest request = builder.build();
+
+    assertTrue(KijiDataRequestSerializer.serialize(request).length
+        < SerializationUtils.serialize(request).length);
+  }
+}
@@ -24,8 +24,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NavigableMap;
 
+import com.google.common.collect.Lists;
+
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.After;
 import org.junit.Before;
@@ -263,4 +266,79 @@ public class TestKijiPager extends KijiClientTest {
       ResourceUtils.closeOrLog(pager);
     }
   }
+
+  /** Test that pages read from a cursor cover each cell exactly once, in order. */
+  @Test
+  public void testMapTypeColumnPagingAcrossVersions() throws IOException {
+    final EntityId id = mTable.getEntityId("me");
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      for (int job = 0; job < 20; ++job) {
+        for (long ts = 1; ts <= 3; ++ts) {
+          writer.put(id, "jobs", String.format("job%02d", job), ts, "job" + job + "-" + ts);
+        }
+      }
+    } finally {
+      writer.close();
+    }
+
+    final KijiDataRequest dataRequest = KijiDataRequest.builder()
+        .addColumns(ColumnsDef.create().withMaxVersions(5).withPageSize(7).addFamily("jobs"))
+        .build();
+    final List<String> expected = Lists.newArrayList();
+    for (int job = 0; job < 20; ++job) {
+      for (long ts = 3; ts >= 1; --ts) {
+        expected.add("job" + job + "-" + ts);
+      }
+    }
+
+    final KijiPager pager = mReader.get(id, dataRequest).getPager("jobs");
+    try {
+      final List<String> actual = Lists.newArrayList();
+      int npages = 0;
+      while (pager.hasNext()) {
+        final NavigableMap<String, NavigableMap<Long, CharSequence>> page =
+            pager.next().getValues("jobs");
+        for (NavigableMap<Long, CharSequence> versions : page.values()) {
+          for (CharSequence value : versions.values()) {
+            actual.add(value.toString());
+          }
+        }
+        npages += 1;
+      }
+      assertEquals(expected, actual);
+      assertEquals(9, npages);
+    } finally {
+      pager.close();
+    }
+  }
+
+  /** Test that paging through the versions of a column reads each version exactly once. */
+  @Test
+  public void testGroupTypeColumnPagingAcrossPageSizes() throws IOException {
+    final EntityId id = mTable.getEntityId("me");
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      for (long ts = 1; ts <= 10; ++ts) {
+        writer.put(id, "info", "name", ts, "name" + ts);
+      }
+    } finally {
+      writer.close();
+    }
+
+    final KijiDataRequest dataRequest = KijiDataRequest.builder()
+        .addColumns(ColumnsDef.create().withMaxVersions(10).withPageSize(3).add("info", "name"))
+        .build();
+    final KijiPager pager = mReader.get(id, dataRequest).getPager("info", "name");
+    try {
+      final List<Long> timestamps = Lists.newArrayList();
+      timestamps.addAll(pager.next().getValues("info", "name").keySet());
+      timestamps.addAll(pager.next(5).getValues("info", "name").keySet());
+      timestamps.addAll(pager.next().getValues("info", "name").keySet());
+      assertEquals(Lists.newArrayList(10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L), timestamps);
+      assertTrue(!pager.hasNext());
+    } finally {
+      pager.close();
+    }
+  }
 }
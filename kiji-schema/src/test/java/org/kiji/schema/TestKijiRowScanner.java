@@ -20,17 +20,26 @@
 package org.kiji.schema;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.hadoop.conf.Configuration;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import org.kiji.schema.KijiTableReader.KijiScannerOptions;
+import org.kiji.schema.impl.HBaseKiji;
 import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.metrics.MetricsRegistries;
 import org.kiji.schema.util.InstanceBuilder;
 import org.kiji.schema.util.ResourceUtils;
 
@@ -97,4 +106,118 @@ public class TestKijiRowScanner {
 
     ResourceUtils.closeOrLog(scanner);
   }
+
+  /**
+   * Writes rows to the test table.
+   *
+   * @param nrows Number of rows to write.
+   * @throws IOException on I/O error.
+   */
+  private void writeRows(int nrows) throws IOException {
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      for (int i = 0; i < nrows; ++i) {
+        writer.put(mTable.getEntityId("row" + i), "info", "name", 1L, "name" + i);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Scans the test table and collects the names of the rows.
+   *
+   * @param options Options of the scanner.
+   * @return the names of the scanned rows, in the order they were delivered.
+   * @throws IOException on I/O error.
+   */
+  private List<String> scanNames(KijiScannerOptions options) throws IOException {
+    final List<String> names = Lists.newArrayList();
+    final KijiRowScanner scanner =
+        mReader.getScanner(KijiDataRequest.create("info", "name"), options);
+    try {
+      for (KijiRowData row : scanner) {
+        names.add(row.getMostRecentValue("info", "name").toString());
+      }
+    } finally {
+      scanner.close();
+    }
+    return names;
+  }
+
+  @Test
+  public void testPipelinedScanner() throws Exception {
+    writeRows(50);
+    final List<String> expected = scanNames(new KijiScannerOptions());
+    assertEquals(52, expected.size());
+
+    // Ordered delivery preserves the order of the table:
+    assertEquals(expected, scanNames(new KijiScannerOptions()
+        .setPrefetchSize(4)
+        .setDecoderThreads(3)));
+
+    // Unordered delivery yields the same rows:
+    final List<String> unordered = scanNames(new KijiScannerOptions()
+        .setPrefetchSize(4)
+        .setDecoderThreads(3)
+        .setOrderedDelivery(false));
+    assertEquals(expected.size(), unordered.size());
+    final Set<String> expectedSet = Sets.newHashSet(expected);
+    assertEquals(expectedSet, Sets.newHashSet(unordered));
+  }
+
+  @Test
+  public void testClosePipelinedScannerEarly() throws Exception {
+    writeRows(50);
+    final KijiRowScanner scanner = mReader.getScanner(
+        KijiDataRequest.create("info", "name"),
+        new KijiScannerOptions().setPrefetchSize(2).setDecoderThreads(2));
+    final Iterator<KijiRowData> iterator = scanner.iterator();
+    assertTrue(iterator.hasNext());
+    iterator.next();
+    // Closing the scanner stops the producer thread blocked on the full pipeline:
+    scanner.close();
+  }
+
+  @Test
+  public void testFetchMetrics() throws Exception {
+    final Configuration conf = new Configuration(mKiji.getConf());
+    conf.setBoolean(MetricsRegistries.CONF_METRICS_ENABLED, true);
+    final Kiji kiji = Kiji.Factory.open(mKiji.getURI(), conf);
+    try {
+      final KijiTable table = kiji.openTable("user");
+      try {
+        final KijiTableReader reader = table.openTableReader();
+        try {
+          final KijiDataRequest request = KijiDataRequest.create("info", "name");
+          final KijiScannerOptions[] allOptions = {
+            new KijiScannerOptions(),
+            new KijiScannerOptions().setPrefetchSize(2).setDecoderThreads(2),
+          };
+          for (KijiScannerOptions options : allOptions) {
+            final KijiRowScanner scanner = reader.getScanner(request, options);
+            try {
+              for (KijiRowData row : scanner) {
+                row.getMostRecentValue("info", "name");
+              }
+            } finally {
+              scanner.close();
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      } finally {
+        ResourceUtils.releaseOrLog(table);
+      }
+
+      // Each scan fetches 2 rows, then the end of the scan:
+      final Map<String, Long> values = ((HBaseKiji) kiji).getMetricsRegistry().getValues();
+      assertEquals(4L, (long) values.get("table.user.scanner.rows"));
+      assertEquals(6L, (long) values.get("table.user.scanner.fetch.count"));
+      assertTrue(values.toString(), values.get("table.user.scanner.fetch.max_us") > 0);
+    } finally {
+      kiji.release();
+    }
+  }
 }
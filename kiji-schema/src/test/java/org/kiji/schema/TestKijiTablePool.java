@@ -21,19 +21,28 @@ package org.kiji.schema;
 
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import org.kiji.schema.metrics.DefaultMetricsRegistry;
+import org.kiji.schema.metrics.MetricsRegistry;
 import org.kiji.schema.util.ResourceUtils;
 
 public class TestKijiTablePool extends KijiClientTest {
@@ -101,6 +110,55 @@ public class TestKijiTablePool extends KijiClientTest {
     verify(mTableFactory);
   }
 
+  /**
+   * Reports the value of a metric of the only table pool recording metrics into a registry.
+   *
+   * @param metrics Metrics registry of the table pool.
+   * @param name Name of the metric, relative to the table pool.
+   * @return the value of the metric, or null if the registry has no such metric.
+   */
+  private static Long getPoolMetric(MetricsRegistry metrics, String name) {
+    for (Map.Entry<String, Long> entry : metrics.getValues().entrySet()) {
+      if (entry.getKey().startsWith("table_pool.") && entry.getKey().endsWith("." + name)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testMetrics() throws IOException {
+    final MetricsRegistry metrics = new DefaultMetricsRegistry();
+    KijiTablePool pool = KijiTablePool.newBuilder(mTableFactory)
+        .withMetricsRegistry(metrics)
+        .build();
+
+    KijiTable foo = createMock(KijiTable.class);
+    expect(foo.getName()).andReturn("foo").anyTimes();
+    expect(foo.getURI()).andReturn(KijiURI.newBuilder("kiji://.env/foo").build()).anyTimes();
+    expect(mTableFactory.openTable("foo")).andReturn(foo);
+    ResourceUtils.releaseOrLog(foo);
+
+    replay(foo);
+    replay(mTableFactory);
+
+    KijiTable fooTable = pool.get("foo");
+    assertEquals(1L, (long) getPoolMetric(metrics, "connections"));
+    assertEquals(1L, (long) getPoolMetric(metrics, "connections_in_use"));
+    assertEquals(1L, (long) getPoolMetric(metrics, "misses"));
+
+    fooTable.release();
+    assertEquals(0L, (long) getPoolMetric(metrics, "connections_in_use"));
+    fooTable = pool.get("foo");
+    assertEquals(1L, (long) getPoolMetric(metrics, "hits"));
+    assertEquals(2L, (long) getPoolMetric(metrics, "get.count"));
+    fooTable.release();
+
+    ResourceUtils.closeOrLog(pool);
+    assertNull(getPoolMetric(metrics, "connections"));
+    verify(mTableFactory);
+  }
+
   @Test(expected=KijiTablePool.NoCapacityException.class)
   public void testMaxSize() throws IOException {
     KijiTablePool pool = KijiTablePool.newBuilder(mTableFactory)
@@ -283,4 +341,186 @@ public class TestKijiTablePool extends KijiClientTest {
     }
   }
 
+  /**
+   * Creates a mock table.
+   *
+   * @param name Name of the table.
+   * @return the mock table, ready to be used.
+   * @throws IOException on error.
+   */
+  private static KijiTable createTable(String name) throws IOException {
+    final KijiTable table = createMock(KijiTable.class);
+    expect(table.getName()).andReturn(name).anyTimes();
+    expect(table.getURI()).andReturn(KijiURI.newBuilder("kiji://.env/" + name).build()).anyTimes();
+    table.release();
+    expectLastCall().anyTimes();
+    replay(table);
+    return table;
+  }
+
+  /**
+   * Creates a mock table, and expects the table factory to open it.
+   *
+   * @param name Name of the table.
+   * @return the mock table.
+   * @throws IOException on error.
+   */
+  private KijiTable expectOpenTable(String name) throws IOException {
+    final KijiTable table = createTable(name);
+    expect(mTableFactory.openTable(name)).andReturn(table);
+    return table;
+  }
+
+  @Test
+  public void testAcquireTimeoutWaitsForRelease() throws Exception {
+    final KijiTablePool pool = KijiTablePool.newBuilder(mTableFactory)
+        .withMaxSize(1)
+        .withAcquireTimeout(10000)
+        .build();
+    expectOpenTable("foo");
+    replay(mTableFactory);
+
+    final KijiTable first = pool.get("foo");
+    final Thread releaser = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+          first.release();
+        } catch (Exception exn) {
+          throw new RuntimeException(exn);
+        }
+      }
+    };
+    releaser.start();
+    final KijiTable second = pool.get("foo");
+    releaser.join();
+    assertTrue("Released table should be handed to the waiting request.", first == second);
+
+    final KijiTablePool.PoolStats stats = pool.getStats();
+    assertEquals(1L, stats.getHits());
+    assertEquals(1L, stats.getMisses());
+    assertEquals(1L, stats.getWaits());
+    assertEquals(0L, stats.getTimeouts());
+    second.release();
+    ResourceUtils.closeOrLog(pool);
+  }
+
+  @Test
+  public void testAcquireTimeoutExpires() throws IOException {
+    final KijiTablePool pool = KijiTablePool.newBuilder(mTableFactory)
+        .withMaxSize(1)
+        .withAcquireTimeout(20)
+        .build();
+    expectOpenTable("foo");
+    replay(mTableFactory);
+
+    final KijiTable first = pool.get("foo");
+    try {
+      pool.get("foo");
+      fail("Should throw a NoCapacityException.");
+    } catch (KijiTablePool.NoCapacityException nce) {
+      // Expected.
+    }
+    assertEquals(1L, pool.getStats().getWaits());
+    assertEquals(1L, pool.getStats().getTimeouts());
+    assertTrue(pool.getStats().getTotalWaitTimeMillis() >= 10L);
+    first.release();
+    ResourceUtils.closeOrLog(pool);
+  }
+
+  @Test
+  public void testFillFailureReleasesNewConnection() throws IOException {
+    final KijiTablePool pool = KijiTablePool.newBuilder(mTableFactory)
+        .withMinSize(2)
+        .build();
+    final KijiTable table = createMock(KijiTable.class);
+    expect(table.getName()).andReturn("foo").anyTimes();
+    expect(table.getURI()).andReturn(KijiURI.newBuilder("kiji://.env/foo").build()).anyTimes();
+    table.release();
+    expectLastCall().once();
+    replay(table);
+    expect(mTableFactory.openTable("foo")).andReturn(table);
+    expect(mTableFactory.openTable("foo")).andThrow(new IOException("Cannot open foo."));
+    replay(mTableFactory);
+
+    try {
+      pool.get("foo");
+      fail("Should throw an IOException.");
+    } catch (IOException ioe) {
+      assertEquals("Cannot open foo.", ioe.getMessage());
+    }
+    // The connection opened for the request is not leaked:
+    assertEquals(0, pool.getPoolSize("foo"));
+    verify(table);
+    verify(mTableFactory);
+    ResourceUtils.closeOrLog(pool);
+  }
+
+  @Test
+  public void testPrewarmedTables() throws Exception {
+    expect(mTableFactory.openTable("foo")).andReturn(createTable("foo")).times(2);
+    replay(mTableFactory);
+
+    final KijiTablePool pool = KijiTablePool.newBuilder(mTableFactory)
+        .withMinSize(2)
+        .withPrewarmedTables("foo")
+        .build();
+    final long deadline = System.currentTimeMillis() + 10000L;
+    while ((pool.getPoolSize("foo") < 2) && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, pool.getPoolSize("foo"));
+
+    pool.get("foo");
+    assertEquals(1L, pool.getStats().getHits());
+    assertEquals(0L, pool.getStats().getMisses());
+    verify(mTableFactory);
+  }
+
+  @Test
+  public void testConcurrentCheckout() throws Exception {
+    expect(mTableFactory.openTable("foo")).andReturn(createTable("foo")).anyTimes();
+    expect(mTableFactory.openTable("bar")).andReturn(createTable("bar")).anyTimes();
+    replay(mTableFactory);
+
+    final int maxSize = 4;
+    final int nthreads = 16;
+    final int iterations = 500;
+    final KijiTablePool pool = KijiTablePool.newBuilder(mTableFactory)
+        .withMaxSize(maxSize)
+        .withAcquireTimeout(60000)
+        .build();
+    final AtomicInteger failures = new AtomicInteger(0);
+    final List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < nthreads; ++i) {
+      final String name = (i % 2 == 0) ? "foo" : "bar";
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < iterations; ++j) {
+              pool.get(name).release();
+            }
+          } catch (Exception exn) {
+            failures.incrementAndGet();
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(0, failures.get());
+    assertTrue(pool.getPoolSize("foo") <= maxSize);
+    assertTrue(pool.getPoolSize("bar") <= maxSize);
+    final KijiTablePool.PoolStats stats = pool.getStats();
+    assertEquals((long) nthreads * iterations, stats.getHits() + stats.getMisses());
+    assertEquals(0L, stats.getTimeouts());
+    ResourceUtils.closeOrLog(pool);
+  }
 }
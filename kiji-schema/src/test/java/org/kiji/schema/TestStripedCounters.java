@@ -0,0 +1,313 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kiji.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.hbase.KijiManagedHBaseTableName;
+import org.kiji.schema.impl.HBaseKiji;
+import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.ResourceUtils;
+
+public class TestStripedCounters extends KijiClientTest {
+  private static final int NTHREADS = 4;
+  private static final int NINCREMENTS = 25;
+  /** Number of stripes of the counter info:visits. */
+  private static final int NSTRIPES = 4;
+
+  private KijiTable mTable;
+  private KijiTableReader mReader;
+
+  @Before
+  public void setupEnvironment() throws Exception {
+    getKiji().createTable(KijiTableLayouts.getLayout(KijiTableLayouts.STRIPED_COUNTER_TEST));
+    mTable = getKiji().openTable("user");
+    mReader = mTable.openTableReader();
+  }
+
+  @After
+  public void cleanupEnvironment() throws IOException {
+    ResourceUtils.closeOrLog(mReader);
+    ResourceUtils.releaseOrLog(mTable);
+  }
+
+  private KijiRowData getVisits(EntityId eid) throws IOException {
+    return mReader.get(eid, KijiDataRequest.create("info", "visits"));
+  }
+
+  /** Increments a counter from several threads, which pick distinct stripes. */
+  private void incrementFromThreads(final EntityId eid) throws Exception {
+    final List<Thread> threads = Lists.newArrayList();
+    final List<Throwable> errors = Lists.newCopyOnWriteArrayList();
+    for (int i = 0; i < NTHREADS; ++i) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            final KijiTableWriter writer = mTable.openTableWriter();
+            try {
+              for (int j = 0; j < NINCREMENTS; ++j) {
+                writer.increment(eid, "info", "visits", 1L);
+              }
+            } finally {
+              writer.close();
+            }
+          } catch (Throwable t) {
+            errors.add(t);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+  }
+
+  /** Increments a counter from a thread whose stripe is not stripe 0. */
+  private void incrementOffStripeZero(final EntityId eid, final long amount) throws Exception {
+    final List<Throwable> errors = Lists.newCopyOnWriteArrayList();
+    Thread thread;
+    do {
+      thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            final KijiTableWriter writer = mTable.openTableWriter();
+            try {
+              writer.increment(eid, "info", "visits", amount);
+            } finally {
+              writer.close();
+            }
+          } catch (Throwable t) {
+            errors.add(t);
+          }
+        }
+      };
+    } while (thread.getId() % NSTRIPES == 0);
+    thread.start();
+    thread.join();
+    assertTrue(errors.toString(), errors.isEmpty());
+  }
+
+  /** Counts the rows of the stripes table. */
+  private int countStripeRows() throws IOException {
+    final HBaseKijiTable table = (HBaseKijiTable) mTable;
+    final HTableInterface htable = table.acquireStripesHTable();
+    try {
+      final ResultScanner scanner = htable.getScanner(new Scan());
+      try {
+        int nrows = 0;
+        for (Result result : scanner) {
+          nrows += 1;
+        }
+        return nrows;
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      table.releaseStripesHTable(htable);
+    }
+  }
+
+  @Test
+  public void testConcurrentIncrementsAreSummed() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    incrementFromThreads(eid);
+
+    final KijiRowData row = getVisits(eid);
+    assertEquals(NTHREADS * NINCREMENTS,
+        row.<Long>getMostRecentValue("info", "visits").longValue());
+    assertEquals(1, row.getTimestamps("info", "visits").size());
+    // Threads with distinct IDs write to distinct rows of the stripes table:
+    assertTrue(countStripeRows() > 0);
+  }
+
+  @Test
+  public void testIncrementReturnsCounterValue() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    incrementOffStripeZero(eid, 5L);
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      // Increments report the sum of all the stripes, whichever stripe they go to:
+      assertEquals(6L, writer.increment(eid, "info", "visits", 1L).getData().longValue());
+      assertEquals(8L, writer.increment(eid, "info", "visits", 2L).getData().longValue());
+    } finally {
+      writer.close();
+    }
+    assertEquals(8L, getVisits(eid).<Long>getMostRecentValue("info", "visits").longValue());
+  }
+
+  @Test
+  public void testPutOverwritesAllStripes() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    incrementFromThreads(eid);
+    incrementOffStripeZero(eid, 1L);
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      writer.put(eid, "info", "visits", 0L);
+      assertEquals(0L, getVisits(eid).<Long>getMostRecentValue("info", "visits").longValue());
+      writer.put(eid, "info", "visits", 7L);
+      assertEquals(8L, writer.increment(eid, "info", "visits", 1L).getData().longValue());
+    } finally {
+      writer.close();
+    }
+    assertEquals(8L, getVisits(eid).<Long>getMostRecentValue("info", "visits").longValue());
+  }
+
+  @Test
+  public void testScanAndBulkGetFoldStripes() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    final EntityId other = mTable.getEntityId("other");
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      writer.put(eid, "info", "name", "name");
+      writer.put(other, "info", "name", "other");
+    } finally {
+      writer.close();
+    }
+    incrementFromThreads(eid);
+
+    final KijiDataRequest request = KijiDataRequest.create("info");
+    final List<KijiRowData> rows = mReader.bulkGet(Lists.newArrayList(eid, other), request);
+    assertEquals(NTHREADS * NINCREMENTS,
+        rows.get(0).<Long>getMostRecentValue("info", "visits").longValue());
+    assertFalse(rows.get(1).containsColumn("info", "visits"));
+
+    final KijiRowScanner scanner = mReader.getScanner(request);
+    try {
+      int nrows = 0;
+      for (KijiRowData row : scanner) {
+        nrows += 1;
+        if (row.getEntityId().equals(eid)) {
+          assertEquals(NTHREADS * NINCREMENTS,
+              row.<Long>getMostRecentValue("info", "visits").longValue());
+          assertEquals("name", row.getMostRecentValue("info", "name").toString());
+        }
+      }
+      assertEquals(2, nrows);
+    } finally {
+      scanner.close();
+    }
+  }
+
+  @Test
+  public void testScanIncludesStripeOnlyRows() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    final EntityId other = mTable.getEntityId("other");
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      writer.put(other, "info", "name", "other");
+    } finally {
+      writer.close();
+    }
+    // The counter of this row only lives in the stripes table:
+    incrementOffStripeZero(eid, 3L);
+
+    final KijiRowScanner scanner = mReader.getScanner(KijiDataRequest.create("info"));
+    try {
+      final List<EntityId> eids = Lists.newArrayList();
+      for (KijiRowData row : scanner) {
+        eids.add(row.getEntityId());
+        if (row.getEntityId().equals(eid)) {
+          assertEquals(3L, row.<Long>getMostRecentValue("info", "visits").longValue());
+          assertFalse(row.containsColumn("info", "name"));
+        } else {
+          assertFalse(row.containsColumn("info", "visits"));
+        }
+      }
+      assertEquals(2, eids.size());
+      assertTrue(eids.contains(eid));
+    } finally {
+      scanner.close();
+    }
+  }
+
+  @Test
+  public void testBufferedIncrementer() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    incrementOffStripeZero(eid, 10L);
+    final KijiBufferedIncrementer incrementer =
+        mTable.getWriterFactory().openBufferedIncrementer();
+    try {
+      incrementer.increment(eid, "info", "visits", 1L);
+      incrementer.flush();
+      assertEquals(12L, incrementer.increment(eid, "info", "visits", 1L).get().longValue());
+    } finally {
+      incrementer.close();
+    }
+    assertEquals(12L, getVisits(eid).<Long>getMostRecentValue("info", "visits").longValue());
+  }
+
+  @Test
+  public void testDeleteColumnDeletesAllStripes() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    incrementFromThreads(eid);
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      writer.put(eid, "info", "name", "name");
+      writer.deleteColumn(eid, "info", "visits");
+    } finally {
+      writer.close();
+    }
+    assertFalse(getVisits(eid).containsColumn("info", "visits"));
+  }
+
+  @Test
+  public void testDeleteRowDeletesAllStripes() throws Exception {
+    final EntityId eid = mTable.getEntityId("user");
+    incrementFromThreads(eid);
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      writer.deleteRow(eid);
+    } finally {
+      writer.close();
+    }
+    assertFalse(getVisits(eid).containsColumn("info", "visits"));
+    assertEquals(0, countStripeRows());
+  }
+
+  @Test
+  public void testDeleteTableDeletesStripesTable() throws Exception {
+    final HBaseKiji kiji = (HBaseKiji) getKiji();
+    final String stripesTable = KijiManagedHBaseTableName.getCounterStripesTableName(
+        kiji.getURI().getInstance(), "user").toString();
+    assertTrue(kiji.getHBaseAdmin().tableExists(stripesTable));
+    kiji.deleteTable("user");
+    assertFalse(kiji.getHBaseAdmin().tableExists(stripesTable));
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.KijiCellDecoder;
+import org.kiji.schema.KijiCellEncoder;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.NoSuchColumnException;
+import org.kiji.schema.SpecificCellDecoderFactory;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+
+/** Tests for CellDecoderProvider. */
+public class TestCellDecoderProvider extends KijiClientTest {
+  private KijiTableLayout mLayout;
+  private KijiSchemaTable mSchemaTable;
+  private CellDecoderProvider mProvider;
+
+  @Before
+  public void setupProvider() throws Exception {
+    mLayout = KijiTableLayout.newLayout(KijiTableLayouts.getLayout(KijiTableLayouts.PAGING_TEST));
+    mSchemaTable = getKiji().getSchemaTable();
+    mProvider =
+        new CellDecoderProvider(mLayout, mSchemaTable, SpecificCellDecoderFactory.get());
+  }
+
+  @Test
+  public void testDecodersAreReused() throws Exception {
+    final KijiCellDecoder<CharSequence> name = mProvider.getDecoder("info", "name");
+    assertSame(name, mProvider.getDecoder("info", "name"));
+    assertNotSame(name, mProvider.getDecoder("info", "location"));
+  }
+
+  @Test
+  public void testMapFamilyQualifiersShareDecoder() throws Exception {
+    final KijiCellDecoder<CharSequence> jobs = mProvider.getDecoder("jobs", "a");
+    assertSame(jobs, mProvider.getDecoder("jobs", "b"));
+  }
+
+  @Test
+  public void testCachedDecoderDecodes() throws Exception {
+    final CellEncoderProvider encoders =
+        new CellEncoderProvider(mLayout, mSchemaTable, DefaultKijiCellEncoderFactory.get());
+    final KijiCellEncoder encoder = encoders.getEncoder("jobs", "a");
+    final KijiCellDecoder<CharSequence> decoder = mProvider.getDecoder("jobs", "a");
+    // Decode several cells to go through the cached datum reader:
+    assertEquals("value", decoder.decodeValue(encoder.encode("value")).toString());
+    assertEquals("other", decoder.decodeValue(encoder.encode("other")).toString());
+  }
+
+  @Test
+  public void testUnknownFamily() throws Exception {
+    try {
+      mProvider.getDecoder("unknown", "qualifier");
+      fail("Should have thrown NoSuchColumnException.");
+    } catch (NoSuchColumnException nsce) {
+      // Expected.
+    }
+  }
+}
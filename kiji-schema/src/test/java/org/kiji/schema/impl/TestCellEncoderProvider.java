@@ -0,0 +1,83 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.KijiCellEncoder;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.NoSuchColumnException;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+
+/** Tests for CellEncoderProvider. */
+public class TestCellEncoderProvider extends KijiClientTest {
+  private KijiTableLayout mLayout;
+  private KijiSchemaTable mSchemaTable;
+  private CellEncoderProvider mProvider;
+
+  @Before
+  public void setupProvider() throws Exception {
+    mLayout = KijiTableLayout.newLayout(KijiTableLayouts.getLayout(KijiTableLayouts.PAGING_TEST));
+    mSchemaTable = getKiji().getSchemaTable();
+    mProvider =
+        new CellEncoderProvider(mLayout, mSchemaTable, DefaultKijiCellEncoderFactory.get());
+  }
+
+  @Test
+  public void testEncodersAreReused() throws Exception {
+    final KijiCellEncoder name = mProvider.getEncoder("info", "name");
+    assertSame(name, mProvider.getEncoder("info", "name"));
+    assertNotSame(name, mProvider.getEncoder("info", "location"));
+  }
+
+  @Test
+  public void testMapFamilyQualifiersShareEncoder() throws Exception {
+    final KijiCellEncoder jobs = mProvider.getEncoder("jobs", "a");
+    assertSame(jobs, mProvider.getEncoder("jobs", "b"));
+  }
+
+  @Test
+  public void testCachedEncoderMatchesNewEncoder() throws Exception {
+    final KijiCellEncoder expected = DefaultKijiCellEncoderFactory.get().create(
+        mLayout.getCellSpec(new KijiColumnName("info", "name")).setSchemaTable(mSchemaTable));
+    final KijiCellEncoder cached = mProvider.getEncoder("info", "name");
+    assertArrayEquals(expected.encode("value"), cached.encode("value"));
+    assertArrayEquals(expected.encode("other value"), cached.encode("other value"));
+  }
+
+  @Test
+  public void testUnknownFamily() throws Exception {
+    try {
+      mProvider.getEncoder("unknown", "qualifier");
+      fail("Should have thrown NoSuchColumnException.");
+    } catch (NoSuchColumnException nsce) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.filter.Filter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiDataRequestException;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.filter.KijiColumnFilter;
+import org.kiji.schema.filter.RegexQualifierColumnFilter;
+import org.kiji.schema.hbase.HBaseScanOptions;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.ResourceUtils;
+
+public class TestCompiledDataRequest extends KijiClientTest {
+  private KijiTable mTable;
+  private KijiTableLayout mTableLayout;
+
+  @Before
+  public void setupTable() throws Exception {
+    getKiji().createTable(KijiTableLayouts.getLayout(KijiTableLayouts.FULL_FEATURED));
+    mTable = getKiji().openTable("user");
+    mTableLayout = mTable.getLayout();
+  }
+
+  @After
+  public void cleanupTable() throws IOException {
+    ResourceUtils.releaseOrLog(mTable);
+  }
+
+  /** @return a data request with a column filter, a map-type family and a time range. */
+  private static KijiDataRequest makeDataRequest() {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(1).add("info", "name");
+    builder.newColumnsDef().withMaxVersions(2)
+        .withFilter(new RegexQualifierColumnFilter("a.*"))
+        .addFamily("purchases");
+    builder.withTimeRange(1L, 3L);
+    return builder.build();
+  }
+
+  @Test
+  public void testCompiledGetMatchesAdapter() throws IOException {
+    final KijiDataRequest request = makeDataRequest();
+    final CompiledDataRequest compiled = CompiledDataRequest.compile(request, mTableLayout);
+    final HBaseDataRequestAdapter adapter = new HBaseDataRequestAdapter(request);
+    for (String row : new String[] {"row1", "row2"}) {
+      final EntityId eid = mTable.getEntityId(row);
+      assertEquals(
+          adapter.toGet(eid, mTableLayout).toString(),
+          compiled.toGet(eid).toString());
+    }
+  }
+
+  @Test
+  public void testCompiledScanMatchesAdapter() throws IOException {
+    final KijiDataRequest request = makeDataRequest();
+    final CompiledDataRequest compiled = CompiledDataRequest.compile(request, mTableLayout);
+    final HBaseScanOptions scanOptions = new HBaseScanOptions();
+    scanOptions.setServerPrefetchSize(10);
+    assertEquals(
+        new HBaseDataRequestAdapter(request).toScan(mTableLayout, scanOptions).toString(),
+        compiled.toScan(scanOptions).toString());
+  }
+
+  @Test
+  public void testEmptyDataRequest() throws IOException {
+    final CompiledDataRequest compiled =
+        CompiledDataRequest.compile(KijiDataRequest.builder().build(), mTableLayout);
+    assertNull(compiled.toGet(mTable.getEntityId("row")));
+    assertNull(compiled.toScan(new HBaseScanOptions()));
+  }
+
+  @Test
+  public void testInvalidDataRequest() throws IOException {
+    try {
+      CompiledDataRequest.compile(KijiDataRequest.create("unknown_family"), mTableLayout);
+      fail("Data request for an unknown family should not compile.");
+    } catch (KijiDataRequestException kdre) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testTableCachesCompiledDataRequests() throws IOException {
+    final HBaseKijiTable table = HBaseKijiTable.downcast(mTable);
+    final CompiledDataRequest compiled = table.getCompiledDataRequest(makeDataRequest());
+
+    // Equal data requests share the same compiled request:
+    assertSame(compiled, table.getCompiledDataRequest(makeDataRequest()));
+
+    // Data requests that only differ by their column filters do not:
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(1).add("info", "name");
+    builder.newColumnsDef().withMaxVersions(2)
+        .withFilter(new RegexQualifierColumnFilter("b.*"))
+        .addFamily("purchases");
+    builder.withTimeRange(1L, 3L);
+    assertNotSame(compiled, table.getCompiledDataRequest(builder.build()));
+  }
+
+  /** Column filter that does not implement equals(). */
+  private static final class NoEqualsColumnFilter extends KijiColumnFilter {
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public Filter toHBaseFilter(KijiColumnName kijiColumnName, Context context)
+        throws IOException {
+      return new RegexQualifierColumnFilter(".*").toHBaseFilter(kijiColumnName, context);
+    }
+  }
+
+  /**
+   * Builds a data request with a column filter that does not implement equals().
+   *
+   * @param filter Column filter to apply.
+   * @return a data request using the given column filter.
+   */
+  private static KijiDataRequest makeDataRequest(KijiColumnFilter filter) {
+    final KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    builder.newColumnsDef().withMaxVersions(2).withFilter(filter).addFamily("purchases");
+    return builder.build();
+  }
+
+  @Test
+  public void testFiltersWithoutEqualsMissTheCache() throws IOException {
+    final HBaseKijiTable table = HBaseKijiTable.downcast(mTable);
+    final KijiColumnFilter filter = new NoEqualsColumnFilter();
+    final CompiledDataRequest compiled = table.getCompiledDataRequest(makeDataRequest(filter));
+
+    // Requests sharing the filter instance hit the cache:
+    assertSame(compiled, table.getCompiledDataRequest(makeDataRequest(filter)));
+
+    // Requests with another instance of the filter always miss:
+    assertNotSame(compiled,
+        table.getCompiledDataRequest(makeDataRequest(new NoEqualsColumnFilter())));
+  }
+}
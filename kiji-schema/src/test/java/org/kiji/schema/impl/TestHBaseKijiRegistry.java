@@ -0,0 +1,163 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiNotInstalledException;
+import org.kiji.schema.KijiURI;
+
+public class TestHBaseKijiRegistry extends KijiClientTest {
+  /** @return a configuration enabling the registry of shared Kiji instances. */
+  private Configuration getSharedConf() {
+    final Configuration conf = new Configuration(getConf());
+    conf.setBoolean(HBaseKijiRegistry.CONF_REGISTRY_ENABLED, true);
+    return conf;
+  }
+
+  @Test
+  public void testSharedInstances() throws Exception {
+    final KijiURI uri = getKiji().getURI();
+    final HBaseKijiRegistry registry = HBaseKijiRegistry.get();
+    final int shared = registry.getSharedInstanceCount();
+    final int live = registry.getLiveInstanceCount();
+
+    final Kiji kiji1 = Kiji.Factory.open(uri, getSharedConf());
+    final Kiji kiji2 = Kiji.Factory.open(uri, getSharedConf());
+    assertSame(kiji1, kiji2);
+    assertEquals(shared + 1, registry.getSharedInstanceCount());
+    assertEquals(live + 1, registry.getLiveInstanceCount());
+
+    kiji1.release();
+    // Still retained once:
+    kiji2.getTableNames();
+    assertEquals(shared + 1, registry.getSharedInstanceCount());
+
+    kiji2.release();
+    assertEquals(shared, registry.getSharedInstanceCount());
+    assertEquals(live, registry.getLiveInstanceCount());
+
+    // Released instances are not handed out anymore:
+    final Kiji kiji3 = Kiji.Factory.open(uri, getSharedConf());
+    try {
+      assertNotSame(kiji1, kiji3);
+      kiji3.getTableNames();
+    } finally {
+      kiji3.release();
+    }
+  }
+
+  @Test
+  public void testDistinctConfigurations() throws Exception {
+    final Configuration conf = getSharedConf();
+    conf.set("kiji.test.property", "value");
+    final Kiji kiji1 = Kiji.Factory.open(getKiji().getURI(), getSharedConf());
+    final Kiji kiji2 = Kiji.Factory.open(getKiji().getURI(), conf);
+    final Kiji kiji3 = Kiji.Factory.open(getKiji().getURI(), getConf());
+    try {
+      assertNotSame(kiji1, kiji2);
+      assertNotSame(kiji1, kiji3);
+    } finally {
+      kiji1.release();
+      kiji2.release();
+      kiji3.release();
+    }
+  }
+
+  @Test
+  public void testTableURIsShareTheInstance() throws Exception {
+    final KijiURI uri = getKiji().getURI();
+    final KijiURI tableURI = KijiURI.newBuilder(uri).withTableName("table").build();
+    final Kiji kiji1 = Kiji.Factory.open(uri, getSharedConf());
+    final Kiji kiji2 = Kiji.Factory.open(tableURI, getSharedConf());
+    try {
+      assertSame(kiji1, kiji2);
+      assertEquals(uri, kiji2.getURI());
+    } finally {
+      kiji1.release();
+      kiji2.release();
+    }
+  }
+
+  @Test
+  public void testConcurrentOpens() throws Exception {
+    final int nthreads = 8;
+    final KijiURI uri = getKiji().getURI();
+    final HBaseKijiRegistry registry = HBaseKijiRegistry.get();
+    final int live = registry.getLiveInstanceCount();
+    final ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+    final List<Kiji> instances = Lists.newArrayList();
+    try {
+      final List<Future<Kiji>> futures = Lists.newArrayList();
+      for (int i = 0; i < nthreads; ++i) {
+        futures.add(executor.submit(new Callable<Kiji>() {
+          @Override
+          public Kiji call() throws Exception {
+            return Kiji.Factory.open(uri, getSharedConf());
+          }
+        }));
+      }
+      for (Future<Kiji> future : futures) {
+        instances.add(future.get());
+      }
+      // All the opens share a single instance, constructed once:
+      for (Kiji kiji : instances) {
+        assertSame(instances.get(0), kiji);
+      }
+      assertEquals(live + 1, registry.getLiveInstanceCount());
+    } finally {
+      executor.shutdown();
+      for (Kiji kiji : instances) {
+        kiji.release();
+      }
+    }
+    assertEquals(live, registry.getLiveInstanceCount());
+  }
+
+  @Test
+  public void testFailedOpenIsNotLive() throws Exception {
+    final KijiURI uri =
+        KijiURI.newBuilder(getKiji().getURI()).withInstanceName("not_installed").build();
+    final HBaseKijiRegistry registry = HBaseKijiRegistry.get();
+    final int live = registry.getLiveInstanceCount();
+    try {
+      Kiji.Factory.open(uri, getConf());
+      fail("Should throw KijiNotInstalledException");
+    } catch (KijiNotInstalledException knie) {
+      // Expected: the instance is closed by the failed constructor.
+    }
+    assertEquals(live, registry.getLiveInstanceCount());
+  }
+}
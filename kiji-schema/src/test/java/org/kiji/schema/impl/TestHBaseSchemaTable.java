@@ -20,16 +20,49 @@
 package org.kiji.schema.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
 import org.kiji.schema.Kiji;
 import org.kiji.schema.KijiClientTest;
 import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiURI;
+import org.kiji.schema.hbase.HBaseFactory;
+import org.kiji.schema.hbase.KijiManagedHBaseTableName;
 import org.kiji.schema.impl.HBaseSchemaTable.PreRegisteredSchema;
+import org.kiji.schema.util.ByteStreamArray;
 import org.kiji.schema.util.BytesKey;
+import org.kiji.schema.util.ResourceUtils;
 
 /** Tests for HBaseSchemaTable. */
 public class TestHBaseSchemaTable extends KijiClientTest {
@@ -116,4 +149,358 @@ public class TestHBaseSchemaTable extends KijiClientTest {
     assertEquals(TEST_SCHEMA_B, schemaTable.getSchema(testSchemaBId));
     assertEquals(testSchemaAId + 1, testSchemaBId);
   }
+
+  /** Tests concurrent lookups of schemas not yet cached in-memory. */
+  @Test
+  public void testConcurrentLookups() throws Exception {
+    final int nthreads = 32;
+    final Kiji kiji = getKiji();
+    final KijiURI uri = kiji.getURI();
+    final HBaseFactory factory = HBaseFactory.Provider.get();
+
+    // Use a fresh schema table, with empty in-memory maps:
+    final HBaseSchemaTable schemaTable = new HBaseSchemaTable(
+        uri,
+        getConf(),
+        factory.getHTableInterfaceFactory(uri),
+        factory.getLockFactory(uri, getConf()));
+    final ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+    try {
+      final List<Future<Boolean>> futures = Lists.newArrayList();
+      for (int i = 0; i < nthreads; ++i) {
+        futures.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            for (PreRegisteredSchema preRegistered : PreRegisteredSchema.values()) {
+              final Schema schema = schemaTable.getSchema((long) preRegistered.getSchemaId());
+              assertEquals(preRegistered.getType(), schema.getType());
+              assertEquals(schema, schemaTable.getSchema(schemaTable.getSchemaHash(schema)));
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertEquals(true, future.get());
+      }
+    } finally {
+      executor.shutdown();
+      ResourceUtils.closeOrLog(schemaTable);
+    }
+  }
+
+  /** Tests that a slow lookup of one schema ID does not hold back lookups of other IDs. */
+  @Test
+  public void testParallelMisses() throws Exception {
+    final KijiURI uri = getKiji().getURI();
+    final HBaseFactory factory = HBaseFactory.Provider.get();
+    final HTableInterfaceFactory tableFactory = factory.getHTableInterfaceFactory(uri);
+    final String idTableName =
+        KijiManagedHBaseTableName.getSchemaIdTableName(uri.getInstance()).toString();
+    final byte[] blockedRow =
+        ByteStreamArray.longToVarInt64(PreRegisteredSchema.STRING.getSchemaId());
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    final AtomicInteger blockedGets = new AtomicInteger(0);
+
+    // Blocks the gets of the STRING schema ID in the schema ID table:
+    final HTableInterfaceFactory blockingFactory = new HTableInterfaceFactory() {
+      @Override
+      public HTableInterface create(Configuration conf, String hbaseTableName)
+          throws IOException {
+        final HTableInterface htable = tableFactory.create(conf, hbaseTableName);
+        if (!hbaseTableName.equals(idTableName)) {
+          return htable;
+        }
+        final InvocationHandler handler = new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("get") && (args[0] instanceof Get)
+                && Arrays.equals(blockedRow, ((Get) args[0]).getRow())) {
+              blockedGets.incrementAndGet();
+              blocked.countDown();
+              unblock.await();
+            }
+            try {
+              return method.invoke(htable, args);
+            } catch (InvocationTargetException ite) {
+              throw ite.getCause();
+            }
+          }
+        };
+        return (HTableInterface) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {HTableInterface.class}, handler);
+      }
+    };
+
+    final HBaseSchemaTable schemaTable = new HBaseSchemaTable(
+        uri, getConf(), blockingFactory, factory.getLockFactory(uri, getConf()));
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      final List<Future<Schema>> futures = Lists.newArrayList();
+      for (int i = 0; i < 2; ++i) {
+        futures.add(executor.submit(new Callable<Schema>() {
+          @Override
+          public Schema call() throws Exception {
+            return schemaTable.getSchema((long) PreRegisteredSchema.STRING.getSchemaId());
+          }
+        }));
+      }
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+      // Another schema ID is loaded while the STRING schema ID is being loaded:
+      final Future<Schema> other = executor.submit(new Callable<Schema>() {
+        @Override
+        public Schema call() throws Exception {
+          return schemaTable.getSchema((long) PreRegisteredSchema.INT.getSchemaId());
+        }
+      });
+      assertEquals(SCHEMA_INT, other.get(10, TimeUnit.SECONDS));
+      assertFalse(futures.get(0).isDone());
+
+      unblock.countDown();
+      for (Future<Schema> future : futures) {
+        assertEquals(SCHEMA_STRING, future.get());
+      }
+      // Concurrent misses for the STRING schema ID were served by a single get:
+      assertEquals(1, blockedGets.get());
+    } finally {
+      unblock.countDown();
+      executor.shutdown();
+      ResourceUtils.closeOrLog(schemaTable);
+    }
+  }
+
+  /**
+   * Opens a fresh schema table for a Kiji instance, with empty in-memory maps.
+   *
+   * @param uri URI of the Kiji instance.
+   * @return a fresh schema table for the Kiji instance.
+   * @throws Exception on error.
+   */
+  private HBaseSchemaTable openSchemaTable(KijiURI uri) throws Exception {
+    final HBaseFactory factory = HBaseFactory.Provider.get();
+    return new HBaseSchemaTable(
+        uri,
+        getConf(),
+        factory.getHTableInterfaceFactory(uri),
+        factory.getLockFactory(uri, getConf()));
+  }
+
+  /** Tests writing a schema table snapshot and loading it into a fresh schema table. */
+  @Test
+  public void testSnapshot() throws Exception {
+    final Kiji kiji = getKiji();
+    final HBaseSchemaTable schemaTable = (HBaseSchemaTable) kiji.getSchemaTable();
+    final long testSchemaAId = schemaTable.getOrCreateSchemaId(TEST_SCHEMA_A);
+    final File file = new File(getLocalTempDir(), "schema-table.snapshot");
+    schemaTable.writeSnapshot(file);
+
+    // Schemas registered after the snapshot are still resolved from the tables:
+    final long testSchemaBId = schemaTable.getOrCreateSchemaId(TEST_SCHEMA_B);
+    assertTrue(schemaTable.checkConsistency());
+
+    final HBaseSchemaTable freshTable = openSchemaTable(kiji.getURI());
+    try {
+      assertTrue(freshTable.loadSnapshot(file));
+      assertEquals(TEST_SCHEMA_A, freshTable.getSchema(testSchemaAId));
+      assertEquals(TEST_SCHEMA_A, freshTable.getSchema(freshTable.getSchemaHash(TEST_SCHEMA_A)));
+      assertEquals(SCHEMA_NULL, freshTable.getSchema(7L));
+      assertEquals(TEST_SCHEMA_B, freshTable.getSchema(testSchemaBId));
+      assertEquals(testSchemaBId, freshTable.getOrCreateSchemaId(TEST_SCHEMA_B));
+    } finally {
+      ResourceUtils.closeOrLog(freshTable);
+    }
+  }
+
+  /** Tests that missing, invalid or stale snapshots are ignored. */
+  @Test
+  public void testIgnoredSnapshots() throws Exception {
+    final Kiji kiji = getKiji();
+    final HBaseSchemaTable schemaTable = (HBaseSchemaTable) kiji.getSchemaTable();
+    schemaTable.getOrCreateSchemaId(TEST_SCHEMA_A);
+    final File file = new File(getLocalTempDir(), "schema-table.snapshot");
+    assertFalse(schemaTable.loadSnapshot(file));
+
+    Files.write(Bytes.toBytes("not a schema table snapshot"), file);
+    assertFalse(schemaTable.loadSnapshot(file));
+
+    // A snapshot of another instance, with more registered schemas, is stale:
+    schemaTable.writeSnapshot(file);
+    final Kiji otherKiji = createTestKiji();
+    final HBaseSchemaTable otherTable = openSchemaTable(otherKiji.getURI());
+    try {
+      assertFalse(otherTable.loadSnapshot(file));
+      assertNull(otherTable.getSchema(otherTable.getSchemaHash(TEST_SCHEMA_A)));
+    } finally {
+      ResourceUtils.closeOrLog(otherTable);
+    }
+  }
+
+  /** Tests registering a collection of schemas at once. */
+  @Test
+  public void testRegisterSchemas() throws Exception {
+    final Kiji kiji = getKiji();
+    final KijiSchemaTable schemaTable = kiji.getSchemaTable();
+    final Map<Schema, Long> ids =
+        schemaTable.registerSchemas(Lists.newArrayList(TEST_SCHEMA_A, SCHEMA_INT, TEST_SCHEMA_B));
+    assertEquals(3, ids.size());
+    assertEquals(PreRegisteredSchema.INT.getSchemaId(), (long) ids.get(SCHEMA_INT));
+
+    // New schemas are allocated a contiguous block of IDs:
+    final long firstId = HBaseSchemaTable.PRE_REGISTERED_SCHEMA_COUNT;
+    assertEquals(firstId, (long) ids.get(TEST_SCHEMA_A));
+    assertEquals(firstId + 1, (long) ids.get(TEST_SCHEMA_B));
+    assertEquals(ids, schemaTable.registerSchemas(ids.keySet()));
+
+    final HBaseSchemaTable freshTable = openSchemaTable(kiji.getURI());
+    try {
+      assertEquals(TEST_SCHEMA_A, freshTable.getSchema(firstId));
+      assertEquals(TEST_SCHEMA_B, freshTable.getSchema(freshTable.getSchemaHash(TEST_SCHEMA_B)));
+      assertEquals(firstId + 2,
+          freshTable.getOrCreateSchemaId(Schema.createArray(SCHEMA_INT)));
+      assertTrue(freshTable.checkConsistency());
+    } finally {
+      ResourceUtils.closeOrLog(freshTable);
+    }
+  }
+
+  /** Tests many registrants concurrently registering the same schemas, each with its own table. */
+  @Test
+  public void testConcurrentRegistration() throws Exception {
+    final int nthreads = 16;
+    final int nschemas = 20;
+    final Kiji kiji = getKiji();
+    final KijiURI uri = kiji.getURI();
+
+    final List<Schema> schemas = Lists.newArrayList();
+    for (int i = 0; i < nschemas; ++i) {
+      schemas.add(Schema.createFixed("Fixed" + i, null, "org.kiji.test", i + 1));
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+    try {
+      final List<Future<Map<Schema, Long>>> futures = Lists.newArrayList();
+      for (int i = 0; i < nthreads; ++i) {
+        final boolean batched = (i % 2 == 0);
+        futures.add(executor.submit(new Callable<Map<Schema, Long>>() {
+          @Override
+          public Map<Schema, Long> call() throws Exception {
+            final HBaseSchemaTable schemaTable = openSchemaTable(uri);
+            try {
+              final List<Schema> shuffled = Lists.newArrayList(schemas);
+              Collections.shuffle(shuffled);
+              if (batched) {
+                return schemaTable.registerSchemas(shuffled);
+              }
+              final Map<Schema, Long> ids = Maps.newHashMap();
+              for (Schema schema : shuffled) {
+                ids.put(schema, schemaTable.getOrCreateSchemaId(schema));
+              }
+              return ids;
+            } finally {
+              schemaTable.close();
+            }
+          }
+        }));
+      }
+
+      // All the registrants agree on the ID of each schema:
+      final Map<Schema, Long> ids = futures.get(0).get();
+      assertEquals(nschemas, ids.size());
+      for (Future<Map<Schema, Long>> future : futures) {
+        assertEquals(ids, future.get());
+      }
+
+      final HBaseSchemaTable freshTable = openSchemaTable(uri);
+      try {
+        for (Map.Entry<Schema, Long> entry : ids.entrySet()) {
+          assertEquals(entry.getKey(), freshTable.getSchema(entry.getValue()));
+          assertEquals(entry.getKey(),
+              freshTable.getSchema(freshTable.getSchemaHash(entry.getKey())));
+        }
+        assertTrue(freshTable.checkConsistency());
+      } finally {
+        ResourceUtils.closeOrLog(freshTable);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Tests that a schema registered while a backup is restored keeps a unique ID. */
+  @Test
+  public void testConcurrentRestoreAndRegistration() throws Exception {
+    final KijiURI uri = getKiji().getURI();
+    final HBaseFactory factory = HBaseFactory.Provider.get();
+    final HTableInterfaceFactory tableFactory = factory.getHTableInterfaceFactory(uri);
+    final String idTableName =
+        KijiManagedHBaseTableName.getSchemaIdTableName(uri.getInstance()).toString();
+    final byte[] counterRow = Bytes.toBytes(HBaseSchemaTable.SCHEMA_COUNTER_ROW_NAME);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final HBaseSchemaTable registrant = openSchemaTable(uri);
+    final AtomicInteger registered = new AtomicInteger(0);
+
+    // Registers TEST_SCHEMA_A from another schema table, right before the restore updates the
+    // schema ID counter:
+    final HTableInterfaceFactory racingFactory = new HTableInterfaceFactory() {
+      @Override
+      public HTableInterface create(Configuration conf, String hbaseTableName)
+          throws IOException {
+        final HTableInterface htable = tableFactory.create(conf, hbaseTableName);
+        if (!hbaseTableName.equals(idTableName)) {
+          return htable;
+        }
+        final InvocationHandler handler = new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final boolean updatesCounter =
+                (method.getName().equals("put") && (args[0] instanceof Put)
+                    && Arrays.equals(counterRow, ((Put) args[0]).getRow()))
+                || (method.getName().equals("checkAndPut")
+                    && Arrays.equals(counterRow, (byte[]) args[0]));
+            if (updatesCounter && (registered.getAndIncrement() == 0)) {
+              executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                  return registrant.getOrCreateSchemaId(TEST_SCHEMA_A);
+                }
+              }).get(10, TimeUnit.SECONDS);
+            }
+            try {
+              return method.invoke(htable, args);
+            } catch (InvocationTargetException ite) {
+              throw ite.getCause();
+            }
+          }
+        };
+        return (HTableInterface) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {HTableInterface.class}, handler);
+      }
+    };
+
+    final HBaseSchemaTable restorer = new HBaseSchemaTable(
+        uri, getConf(), racingFactory, factory.getLockFactory(uri, getConf()));
+    try {
+      restorer.fromBackup(restorer.toBackup());
+      assertTrue(registered.get() > 0);
+
+      // The counter was not moved back below the ID allocated during the restore:
+      final long testSchemaAId = registrant.getOrCreateSchemaId(TEST_SCHEMA_A);
+      final long testSchemaBId = registrant.getOrCreateSchemaId(TEST_SCHEMA_B);
+      assertTrue(testSchemaAId != testSchemaBId);
+      final HBaseSchemaTable freshTable = openSchemaTable(uri);
+      try {
+        assertEquals(TEST_SCHEMA_A, freshTable.getSchema(testSchemaAId));
+        assertEquals(TEST_SCHEMA_B, freshTable.getSchema(testSchemaBId));
+        assertTrue(freshTable.checkConsistency());
+      } finally {
+        ResourceUtils.closeOrLog(freshTable);
+      }
+    } finally {
+      executor.shutdown();
+      ResourceUtils.closeOrLog(restorer);
+      ResourceUtils.closeOrLog(registrant);
+    }
+  }
 }
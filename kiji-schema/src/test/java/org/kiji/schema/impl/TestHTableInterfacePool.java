@@ -0,0 +1,159 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.KijiTableWriter;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.ResourceUtils;
+
+/** Tests for HTableInterfacePool. */
+public class TestHTableInterfacePool extends KijiClientTest {
+
+  /** Factory creating mock HTables, counting the number of HTables created. */
+  private static final class MockHTableFactory implements HTableInterfaceFactory {
+    private final AtomicInteger mCreated = new AtomicInteger(0);
+
+    /** {@inheritDoc} */
+    @Override
+    public HTableInterface create(Configuration conf, String hbaseTableName) throws IOException {
+      mCreated.incrementAndGet();
+      return EasyMock.createNiceMock(HTableInterface.class);
+    }
+
+    /** @return the number of HTables created by this factory. */
+    public int getCreatedCount() {
+      return mCreated.get();
+    }
+  }
+
+  @Test
+  public void testReuseAndMetrics() throws Exception {
+    final MockHTableFactory factory = new MockHTableFactory();
+    final HTableInterfacePool pool =
+        new HTableInterfacePool("table", HBaseConfiguration.create(), factory, 2);
+    try {
+      final HTableInterface htable1 = pool.acquire();
+      final HTableInterface htable2 = pool.acquire();
+      assertNotSame(htable1, htable2);
+      assertEquals(2, pool.getInUseCount());
+      pool.release(htable1);
+      pool.release(htable2);
+
+      // Released HTables are reused:
+      final HTableInterface htable3 = pool.acquire();
+      assertTrue((htable3 == htable1) || (htable3 == htable2));
+      pool.release(htable3);
+
+      assertEquals(2, factory.getCreatedCount());
+      assertEquals(3, pool.getCheckoutCount());
+      assertEquals(2, pool.getHighWaterMark());
+      assertEquals(0, pool.getInUseCount());
+    } finally {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void testAcquireBlocksWhenExhausted() throws Exception {
+    final HTableInterfacePool pool =
+        new HTableInterfacePool("table", HBaseConfiguration.create(), new MockHTableFactory(), 1);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final HTableInterface htable = pool.acquire();
+      final Future<HTableInterface> future = executor.submit(new Callable<HTableInterface>() {
+        @Override
+        public HTableInterface call() throws Exception {
+          return pool.acquire();
+        }
+      });
+      try {
+        future.get(100, TimeUnit.MILLISECONDS);
+        assertFalse("Pool should have blocked when exhausted.", true);
+      } catch (TimeoutException te) {
+        // Expected: no HTable is available.
+      }
+      pool.release(htable);
+      assertSame(htable, future.get());
+      pool.release(htable);
+      assertEquals(1, pool.getHighWaterMark());
+      assertTrue(pool.getWaitTime(TimeUnit.NANOSECONDS) > 0);
+    } finally {
+      executor.shutdown();
+      pool.close();
+    }
+  }
+
+  @Test
+  public void testTableReadersAndWritersUsePool() throws Exception {
+    final Kiji kiji = getKiji();
+    kiji.createTable(KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE));
+    final KijiTable table = kiji.openTable("table");
+    try {
+      final HTableInterfacePool pool = HBaseKijiTable.downcast(table).getHTablePool();
+      final EntityId eid = table.getEntityId("row");
+
+      final KijiTableWriter writer = table.openTableWriter();
+      try {
+        writer.put(eid, "family", "column", "value");
+      } finally {
+        writer.close();
+      }
+      final KijiTableReader reader = table.openTableReader();
+      try {
+        assertEquals("value", reader.get(eid, KijiDataRequest.create("family", "column"))
+            .getMostRecentValue("family", "column").toString());
+      } finally {
+        reader.close();
+      }
+
+      assertEquals(2, pool.getCheckoutCount());
+      assertEquals(0, pool.getInUseCount());
+    } finally {
+      ResourceUtils.releaseOrLog(table);
+    }
+  }
+}
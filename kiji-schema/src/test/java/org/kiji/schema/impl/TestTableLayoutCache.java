@@ -0,0 +1,125 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiTableNotFoundException;
+import org.kiji.schema.avro.TableLayoutDesc;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.ResourceUtils;
+
+/** Tests for TableLayoutCache. */
+public class TestTableLayoutCache extends KijiClientTest {
+  @Before
+  public void setupTable() throws Exception {
+    getKiji().createTable(KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE));
+  }
+
+  /**
+   * Applies a layout update adding a locality group to the test table.
+   *
+   * @param kiji Kiji instance to apply the update with.
+   * @throws Exception on error.
+   */
+  private static void updateLayout(Kiji kiji) throws Exception {
+    final TableLayoutDesc update =
+        KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE_UPDATE_NEW_LOCALITY_GROUP);
+    update.setReferenceLayout(
+        kiji.getMetaTable().getTableLayout("table").getDesc().getLayoutId());
+    kiji.modifyTableLayout(update);
+  }
+
+  @Test
+  public void testSharedLayout() throws Exception {
+    final HBaseKijiTable table1 = (HBaseKijiTable) getKiji().openTable("table");
+    final HBaseKijiTable table2 = (HBaseKijiTable) getKiji().openTable("table");
+    try {
+      assertSame(table1.getCachedLayout(), table2.getCachedLayout());
+      assertSame(table1.getLayout(), table2.getLayout());
+      assertSame(table1.getEntityIdFactory(), table2.getEntityIdFactory());
+      final KijiColumnName column = new KijiColumnName("family", "column");
+      assertSame(
+          table1.getCachedLayout().getCellSpec(column),
+          table2.getCachedLayout().getCellSpec(column));
+    } finally {
+      ResourceUtils.releaseOrLog(table1);
+      ResourceUtils.releaseOrLog(table2);
+    }
+  }
+
+  @Test
+  public void testModifyTableLayout() throws Exception {
+    final HBaseKijiTable table1 = (HBaseKijiTable) getKiji().openTable("table");
+    try {
+      updateLayout(getKiji());
+      final HBaseKijiTable table2 = (HBaseKijiTable) getKiji().openTable("table");
+      try {
+        assertNotSame(table1.getCachedLayout(), table2.getCachedLayout());
+        assertFalse(table1.getLayout().getLocalityGroupMap().containsKey("new"));
+        assertTrue(table2.getLayout().getLocalityGroupMap().containsKey("new"));
+      } finally {
+        ResourceUtils.releaseOrLog(table2);
+      }
+    } finally {
+      ResourceUtils.releaseOrLog(table1);
+    }
+  }
+
+  @Test
+  public void testLayoutUpdatedByAnotherClient() throws Exception {
+    final TableLayoutCache cache = ((HBaseKiji) getKiji()).getTableLayoutCache();
+    final CachedTableLayout cached = cache.get("table");
+    assertSame(cached, cache.get("table"));
+
+    // Updates applied through another Kiji instance are detected from the layout timestamp:
+    final Kiji otherKiji = Kiji.Factory.open(getKiji().getURI(), getConf());
+    try {
+      updateLayout(otherKiji);
+      final CachedTableLayout updated = cache.get("table");
+      assertNotSame(cached, updated);
+      assertTrue(updated.getTimestamp() > cached.getTimestamp());
+      assertEquals(
+          otherKiji.getMetaTable().getTableLayout("table").getDesc().getLayoutId(),
+          updated.getLayout().getDesc().getLayoutId());
+
+      otherKiji.deleteTable("table");
+      try {
+        cache.get("table");
+        fail("Deleted table should not be found.");
+      } catch (KijiTableNotFoundException ktnfe) {
+        // Expected.
+      }
+    } finally {
+      ResourceUtils.releaseOrLog(otherKiji);
+    }
+  }
+}
@@ -106,6 +106,10 @@ public final class KijiTableLayouts {
   public static final String COUNTER_TEST =
       "org/kiji/schema/layout/counter-test.json";
 
+  /** A layout file with a counter striped over 4 cells. */
+  public static final String STRIPED_COUNTER_TEST =
+      "org/kiji/schema/layout/striped-counter-test.json";
+
   /** Test layout for paging. */
   public static final String PAGING_TEST =
       "org/kiji/schema/layout/paging-test.json";
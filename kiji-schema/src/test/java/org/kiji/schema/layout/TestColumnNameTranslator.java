@@ -21,6 +21,7 @@ package org.kiji.schema.layout;
 
 import static org.junit.Assert.assertEquals;
 
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Before;
 import org.junit.Test;
@@ -81,6 +82,27 @@ public class TestColumnNameTranslator {
     assertEquals("purchases:foo", purchases.toString());
   }
 
+  @Test
+  public void testTranslateKeyValue() throws Exception {
+    final ColumnNameTranslator translator = new ColumnNameTranslator(mTableLayout);
+    final KeyValue kv = new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("C"),
+        Bytes.toBytes("C:foo"), 1L, Bytes.toBytes("value"));
+    assertEquals("purchases:foo", translator.toKijiColumnName(kv).toString());
+  }
+
+  @Test
+  public void testTranslateRoundTrip() throws Exception {
+    final ColumnNameTranslator translator = new ColumnNameTranslator(mTableLayout);
+    for (KijiColumnName column : new KijiColumnName[] {
+        new KijiColumnName("info:name"),
+        new KijiColumnName("info:email"),
+        new KijiColumnName("recommendations:product"),
+        new KijiColumnName("purchases:foo:bar"),
+    }) {
+      assertEquals(column, translator.toKijiColumnName(translator.toHBaseColumnName(column)));
+    }
+  }
+
   /**
    * Tests that an exception is thrown when the HBase family doesn't match a Kiji locality group.
    */
@@ -41,6 +41,7 @@ import org.kiji.schema.avro.ComponentType;
 import org.kiji.schema.avro.CompressionType;
 import org.kiji.schema.avro.FamilyDesc;
 import org.kiji.schema.avro.HashSpec;
+import org.kiji.schema.avro.HashType;
 import org.kiji.schema.avro.LocalityGroupDesc;
 import org.kiji.schema.avro.RowKeyComponent;
 import org.kiji.schema.avro.RowKeyEncoding;
@@ -88,6 +89,17 @@ public class TestKijiTableLayout {
     return format;
   }
 
+  private RowKeyFormat2 xxHashRowKeyFormat(int hashSize) {
+    ArrayList<RowKeyComponent> components = new ArrayList<RowKeyComponent>();
+    components.add(RowKeyComponent.newBuilder()
+        .setName("NAME").setType(ComponentType.STRING).build());
+    return RowKeyFormat2.newBuilder().setEncoding(RowKeyEncoding.FORMATTED)
+        .setSalt(HashSpec.newBuilder()
+            .setHashType(HashType.XXHASH64).setHashSize(hashSize).build())
+        .setComponents(components)
+        .build();
+  }
+
   // Invalid row key format
   private RowKeyFormat2 noComponentsRowKeyFormat() {
     // components of the row key
@@ -1205,4 +1217,52 @@ public class TestKijiTableLayout {
         .build();
     final KijiTableLayout ktl = KijiTableLayout.newLayout(desc);
   }
+
+  @Test
+  public void testXXHashSalt() throws InvalidLayoutException {
+    final TableLayoutDesc desc = TableLayoutDesc.newBuilder()
+        .setName("table_name")
+        .setKeysFormat(xxHashRowKeyFormat(8))
+        .setVersion("layout-1.2.0")
+        .build();
+    final KijiTableLayout ktl = KijiTableLayout.newLayout(desc);
+    assertEquals(HashType.XXHASH64, KijiTableLayout.getHashType(ktl.getDesc().getKeysFormat()));
+  }
+
+  @Test(expected=InvalidLayoutException.class)
+  public void xxHashSaltRequiresLayout12() throws InvalidLayoutException {
+    final TableLayoutDesc desc = TableLayoutDesc.newBuilder()
+        .setName("table_name")
+        .setKeysFormat(xxHashRowKeyFormat(8))
+        .setVersion(TABLE_LAYOUT_VERSION)
+        .build();
+    final KijiTableLayout ktl = KijiTableLayout.newLayout(desc);
+  }
+
+  @Test(expected=InvalidLayoutException.class)
+  public void xxHashSaltTooLarge() throws InvalidLayoutException {
+    final TableLayoutDesc desc = TableLayoutDesc.newBuilder()
+        .setName("table_name")
+        .setKeysFormat(xxHashRowKeyFormat(12))
+        .setVersion("layout-1.2.0")
+        .build();
+    final KijiTableLayout ktl = KijiTableLayout.newLayout(desc);
+  }
+
+  @Test(expected=InvalidLayoutException.class)
+  public void stripedCountersRequireLayout12() throws Exception {
+    final TableLayoutDesc desc =
+        KijiTableLayouts.getLayout(KijiTableLayouts.STRIPED_COUNTER_TEST);
+    desc.setVersion(TABLE_LAYOUT_VERSION);
+    KijiTableLayout.newLayout(desc);
+  }
+
+  @Test(expected=InvalidLayoutException.class)
+  public void onlyCountersMayBeStriped() throws Exception {
+    final TableLayoutDesc desc =
+        KijiTableLayouts.getLayout(KijiTableLayouts.STRIPED_COUNTER_TEST);
+    desc.getLocalityGroups().get(0).getFamilies().get(0).getColumns().get(0)
+        .getColumnSchema().setCounterStripes(2);
+    KijiTableLayout.newLayout(desc);
+  }
 }
@@ -0,0 +1,167 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableWriter;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.ResourceUtils;
+
+public class TestKijiTableInputFormat extends KijiClientTest {
+  private KijiTable mTable;
+
+  @Before
+  public void setupTable() throws Exception {
+    // Regions: [-inf, b), [b, d), [d, f), [f, +inf).
+    getKiji().createTable(KijiTableLayouts.getLayout(KijiTableLayouts.PAGING_TEST),
+        new byte[][] {Bytes.toBytes("b"), Bytes.toBytes("d"), Bytes.toBytes("f")});
+    mTable = getKiji().openTable("user");
+
+    final KijiTableWriter writer = mTable.openTableWriter();
+    try {
+      for (String row : new String[] {"a", "b", "c", "d", "e", "f", "g"}) {
+        writer.put(mTable.getEntityId(row), "info", "name", 1L, row);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @After
+  public void cleanupTable() throws IOException {
+    ResourceUtils.releaseOrLog(mTable);
+  }
+
+  /**
+   * Configures a job over the test table, and computes its input splits.
+   *
+   * @param rowRanges Ranges of rows to read.
+   * @return the input splits of the job.
+   * @throws Exception on error.
+   */
+  private List<InputSplit> getSplits(List<KijiRowRange> rowRanges) throws Exception {
+    final Job job = new Job(new Configuration(getConf()));
+    KijiTableInputFormat.configureJob(
+        job, mTable.getURI(), KijiDataRequest.create("info", "name"), rowRanges);
+    final KijiTableInputFormat inputFormat = new KijiTableInputFormat();
+    inputFormat.setConf(job.getConfiguration());
+    return inputFormat.getSplits(new JobContext(job.getConfiguration(), new JobID()));
+  }
+
+  /**
+   * Reads the names of the rows of an input split.
+   *
+   * @param split Input split to read.
+   * @return the names of the rows in the split.
+   * @throws Exception on error.
+   */
+  private List<String> readSplit(InputSplit split) throws Exception {
+    final Job job = new Job(new Configuration(getConf()));
+    KijiTableInputFormat.configureJob(
+        job, mTable.getURI(), KijiDataRequest.create("info", "name"), null, null);
+    final Configuration conf = job.getConfiguration();
+    final KijiTableInputFormat.KijiTableRecordReader reader =
+        new KijiTableInputFormat.KijiTableRecordReader(conf);
+    final List<String> names = Lists.newArrayList();
+    try {
+      reader.initialize(split, new TaskAttemptContext(conf, new TaskAttemptID()));
+      assertEquals(0.0f, reader.getProgress(), 0.0f);
+      while (reader.nextKeyValue()) {
+        names.add(reader.getCurrentValue().getMostRecentValue("info", "name").toString());
+      }
+      assertEquals(1.0f, reader.getProgress(), 0.0f);
+    } finally {
+      reader.close();
+    }
+    return names;
+  }
+
+  @Test
+  public void testAllRows() throws Exception {
+    final List<InputSplit> splits = getSplits(Lists.newArrayList(KijiRowRange.ALL_ROWS));
+    assertEquals(4, splits.size());
+    final List<String> names = Lists.newArrayList();
+    for (InputSplit split : splits) {
+      names.addAll(readSplit(split));
+    }
+    assertEquals(Lists.newArrayList("a", "b", "c", "d", "e", "f", "g"), names);
+  }
+
+  @Test
+  public void testRowRanges() throws Exception {
+    final List<InputSplit> splits = getSplits(Lists.newArrayList(
+        new KijiRowRange(mTable.getEntityId("e"), mTable.getEntityId("e1")),
+        new KijiRowRange(mTable.getEntityId("a"), mTable.getEntityId("c"))));
+
+    // Only the regions [-inf, b), [b, d) and [d, f) overlap the ranges:
+    assertEquals(3, splits.size());
+    assertEquals(Lists.newArrayList("a"), readSplit(splits.get(0)));
+    assertEquals(Lists.newArrayList("b"), readSplit(splits.get(1)));
+    assertEquals(Lists.newArrayList("e"), readSplit(splits.get(2)));
+  }
+
+  @Test
+  public void testStartAndEndRows() throws Exception {
+    final Job job = new Job(new Configuration(getConf()));
+    KijiTableInputFormat.configureJob(
+        job, mTable.getURI(), KijiDataRequest.create("info", "name"), "c", "f");
+    final KijiTableInputFormat inputFormat = new KijiTableInputFormat();
+    final List<String> names = Lists.newArrayList();
+    for (InputSplit split
+        : inputFormat.getSplits(new JobContext(job.getConfiguration(), new JobID()))) {
+      names.addAll(readSplit(split));
+    }
+    // The end row is inclusive:
+    assertEquals(Lists.newArrayList("c", "d", "e", "f"), names);
+  }
+
+  @Test
+  public void testOverlappingRowRanges() throws Exception {
+    try {
+      getSplits(Lists.newArrayList(
+          new KijiRowRange(mTable.getEntityId("a"), mTable.getEntityId("c")),
+          new KijiRowRange(mTable.getEntityId("b"), null)));
+      fail("Overlapping row ranges should be rejected.");
+    } catch (IllegalArgumentException iae) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class TestRowKeyInterpolator {
+  @Test
+  public void testSplitHashedKeySpace() {
+    final RowKeyInterpolator interpolator = new RowKeyInterpolator(2);
+    final List<byte[]> boundaries = interpolator.split(
+        HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW, 4);
+    assertEquals(5, boundaries.size());
+    assertArrayEquals(HConstants.EMPTY_START_ROW, boundaries.get(0));
+    assertArrayEquals(new byte[] {0x40, 0x00}, boundaries.get(1));
+    assertArrayEquals(new byte[] {(byte) 0x80, 0x00}, boundaries.get(2));
+    assertArrayEquals(new byte[] {(byte) 0xc0, 0x00}, boundaries.get(3));
+    assertArrayEquals(HConstants.EMPTY_END_ROW, boundaries.get(4));
+  }
+
+  @Test
+  public void testSplitRawKeyRange() {
+    final RowKeyInterpolator interpolator = new RowKeyInterpolator(0);
+    final byte[] start = Bytes.toBytes("user-a");
+    final byte[] end = Bytes.toBytes("user-z");
+    final List<byte[]> boundaries = interpolator.split(start, end, 10);
+    assertEquals(11, boundaries.size());
+    for (int i = 1; i < boundaries.size(); ++i) {
+      assertTrue(Bytes.compareTo(boundaries.get(i - 1), boundaries.get(i)) < 0);
+    }
+    // Interpolated keys share the common prefix of the boundaries:
+    assertTrue(Bytes.startsWith(boundaries.get(5), Bytes.toBytes("user-")));
+  }
+
+  @Test
+  public void testSplitNarrowRange() {
+    // Only 2 distinct hash prefixes between the boundaries:
+    final RowKeyInterpolator interpolator = new RowKeyInterpolator(1);
+    final List<byte[]> boundaries =
+        interpolator.split(new byte[] {0x10}, new byte[] {0x12}, 8);
+    assertEquals(3, boundaries.size());
+    assertArrayEquals(new byte[] {0x11}, boundaries.get(1));
+  }
+
+  @Test
+  public void testPosition() {
+    final RowKeyInterpolator interpolator = new RowKeyInterpolator(2);
+    final byte[] start = HConstants.EMPTY_START_ROW;
+    final byte[] end = HConstants.EMPTY_END_ROW;
+    assertEquals(0.0f, interpolator.getPosition(start, end, new byte[] {0x00, 0x00}), 1e-6);
+    assertEquals(0.5f, interpolator.getPosition(start, end, new byte[] {(byte) 0x80}), 1e-6);
+    assertEquals(0.25f, interpolator.getPosition(
+        new byte[] {0x40}, new byte[] {(byte) 0x80}, new byte[] {0x50, 0x00, 0x12}), 1e-6);
+  }
+
+  @Test
+  public void testSplitLengthIsSerialized() throws Exception {
+    final TableSplit tableSplit = new TableSplit(
+        Bytes.toBytes("table"), Bytes.toBytes("a"), Bytes.toBytes("b"), "host");
+    final KijiTableSplit split = new KijiTableSplit(tableSplit, Bytes.toBytes("a"), 12345L);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    split.write(new DataOutputStream(bytes));
+    final KijiTableSplit decoded = new KijiTableSplit();
+    decoded.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(12345L, decoded.getLength());
+    assertEquals("host", decoded.getRegionLocation());
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+public class TestDefaultMetricsRegistry {
+  @Test
+  public void testCountersAndGauges() {
+    final MetricsRegistry registry = new DefaultMetricsRegistry();
+    assertTrue(registry.isEnabled());
+    assertSame(registry.getCounter("foo"), registry.getCounter("foo"));
+    registry.getCounter("foo").inc(3);
+    registry.getCounter("foo").inc(4);
+    registry.registerGauge("bar", new MetricsRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return 42L;
+      }
+    });
+
+    final Map<String, Long> values = registry.getValues();
+    assertEquals(7L, (long) values.get("foo"));
+    assertEquals(42L, (long) values.get("bar"));
+
+    registry.remove("bar");
+    assertFalse(registry.getValues().containsKey("bar"));
+  }
+
+  @Test
+  public void testTimerPercentiles() {
+    final DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+    final DefaultMetricsRegistry.LatencyTimer timer =
+        (DefaultMetricsRegistry.LatencyTimer) registry.getTimer("op");
+    // 98 operations of 10us, and 2 operations of 5ms:
+    for (int i = 0; i < 98; ++i) {
+      timer.update(10000L);
+    }
+    timer.update(5000000L);
+    timer.update(5000000L);
+
+    final Map<String, Long> values = registry.getValues();
+    assertEquals(100L, (long) values.get("op.count"));
+    assertEquals(16L, (long) values.get("op.p50_us"));  // Bucket [8us, 16us).
+    assertEquals(16L, (long) values.get("op.p95_us"));
+    assertEquals(5000L, (long) values.get("op.p99_us"));  // Capped by the maximum.
+    assertEquals(5000L, (long) values.get("op.max_us"));
+    assertEquals(109L, (long) values.get("op.mean_us"));
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    final MetricsRegistry registry = MetricsRegistries.create(new Configuration(false));
+    assertFalse(registry.isEnabled());
+    final MetricsRegistry.Timer timer = registry.getTimer("op");
+    timer.stop(timer.start());
+    registry.getCounter("foo").inc(1);
+    assertTrue(registry.getValues().isEmpty());
+
+    final Configuration conf = new Configuration(false);
+    conf.setBoolean(MetricsRegistries.CONF_METRICS_ENABLED, true);
+    assertTrue(MetricsRegistries.create(conf) instanceof DefaultMetricsRegistry);
+  }
+}
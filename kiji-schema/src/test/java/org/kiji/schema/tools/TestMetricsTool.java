@@ -0,0 +1,163 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiRowScanner;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.KijiTableWriter;
+import org.kiji.schema.impl.HBaseKiji;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.metrics.MetricsRegistries;
+import org.kiji.schema.util.ResourceUtils;
+
+public class TestMetricsTool extends KijiClientTest {
+  /** Output of the CLI tool, as a single string. */
+  private String mToolOutputStr;
+
+  /** Exports the MBeans of this JVM to the tool, as a remote JVM would. */
+  private JMXConnectorServer mJmxServer;
+
+  /** JMX service URL of this JVM. */
+  private String mJmxURL;
+
+  @Before
+  public final void setupJmxServer() throws Exception {
+    mJmxServer = JMXConnectorServerFactory.newJMXConnectorServer(
+        new JMXServiceURL("service:jmx:rmi://"), null, ManagementFactory.getPlatformMBeanServer());
+    mJmxServer.start();
+    mJmxURL = mJmxServer.getAddress().toString();
+  }
+
+  @After
+  public final void teardownJmxServer() throws Exception {
+    mJmxServer.stop();
+  }
+
+  private int runTool(BaseTool tool, String... arguments) throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final PrintStream pstream = new PrintStream(bytes);
+    tool.setPrintStream(pstream);
+    try {
+      return tool.toolMain(Lists.newArrayList(arguments));
+    } finally {
+      pstream.close();
+      mToolOutputStr = Bytes.toString(bytes.toByteArray());
+    }
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    getKiji().createTable(KijiTableLayouts.getLayout(KijiTableLayouts.PAGING_TEST));
+
+    final Configuration conf = new Configuration(getConf());
+    conf.setBoolean(MetricsRegistries.CONF_METRICS_ENABLED, true);
+    final Kiji kiji = Kiji.Factory.open(getKiji().getURI(), conf);
+    try {
+      final KijiTable table = kiji.openTable("user");
+      try {
+        final KijiTableWriter writer = table.openTableWriter();
+        try {
+          writer.put(table.getEntityId("row"), "info", "name", 1L, "name");
+        } finally {
+          writer.close();
+        }
+        final KijiTableReader reader = table.openTableReader();
+        try {
+          final KijiDataRequest request = KijiDataRequest.create("info", "name");
+          assertEquals("name", reader.get(table.getEntityId("row"), request)
+              .getMostRecentValue("info", "name").toString());
+          final KijiRowScanner scanner = reader.getScanner(request);
+          try {
+            for (KijiRowData row : scanner) {
+              row.getMostRecentValue("info", "name");
+            }
+          } finally {
+            scanner.close();
+          }
+        } finally {
+          reader.close();
+        }
+      } finally {
+        ResourceUtils.releaseOrLog(table);
+      }
+
+      final Map<String, Long> values = ((HBaseKiji) kiji).getMetricsRegistry().getValues();
+      assertEquals(1L, (long) values.get("table.user.writer.put.count"));
+      assertEquals(1L, (long) values.get("table.user.reader.get.count"));
+      assertEquals(1L, (long) values.get("table.user.scanner.rows"));
+      assertEquals(1L, (long) values.get("table.user.scanner.cells"));
+      assertEquals(2L, (long) values.get("table.user.cell.decode.count"));
+      assertTrue(values.get("table.user.column.info:name.bytes_encoded") > 0);
+      assertEquals(2 * values.get("table.user.column.info:name.bytes_encoded"),
+          (long) values.get("table.user.column.info:name.bytes_decoded"));
+      assertTrue(values.get("schema_table.cache.hits") + values.get("schema_table.cache.misses")
+          > 0);
+      assertTrue(values.get("kiji.instances.live") >= 2);
+
+      assertEquals(BaseTool.SUCCESS, runTool(new MetricsTool(),
+          "--jmx=" + mJmxURL, "--kiji=" + kiji.getURI(), "--prefix=table.user.reader."));
+      assertTrue(mToolOutputStr, mToolOutputStr.startsWith(kiji.getURI().toString()));
+      assertTrue(mToolOutputStr, mToolOutputStr.contains("  table.user.reader.get.count = 1"));
+      assertTrue(mToolOutputStr, !mToolOutputStr.contains("table.user.writer"));
+    } finally {
+      kiji.release();
+    }
+
+    // Metrics of released Kiji instances are not exported anymore:
+    assertEquals(BaseTool.SUCCESS,
+        runTool(new MetricsTool(), "--jmx=" + mJmxURL, "--kiji=" + getKiji().getURI()));
+    assertTrue(mToolOutputStr, mToolOutputStr.startsWith("No Kiji metrics found."));
+  }
+
+  @Test
+  public void testJmxIsRequired() throws Exception {
+    try {
+      runTool(new MetricsTool(), "--kiji=" + getKiji().getURI());
+      fail("Should throw IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().startsWith("Specify the JVM to query with --jmx="));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import com.google.common.collect.Lists;
+import org.apache.avro.Schema;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.impl.HBaseSchemaTable;
+
+public class TestSchemaTableTool extends KijiClientTest {
+  /** Output of the CLI tool, as a single string. */
+  private String mToolOutputStr;
+
+  private int runTool(BaseTool tool, String... arguments) throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final PrintStream pstream = new PrintStream(bytes);
+    tool.setPrintStream(pstream);
+    try {
+      return tool.toolMain(Lists.newArrayList(arguments));
+    } finally {
+      pstream.close();
+      mToolOutputStr = Bytes.toString(bytes.toByteArray());
+    }
+  }
+
+  @Test
+  public void testCheck() throws Exception {
+    final Kiji kiji = getKiji();
+    kiji.getSchemaTable().getOrCreateSchemaId(Schema.createArray(Schema.create(Schema.Type.INT)));
+    assertEquals(BaseTool.SUCCESS,
+        runTool(new SchemaTableTool(), "--kiji=" + kiji.getURI(), "--do=check"));
+    assertTrue(mToolOutputStr.startsWith("Schema table is consistent."));
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    final Kiji kiji = getKiji();
+    final File file = new File(getLocalTempDir(), "schema-table.snapshot");
+    assertEquals(BaseTool.SUCCESS, runTool(new SchemaTableTool(),
+        "--kiji=" + kiji.getURI(), "--do=snapshot", "--snapshot=" + file));
+    assertTrue(file.isFile());
+    assertTrue(((HBaseSchemaTable) kiji.getSchemaTable()).loadSnapshot(file));
+  }
+}
@@ -28,10 +28,15 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.kiji.schema.avro.HashType;
+
 public class TestHasher {
   private static final Logger LOG = LoggerFactory.getLogger(TestHasher.class);
 
@@ -104,4 +109,42 @@ public class TestHasher {
       assertFalse(thread.failed());
     }
   }
+
+  @Test
+  public void testMD5HashType() {
+    final byte[] input = Bytes.toBytes("some row key");
+    assertArrayEquals(Hasher.hash(input), Hasher.hash(HashType.MD5, input));
+
+    // Hash a slice into a larger buffer, keeping only a prefix of the hash:
+    final byte[] output = new byte[8];
+    Hasher.hash(HashType.MD5, Bytes.add(new byte[3], input), 3, input.length, output, 2, 4);
+    assertArrayEquals(Arrays.copyOfRange(Hasher.hash(input), 0, 4),
+        Arrays.copyOfRange(output, 2, 6));
+  }
+
+  @Test
+  public void testMurmur3() {
+    // Covers all the tail lengths, and several blocks:
+    for (int length = 0; length < 70; ++length) {
+      final byte[] input = new byte[length];
+      for (int i = 0; i < length; ++i) {
+        input[i] = (byte) (i * 31 + 7);
+      }
+      assertArrayEquals("Input length " + length,
+          Hashing.murmur3_128().hashBytes(input).asBytes(),
+          Hasher.hash(HashType.MURMUR3_128, input));
+    }
+  }
+
+  @Test
+  public void testXXHash64() {
+    // Reference values from the xxHash implementation:
+    assertEquals(0xef46db3751d8e999L,
+        Bytes.toLong(Hasher.hash(HashType.XXHASH64, new byte[0])));
+    assertEquals(0x44bc2cf5ad770999L,
+        Bytes.toLong(Hasher.hash(HashType.XXHASH64, "abc".getBytes(Charsets.UTF_8))));
+    assertEquals(0xfbcea83c8a378bf1L, Bytes.toLong(Hasher.hash(HashType.XXHASH64,
+        "Nobody inspects the spammish repetition".getBytes(Charsets.UTF_8))));
+    assertEquals(8, Hasher.getHashSize(HashType.XXHASH64));
+  }
 }